@@ -34,7 +34,7 @@ public class AzureRepositoryPlugin extends AbstractRepositoryPlugin<BlobServiceC
     }
 
     @Override
-    public List<Setting<?>> getSettings() {
+    protected List<Setting<?>> clientSettings() {
         return List.of(
                 AzureClientSettings.PUBLIC_KEY_FILE,
                 AzureClientSettings.PRIVATE_KEY_FILE,
@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -33,32 +35,52 @@ import org.opensearch.common.collect.Tuple;
 import org.opensearch.common.settings.Setting;
 import org.opensearch.common.settings.Settings;
 
+import io.aiven.elasticsearch.repositories.BlobVersionConflictException;
 import io.aiven.elasticsearch.repositories.CommonSettings;
 import io.aiven.elasticsearch.repositories.Permissions;
 import io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider;
 import io.aiven.elasticsearch.repositories.io.CryptoIOProvider;
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+import io.aiven.elasticsearch.repositories.jfr.BlobListPageEvent;
 import io.aiven.elasticsearch.repositories.security.EncryptionKeyProvider;
 
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.models.BlobItem;
 import com.azure.storage.blob.models.BlobItemProperties;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
 import com.azure.storage.blob.models.ListBlobsOptions;
 
+import static java.net.HttpURLConnection.HTTP_CONFLICT;
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+import static java.net.HttpURLConnection.HTTP_PRECON_FAILED;
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+
 public class AzureRepositoryStorageIOProvider
         extends RepositoryStorageIOProvider<BlobServiceClient, AzureClientSettings> {
 
     static final Setting<String> CONTAINER_NAME = Setting.simpleString("container_name");
 
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
     public AzureRepositoryStorageIOProvider(final AzureClientSettings clientSettings,
                                             final EncryptionKeyProvider encryptionKeyProvider) {
         super(new AzureClientProvider(), clientSettings, encryptionKeyProvider);
     }
 
+    @Override
+    protected Setting<String> bucketSetting() {
+        return CONTAINER_NAME;
+    }
+
     @Override
     protected StorageIO createStorageIOFor(final BlobServiceClient client,
                                            final Settings repositorySettings,
-                                           final CryptoIOProvider cryptoIOProvider) {
+                                           final CryptoIOProvider cryptoIOProvider,
+                                           final ParallelListing parallelListing) {
+        // the list API only continues from opaque markers, so listings are never split into key ranges
         try {
             CommonSettings.RepositorySettings
                     .checkSettings(AzureRepositoryPlugin.REPOSITORY_TYPE, CONTAINER_NAME, repositorySettings);
@@ -83,6 +105,7 @@ public class AzureRepositoryStorageIOProvider
         @Override
         public boolean exists(final String blobName) throws IOException {
             try {
+                cryptoIOProvider.requestAccounting().classB(1L);
                 return Permissions.doPrivileged(() ->
                         blobContainerClient.getBlobClient(blobName).exists());
             } catch (final Exception e) {
@@ -92,9 +115,61 @@ public class AzureRepositoryStorageIOProvider
 
         @Override
         public InputStream read(final String blobName) throws IOException {
-            return Permissions.doPrivileged(() ->
-                    cryptoIOProvider.decryptAndDecompress(
-                            blobContainerClient.getBlobClient(blobName).openInputStream()));
+            return read(blobName, (BlobRequestConditions) null);
+        }
+
+        @Override
+        public String version(final String blobName) throws IOException {
+            cryptoIOProvider.requestAccounting().classB(1L);
+            try {
+                return Permissions.doPrivileged(() ->
+                        blobContainerClient.getBlobClient(blobName).getProperties().getETag());
+            } catch (final BlobStorageException e) {
+                if (e.getStatusCode() == HTTP_NOT_FOUND) {
+                    final var notFound = new NoSuchFileException("Blob [" + blobName + "] doesn't exist");
+                    notFound.initCause(e);
+                    throw notFound;
+                }
+                throw new IOException("Couldn't get version of blob " + blobName, e);
+            }
+        }
+
+        /**
+         * Reads the blob with the given ETag, the condition is sent with the request of every chunk.
+         */
+        @Override
+        public InputStream read(final String blobName, final String version) throws IOException {
+            try {
+                return read(blobName, new BlobRequestConditions().setIfMatch(version));
+            } catch (final BlobStorageException e) {
+                if (e.getStatusCode() == HTTP_PRECON_FAILED) {
+                    final var conflict = new BlobVersionConflictException(blobName, version);
+                    conflict.initCause(e);
+                    throw conflict;
+                }
+                throw e;
+            }
+        }
+
+        private InputStream read(final String blobName,
+                                 final BlobRequestConditions requestConditions) throws IOException {
+            cryptoIOProvider.requestAccounting().classB(1L);
+            return Permissions.doPrivileged(() -> {
+                try {
+                    final var blobClient = blobContainerClient.getBlobClient(blobName);
+                    return cryptoIOProvider.decryptAndDecompress(
+                            Objects.isNull(requestConditions)
+                                    ? blobClient.openInputStream()
+                                    : blobClient.openInputStream(new BlobRange(0L), requestConditions));
+                } catch (final BlobStorageException e) {
+                    if (e.getStatusCode() == HTTP_NOT_FOUND) {
+                        final var notFound = new NoSuchFileException("Blob [" + blobName + "] doesn't exist");
+                        notFound.initCause(e);
+                        throw notFound;
+                    }
+                    throw e;
+                }
+            });
         }
 
         @Override
@@ -102,54 +177,103 @@ public class AzureRepositoryStorageIOProvider
                           final InputStream inputStream,
                           final long blobSize,
                           final boolean failIfAlreadyExists) throws IOException {
+            // the service checks the condition atomically when the blocks are committed
+            final var requestConditions =
+                    failIfAlreadyExists ? new BlobRequestConditions().setIfNoneMatch("*") : null;
             try {
-                Permissions.doPrivileged(() -> {
-                    final var azureOutputStream =
-                            blobContainerClient
-                                    .getBlobClient(blobName)
-                                    .getBlockBlobClient()
-                                    .getBlobOutputStream(true); //always overwrite
-                    cryptoIOProvider.compressAndEncrypt(
-                            inputStream,
-                            new OutputStream() {
-                                @Override
-                                public void write(final int b) throws IOException {
-                                    write(new byte[]{(byte) b});
-                                }
-
-                                @Override
-                                public void write(final byte[] b) throws IOException {
-                                    Permissions.doPrivileged(() -> azureOutputStream.write(b));
-                                }
-
-                                @Override
-                                public void write(final byte[] b, final int off, final int len) throws IOException {
-                                    Permissions.doPrivileged(() -> azureOutputStream.write(b, off, len));
-                                }
-
-                                @Override
-                                public void flush() throws IOException {
-                                    Permissions.doPrivileged(azureOutputStream::flush);
-                                }
-
-                                @Override
-                                public void close() throws IOException {
-                                    Permissions.doPrivileged(azureOutputStream::close);
-                                }
-
-                            });
-                });
+                upload(blobName, inputStream, requestConditions);
             } catch (final Exception e) { //use just exception ... it could throw IllegalArgumentException
+                if (failIfAlreadyExists && isRefused(e, HTTP_CONFLICT)) {
+                    final var alreadyExists = new FileAlreadyExistsException(blobName, null, "blob already exists");
+                    alreadyExists.initCause(e);
+                    throw alreadyExists;
+                }
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void replace(final String blobName,
+                            final InputStream inputStream,
+                            final long blobSize,
+                            final String version) throws IOException {
+            try {
+                upload(blobName, inputStream, new BlobRequestConditions().setIfMatch(version));
+            } catch (final Exception e) {
+                if (isRefused(e, HTTP_NOT_FOUND)) {
+                    final var conflict = new BlobVersionConflictException(blobName, version);
+                    conflict.initCause(e);
+                    throw conflict;
+                }
                 throw new IOException(e);
             }
         }
 
+        private void upload(final String blobName,
+                            final InputStream inputStream,
+                            final BlobRequestConditions requestConditions) throws IOException {
+            // the blocks are staged by the client, the upload is accounted as a single request
+            cryptoIOProvider.requestAccounting().classA(1L);
+            Permissions.doPrivileged(() -> {
+                final var azureOutputStream =
+                        blobContainerClient
+                                .getBlobClient(blobName)
+                                .getBlockBlobClient()
+                                .getBlobOutputStream(requestConditions);
+                cryptoIOProvider.compressAndEncrypt(
+                        inputStream,
+                        new OutputStream() {
+                            @Override
+                            public void write(final int b) throws IOException {
+                                write(new byte[]{(byte) b});
+                            }
+
+                            @Override
+                            public void write(final byte[] b) throws IOException {
+                                Permissions.doPrivileged(() -> azureOutputStream.write(b));
+                            }
+
+                            @Override
+                            public void write(final byte[] b, final int off, final int len) throws IOException {
+                                Permissions.doPrivileged(() -> azureOutputStream.write(b, off, len));
+                            }
+
+                            @Override
+                            public void flush() throws IOException {
+                                Permissions.doPrivileged(azureOutputStream::flush);
+                            }
+
+                            @Override
+                            public void close() throws IOException {
+                                Permissions.doPrivileged(azureOutputStream::close);
+                            }
+
+                        });
+            });
+        }
+
+        @Override
+        public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+            try {
+                // copies inside the same account typically complete synchronously, so the poller returns right away
+                cryptoIOProvider.requestAccounting().classA(1L);
+                Permissions.doPrivileged(() -> {
+                    final var sourceUrl = blobContainerClient.getBlobClient(sourceBlobName).getBlobUrl();
+                    blobContainerClient
+                            .getBlobClient(targetBlobName)
+                            .beginCopy(sourceUrl, null)
+                            .waitForCompletion();
+                });
+            } catch (final BlobStorageException e) {
+                throw new IOException("Couldn't copy blob " + sourceBlobName + " to " + targetBlobName, e);
+            }
+        }
+
         @Override
         public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
             try {
                 return Permissions.doPrivileged(() -> {
-                    final var files =
-                            blobContainerClient.listBlobsByHierarchy(path);
+                    final var files = listByHierarchy(path);
                     var bytesCounter = 0L;
                     final var filesList = new ArrayList<String>();
                     for (final var blobItem : files) {
@@ -170,6 +294,7 @@ public class AzureRepositoryStorageIOProvider
         public void deleteFiles(final List<String> blobNames,
                                 final boolean ignoreIfNotExists) throws IOException {
             try {
+                cryptoIOProvider.requestAccounting().deletes(blobNames.size());
                 Permissions.doPrivileged(() -> blobNames.forEach(
                         blobName -> blobContainerClient.getBlobClient(blobName).delete()));
             } catch (final BlobStoreException e) {
@@ -180,8 +305,7 @@ public class AzureRepositoryStorageIOProvider
         @Override
         public List<String> listDirectories(final String path) throws IOException {
             try {
-                return blobContainerClient
-                        .listBlobsByHierarchy(path)
+                return listByHierarchy(path)
                         .stream()
                         .filter(BlobItem::isPrefix)
                         .map(b -> b.getName().substring(path.length()))
@@ -197,25 +321,68 @@ public class AzureRepositoryStorageIOProvider
                 final var fullPath = path + prefix;
 
                 final Function<BlobItem, String> mapBlobItemName = b ->
-                        b.getName().substring(fullPath.length());
+                        b.getName().substring(path.length());
                 final Function<BlobItem, Long> mapBlobItemProperties = b ->
                         Optional.ofNullable(b.getProperties())
                                 .map(BlobItemProperties::getContentLength)
                                 .orElse(0L);
 
-                return blobContainerClient
-                        .listBlobsByHierarchy(
-                                "/",
-                                new ListBlobsOptions().setPrefix(fullPath),
-                                null
-                        )
+                return listByHierarchy(fullPath)
                         .stream()
-                        .filter(b -> Objects.nonNull(b.isPrefix()) && b.isPrefix())
+                        .filter(b -> Objects.isNull(b.isPrefix()) || !b.isPrefix())
                         .collect(Collectors.toMap(mapBlobItemName, mapBlobItemProperties));
             } catch (final Exception e) {
                 throw new IOException("Couldn't get list of files for " + path + " and prefix " + prefix, e);
             }
         }
+
+        private List<BlobItem> listByHierarchy(final String prefix) {
+            final var blobItems = new ArrayList<BlobItem>();
+            final var pages =
+                    blobContainerClient
+                            .listBlobsByHierarchy("/", new ListBlobsOptions().setPrefix(prefix), null)
+                            .iterableByPage()
+                            .iterator();
+            while (true) {
+                final var event = new BlobListPageEvent();
+                event.begin();
+                if (!pages.hasNext()) {
+                    return blobItems;
+                }
+                cryptoIOProvider.requestAccounting().classA(1L);
+                final var page = pages.next().getValue();
+                blobItems.addAll(page);
+                if (event.shouldCommit()) {
+                    event.backend = AzureRepositoryPlugin.REPOSITORY_TYPE;
+                    event.path = prefix;
+                    event.entries = page.size();
+                    event.commit();
+                }
+            }
+        }
+
+        @Override
+        public boolean isThrottlingError(final Throwable error) {
+            if (error instanceof BlobStorageException) {
+                final var statusCode = ((BlobStorageException) error).getStatusCode();
+                return statusCode == HTTP_TOO_MANY_REQUESTS || statusCode == HTTP_UNAVAILABLE;
+            }
+            return false;
+        }
+
+        /**
+         * Whether the write has been refused by its condition, or with the given status code,
+         * the failure is wrapped by the output stream.
+         */
+        private static boolean isRefused(final Throwable error, final int statusCode) {
+            for (var cause = error; Objects.nonNull(cause); cause = cause.getCause()) {
+                if (cause instanceof BlobStorageException) {
+                    final var causeStatusCode = ((BlobStorageException) cause).getStatusCode();
+                    return causeStatusCode == statusCode || causeStatusCode == HTTP_PRECON_FAILED;
+                }
+            }
+            return false;
+        }
     }
 
 }
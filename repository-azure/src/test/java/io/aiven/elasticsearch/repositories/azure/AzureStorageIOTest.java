@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.azure;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+
+import org.opensearch.common.settings.Settings;
+
+import io.aiven.elasticsearch.repositories.RsaKeyAwareTest;
+import io.aiven.elasticsearch.repositories.io.CryptoIOProvider;
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeyProvider;
+
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AzureStorageIOTest extends RsaKeyAwareTest {
+
+    @Test
+    void readOfMissingBlobThrowsNoSuchFileException() throws Exception {
+        final var client =
+                new BlobServiceClientBuilder()
+                        .endpoint("https://some-account.blob.core.windows.net")
+                        .httpClient(request -> Mono.just(new NotFoundResponse(request)))
+                        .buildClient();
+        final var encProvider =
+                EncryptionKeyProvider.of(
+                        Files.newInputStream(publicKeyPem).readAllBytes(),
+                        Files.newInputStream(privateKeyPem).readAllBytes());
+        final var azureStorageIO =
+                new AzureRepositoryStorageIOProvider(null, encProvider)
+                        .createStorageIOFor(
+                                client,
+                                Settings.builder()
+                                        .put(AzureRepositoryStorageIOProvider.CONTAINER_NAME.getKey(), "some_container")
+                                        .build(),
+                                new CryptoIOProvider(null, 0),
+                                ParallelListing.SEQUENTIAL
+                        );
+
+        assertThrows(NoSuchFileException.class, () -> azureStorageIO.read("some/blob"));
+    }
+
+    private static final class NotFoundResponse extends HttpResponse {
+
+        private final HttpHeaders headers = new HttpHeaders().put("x-ms-error-code", "BlobNotFound");
+
+        NotFoundResponse(final HttpRequest request) {
+            super(request);
+        }
+
+        @Override
+        public int getStatusCode() {
+            return 404;
+        }
+
+        @Override
+        public String getHeaderValue(final String name) {
+            return headers.getValue(name);
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public Flux<ByteBuffer> getBody() {
+            return Flux.empty();
+        }
+
+        @Override
+        public Mono<byte[]> getBodyAsByteArray() {
+            return Mono.just(new byte[0]);
+        }
+
+        @Override
+        public Mono<String> getBodyAsString() {
+            return Mono.just("");
+        }
+
+        @Override
+        public Mono<String> getBodyAsString(final Charset charset) {
+            return Mono.just("");
+        }
+
+    }
+
+}
@@ -19,6 +19,8 @@ package io.aiven.elasticsearch.repositories;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -27,29 +29,42 @@ import org.opensearch.cluster.metadata.RepositoryMetadata;
 import org.opensearch.cluster.service.ClusterService;
 import org.opensearch.common.settings.Setting;
 import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.ByteSizeValue;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.common.util.concurrent.OpenSearchExecutors;
 import org.opensearch.common.xcontent.NamedXContentRegistry;
 import org.opensearch.env.Environment;
 import org.opensearch.indices.recovery.RecoverySettings;
-import org.opensearch.plugins.Plugin;
 import org.opensearch.plugins.ReloadablePlugin;
 import org.opensearch.plugins.RepositoryPlugin;
 import org.opensearch.repositories.Repository;
+import org.opensearch.threadpool.ExecutorBuilder;
+import org.opensearch.threadpool.ScalingExecutorBuilder;
+
+import io.aiven.elasticsearch.repositories.io.BandwidthLimiter;
+import io.aiven.elasticsearch.repositories.io.TokenBucket;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.BANDWIDTH_BURST_SIZE;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.MAX_DOWNLOAD_BYTES_PER_SEC;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.MAX_UPLOAD_BYTES_PER_SEC;
+
 public abstract class AbstractRepositoryPlugin<C, S extends CommonSettings.ClientSettings>
-        extends Plugin implements RepositoryPlugin, ReloadablePlugin {
+        extends RepositoryToolsPlugin implements RepositoryPlugin, ReloadablePlugin {
 
     public static final Logger LOGGER = LoggerFactory.getLogger(AbstractRepositoryPlugin.class);
 
-    private final String repositoryType;
-
     private final RepositorySettingsProvider<C, S> repositorySettingsProvider;
 
     private final Set<String> pluginSettingKeys;
 
+    private final List<Setting<ByteSizeValue>> nodeBandwidthSettings;
+
+    private final BandwidthLimiter nodeBandwidthLimiter;
+
     static {
         try {
             Permissions.doPrivileged(() -> Security.addProvider(new BouncyCastleProvider()));
@@ -61,18 +76,68 @@ public abstract class AbstractRepositoryPlugin<C, S extends CommonSettings.Clien
     protected AbstractRepositoryPlugin(final String repositoryType,
                                        final Settings settings,
                                        final RepositorySettingsProvider<C, S> repositorySettingsProvider) {
-        this.repositoryType = repositoryType;
+        super(repositoryType);
         this.repositorySettingsProvider = repositorySettingsProvider;
-        this.pluginSettingKeys = getSettings().stream().map(Setting::getKey).collect(Collectors.toSet());
+        this.pluginSettingKeys = clientSettings().stream().map(Setting::getKey).collect(Collectors.toSet());
+        this.nodeBandwidthSettings =
+                List.of(
+                        nodeBandwidthSetting(repositoryType, MAX_UPLOAD_BYTES_PER_SEC),
+                        nodeBandwidthSetting(repositoryType, MAX_DOWNLOAD_BYTES_PER_SEC),
+                        nodeBandwidthSetting(repositoryType, BANDWIDTH_BURST_SIZE));
+        final var burstSize = nodeBandwidthSettings.get(2).get(settings).getBytes();
+        this.nodeBandwidthLimiter =
+                new BandwidthLimiter(
+                        new TokenBucket(nodeBandwidthSettings.get(0).get(settings).getBytes(), burstSize, null),
+                        new TokenBucket(nodeBandwidthSettings.get(1).get(settings).getBytes(), burstSize, null));
         reload(settings);
     }
 
+    /**
+     * Node-wide counterpart of a repository bandwidth setting, shared by all repositories of the type,
+     * e.g. aiven.s3.max_upload_bytes_per_sec.
+     */
+    static Setting<ByteSizeValue> nodeBandwidthSetting(final String repositoryType,
+                                                       final Setting<ByteSizeValue> repositorySetting) {
+        return Setting.byteSizeSetting(
+                repositoryType.replace('-', '.') + "." + repositorySetting.getKey(),
+                new ByteSizeValue(0L),
+                Setting.Property.NodeScope);
+    }
+
+    /**
+     * Client settings of the storage, the plugin is reloaded when any of them changes.
+     */
+    protected abstract List<Setting<?>> clientSettings();
+
+    @Override
+    public final List<Setting<?>> getSettings() {
+        final var settings = new ArrayList<Setting<?>>(clientSettings());
+        settings.addAll(nodeBandwidthSettings);
+        return settings;
+    }
+
+    /**
+     * Name of the thread pool which sends storage calls of the repository type concurrently, e.g. delete batches
+     * and listings of key ranges.
+     */
+    public static String storageIOThreadPoolName(final String repositoryType) {
+        return repositoryType.replace('-', '_') + "_storage_io";
+    }
+
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(final Settings settings) {
+        final var maxThreads = Math.min(32, OpenSearchExecutors.allocatedProcessors(settings) * 4);
+        return List.of(
+                new ScalingExecutorBuilder(
+                        storageIOThreadPoolName(repositoryType()), 1, maxThreads, TimeValue.timeValueSeconds(30L)));
+    }
+
     @Override
     public Map<String, Repository.Factory> getRepositories(final Environment env,
                                                            final NamedXContentRegistry namedXContentRegistry,
                                                            final ClusterService clusterService,
                                                            final RecoverySettings recoverySettings) {
-        return Map.of(repositoryType, metadata ->
+        return Map.of(repositoryType(), metadata ->
                 createRepository(metadata, namedXContentRegistry, clusterService, recoverySettings));
     }
 
@@ -80,7 +145,7 @@ public abstract class AbstractRepositoryPlugin<C, S extends CommonSettings.Clien
             final RepositoryMetadata metadata, final NamedXContentRegistry namedXContentRegistry,
             final ClusterService clusterService, final RecoverySettings recoverySettings) {
         return new BlobStoreRepository<>(metadata, namedXContentRegistry,
-                clusterService, recoverySettings, repositorySettingsProvider);
+                clusterService, recoverySettings, repositorySettingsProvider, nodeBandwidthLimiter);
     }
 
     @Override
@@ -88,7 +153,7 @@ public abstract class AbstractRepositoryPlugin<C, S extends CommonSettings.Clien
         try {
             final var pluginKeys = settings.filter(pluginSettingKeys::contains);
             if (!pluginKeys.isEmpty()) {
-                LOGGER.info("Reload settings for repository type: {}", repositoryType);
+                LOGGER.info("Reload settings for repository type: {}", repositoryType());
                 repositorySettingsProvider.reload(pluginKeys);
             }
         } catch (final IOException ioe) {
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.opensearch.Version;
+import org.opensearch.action.ActionListener;
+import org.opensearch.cluster.metadata.RepositoryMetadata;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.xcontent.NamedXContentRegistry;
+import org.opensearch.index.mapper.MapperService;
+import org.opensearch.index.shard.ShardId;
+import org.opensearch.index.snapshots.IndexShardSnapshotStatus;
+import org.opensearch.index.store.Store;
+import org.opensearch.indices.recovery.RecoverySettings;
+import org.opensearch.indices.recovery.RecoveryState;
+import org.opensearch.repositories.IndexId;
+import org.opensearch.snapshots.SnapshotId;
+
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
+
+import org.apache.lucene.index.IndexCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Attributes the requests sent to the storage to the snapshot or restore which caused them.
+ * The operation is kept as a transient header of the thread context, so it follows the shard
+ * snapshot and restore tasks to the snapshot and storage thread pools.
+ * Once the last shard of an operation on this node has finished its requests are logged.
+ */
+public abstract class AccountedBlobStoreRepository extends org.opensearch.repositories.blobstore.BlobStoreRepository {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccountedBlobStoreRepository.class);
+
+    private static final String OPERATION_TRANSIENT = "aiven.repository.operation";
+
+    private final RequestAccounting requestAccounting =
+            new RequestAccounting(() -> threadPool.getThreadContext().getTransient(OPERATION_TRANSIENT));
+
+    protected AccountedBlobStoreRepository(final RepositoryMetadata metadata,
+                                           final NamedXContentRegistry namedXContentRegistry,
+                                           final ClusterService clusterService,
+                                           final RecoverySettings recoverySettings) {
+        super(metadata, false, namedXContentRegistry, clusterService, recoverySettings);
+    }
+
+    protected RequestAccounting requestAccounting() {
+        return requestAccounting;
+    }
+
+    @Override
+    public void snapshotShard(final Store store,
+                              final MapperService mapperService,
+                              final SnapshotId snapshotId,
+                              final IndexId indexId,
+                              final IndexCommit snapshotIndexCommit,
+                              final String shardStateIdentifier,
+                              final IndexShardSnapshotStatus snapshotStatus,
+                              final Version repositoryMetaVersion,
+                              final Map<String, Object> userMetadata,
+                              final ActionListener<String> listener) {
+        attributed("snapshot [" + snapshotId.getName() + "]", listener, l ->
+                super.snapshotShard(store, mapperService, snapshotId, indexId, snapshotIndexCommit,
+                        shardStateIdentifier, snapshotStatus, repositoryMetaVersion, userMetadata, l));
+    }
+
+    @Override
+    public void restoreShard(final Store store,
+                             final SnapshotId snapshotId,
+                             final IndexId indexId,
+                             final ShardId snapshotShardId,
+                             final RecoveryState recoveryState,
+                             final ActionListener<Void> listener) {
+        attributed("restore of snapshot [" + snapshotId.getName() + "]", listener, l ->
+                super.restoreShard(store, snapshotId, indexId, snapshotShardId, recoveryState, l));
+    }
+
+    private <T> void attributed(final String operation,
+                                final ActionListener<T> listener,
+                                final Consumer<ActionListener<T>> action) {
+        requestAccounting.begin(operation);
+        final var summarizingListener = ActionListener.runAfter(listener, () ->
+                requestAccounting.end(operation).ifPresent(summary ->
+                        LOGGER.info("Repository [{}] requests for {}: {}", metadata.name(), operation, summary)));
+        final var threadContext = threadPool.getThreadContext();
+        final var storedContext = threadContext.newStoredContext(true);
+        try {
+            if (threadContext.getTransient(OPERATION_TRANSIENT) == null) {
+                threadContext.putTransient(OPERATION_TRANSIENT, operation);
+            }
+            action.accept(summarizingListener);
+        } finally {
+            storedContext.restore();
+        }
+    }
+
+}
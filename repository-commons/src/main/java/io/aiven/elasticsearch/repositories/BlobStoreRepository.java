@@ -18,32 +18,59 @@ package io.aiven.elasticsearch.repositories;
 
 import java.io.IOException;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.opensearch.cluster.metadata.RepositoryMetadata;
 import org.opensearch.cluster.service.ClusterService;
 import org.opensearch.common.Strings;
-import org.opensearch.common.blobstore.BlobContainer;
 import org.opensearch.common.blobstore.BlobPath;
 import org.opensearch.common.blobstore.BlobStore;
+import org.opensearch.common.component.LifecycleListener;
 import org.opensearch.common.unit.ByteSizeValue;
+import org.opensearch.common.unit.TimeValue;
 import org.opensearch.common.xcontent.NamedXContentRegistry;
 import org.opensearch.indices.recovery.RecoverySettings;
+import org.opensearch.threadpool.Scheduler;
+import org.opensearch.threadpool.ThreadPool;
+
+import io.aiven.elasticsearch.repositories.io.BandwidthLimiter;
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+import io.aiven.elasticsearch.repositories.io.PhaseTimings;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class BlobStoreRepository<C, S extends CommonSettings.ClientSettings>
-        extends org.opensearch.repositories.blobstore.BlobStoreRepository
+        extends AccountedBlobStoreRepository
         implements CommonSettings.RepositorySettings {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlobStoreRepository.class);
+
+    private static final TimeValue MAINTENANCE_INTERVAL = TimeValue.timeValueMinutes(1L);
+
     private final RepositorySettingsProvider<C, S> repositorySettingsProvider;
 
     private final BlobPath basePath;
 
+    private final BandwidthLimiter nodeBandwidthLimiter;
+
+    private final RepositoryTools tools;
+
+    private volatile Scheduler.Cancellable maintenance;
+
     public BlobStoreRepository(final RepositoryMetadata metadata,
                                final NamedXContentRegistry namedXContentRegistry,
                                final ClusterService clusterService,
                                final RecoverySettings recoverySettings,
-                               final RepositorySettingsProvider<C, S> repositorySettingsProvider) {
-        super(metadata, false, namedXContentRegistry, clusterService, recoverySettings);
+                               final RepositorySettingsProvider<C, S> repositorySettingsProvider,
+                               final BandwidthLimiter nodeBandwidthLimiter) {
+        super(metadata, namedXContentRegistry, clusterService, recoverySettings);
         this.repositorySettingsProvider = repositorySettingsProvider;
+        this.nodeBandwidthLimiter = nodeBandwidthLimiter;
         final String basePath = BASE_PATH.get(metadata.settings());
         var blobPath = BlobPath.cleanPath();
         if (!Strings.isNullOrEmpty(basePath)) {
@@ -53,6 +80,98 @@ public class BlobStoreRepository<C, S extends CommonSettings.ClientSettings>
             }
         }
         this.basePath = blobPath;
+        this.tools =
+                new RepositoryTools(
+                        this,
+                        threadPool.executor(AbstractRepositoryPlugin.storageIOThreadPoolName(metadata.type())),
+                        threadPool.generic());
+        addLifecycleListener(new LifecycleListener() {
+            @Override
+            public void afterStart() {
+                maintenance =
+                        threadPool.scheduleWithFixedDelay(
+                                BlobStoreRepository.this::maintain, MAINTENANCE_INTERVAL, ThreadPool.Names.GENERIC);
+            }
+
+            @Override
+            public void beforeClose() {
+                if (Objects.nonNull(maintenance)) {
+                    maintenance.cancel();
+                }
+            }
+        });
+        if (WARM_UP.get(metadata.settings())) {
+            addLifecycleListener(new LifecycleListener() {
+                @Override
+                public void afterStart() {
+                    threadPool.generic().execute(BlobStoreRepository.this::warmUp);
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates the blob store, which builds the client and restores the encryption key,
+     * and then sends a few concurrent requests to fill the connection pool.
+     * Any failure is only logged, the first snapshot or restore will retry it anyway.
+     */
+    private void warmUp() {
+        final var startTime = System.nanoTime();
+        try {
+            final var blobContainer = blobStore().blobContainer(basePath());
+            final var connections = WARM_UP_CONNECTIONS.get(metadata.settings());
+            final var requests =
+                    IntStream.range(0, connections)
+                            .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                                try {
+                                    blobContainer.blobExists(RepositoryStorageIOProvider.REPOSITORY_METADATA_FILE_NAME);
+                                } catch (final IOException e) {
+                                    throw new RuntimeException(e);
+                                }
+                            }, threadPool.generic()))
+                            .collect(Collectors.toList());
+            CompletableFuture.allOf(requests.toArray(CompletableFuture<?>[]::new)).join();
+            LOGGER.info("Repository {} has been warmed up in {} ms",
+                    metadata.name(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        } catch (final Exception e) {
+            LOGGER.warn("Couldn't warm up repository {}", metadata.name(), e);
+        }
+    }
+
+    /**
+     * Runs the housekeeping of the storage layers, e.g. writing packs of abandoned shard snapshots,
+     * unless the blob store hasn't been created yet, in which case there's nothing to do.
+     */
+    private void maintain() {
+        createdBlobStore().ifPresent(blobStore -> {
+            try {
+                blobStore.maintain();
+            } catch (final IOException e) {
+                LOGGER.warn("Couldn't maintain repository {}", metadata.name(), e);
+            }
+        });
+    }
+
+    /**
+     * Tools operators run against the storage of this repository.
+     */
+    public RepositoryTools tools() {
+        return tools;
+    }
+
+    /**
+     * Blob store of this repository, created on first use,
+     * so it must be called from the generic or snapshot thread pool.
+     */
+    RepositoryBlobStore repositoryBlobStore() {
+        return (RepositoryBlobStore) blobStore();
+    }
+
+    /**
+     * Blob store of this repository if it has been created already.
+     */
+    Optional<RepositoryBlobStore> createdBlobStore() {
+        return Optional.ofNullable((RepositoryBlobStore) getBlobStore());
     }
 
     @Override
@@ -67,24 +186,32 @@ public class BlobStoreRepository<C, S extends CommonSettings.ClientSettings>
 
     @Override
     protected BlobStore createBlobStore() throws Exception {
-        final var storageIo =
-                repositorySettingsProvider
-                        .repositoryStorageIOProvider()
-                        .createStorageIO(basePath().buildAsString(), metadata.settings());
-
-        return new BlobStore() {
-            @Override
-            public BlobContainer blobContainer(final BlobPath path) {
-                return new RepositoryBlobContainer(path, storageIo);
-            }
-
-            @Override
-            public void close() throws IOException {
-                if (Objects.nonNull(repositorySettingsProvider.repositoryStorageIOProvider())) {
-                    repositorySettingsProvider.repositoryStorageIOProvider().close();
-                }
-            }
-        };
+        final var bandwidthLimiter = BandwidthLimiter.create(metadata.settings(), nodeBandwidthLimiter);
+        final var phaseTimings = new PhaseTimings(metadata.name(), PHASE_TIMING_SAMPLE_RATIO.get(metadata.settings()));
+        final var storageIOExecutor =
+                threadPool.executor(AbstractRepositoryPlugin.storageIOThreadPoolName(metadata.type()));
+        final var storageIOProvider = repositorySettingsProvider.repositoryStorageIOProvider();
+        final var parallelListing =
+                new ParallelListing(LISTING_PARALLELISM.get(metadata.settings()), storageIOExecutor);
+        final var storage =
+                storageIOProvider.createStorageIO(
+                        basePath().buildAsString(),
+                        metadata.settings(),
+                        bandwidthLimiter,
+                        phaseTimings,
+                        requestAccounting(),
+                        parallelListing);
+        return new RepositoryBlobStore(
+                metadata,
+                basePath().buildAsString(),
+                storage,
+                bandwidthLimiter,
+                phaseTimings,
+                requestAccounting(),
+                storageIOProvider,
+                storageIOExecutor,
+                parallelListing,
+                bufferSize);
     }
 
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories;
+
+import java.nio.file.FileSystemException;
+
+/**
+ * Thrown when a blob is read or replaced at a version it doesn't have anymore,
+ * i.e. it has been replaced in the meantime.
+ */
+public class BlobVersionConflictException extends FileSystemException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BlobVersionConflictException(final String blobName, final String version) {
+        super(blobName, null, "blob isn't at version " + version + " anymore");
+    }
+
+}
@@ -18,11 +18,14 @@ package io.aiven.elasticsearch.repositories;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
+import java.util.function.Function;
 
 import org.opensearch.common.settings.Setting;
 import org.opensearch.common.settings.Settings;
 import org.opensearch.common.unit.ByteSizeUnit;
 import org.opensearch.common.unit.ByteSizeValue;
+import org.opensearch.common.unit.TimeValue;
 import org.opensearch.repositories.RepositoryException;
 
 public interface CommonSettings {
@@ -83,6 +86,265 @@ public interface CommonSettings {
                         Setting.Property.NodeScope,
                         Setting.Property.Dynamic);
 
+        /**
+         * Build the client, restore the encryption key and open pooled connections in the background
+         * right after the repository has been started instead of on the first snapshot or restore.
+         */
+        Setting<Boolean> WARM_UP =
+                Setting.boolSetting(
+                        "warm_up", false,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * The number of concurrent requests used to pre-open pooled connections during warm-up.
+         */
+        Setting<Integer> WARM_UP_CONNECTIONS =
+                Setting.intSetting(
+                        "warm_up_connections", 4, 1,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * How long directory and file listings are cached on the node, 0 disables the cache.
+         * Enable it only for repositories with a single writer cluster.
+         */
+        Setting<TimeValue> LISTING_CACHE_TTL =
+                Setting.timeSetting(
+                        "listing_cache_ttl", TimeValue.ZERO,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        Setting<Integer> LISTING_CACHE_MAX_ENTRIES =
+                Setting.intSetting(
+                        "listing_cache_max_entries", 1000, 1,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Size of the node-local cache of decrypted snap-*, meta-* and index-* blobs, 0 disables the cache.
+         * These blobs are never modified once written.
+         */
+        Setting<ByteSizeValue> METADATA_CACHE_SIZE =
+                Setting.byteSizeSetting(
+                        "metadata_cache_size",
+                        new ByteSizeValue(0L),
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Blobs bigger than this are read directly from the storage and never cached.
+         */
+        Setting<ByteSizeValue> METADATA_CACHE_MAX_BLOB_SIZE =
+                Setting.byteSizeSetting(
+                        "metadata_cache_max_blob_size",
+                        new ByteSizeValue(1, ByteSizeUnit.MB),
+                        new ByteSizeValue(1, ByteSizeUnit.KB),
+                        new ByteSizeValue(Integer.MAX_VALUE - 1),
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Concurrent reads of the same blob up to this size share a single download, 0 disables sharing.
+         */
+        Setting<ByteSizeValue> READ_COALESCING_MAX_BLOB_SIZE =
+                Setting.byteSizeSetting(
+                        "read_coalescing_max_blob_size",
+                        new ByteSizeValue(0L),
+                        new ByteSizeValue(0L),
+                        new ByteSizeValue(Integer.MAX_VALUE - 1),
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Directory of the node-local disk cache of downloaded blobs, each repository uses its own sub-directory.
+         * It must be located under one of the paths OpenSearch grants write access to, e.g. path.data.
+         */
+        Setting<String> DISK_CACHE_PATH =
+                Setting.simpleString(
+                        "disk_cache_path",
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Size of the node-local disk cache of downloaded blobs, 0 disables the cache.
+         */
+        Setting<ByteSizeValue> DISK_CACHE_SIZE =
+                Setting.byteSizeSetting(
+                        "disk_cache_size",
+                        new ByteSizeValue(0L),
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Limit of compressed and encrypted bytes uploaded per second, 0 disables the limit.
+         */
+        Setting<ByteSizeValue> MAX_UPLOAD_BYTES_PER_SEC =
+                Setting.byteSizeSetting(
+                        "max_upload_bytes_per_sec",
+                        new ByteSizeValue(0L),
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Limit of compressed and encrypted bytes downloaded per second, 0 disables the limit.
+         */
+        Setting<ByteSizeValue> MAX_DOWNLOAD_BYTES_PER_SEC =
+                Setting.byteSizeSetting(
+                        "max_download_bytes_per_sec",
+                        new ByteSizeValue(0L),
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * The number of bytes which can be transferred at once above the limits, 0 means one second worth of bytes.
+         */
+        Setting<ByteSizeValue> BANDWIDTH_BURST_SIZE =
+                Setting.byteSizeSetting(
+                        "bandwidth_burst_size",
+                        new ByteSizeValue(0L),
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Share of blob transfers timed phase by phase: compression, encryption, bandwidth throttling and network.
+         * 0 disables the timing.
+         */
+        Setting<Double> PHASE_TIMING_SAMPLE_RATIO =
+                Setting.doubleSetting(
+                        "phase_timing_sample_ratio", 0.0, 0.0, 1.0,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Number of key ranges listed at once when a listing doesn't fit in a single page, 1 lists page by page.
+         */
+        Setting<Integer> LISTING_PARALLELISM =
+                Setting.intSetting(
+                        "listing_parallelism", 1, 1, 64,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Upper bound of the adaptive number of concurrent storage requests, 0 disables the limiter.
+         * The limit is halved when the storage throttles requests and grows back on successful ones.
+         */
+        Setting<Integer> MAX_CONCURRENT_REQUESTS =
+                Setting.intSetting(
+                        "max_concurrent_requests", 0, 0,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Lower bound of the adaptive number of concurrent storage requests.
+         */
+        Setting<Integer> MIN_CONCURRENT_REQUESTS =
+                Setting.intSetting(
+                        "min_concurrent_requests", 1, 1,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Exists, list and delete operations taking longer than this are logged with their retries, 0 disables the log.
+         */
+        Setting<TimeValue> SLOW_OPERATION_THRESHOLD =
+                Setting.timeSetting(
+                        "slow_operation_threshold", TimeValue.ZERO,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Blob reads and writes taking longer than this are logged with their retries, time to first byte
+         * and throughput, 0 disables the log.
+         */
+        Setting<TimeValue> SLOW_TRANSFER_THRESHOLD =
+                Setting.timeSetting(
+                        "slow_transfer_threshold", TimeValue.ZERO,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Data blobs up to this size written to the same directory are stored together in a single pack blob,
+         * 0 disables packing. A pack is written once it reaches pack_max_size or before any other blob
+         * is written to its directory, e.g. the snap-*.dat blob completing a shard snapshot.
+         * Blobs packed before packing has been disabled are still read from their packs.
+         */
+        Setting<ByteSizeValue> PACK_THRESHOLD =
+                Setting.byteSizeSetting(
+                        "pack_threshold",
+                        new ByteSizeValue(0L),
+                        new ByteSizeValue(0L),
+                        new ByteSizeValue(16, ByteSizeUnit.MB),
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Size of the data blobs stored in a single pack blob, packs are buffered in memory until they are written.
+         * The blobs waiting to be packed on a node take up to 64mb, packs are written early beyond that.
+         */
+        Setting<ByteSizeValue> PACK_MAX_SIZE =
+                Setting.byteSizeSetting(
+                        "pack_max_size",
+                        new ByteSizeValue(8, ByteSizeUnit.MB),
+                        new ByteSizeValue(1, ByteSizeUnit.MB),
+                        new ByteSizeValue(256, ByteSizeUnit.MB),
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Keep a manifest of the blobs under the indices directory in the repository and answer listings from it
+         * instead of listing the storage. The manifest is built by a full listing in the background,
+         * listings go to the storage until it has been built.
+         */
+        Setting<Boolean> BLOB_MANIFEST =
+                Setting.boolSetting(
+                        "blob_manifest", false,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * How often changes done by other nodes are read from the blob manifest.
+         */
+        Setting<TimeValue> BLOB_MANIFEST_REFRESH_INTERVAL =
+                Setting.timeSetting(
+                        "blob_manifest_refresh_interval", TimeValue.timeValueSeconds(10L), TimeValue.ZERO,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * How often the blob manifest is rebuilt by a full listing, which picks up changes
+         * the manifest has missed, e.g. blobs written by a node which crashed before recording them.
+         * The rebuild runs in the background, listings are answered from the last manifest meanwhile.
+         */
+        Setting<TimeValue> BLOB_MANIFEST_RECONCILIATION_INTERVAL =
+                Setting.timeSetting(
+                        "blob_manifest_reconciliation_interval", TimeValue.timeValueHours(24L),
+                        TimeValue.timeValueMinutes(1L),
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Number of hash-based prefixes the blobs under the indices directory are spread across, 0 keeps
+         * the plain layout. It must not be changed once the repository has blobs, since blobs are looked up
+         * under the prefix they have been written with. Listings go through every prefix unless the
+         * blob manifest is enabled.
+         */
+        Setting<Integer> KEY_PREFIX_PARTITIONS =
+                Setting.intSetting(
+                        "key_prefix_partitions", 0, 0, 256,
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
+
+        /**
+         * Further buckets, or containers on Azure, the blobs are striped across together with the configured one,
+         * each blob is placed by the hash of its name. The repository metadata stays in the configured bucket.
+         * The list must not be changed once the repository has blobs.
+         */
+        Setting<List<String>> STRIPE_BUCKETS =
+                Setting.listSetting(
+                        "stripe_buckets", List.of(), Function.identity(),
+                        Setting.Property.NodeScope,
+                        Setting.Property.Dynamic);
 
         static void checkSettings(final String repoType, final Setting<String> setting, final Settings settings) {
             if (!setting.exists(settings)) {
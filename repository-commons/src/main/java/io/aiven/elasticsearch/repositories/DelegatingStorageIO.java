@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.opensearch.common.collect.Tuple;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Base class for {@link StorageIO} decorators, forwards every call to the delegate.
+ */
+public abstract class DelegatingStorageIO implements StorageIO {
+
+    protected final StorageIO delegate;
+
+    protected DelegatingStorageIO(final StorageIO delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean exists(final String blobName) throws IOException {
+        return delegate.exists(blobName);
+    }
+
+    @Override
+    public InputStream read(final String blobName) throws IOException {
+        return delegate.read(blobName);
+    }
+
+    @Override
+    public void write(final String blobName,
+                      final InputStream inputStream,
+                      final long blobSize,
+                      final boolean failIfAlreadyExists) throws IOException {
+        delegate.write(blobName, inputStream, blobSize, failIfAlreadyExists);
+    }
+
+    @Override
+    public String version(final String blobName) throws IOException {
+        return delegate.version(blobName);
+    }
+
+    @Override
+    public InputStream read(final String blobName, final String version) throws IOException {
+        return delegate.read(blobName, version);
+    }
+
+    @Override
+    public void replace(final String blobName,
+                        final InputStream inputStream,
+                        final long blobSize,
+                        final String version) throws IOException {
+        delegate.replace(blobName, inputStream, blobSize, version);
+    }
+
+    @Override
+    public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+        delegate.copy(sourceBlobName, targetBlobName);
+    }
+
+    @Override
+    public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
+        return delegate.deleteDirectories(path);
+    }
+
+    @Override
+    public void deleteFiles(final List<String> blobNames, final boolean ignoreIfNotExists) throws IOException {
+        delegate.deleteFiles(blobNames, ignoreIfNotExists);
+    }
+
+    @Override
+    public List<String> listDirectories(final String path) throws IOException {
+        return delegate.listDirectories(path);
+    }
+
+    @Override
+    public Map<String, Long> listFiles(final String path, final String prefix) throws IOException {
+        return delegate.listFiles(path, prefix);
+    }
+
+    @Override
+    public boolean isThrottlingError(final Throwable error) {
+        return delegate.isThrottlingError(error);
+    }
+
+    @Override
+    public void invalidate(final String blobName) throws IOException {
+        delegate.invalidate(blobName);
+    }
+
+    @Override
+    public void maintain() throws IOException {
+        delegate.maintain();
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        return delegate.stats();
+    }
+
+    protected static String parentPath(final String blobName) {
+        return blobName.substring(0, blobName.lastIndexOf('/') + 1);
+    }
+
+}
@@ -16,12 +16,17 @@
 
 package io.aiven.elasticsearch.repositories;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.AbstractMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.opensearch.common.blobstore.BlobContainer;
 import org.opensearch.common.blobstore.BlobMetadata;
@@ -31,6 +36,10 @@ import org.opensearch.common.blobstore.DeleteResult;
 import org.opensearch.common.blobstore.support.AbstractBlobContainer;
 import org.opensearch.common.blobstore.support.PlainBlobMetadata;
 
+import io.aiven.elasticsearch.repositories.jfr.BlobDeleteBatchEvent;
+import io.aiven.elasticsearch.repositories.jfr.BlobReadEvent;
+import io.aiven.elasticsearch.repositories.jfr.BlobWriteEvent;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,13 +47,32 @@ import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.St
 
 public class RepositoryBlobContainer extends AbstractBlobContainer {
 
+    static final int DELETE_BATCH_SIZE = 1_000;
+
     private final Logger logger = LoggerFactory.getLogger(RepositoryBlobContainer.class);
 
     private final StorageIO storageIO;
 
+    private final Executor deleteExecutor;
+
+    private final String backend;
+
     public RepositoryBlobContainer(final BlobPath path, final StorageIO storageIO) {
+        this(path, storageIO, Runnable::run, "");
+    }
+
+    /**
+     * @param deleteExecutor executor the batches of a big delete are sent concurrently on
+     * @param backend        repository type reported in the JFR events
+     */
+    public RepositoryBlobContainer(final BlobPath path,
+                                   final StorageIO storageIO,
+                                   final Executor deleteExecutor,
+                                   final String backend) {
         super(path);
         this.storageIO = storageIO;
+        this.deleteExecutor = deleteExecutor;
+        this.backend = backend;
     }
 
     @Override
@@ -60,7 +88,9 @@ public class RepositoryBlobContainer extends AbstractBlobContainer {
     @Override
     public InputStream readBlob(final String blobName) throws IOException {
         logger.debug("Read blob: {}", blobPath(blobName));
-        return storageIO.read(blobPath(blobName));
+        final var event = new BlobReadEvent();
+        event.begin();
+        return new RecordedInputStream(storageIO.read(blobPath(blobName)), blobPath(blobName), event);
     }
 
     @Override
@@ -84,7 +114,15 @@ public class RepositoryBlobContainer extends AbstractBlobContainer {
                           final long blobSize,
                           final boolean failIfAlreadyExists) throws IOException {
         logger.debug("Write blob: {}", blobPath(blobName));
+        final var event = new BlobWriteEvent();
+        event.begin();
         storageIO.write(blobPath(blobName), inputStream, blobSize, failIfAlreadyExists);
+        if (event.shouldCommit()) {
+            event.backend = backend;
+            event.path = blobPath(blobName);
+            event.bytes = blobSize;
+            event.commit();
+        }
     }
 
     @Override
@@ -105,7 +143,34 @@ public class RepositoryBlobContainer extends AbstractBlobContainer {
                         .map(this::blobPath)
                         .collect(Collectors.toUnmodifiableList());
         logger.debug("Delete blobs: {}", blobLists);
-        storageIO.deleteFiles(blobLists, true);
+        if (blobLists.size() <= DELETE_BATCH_SIZE) {
+            deleteBatch(blobLists);
+            return;
+        }
+        // the calling thread has to wait for the batches anyway, so it deletes the first one itself
+        // once the others have been handed over to the executor
+        final var batches = (blobLists.size() + DELETE_BATCH_SIZE - 1) / DELETE_BATCH_SIZE;
+        final Executor callerExecutor = Runnable::run;
+        final var deletes =
+                IntStream.iterate(batches - 1, i -> i >= 0, i -> i - 1)
+                        .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                            try {
+                                deleteBatch(blobLists.subList(
+                                        i * DELETE_BATCH_SIZE,
+                                        Math.min((i + 1) * DELETE_BATCH_SIZE, blobLists.size())));
+                            } catch (final IOException e) {
+                                throw new CompletionException(e);
+                            }
+                        }, i == 0 ? callerExecutor : deleteExecutor))
+                        .toArray(CompletableFuture<?>[]::new);
+        join(CompletableFuture.allOf(deletes));
+    }
+
+    private void deleteBatch(final List<String> batch) throws IOException {
+        final var event = new BlobDeleteBatchEvent();
+        event.begin();
+        storageIO.deleteFiles(batch, true);
+        commit(event, batch.size());
     }
 
     @Override
@@ -115,7 +180,7 @@ public class RepositoryBlobContainer extends AbstractBlobContainer {
                 .stream()
                 .map(d -> new AbstractMap.SimpleEntry<String, BlobContainer>(
                         d,
-                        new RepositoryBlobContainer(path().add(d), storageIO))
+                        new RepositoryBlobContainer(path().add(d), storageIO, deleteExecutor, backend))
                 )
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
@@ -139,4 +204,77 @@ public class RepositoryBlobContainer extends AbstractBlobContainer {
         return path().buildAsString() + blobName;
     }
 
+    private void commit(final BlobDeleteBatchEvent event, final int blobs) {
+        if (event.shouldCommit()) {
+            event.backend = backend;
+            event.path = path().buildAsString();
+            event.blobs = blobs;
+            event.commit();
+        }
+    }
+
+    private static <T> T join(final CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private final class RecordedInputStream extends FilterInputStream {
+
+        private final String blobPath;
+
+        private final BlobReadEvent event;
+
+        private long bytes;
+
+        private boolean closed;
+
+        private RecordedInputStream(final InputStream in, final String blobPath, final BlobReadEvent event) {
+            super(in);
+            this.blobPath = blobPath;
+            this.event = event;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final var b = super.read();
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final var n = super.read(b, off, len);
+            if (n > 0) {
+                bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed && event.shouldCommit()) {
+                    event.backend = backend;
+                    event.path = blobPath;
+                    event.bytes = bytes;
+                    event.commit();
+                }
+                closed = true;
+            }
+        }
+
+    }
+
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.opensearch.cluster.metadata.RepositoryMetadata;
+import org.opensearch.common.blobstore.BlobContainer;
+import org.opensearch.common.blobstore.BlobPath;
+import org.opensearch.common.blobstore.BlobStore;
+
+import io.aiven.elasticsearch.repositories.io.BandwidthLimiter;
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+import io.aiven.elasticsearch.repositories.io.PhaseTimings;
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
+import io.aiven.elasticsearch.repositories.metrics.TransferTrackingStorageIO;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Blob store of a repository, i.e. its storage wrapped with the layers enabled in the repository settings.
+ * It keeps the views of the storage below the caches, which the repository tools run against.
+ */
+final class RepositoryBlobStore implements BlobStore {
+
+    private final RepositoryMetadata metadata;
+
+    private final String basePath;
+
+    private final StorageIO storage;
+
+    private final TransferTrackingStorageIO transfers;
+
+    private final StorageIO logicalStorage;
+
+    private final StorageIO cachingStorage;
+
+    private final Executor storageIOExecutor;
+
+    private final BandwidthLimiter bandwidthLimiter;
+
+    private final PhaseTimings phaseTimings;
+
+    private final RequestAccounting requestAccounting;
+
+    private final RepositoryStorageIOProvider<?, ?> storageIOProvider;
+
+    private final ParallelListing parallelListing;
+
+    /**
+     * @param storage           storage created by the provider, below any layer
+     * @param storageIOExecutor executor of the storage calls sent concurrently
+     * @param parallelListing   lists big directories, stripes and key partitions at once
+     */
+    RepositoryBlobStore(final RepositoryMetadata metadata,
+                        final String basePath,
+                        final StorageIO storage,
+                        final BandwidthLimiter bandwidthLimiter,
+                        final PhaseTimings phaseTimings,
+                        final RequestAccounting requestAccounting,
+                        final RepositoryStorageIOProvider<?, ?> storageIOProvider,
+                        final Executor storageIOExecutor,
+                        final ParallelListing parallelListing,
+                        final int bufferSize) throws IOException {
+        this.metadata = metadata;
+        this.basePath = basePath;
+        this.storage = storage;
+        this.transfers = new TransferTrackingStorageIO(storage);
+        this.logicalStorage = StorageIODecorators.logicalView(transfers, metadata, basePath, parallelListing);
+        this.cachingStorage = StorageIODecorators.withCaches(logicalStorage, metadata, bufferSize);
+        this.storageIOExecutor = storageIOExecutor;
+        this.bandwidthLimiter = bandwidthLimiter;
+        this.phaseTimings = phaseTimings;
+        this.requestAccounting = requestAccounting;
+        this.storageIOProvider = storageIOProvider;
+        this.parallelListing = parallelListing;
+    }
+
+    /**
+     * Storage which tracks the blob reads and writes in flight, right above the provider's storage.
+     */
+    TransferTrackingStorageIO transfers() {
+        return transfers;
+    }
+
+    /**
+     * Blobs of the repository as OpenSearch sees them, without the caches.
+     */
+    StorageIO logicalStorage() {
+        return logicalStorage;
+    }
+
+    /**
+     * Blobs of the repository as they are stored, with the id of the key each one has been encrypted with.
+     */
+    StorageIO storedView() {
+        return StorageIODecorators.storedView(storage, metadata, basePath, parallelListing);
+    }
+
+    /**
+     * Storage OpenSearch reads and writes through, whose caches drop blobs rewritten below them.
+     */
+    StorageIO cachingStorage() {
+        return cachingStorage;
+    }
+
+    /**
+     * Adds a new encryption key to the repository and makes it the current one.
+     *
+     * @return id of the new key
+     */
+    int rotateEncryptionKey() throws IOException {
+        return storageIOProvider.rotateEncryptionKey(basePath, metadata.settings(), requestAccounting);
+    }
+
+    /**
+     * Id of the key new blobs are encrypted with, loaded again as another node may have rotated the key
+     * since this one has loaded it.
+     */
+    int currentEncryptionKeyId() throws IOException {
+        return storageIOProvider.reloadEncryptionKeys(basePath, metadata.settings(), requestAccounting).currentKeyId();
+    }
+
+    /**
+     * Periodic housekeeping of the storage layers.
+     */
+    void maintain() throws IOException {
+        cachingStorage.maintain();
+    }
+
+    @Override
+    public BlobContainer blobContainer(final BlobPath path) {
+        return new RepositoryBlobContainer(path, cachingStorage, storageIOExecutor, metadata.type());
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        final var stats = new HashMap<>(cachingStorage.stats());
+        stats.putAll(bandwidthLimiter.stats());
+        stats.putAll(phaseTimings.stats());
+        stats.putAll(requestAccounting.stats());
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        storageIOProvider.close();
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import org.opensearch.client.Client;
+import org.opensearch.cluster.metadata.IndexNameExpressionResolver;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.io.stream.NamedWriteableRegistry;
+import org.opensearch.common.xcontent.NamedXContentRegistry;
+import org.opensearch.env.Environment;
+import org.opensearch.env.NodeEnvironment;
+import org.opensearch.plugins.Plugin;
+import org.opensearch.repositories.RepositoriesService;
+import org.opensearch.repositories.Repository;
+import org.opensearch.repositories.RepositoryMissingException;
+import org.opensearch.script.ScriptService;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.watcher.ResourceWatcherService;
+
+/**
+ * Plugin which looks up the repositories registered on the node. OpenSearch creates temporary instances
+ * of a repository to verify its settings, so only the repositories service knows the instance in use,
+ * and it is only handed over to the plugins with their components.
+ */
+public abstract class RepositoryLookupPlugin extends Plugin {
+
+    private volatile Supplier<RepositoriesService> repositoriesService;
+
+    @Override
+    public Collection<Object> createComponents(final Client client,
+                                               final ClusterService clusterService,
+                                               final ThreadPool threadPool,
+                                               final ResourceWatcherService resourceWatcherService,
+                                               final ScriptService scriptService,
+                                               final NamedXContentRegistry namedXContentRegistry,
+                                               final Environment environment,
+                                               final NodeEnvironment nodeEnvironment,
+                                               final NamedWriteableRegistry namedWriteableRegistry,
+                                               final IndexNameExpressionResolver indexNameExpressionResolver,
+                                               final Supplier<RepositoriesService> repositoriesServiceSupplier) {
+        this.repositoriesService = repositoriesServiceSupplier;
+        return List.of();
+    }
+
+    /**
+     * Registered repository with the name.
+     *
+     * @throws RepositoryMissingException if there is none
+     */
+    protected Repository registeredRepository(final String name) {
+        return repositoriesService.get().repository(name);
+    }
+
+    /**
+     * Registered repository with the name, if there is one.
+     */
+    protected Optional<Repository> findRegisteredRepository(final String name) {
+        try {
+            return Optional.of(registeredRepository(name));
+        } catch (final RepositoryMissingException e) {
+            return Optional.empty();
+        }
+    }
+
+}
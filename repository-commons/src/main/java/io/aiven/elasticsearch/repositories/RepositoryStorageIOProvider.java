@@ -16,24 +16,30 @@
 
 package io.aiven.elasticsearch.repositories;
 
-import javax.crypto.SecretKey;
-
 import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import org.opensearch.common.collect.Tuple;
+import org.opensearch.common.settings.Setting;
 import org.opensearch.common.settings.Settings;
-import org.opensearch.core.internal.io.Streams;
 
+import io.aiven.elasticsearch.repositories.io.BandwidthLimiter;
 import io.aiven.elasticsearch.repositories.io.CryptoIOProvider;
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+import io.aiven.elasticsearch.repositories.io.PhaseTimings;
+import io.aiven.elasticsearch.repositories.layout.StripedStorageIO;
 import io.aiven.elasticsearch.repositories.metadata.EncryptedRepositoryMetadata;
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
 import io.aiven.elasticsearch.repositories.security.EncryptionKeyProvider;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeyring;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeys;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,9 +53,18 @@ public abstract class RepositoryStorageIOProvider<C, S extends CommonSettings.Cl
 
     public static final String REPOSITORY_METADATA_FILE_NAME = "repository_metadata.json";
 
+    /**
+     * Interval the keys are reloaded at before encrypting, so all nodes write with a rotated key soon.
+     */
+    static final long KEYS_RELOAD_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1L);
+
+    private static final int MAX_KEY_ROTATION_ATTEMPTS = 5;
+
     private final S clientSettings;
 
-    private SecretKey encryptionKey;
+    private volatile EncryptionKeys encryptionKeys;
+
+    private volatile long encryptionKeysLoadedAt;
 
     private final EncryptionKeyProvider encryptionKeyProvider;
 
@@ -64,53 +79,177 @@ public abstract class RepositoryStorageIOProvider<C, S extends CommonSettings.Cl
     }
 
     public StorageIO createStorageIO(final String basePath, final Settings repositorySettings) throws IOException {
+        return createStorageIO(basePath, repositorySettings, BandwidthLimiter.unlimited(), PhaseTimings.DISABLED,
+                RequestAccounting.untracked(), ParallelListing.SEQUENTIAL);
+    }
+
+    /**
+     * Creates the storage with the given limiter applied to the compressed and encrypted bytes,
+     * sampled transfers are timed phase by phase and every request sent is accounted.
+     * Big listings are split into key ranges by the given parallel listing, blobs are striped across
+     * the stripe buckets if any are configured.
+     */
+    public StorageIO createStorageIO(final String basePath,
+                                     final Settings repositorySettings,
+                                     final BandwidthLimiter bandwidthLimiter,
+                                     final PhaseTimings phaseTimings,
+                                     final RequestAccounting requestAccounting,
+                                     final ParallelListing parallelListing) throws IOException {
         final var bufferSize = Math.toIntExact(BUFFER_SIZE_SETTING.get(repositorySettings).getBytes());
-        final var client =
-                Permissions.doPrivileged(() -> {
-                    final var c = clientProvider.buildClientIfNeeded(clientSettings, repositorySettings);
-                    createOrRestoreEncryptionKey(c, basePath, repositorySettings);
-                    return c;
-                });
-        return createStorageIOFor(client, repositorySettings, new CryptoIOProvider(encryptionKey, bufferSize));
+        final var client = buildClient(basePath, repositorySettings, requestAccounting);
+        final var encryptionKeyring = new EncryptionKeyring() {
+            @Override
+            public EncryptionKeys keys() {
+                return encryptionKeys;
+            }
+
+            @Override
+            public EncryptionKeys reload() throws IOException {
+                return Permissions.doPrivileged(() ->
+                        loadEncryptionKeys(client, basePath, repositorySettings, requestAccounting));
+            }
+
+            @Override
+            public EncryptionKeys currentKeys() throws IOException {
+                if (!areEncryptionKeysStale()) {
+                    return encryptionKeys;
+                }
+                return Permissions.doPrivileged(() ->
+                        reloadStaleEncryptionKeys(client, basePath, repositorySettings, requestAccounting));
+            }
+        };
+        final var cryptoIOProvider =
+                new CryptoIOProvider(encryptionKeyring, bufferSize, bandwidthLimiter, phaseTimings, requestAccounting);
+        final var storageIO = createStorageIOFor(client, repositorySettings, cryptoIOProvider, parallelListing);
+        final var stripeBuckets = STRIPE_BUCKETS.get(repositorySettings);
+        if (stripeBuckets.isEmpty()) {
+            return storageIO;
+        }
+        final var stripes = new ArrayList<StorageIO>();
+        stripes.add(storageIO);
+        for (final var bucket : stripeBuckets) {
+            final var stripeSettings =
+                    Settings.builder().put(repositorySettings).put(bucketSetting().getKey(), bucket).build();
+            stripes.add(createStorageIOFor(client, stripeSettings, cryptoIOProvider, parallelListing));
+        }
+        return new StripedStorageIO(stripes, parallelListing);
+    }
+
+    /**
+     * Keys of the repository this provider has loaded last, {@code null} until a storage has been created.
+     */
+    public EncryptionKeys encryptionKeys() {
+        return encryptionKeys;
+    }
+
+    /**
+     * Loads the keys of the repository again, e.g. to learn about a key rotated by another node.
+     */
+    public EncryptionKeys reloadEncryptionKeys(final String basePath,
+                                               final Settings repositorySettings,
+                                               final RequestAccounting requestAccounting) throws IOException {
+        final var client = buildClient(basePath, repositorySettings, requestAccounting);
+        return Permissions.doPrivileged(() ->
+                loadEncryptionKeys(client, basePath, repositorySettings, requestAccounting));
     }
 
-    private void createOrRestoreEncryptionKey(final C client,
-                                              final String basePath,
-                                              final Settings repositorySettings) throws IOException {
-        if (Objects.isNull(encryptionKey)) {
+    /**
+     * Adds a new encryption key to the repository metadata and makes it the current one, so new blobs are
+     * encrypted with it. Blobs written before keep being decrypted with the keys they have been encrypted with.
+     * Nodes may rotate the key concurrently, the metadata is replaced only if it hasn't changed since it has been
+     * read, see {@link EncryptedRepositoryMetadata#rotate}.
+     *
+     * @return id of the new key
+     */
+    public synchronized int rotateEncryptionKey(final String basePath,
+                                                final Settings repositorySettings,
+                                                final RequestAccounting requestAccounting) throws IOException {
+        final var client = buildClient(basePath, repositorySettings, requestAccounting);
+        return Permissions.doPrivileged(() -> {
             final var repositoryMetadataFilePath = basePath + REPOSITORY_METADATA_FILE_NAME;
-            final var encKeyRepoMetadata =
-                    // restore a repository metadata file which contains the encryption key
-                    // encrypted without compression and use different Cipher compare to
-                    // regular backup files, that's why CryptoIOProvider reads/writes directly to
-                    // the storage without compression and encryption, and it doesn't use encryption key and buffer size
-                    createStorageIOFor(client, repositorySettings, new CryptoIOProvider(null, 0) {
-                        @Override
-                        public InputStream decryptAndDecompress(final InputStream in) throws IOException {
-                            return in;
-                        }
-
-                        @Override
-                        public long compressAndEncrypt(final InputStream in,
-                                                       final OutputStream out) throws IOException {
-                            return Streams.copy(in, out);
-                        }
-
-                    });
-            final var repositoryMetadata = new EncryptedRepositoryMetadata(encryptionKeyProvider);
-            if (encKeyRepoMetadata.exists(repositoryMetadataFilePath)) {
-                LOGGER.info("Restore encryption key for repository. Path: {}", repositoryMetadataFilePath);
-                try (final var in = encKeyRepoMetadata.read(repositoryMetadataFilePath)) {
-                    encryptionKey = repositoryMetadata.deserialize(in.readAllBytes());
-                }
-            } else {
-                LOGGER.info("Create new encryption key for repository. Path: {}", repositoryMetadataFilePath);
-                encryptionKey = encryptionKeyProvider.createKey();
-                final var repoMetadata = repositoryMetadata.serialize(encryptionKey);
-                encKeyRepoMetadata.write(repositoryMetadataFilePath, new ByteArrayInputStream(repoMetadata),
-                        repoMetadata.length, true);
+            final var rotated =
+                    new EncryptedRepositoryMetadata(encryptionKeyProvider).rotate(
+                            keyMetadataStorageIO(client, repositorySettings, requestAccounting),
+                            repositoryMetadataFilePath,
+                            MAX_KEY_ROTATION_ATTEMPTS);
+            LOGGER.info("Rotate encryption key for repository. Path: {}, key id: {}",
+                    repositoryMetadataFilePath, rotated.currentKeyId());
+            encryptionKeys = rotated;
+            encryptionKeysLoadedAt = System.nanoTime();
+            return rotated.currentKeyId();
+        });
+    }
+
+    private C buildClient(final String basePath,
+                          final Settings repositorySettings,
+                          final RequestAccounting requestAccounting) throws IOException {
+        return Permissions.doPrivileged(() -> {
+            final var c = clientProvider.buildClientIfNeeded(clientSettings, repositorySettings);
+            if (Objects.isNull(encryptionKeys)) {
+                loadEncryptionKeys(c, basePath, repositorySettings, requestAccounting);
             }
+            return c;
+        });
+    }
+
+    private boolean areEncryptionKeysStale() {
+        return System.nanoTime() - encryptionKeysLoadedAt >= KEYS_RELOAD_INTERVAL_NANOS;
+    }
+
+    private synchronized EncryptionKeys reloadStaleEncryptionKeys(final C client,
+                                                                  final String basePath,
+                                                                  final Settings repositorySettings,
+                                                                  final RequestAccounting requestAccounting)
+            throws IOException {
+        // another thread may have reloaded them while this one was waiting
+        return areEncryptionKeysStale()
+                ? loadEncryptionKeys(client, basePath, repositorySettings, requestAccounting)
+                : encryptionKeys;
+    }
+
+    private synchronized EncryptionKeys loadEncryptionKeys(final C client,
+                                                           final String basePath,
+                                                           final Settings repositorySettings,
+                                                           final RequestAccounting requestAccounting)
+            throws IOException {
+        final var repositoryMetadataFilePath = basePath + REPOSITORY_METADATA_FILE_NAME;
+        final var encKeyRepoMetadata = keyMetadataStorageIO(client, repositorySettings, requestAccounting);
+        final var repositoryMetadata = new EncryptedRepositoryMetadata(encryptionKeyProvider);
+        if (encKeyRepoMetadata.exists(repositoryMetadataFilePath)) {
+            final EncryptionKeys restored;
+            try (final var in = encKeyRepoMetadata.read(repositoryMetadataFilePath)) {
+                restored = repositoryMetadata.deserializeKeys(in.readAllBytes());
+            }
+            // the keys are reloaded periodically, only a new current key is worth a message
+            if (Objects.isNull(encryptionKeys) || encryptionKeys.currentKeyId() != restored.currentKeyId()) {
+                LOGGER.info("Restore encryption key for repository. Path: {}, key id: {}",
+                        repositoryMetadataFilePath, restored.currentKeyId());
+            }
+            encryptionKeys = restored;
+        } else {
+            LOGGER.info("Create new encryption key for repository. Path: {}", repositoryMetadataFilePath);
+            final var newKeys = EncryptionKeys.of(encryptionKeyProvider.createKey());
+            final var repoMetadata = repositoryMetadata.serialize(newKeys);
+            encKeyRepoMetadata.write(repositoryMetadataFilePath, new ByteArrayInputStream(repoMetadata),
+                    repoMetadata.length, true);
+            encryptionKeys = newKeys;
         }
+        encryptionKeysLoadedAt = System.nanoTime();
+        return encryptionKeys;
+    }
+
+    private StorageIO keyMetadataStorageIO(final C client,
+                                           final Settings repositorySettings,
+                                           final RequestAccounting requestAccounting) {
+        // restore a repository metadata file which contains the encryption key
+        // encrypted without compression and use different Cipher compare to
+        // regular backup files, that's why CryptoIOProvider reads/writes directly to
+        // the storage without compression and encryption, and it doesn't use encryption key and buffer size
+        return createStorageIOFor(
+                client,
+                repositorySettings,
+                CryptoIOProvider.passThrough(requestAccounting),
+                ParallelListing.SEQUENTIAL);
     }
 
     @Override
@@ -122,12 +261,22 @@ public abstract class RepositoryStorageIOProvider<C, S extends CommonSettings.Cl
 
     protected abstract StorageIO createStorageIOFor(final C client,
                                                     final Settings repositorySettings,
-                                                    final CryptoIOProvider cryptoIOProvider);
+                                                    final CryptoIOProvider cryptoIOProvider,
+                                                    final ParallelListing parallelListing);
+
+    /**
+     * The setting naming the bucket, or the container, blobs are stored in.
+     */
+    protected abstract Setting<String> bucketSetting();
 
     public interface StorageIO {
 
         boolean exists(final String blobName) throws IOException;
 
+        /**
+         * Opens the blob for reading, every backend throws {@link java.nio.file.NoSuchFileException}
+         * if the blob doesn't exist, layers above rely on it to tell a missing blob from a failure.
+         */
         InputStream read(final String blobName) throws IOException;
 
         void write(final String blobName,
@@ -135,6 +284,40 @@ public abstract class RepositoryStorageIOProvider<C, S extends CommonSettings.Cl
                    final long blobSize,
                    final boolean failIfAlreadyExists) throws IOException;
 
+        /**
+         * Version of the blob which the storage compares conditional reads and writes with,
+         * e.g. the S3 ETag or the GCS generation. Throws {@link java.nio.file.NoSuchFileException}
+         * if the blob doesn't exist.
+         */
+        default String version(final String blobName) throws IOException {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't support blob versions");
+        }
+
+        /**
+         * Opens the given version of the blob, retries included. Throws {@link BlobVersionConflictException}
+         * if the blob has been replaced since, some storages report a replaced version as a missing blob.
+         */
+        default InputStream read(final String blobName, final String version) throws IOException {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't support blob versions");
+        }
+
+        /**
+         * Writes the blob only if it is still at the given version, which the storage checks atomically.
+         * Throws {@link BlobVersionConflictException} if the blob has been replaced or deleted since.
+         */
+        default void replace(final String blobName,
+                             final InputStream inputStream,
+                             final long blobSize,
+                             final String version) throws IOException {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't support blob versions");
+        }
+
+        /**
+         * Copies the blob inside the storage as is, without moving its bytes through the node.
+         * Both blobs belong to the same repository, so the copy is readable with the same key.
+         */
+        void copy(final String sourceBlobName, final String targetBlobName) throws IOException;
+
         Tuple<Integer, Long> deleteDirectories(final String path) throws IOException;
 
         void deleteFiles(final List<String> blobNames,
@@ -144,6 +327,33 @@ public abstract class RepositoryStorageIOProvider<C, S extends CommonSettings.Cl
 
         Map<String, Long> listFiles(final String path, final String prefix) throws IOException;
 
+        /**
+         * Whether the failure is the storage asking clients to slow down, e.g. HTTP 429 or 503.
+         * Only the given throwable is checked, callers walk the cause chain themselves.
+         */
+        default boolean isThrottlingError(final Throwable error) {
+            return false;
+        }
+
+        /**
+         * Counters reported as repository stats.
+         */
+        default Map<String, Long> stats() {
+            return Map.of();
+        }
+
+        /**
+         * Drops whatever is cached about the blob, e.g. after it has been rewritten below the caches.
+         */
+        default void invalidate(final String blobName) throws IOException {
+        }
+
+        /**
+         * Housekeeping the repository runs periodically, e.g. writing data held in memory for too long.
+         */
+        default void maintain() throws IOException {
+        }
+
     }
 
 }
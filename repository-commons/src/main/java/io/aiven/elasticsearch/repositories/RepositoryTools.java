@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+import org.opensearch.common.blobstore.BlobPath;
+import org.opensearch.common.blobstore.BlobStore;
+
+import io.aiven.elasticsearch.repositories.metrics.OperationTrace;
+import io.aiven.elasticsearch.repositories.metrics.ThroughputAnalyzer;
+import io.aiven.elasticsearch.repositories.migration.BlobReEncryption;
+import io.aiven.elasticsearch.repositories.migration.RepositoryMigration;
+
+/**
+ * Tools operators run against the storage of a repository on this node: the transfers in flight,
+ * the throughput analysis, the migration to another repository and the rotation of the encryption key.
+ * The blob store of the repository is created on first use, so the tools starting a job must be called
+ * from the generic or snapshot thread pool.
+ */
+public final class RepositoryTools {
+
+    private final BlobStoreRepository<?, ?> repository;
+
+    private final Executor storageIOExecutor;
+
+    private final Executor jobExecutor;
+
+    private volatile RepositoryMigration migration;
+
+    private volatile BlobReEncryption reEncryption;
+
+    /**
+     * @param storageIOExecutor executor of the storage calls the tools send concurrently
+     * @param jobExecutor       executor of the migrations and re-encryptions
+     */
+    RepositoryTools(final BlobStoreRepository<?, ?> repository,
+                    final Executor storageIOExecutor,
+                    final Executor jobExecutor) {
+        this.repository = repository;
+        this.storageIOExecutor = storageIOExecutor;
+        this.jobExecutor = jobExecutor;
+    }
+
+    /**
+     * Blob reads and writes this node is running against the storage right now.
+     */
+    public List<OperationTrace> inFlightTransfers() {
+        return repository.createdBlobStore()
+                .map(blobStore -> blobStore.transfers().inFlight())
+                .orElse(List.of());
+    }
+
+    /**
+     * Analyzer of the storage throughput, bypassing the caches and limits of the repository.
+     */
+    public ThroughputAnalyzer throughputAnalyzer() {
+        if (repository.isReadOnly()) {
+            throw new IllegalArgumentException(
+                    "Cannot analyze throughput of readonly repository [" + name() + "]");
+        }
+        return new ThroughputAnalyzer(
+                repository.repositoryBlobStore().transfers(), basePath(), storageIOExecutor);
+    }
+
+    /**
+     * Starts copying the blobs of the repository into the blob store of the target repository,
+     * only one migration of a repository runs at a time.
+     */
+    public synchronized RepositoryMigration migrateTo(final String targetName,
+                                                      final BlobStore targetBlobStore,
+                                                      final BlobPath targetBasePath,
+                                                      final int concurrency,
+                                                      final long maxBytesPerSec) {
+        if (Objects.nonNull(migration) && migration.isRunning()) {
+            throw new IllegalArgumentException("Repository [" + name() + "] is already being migrated to ["
+                    + migration.targetName() + "]");
+        }
+        final var started =
+                new RepositoryMigration(
+                        name(),
+                        repository.repositoryBlobStore().logicalStorage(),
+                        basePath(),
+                        targetName,
+                        targetBlobStore,
+                        targetBasePath,
+                        storageIOExecutor,
+                        concurrency,
+                        maxBytesPerSec);
+        jobExecutor.execute(started);
+        migration = started;
+        return started;
+    }
+
+    /**
+     * Progress of the last migration of the repository started on this node.
+     */
+    public Optional<Map<String, Object>> migrationStatus() {
+        return Optional.ofNullable(migration).map(RepositoryMigration::status);
+    }
+
+    /**
+     * Rotates the encryption key of the repository, so new blobs are encrypted with a new key,
+     * and starts re-encrypting the blobs written before.
+     */
+    public synchronized BlobReEncryption rotateEncryptionKey(final int concurrency,
+                                                             final long maxBytesPerSec) throws IOException {
+        checkReEncryptionAllowed();
+        final var blobStore = repository.repositoryBlobStore();
+        return startReEncryption(blobStore, blobStore.rotateEncryptionKey(), concurrency, maxBytesPerSec);
+    }
+
+    /**
+     * Starts re-encrypting the blobs with the current encryption key, e.g. to resume a failed re-encryption.
+     */
+    public synchronized BlobReEncryption reEncrypt(final int concurrency,
+                                                   final long maxBytesPerSec) throws IOException {
+        checkReEncryptionAllowed();
+        final var blobStore = repository.repositoryBlobStore();
+        return startReEncryption(blobStore, blobStore.currentEncryptionKeyId(), concurrency, maxBytesPerSec);
+    }
+
+    /**
+     * Progress of the last re-encryption of the repository started on this node.
+     */
+    public Optional<Map<String, Object>> reEncryptionStatus() {
+        return Optional.ofNullable(reEncryption).map(BlobReEncryption::status);
+    }
+
+    private void checkReEncryptionAllowed() {
+        if (repository.isReadOnly()) {
+            throw new IllegalArgumentException("Cannot re-encrypt readonly repository [" + name() + "]");
+        }
+        if (Objects.nonNull(reEncryption) && reEncryption.isRunning()) {
+            throw new IllegalArgumentException("Repository [" + name() + "] is already being re-encrypted");
+        }
+    }
+
+    private BlobReEncryption startReEncryption(final RepositoryBlobStore blobStore,
+                                               final int keyId,
+                                               final int concurrency,
+                                               final long maxBytesPerSec) {
+        // the stored view reads blobs as they are decrypted, with the id of their key
+        final var started =
+                new BlobReEncryption(
+                        name(),
+                        blobStore.storedView(),
+                        blobStore.cachingStorage(),
+                        basePath(),
+                        keyId,
+                        storageIOExecutor,
+                        concurrency,
+                        maxBytesPerSec);
+        jobExecutor.execute(started);
+        reEncryption = started;
+        return started;
+    }
+
+    private String name() {
+        return repository.getMetadata().name();
+    }
+
+    private String basePath() {
+        return repository.basePath().buildAsString();
+    }
+
+}
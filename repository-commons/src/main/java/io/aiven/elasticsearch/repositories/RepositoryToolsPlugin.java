@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import org.opensearch.cluster.metadata.IndexNameExpressionResolver;
+import org.opensearch.cluster.node.DiscoveryNodes;
+import org.opensearch.common.settings.ClusterSettings;
+import org.opensearch.common.settings.IndexScopedSettings;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.settings.SettingsFilter;
+import org.opensearch.plugins.ActionPlugin;
+import org.opensearch.rest.RestController;
+import org.opensearch.rest.RestHandler;
+
+import io.aiven.elasticsearch.repositories.rest.RestInFlightTransfersAction;
+import io.aiven.elasticsearch.repositories.rest.RestKeyRotationAction;
+import io.aiven.elasticsearch.repositories.rest.RestRepositoryMigrationAction;
+import io.aiven.elasticsearch.repositories.rest.RestThroughputAnalysisAction;
+
+/**
+ * Plugin which exposes the tools of the repositories of its type over REST,
+ * under {@code /_aiven/<repository type>/repositories/<repository>/}.
+ */
+public abstract class RepositoryToolsPlugin extends RepositoryLookupPlugin implements ActionPlugin {
+
+    private final String repositoryType;
+
+    protected RepositoryToolsPlugin(final String repositoryType) {
+        this.repositoryType = repositoryType;
+    }
+
+    protected String repositoryType() {
+        return repositoryType;
+    }
+
+    @Override
+    public List<RestHandler> getRestHandlers(final Settings settings,
+                                             final RestController restController,
+                                             final ClusterSettings clusterSettings,
+                                             final IndexScopedSettings indexScopedSettings,
+                                             final SettingsFilter settingsFilter,
+                                             final IndexNameExpressionResolver indexNameExpressionResolver,
+                                             final Supplier<DiscoveryNodes> nodesInCluster) {
+        return List.of(
+                new RestInFlightTransfersAction(repositoryType, name ->
+                        tools(name).map(RepositoryTools::inFlightTransfers)),
+                new RestThroughputAnalysisAction(repositoryType, this::tools),
+                new RestRepositoryMigrationAction(repositoryType, this::tools, this::registeredRepository),
+                new RestKeyRotationAction(repositoryType, this::tools));
+    }
+
+    /**
+     * Tools of the registered repository of this type with the name.
+     */
+    private Optional<RepositoryTools> tools(final String name) {
+        return findRegisteredRepository(name)
+                .filter(repository -> repository instanceof BlobStoreRepository
+                        && repositoryType.equals(repository.getMetadata().type()))
+                .map(repository -> ((BlobStoreRepository<?, ?>) repository).tools());
+    }
+
+}
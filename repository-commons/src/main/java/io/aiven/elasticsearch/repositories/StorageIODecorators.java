@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories;
+
+import java.io.IOException;
+
+import org.opensearch.cluster.metadata.RepositoryMetadata;
+import org.opensearch.common.io.PathUtils;
+
+import io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings;
+import io.aiven.elasticsearch.repositories.cache.DiskCacheStorageIO;
+import io.aiven.elasticsearch.repositories.cache.ListingCacheStorageIO;
+import io.aiven.elasticsearch.repositories.cache.MetadataCacheStorageIO;
+import io.aiven.elasticsearch.repositories.cache.SingleFlightStorageIO;
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+import io.aiven.elasticsearch.repositories.layout.PartitionedKeyStorageIO;
+import io.aiven.elasticsearch.repositories.manifest.ManifestStorageIO;
+import io.aiven.elasticsearch.repositories.metrics.MetricsStorageIO;
+import io.aiven.elasticsearch.repositories.metrics.SlowOperationLogStorageIO;
+import io.aiven.elasticsearch.repositories.pack.PackingStorageIO;
+import io.aiven.elasticsearch.repositories.throttling.AimdConcurrencyLimiter;
+import io.aiven.elasticsearch.repositories.throttling.ConcurrencyLimitingStorageIO;
+
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.BLOB_MANIFEST;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.BLOB_MANIFEST_RECONCILIATION_INTERVAL;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.BLOB_MANIFEST_REFRESH_INTERVAL;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.DISK_CACHE_PATH;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.DISK_CACHE_SIZE;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.KEY_PREFIX_PARTITIONS;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.LISTING_CACHE_MAX_ENTRIES;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.LISTING_CACHE_TTL;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.MAX_CONCURRENT_REQUESTS;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.METADATA_CACHE_MAX_BLOB_SIZE;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.METADATA_CACHE_SIZE;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.MIN_CONCURRENT_REQUESTS;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.PACK_MAX_SIZE;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.PACK_THRESHOLD;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.READ_COALESCING_MAX_BLOB_SIZE;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.SLOW_OPERATION_THRESHOLD;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.SLOW_TRANSFER_THRESHOLD;
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Wraps the repository storage with the optional layers enabled in the repository settings.
+ * The layers are applied from the storage up, so caches closer to the caller are checked first.
+ * Blob names are mapped to the physical key layout right above the storage, the other layers work with
+ * blob names as OpenSearch sees them. Operation metrics are always recorded right above the mapping,
+ * so they reflect requests actually sent, slow operations are logged right above them, before any time
+ * is spent waiting for a concurrency permit.
+ * Small blobs are packed below the caches, so the caches keep working with the blobs as they were written,
+ * and above the blob manifest, which records the packs actually stored.
+ * The layers below the caches make up the logical view of the repository, which tools reading all its blobs
+ * once, e.g. a migration, use without filling the caches.
+ */
+final class StorageIODecorators {
+
+    private StorageIODecorators() {
+    }
+
+    /**
+     * Blobs of the repository as OpenSearch sees them, without the caches.
+     */
+    static StorageIO logicalView(final StorageIO storageIo,
+                                 final RepositoryMetadata metadata,
+                                 final String basePath,
+                                 final ParallelListing parallelListing) {
+        final var requests =
+                withRequestLayers(withKeyLayout(storageIo, metadata, basePath, parallelListing), metadata);
+        return withBlobLayers(requests, metadata, basePath);
+    }
+
+    /**
+     * Blobs of the repository as they are stored, i.e. with packs and manifest blobs, but with the names
+     * OpenSearch sees, e.g. to rewrite them. Changes are recorded in the blob manifest. Blobs are read
+     * as the storage returns them, so callers can tell which key a blob has been encrypted with.
+     */
+    static StorageIO storedView(final StorageIO storageIo,
+                                final RepositoryMetadata metadata,
+                                final String basePath,
+                                final ParallelListing parallelListing) {
+        return withManifest(withKeyLayout(storageIo, metadata, basePath, parallelListing), metadata, basePath);
+    }
+
+    private static StorageIO withKeyLayout(final StorageIO storageIo,
+                                           final RepositoryMetadata metadata,
+                                           final String basePath,
+                                           final ParallelListing parallelListing) {
+        final var keyPrefixPartitions = KEY_PREFIX_PARTITIONS.get(metadata.settings());
+        return keyPrefixPartitions > 0
+                ? new PartitionedKeyStorageIO(storageIo, basePath, keyPrefixPartitions, parallelListing)
+                : storageIo;
+    }
+
+    private static StorageIO withRequestLayers(final StorageIO storageIo, final RepositoryMetadata metadata) {
+        StorageIO decorated = new MetricsStorageIO(storageIo);
+        final var slowOperationThreshold = SLOW_OPERATION_THRESHOLD.get(metadata.settings());
+        final var slowTransferThreshold = SLOW_TRANSFER_THRESHOLD.get(metadata.settings());
+        if (slowOperationThreshold.nanos() > 0 || slowTransferThreshold.nanos() > 0) {
+            decorated = new SlowOperationLogStorageIO(decorated, slowOperationThreshold, slowTransferThreshold);
+        }
+        final var maxConcurrentRequests = MAX_CONCURRENT_REQUESTS.get(metadata.settings());
+        if (maxConcurrentRequests > 0) {
+            decorated = new ConcurrencyLimitingStorageIO(
+                    decorated,
+                    new AimdConcurrencyLimiter(
+                            Math.min(MIN_CONCURRENT_REQUESTS.get(metadata.settings()), maxConcurrentRequests),
+                            maxConcurrentRequests));
+        }
+        return decorated;
+    }
+
+    private static StorageIO withBlobLayers(final StorageIO storageIo,
+                                            final RepositoryMetadata metadata,
+                                            final String basePath) {
+        // packed blobs stay readable once packing is disabled, so the layer is there anyway
+        return new PackingStorageIO(
+                withManifest(storageIo, metadata, basePath),
+                Math.toIntExact(PACK_THRESHOLD.get(metadata.settings()).getBytes()),
+                Math.toIntExact(PACK_MAX_SIZE.get(metadata.settings()).getBytes()));
+    }
+
+    private static StorageIO withManifest(final StorageIO storageIo,
+                                          final RepositoryMetadata metadata,
+                                          final String basePath) {
+        if (BLOB_MANIFEST.get(metadata.settings())) {
+            return new ManifestStorageIO(
+                    storageIo,
+                    basePath,
+                    BLOB_MANIFEST_REFRESH_INTERVAL.get(metadata.settings()),
+                    BLOB_MANIFEST_RECONCILIATION_INTERVAL.get(metadata.settings()));
+        }
+        return storageIo;
+    }
+
+    static StorageIO withCaches(final StorageIO storageIo,
+                                final RepositoryMetadata metadata,
+                                final int bufferSize) throws IOException {
+        StorageIO decorated = storageIo;
+        final var listingCacheTtl = LISTING_CACHE_TTL.get(metadata.settings());
+        if (listingCacheTtl.nanos() > 0) {
+            decorated = new ListingCacheStorageIO(
+                    decorated, listingCacheTtl, LISTING_CACHE_MAX_ENTRIES.get(metadata.settings()));
+        }
+        final var diskCacheSize = DISK_CACHE_SIZE.get(metadata.settings());
+        if (diskCacheSize.getBytes() > 0) {
+            RepositorySettings.checkSettings(metadata.type(), DISK_CACHE_PATH, metadata.settings());
+            decorated = new DiskCacheStorageIO(
+                    decorated,
+                    PathUtils.get(DISK_CACHE_PATH.get(metadata.settings())).resolve(metadata.name()),
+                    diskCacheSize.getBytes(),
+                    bufferSize);
+        }
+        final var readCoalescingMaxBlobSize = READ_COALESCING_MAX_BLOB_SIZE.get(metadata.settings());
+        if (readCoalescingMaxBlobSize.getBytes() > 0) {
+            decorated = new SingleFlightStorageIO(decorated, Math.toIntExact(readCoalescingMaxBlobSize.getBytes()));
+        }
+        final var metadataCacheSize = METADATA_CACHE_SIZE.get(metadata.settings());
+        if (metadataCacheSize.getBytes() > 0) {
+            decorated = new MetadataCacheStorageIO(
+                    decorated,
+                    metadataCacheSize.getBytes(),
+                    Math.toIntExact(METADATA_CACHE_MAX_BLOB_SIZE.get(metadata.settings()).getBytes()));
+        }
+        return decorated;
+    }
+
+}
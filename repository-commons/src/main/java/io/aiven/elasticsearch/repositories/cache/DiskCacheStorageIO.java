@@ -0,0 +1,375 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.cache;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.opensearch.common.collect.Tuple;
+import org.opensearch.common.hash.MessageDigests;
+import org.opensearch.core.internal.io.IOUtils;
+
+import io.aiven.elasticsearch.repositories.DelegatingStorageIO;
+import io.aiven.elasticsearch.repositories.Permissions;
+import io.aiven.elasticsearch.repositories.io.CryptoIOProvider;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeyProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Node-local disk cache of downloaded blobs with LRU eviction.
+ * Cached files are compressed and encrypted with a key which lives only in memory,
+ * so the cache directory is wiped every time the cache is created.
+ * A downloaded blob is streamed to the caller while it is written to the cache, and it is cached
+ * once it has been read to its end. Blobs bigger than a quarter of the cache are not cached,
+ * so a single blob doesn't evict most of the others.
+ */
+public class DiskCacheStorageIO extends DelegatingStorageIO {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskCacheStorageIO.class);
+
+    static final int MAX_BLOB_SHARE = 4;
+
+    private final Path directory;
+
+    private final long maxSize;
+
+    private final long maxBlobSize;
+
+    private final CryptoIOProvider cryptoIOProvider;
+
+    // access ordered, the first entry is the least recently used one
+    private final LinkedHashMap<String, Tuple<Path, Long>> cachedBlobs = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder skips = new LongAdder();
+
+    public DiskCacheStorageIO(final StorageIO delegate,
+                              final Path directory,
+                              final long maxSize,
+                              final int bufferSize) throws IOException {
+        super(delegate);
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.maxBlobSize = maxSize / MAX_BLOB_SHARE;
+        this.cryptoIOProvider = new CryptoIOProvider(createKey(), bufferSize);
+        Permissions.doPrivileged(() -> {
+            IOUtils.rm(directory);
+            Files.createDirectories(directory);
+        });
+        LOGGER.info("Created disk cache in {} with size {} bytes", directory, maxSize);
+    }
+
+    private static SecretKey createKey() {
+        try {
+            final var keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(EncryptionKeyProvider.KEY_SIZE, new SecureRandom());
+            return keyGenerator.generateKey();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException("Couldn't create disk cache key", e);
+        }
+    }
+
+    @Override
+    public InputStream read(final String blobName) throws IOException {
+        final var cachedFile = cachedFile(blobName);
+        if (Objects.nonNull(cachedFile)) {
+            try {
+                final var in = open(cachedFile);
+                hits.increment();
+                return in;
+            } catch (final NoSuchFileException e) {
+                LOGGER.debug("Cached file {} for blob {} has been removed", cachedFile, blobName);
+                remove(List.of(blobName));
+            }
+        }
+        misses.increment();
+        final var in = super.read(blobName);
+        try {
+            return new CachingInputStream(in, blobName);
+        } catch (final IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(final String blobName,
+                      final InputStream inputStream,
+                      final long blobSize,
+                      final boolean failIfAlreadyExists) throws IOException {
+        remove(List.of(blobName));
+        super.write(blobName, inputStream, blobSize, failIfAlreadyExists);
+    }
+
+    @Override
+    public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+        remove(List.of(targetBlobName));
+        super.copy(sourceBlobName, targetBlobName);
+    }
+
+    @Override
+    public void deleteFiles(final List<String> blobNames, final boolean ignoreIfNotExists) throws IOException {
+        try {
+            super.deleteFiles(blobNames, ignoreIfNotExists);
+        } finally {
+            remove(blobNames);
+        }
+    }
+
+    @Override
+    public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
+        try {
+            return super.deleteDirectories(path);
+        } finally {
+            final List<String> blobNames;
+            synchronized (cachedBlobs) {
+                blobNames = new ArrayList<>(cachedBlobs.keySet());
+            }
+            blobNames.removeIf(blobName -> !blobName.startsWith(path));
+            remove(blobNames);
+        }
+    }
+
+    @Override
+    public void invalidate(final String blobName) throws IOException {
+        remove(List.of(blobName));
+        super.invalidate(blobName);
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        final var stats = new HashMap<>(super.stats());
+        stats.put("disk_cache.hits", hits.sum());
+        stats.put("disk_cache.misses", misses.sum());
+        stats.put("disk_cache.skips", skips.sum());
+        synchronized (cachedBlobs) {
+            stats.put("disk_cache.size_in_bytes", size);
+        }
+        return stats;
+    }
+
+    private InputStream open(final Path file) throws IOException {
+        final var channel = Permissions.doPrivileged(() -> FileChannel.open(file, StandardOpenOption.READ));
+        return cryptoIOProvider.decryptAndDecompress(Channels.newInputStream(channel));
+    }
+
+    private Path cachedFile(final String blobName) {
+        synchronized (cachedBlobs) {
+            final var cachedBlob = cachedBlobs.get(blobName);
+            return Objects.nonNull(cachedBlob) ? cachedBlob.v1() : null;
+        }
+    }
+
+    private void add(final String blobName, final Path file, final long fileSize) throws IOException {
+        final var evictedFiles = new ArrayList<Path>();
+        synchronized (cachedBlobs) {
+            final var previous = cachedBlobs.put(blobName, Tuple.tuple(file, fileSize));
+            if (Objects.nonNull(previous)) {
+                size -= previous.v2();
+            }
+            size += fileSize;
+            final var it = cachedBlobs.entrySet().iterator();
+            while (size > maxSize && it.hasNext()) {
+                final var eldest = it.next().getValue();
+                size -= eldest.v2();
+                evictedFiles.add(eldest.v1());
+                it.remove();
+            }
+        }
+        deleteFiles(evictedFiles);
+    }
+
+    private void remove(final List<String> blobNames) throws IOException {
+        final var removedFiles = new ArrayList<Path>();
+        synchronized (cachedBlobs) {
+            for (final var blobName : blobNames) {
+                final var removed = cachedBlobs.remove(blobName);
+                if (Objects.nonNull(removed)) {
+                    size -= removed.v2();
+                    removedFiles.add(removed.v1());
+                }
+            }
+        }
+        deleteFiles(removedFiles);
+    }
+
+    private void deleteFiles(final List<Path> files) throws IOException {
+        if (!files.isEmpty()) {
+            Permissions.doPrivileged(() -> IOUtils.deleteFilesIgnoringExceptions(files));
+        }
+    }
+
+    private static String fileName(final String blobName) {
+        return MessageDigests.toHexString(MessageDigests.sha256().digest(blobName.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Downloaded blob which is written to a temporary file while it is read,
+     * the file becomes the cached blob once the blob has been read to its end.
+     */
+    private final class CachingInputStream extends FilterInputStream {
+
+        private final String blobName;
+
+        private final Path tmpFile;
+
+        // null once the blob isn't cached anymore
+        private OutputStream cacheOut;
+
+        private long bytes;
+
+        private CachingInputStream(final InputStream in, final String blobName) throws IOException {
+            super(in);
+            this.blobName = blobName;
+            this.tmpFile = directory.resolve(UUID.randomUUID() + ".tmp");
+            this.cacheOut = cryptoIOProvider.compressingAndEncrypting(
+                    Permissions.doPrivileged(() -> Files.newOutputStream(tmpFile, StandardOpenOption.CREATE_NEW)));
+        }
+
+        @Override
+        public int read() throws IOException {
+            final var b = super.read();
+            if (b >= 0) {
+                cache(new byte[] {(byte) b}, 0, 1);
+            } else {
+                complete();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final var n = super.read(b, off, len);
+            if (n > 0) {
+                cache(b, off, n);
+            } else if (n < 0) {
+                complete();
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            // skipped bytes would be missing from the cached blob
+            abandon();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                abandon();
+            }
+        }
+
+        private void cache(final byte[] b, final int off, final int len) {
+            if (Objects.isNull(cacheOut)) {
+                return;
+            }
+            bytes += len;
+            if (bytes > maxBlobSize) {
+                LOGGER.debug("Blob {} is too big to be cached", blobName);
+                skips.increment();
+                abandon();
+                return;
+            }
+            try {
+                cacheOut.write(b, off, len);
+            } catch (final IOException e) {
+                LOGGER.warn("Couldn't cache blob {} in {}", blobName, tmpFile, e);
+                abandon();
+            }
+        }
+
+        private void complete() {
+            if (Objects.isNull(cacheOut)) {
+                return;
+            }
+            final var out = cacheOut;
+            final var file = directory.resolve(fileName(blobName));
+            try {
+                final long fileSize = Permissions.doPrivileged(() -> {
+                    out.close();
+                    Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    return Files.size(file);
+                });
+                cacheOut = null;
+                add(blobName, file, fileSize);
+            } catch (final IOException e) {
+                LOGGER.warn("Couldn't cache blob {} in {}", blobName, file, e);
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            final var out = cacheOut;
+            if (Objects.isNull(out)) {
+                return;
+            }
+            cacheOut = null;
+            try {
+                Permissions.doPrivileged(() -> {
+                    out.close();
+                    Files.deleteIfExists(tmpFile);
+                });
+            } catch (final IOException e) {
+                LOGGER.debug("Couldn't delete temporary file {}", tmpFile, e);
+            }
+        }
+
+    }
+
+}
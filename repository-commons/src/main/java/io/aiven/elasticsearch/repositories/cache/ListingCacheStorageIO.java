@@ -0,0 +1,267 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.cache.CacheBuilder;
+import org.opensearch.common.collect.Tuple;
+import org.opensearch.common.unit.TimeValue;
+
+import io.aiven.elasticsearch.repositories.DelegatingStorageIO;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Node-local cache of directory and file listings. Blobs written or deleted through this node
+ * update the cached listings, changes done by other writers are visible only after the TTL,
+ * so the cache is safe only for repositories with a single writer cluster. The TTL counts from the listing
+ * itself, local updates don't extend it, so listings changed by other nodes as well still expire.
+ */
+public class ListingCacheStorageIO extends DelegatingStorageIO {
+
+    private final Cache<Tuple<String, String>, Listing<Map<String, Long>>> files;
+
+    private final Cache<String, Listing<List<String>>> directories;
+
+    private final long ttlNanos;
+
+    private final LongSupplier clock;
+
+    /**
+     * Incremented on every change, listings which overlap with a change are not cached. Changes and the caching
+     * of listings are done holding its lock, so a change can't slip between the check and the caching.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public ListingCacheStorageIO(final StorageIO delegate, final TimeValue ttl, final int maxEntries) {
+        this(delegate, ttl, maxEntries, System::nanoTime);
+    }
+
+    ListingCacheStorageIO(final StorageIO delegate,
+                          final TimeValue ttl,
+                          final int maxEntries,
+                          final LongSupplier clock) {
+        super(delegate);
+        this.files =
+                CacheBuilder.<Tuple<String, String>, Listing<Map<String, Long>>>builder()
+                        .setMaximumWeight(maxEntries)
+                        .build();
+        this.directories =
+                CacheBuilder.<String, Listing<List<String>>>builder()
+                        .setMaximumWeight(maxEntries)
+                        .build();
+        this.ttlNanos = ttl.nanos();
+        this.clock = clock;
+    }
+
+    @Override
+    public void write(final String blobName,
+                      final InputStream inputStream,
+                      final long blobSize,
+                      final boolean failIfAlreadyExists) throws IOException {
+        try {
+            super.write(blobName, inputStream, blobSize, failIfAlreadyExists);
+        } finally {
+            written(blobName);
+        }
+    }
+
+    @Override
+    public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+        try {
+            super.copy(sourceBlobName, targetBlobName);
+        } finally {
+            written(targetBlobName);
+        }
+    }
+
+    @Override
+    public void invalidate(final String blobName) throws IOException {
+        written(blobName);
+        super.invalidate(blobName);
+    }
+
+    private void written(final String blobName) {
+        synchronized (generation) {
+            generation.incrementAndGet();
+            // the stored size differs from the blob size because of compression and encryption
+            final var path = parentPath(blobName);
+            final var fileName = blobName.substring(path.length());
+            invalidateFiles(key -> key.v1().equals(path) && fileName.startsWith(key.v2()));
+            addDirectory(path);
+        }
+    }
+
+    @Override
+    public void deleteFiles(final List<String> blobNames, final boolean ignoreIfNotExists) throws IOException {
+        try {
+            super.deleteFiles(blobNames, ignoreIfNotExists);
+        } finally {
+            synchronized (generation) {
+                generation.incrementAndGet();
+                for (final var blobName : blobNames) {
+                    final var path = parentPath(blobName);
+                    removeFile(path, blobName.substring(path.length()));
+                    // the directory disappears with its last blob
+                    directories.invalidate(parentPath(path.substring(0, Math.max(0, path.length() - 1))));
+                }
+            }
+        }
+    }
+
+    @Override
+    public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
+        try {
+            return super.deleteDirectories(path);
+        } finally {
+            synchronized (generation) {
+                generation.incrementAndGet();
+                invalidateFiles(key -> key.v1().startsWith(path));
+                final var directoryKeys = new ArrayList<String>();
+                directories.keys().forEach(directoryKeys::add);
+                directoryKeys.stream().filter(key -> key.startsWith(path)).forEach(directories::invalidate);
+                directories.invalidate(parentPath(path.substring(0, Math.max(0, path.length() - 1))));
+            }
+        }
+    }
+
+    @Override
+    public List<String> listDirectories(final String path) throws IOException {
+        final var cached = cached(directories, path);
+        if (Objects.nonNull(cached)) {
+            return cached;
+        }
+        final var currentGeneration = generation.get();
+        final var listedAt = clock.getAsLong();
+        final var result = List.copyOf(super.listDirectories(path));
+        synchronized (generation) {
+            if (currentGeneration == generation.get()) {
+                directories.put(path, new Listing<>(result, listedAt));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> listFiles(final String path, final String prefix) throws IOException {
+        final var key = Tuple.tuple(path, prefix);
+        final var cached = cached(files, key);
+        if (Objects.nonNull(cached)) {
+            return cached;
+        }
+        final var currentGeneration = generation.get();
+        final var listedAt = clock.getAsLong();
+        final var result = Map.copyOf(super.listFiles(path, prefix));
+        synchronized (generation) {
+            if (currentGeneration == generation.get()) {
+                files.put(key, new Listing<>(result, listedAt));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        final var stats = new HashMap<>(super.stats());
+        stats.put("listing_cache.hits", hits.get());
+        stats.put("listing_cache.misses", misses.get());
+        return stats;
+    }
+
+    private <K, V> V cached(final Cache<K, Listing<V>> cache, final K key) {
+        final var cached = cache.get(key);
+        if (Objects.isNull(cached) || clock.getAsLong() - cached.listedAt >= ttlNanos) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return cached.entries;
+    }
+
+    private void invalidateFiles(final Predicate<Tuple<String, String>> predicate) {
+        final var keys = new ArrayList<Tuple<String, String>>();
+        files.keys().forEach(keys::add);
+        keys.stream().filter(predicate).forEach(files::invalidate);
+    }
+
+    private void removeFile(final String path, final String fileName) {
+        final var keys = new ArrayList<Tuple<String, String>>();
+        files.keys().forEach(keys::add);
+        for (final var key : keys) {
+            if (key.v1().equals(path) && fileName.startsWith(key.v2())) {
+                final var cached = files.get(key);
+                if (Objects.nonNull(cached) && cached.entries.containsKey(fileName)) {
+                    final var updated = new HashMap<>(cached.entries);
+                    updated.remove(fileName);
+                    files.put(key, cached.withEntries(Map.copyOf(updated)));
+                }
+            }
+        }
+    }
+
+    private void addDirectory(final String path) {
+        var directoryPath = path;
+        while (!directoryPath.isEmpty()) {
+            final var withoutSlash = directoryPath.substring(0, directoryPath.length() - 1);
+            final var parent = parentPath(withoutSlash);
+            final var directoryName = withoutSlash.substring(parent.length());
+            final var cached = directories.get(parent);
+            if (Objects.nonNull(cached) && !cached.entries.contains(directoryName)) {
+                final var updated = new ArrayList<>(cached.entries);
+                updated.add(directoryName);
+                directories.put(parent, cached.withEntries(List.copyOf(updated)));
+            }
+            directoryPath = parent;
+        }
+    }
+
+    private static final class Listing<T> {
+
+        private final T entries;
+
+        private final long listedAt;
+
+        private Listing(final T entries, final long listedAt) {
+            this.entries = entries;
+            this.listedAt = listedAt;
+        }
+
+        /**
+         * Listing updated by a local change, which expires when the listing it was derived from does.
+         */
+        private Listing<T> withEntries(final T updated) {
+            return new Listing<>(updated, listedAt);
+        }
+
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.cache.CacheBuilder;
+import org.opensearch.common.collect.Tuple;
+import org.opensearch.core.internal.io.IOUtils;
+
+import io.aiven.elasticsearch.repositories.DelegatingStorageIO;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Node-local LRU cache of decrypted and decompressed repository metadata blobs.
+ * snap-*, meta-* and index-* blobs are written once and never modified, so entries
+ * are dropped only on eviction or delete.
+ */
+public class MetadataCacheStorageIO extends DelegatingStorageIO {
+
+    static final Pattern IMMUTABLE_BLOB_NAME = Pattern.compile("^(snap-|meta-|index-).+");
+
+    private final Cache<String, byte[]> blobs;
+
+    private final int maxBlobSize;
+
+    /**
+     * Incremented on every delete, reads which overlap with a delete are not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public MetadataCacheStorageIO(final StorageIO delegate, final long cacheSize, final int maxBlobSize) {
+        super(delegate);
+        this.maxBlobSize = maxBlobSize;
+        this.blobs =
+                CacheBuilder.<String, byte[]>builder()
+                        .setMaximumWeight(cacheSize)
+                        .weigher((blobName, bytes) -> bytes.length)
+                        .build();
+    }
+
+    @Override
+    public InputStream read(final String blobName) throws IOException {
+        if (!isImmutable(blobName)) {
+            return super.read(blobName);
+        }
+        final var cached = blobs.get(blobName);
+        if (Objects.nonNull(cached)) {
+            return new ByteArrayInputStream(cached);
+        }
+        final var currentGeneration = generation.get();
+        final var in = super.read(blobName);
+        final byte[] bytes;
+        try {
+            bytes = in.readNBytes(maxBlobSize + 1);
+        } catch (final IOException e) {
+            IOUtils.closeWhileHandlingException(in);
+            throw e;
+        }
+        if (bytes.length > maxBlobSize) {
+            return new SequenceInputStream(new ByteArrayInputStream(bytes), in);
+        }
+        in.close();
+        if (currentGeneration == generation.get()) {
+            blobs.put(blobName, bytes);
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public void write(final String blobName,
+                      final InputStream inputStream,
+                      final long blobSize,
+                      final boolean failIfAlreadyExists) throws IOException {
+        blobs.invalidate(blobName);
+        super.write(blobName, inputStream, blobSize, failIfAlreadyExists);
+    }
+
+    @Override
+    public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+        blobs.invalidate(targetBlobName);
+        super.copy(sourceBlobName, targetBlobName);
+    }
+
+    @Override
+    public void deleteFiles(final List<String> blobNames, final boolean ignoreIfNotExists) throws IOException {
+        try {
+            super.deleteFiles(blobNames, ignoreIfNotExists);
+        } finally {
+            generation.incrementAndGet();
+            blobNames.forEach(blobs::invalidate);
+        }
+    }
+
+    @Override
+    public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
+        try {
+            return super.deleteDirectories(path);
+        } finally {
+            generation.incrementAndGet();
+            final var blobNames = new ArrayList<String>();
+            blobs.keys().forEach(blobNames::add);
+            blobNames.stream().filter(blobName -> blobName.startsWith(path)).forEach(blobs::invalidate);
+        }
+    }
+
+    @Override
+    public void invalidate(final String blobName) throws IOException {
+        blobs.invalidate(blobName);
+        super.invalidate(blobName);
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        final var stats = new HashMap<>(super.stats());
+        final var cacheStats = blobs.stats();
+        stats.put("metadata_cache.hits", cacheStats.getHits());
+        stats.put("metadata_cache.misses", cacheStats.getMisses());
+        stats.put("metadata_cache.evictions", cacheStats.getEvictions());
+        stats.put("metadata_cache.size_in_bytes", blobs.weight());
+        return stats;
+    }
+
+    static boolean isImmutable(final String blobName) {
+        return IMMUTABLE_BLOB_NAME.matcher(blobName.substring(blobName.lastIndexOf('/') + 1)).matches();
+    }
+
+}
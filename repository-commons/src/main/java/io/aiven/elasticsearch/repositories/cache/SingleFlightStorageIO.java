@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.opensearch.core.internal.io.IOUtils;
+
+import io.aiven.elasticsearch.repositories.DelegatingStorageIO;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Concurrent reads of the same blob share a single download. The first reader downloads the blob
+ * and hands the decoded bytes over to the others. Blobs bigger than the maximum size are never shared,
+ * the first reader streams it and the others read it on their own.
+ */
+public class SingleFlightStorageIO extends DelegatingStorageIO {
+
+    private final Map<String, CompletableFuture<byte[]>> inFlightReads = new ConcurrentHashMap<>();
+
+    private final int maxBlobSize;
+
+    private final LongAdder sharedReads = new LongAdder();
+
+    public SingleFlightStorageIO(final StorageIO delegate, final int maxBlobSize) {
+        super(delegate);
+        this.maxBlobSize = maxBlobSize;
+    }
+
+    @Override
+    public InputStream read(final String blobName) throws IOException {
+        final var download = new CompletableFuture<byte[]>();
+        final var inFlightRead = inFlightReads.putIfAbsent(blobName, download);
+        if (Objects.nonNull(inFlightRead)) {
+            final var bytes = join(inFlightRead);
+            if (Objects.isNull(bytes)) {
+                return super.read(blobName);
+            }
+            sharedReads.increment();
+            return new ByteArrayInputStream(bytes);
+        }
+        try {
+            final var in = super.read(blobName);
+            final byte[] bytes;
+            try {
+                bytes = in.readNBytes(maxBlobSize + 1);
+            } catch (final IOException e) {
+                IOUtils.closeWhileHandlingException(in);
+                throw e;
+            }
+            if (bytes.length > maxBlobSize) {
+                download.complete(null);
+                return new SequenceInputStream(new ByteArrayInputStream(bytes), in);
+            }
+            in.close();
+            download.complete(bytes);
+            return new ByteArrayInputStream(bytes);
+        } catch (final IOException | RuntimeException e) {
+            download.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightReads.remove(blobName, download);
+        }
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        final var stats = new HashMap<>(super.stats());
+        stats.put("read_coalescing.shared_reads", sharedReads.sum());
+        return stats;
+    }
+
+    private static byte[] join(final CompletableFuture<byte[]> download) throws IOException {
+        try {
+            return download.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            }
+            throw e;
+        }
+    }
+
+}
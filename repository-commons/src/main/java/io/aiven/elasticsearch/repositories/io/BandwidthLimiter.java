@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.io;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Objects;
+
+import org.opensearch.common.settings.Settings;
+
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.BANDWIDTH_BURST_SIZE;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.MAX_DOWNLOAD_BYTES_PER_SEC;
+import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.MAX_UPLOAD_BYTES_PER_SEC;
+
+/**
+ * Limits the bytes which actually cross the wire, i.e. compressed and encrypted,
+ * separately for uploads and downloads.
+ */
+public class BandwidthLimiter {
+
+    private final TokenBucket upload;
+
+    private final TokenBucket download;
+
+    public BandwidthLimiter(final TokenBucket upload, final TokenBucket download) {
+        this.upload = upload;
+        this.download = download;
+    }
+
+    public static BandwidthLimiter unlimited() {
+        return new BandwidthLimiter(new TokenBucket(0L, 0L, null), new TokenBucket(0L, 0L, null));
+    }
+
+    /**
+     * Creates the limiter configured by the repository settings, every byte is taken from the parent as well.
+     */
+    public static BandwidthLimiter create(final Settings repositorySettings, final BandwidthLimiter parent) {
+        final var burstSize = BANDWIDTH_BURST_SIZE.get(repositorySettings).getBytes();
+        return new BandwidthLimiter(
+                new TokenBucket(
+                        MAX_UPLOAD_BYTES_PER_SEC.get(repositorySettings).getBytes(),
+                        burstSize,
+                        Objects.isNull(parent) ? null : parent.upload),
+                new TokenBucket(
+                        MAX_DOWNLOAD_BYTES_PER_SEC.get(repositorySettings).getBytes(),
+                        burstSize,
+                        Objects.isNull(parent) ? null : parent.download));
+    }
+
+    public OutputStream limitUpload(final OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(final int b) throws IOException {
+                upload.acquire(1L);
+                out.write(b);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                upload.acquire(len);
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    public InputStream limitDownload(final InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                final var b = in.read();
+                if (b >= 0) {
+                    download.acquire(1L);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final var read = in.read(b, off, len);
+                if (read > 0) {
+                    download.acquire(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    public Map<String, Long> stats() {
+        return Map.of(
+                "bandwidth.upload_bytes_per_sec", upload.rate(),
+                "bandwidth.download_bytes_per_sec", download.rate());
+    }
+
+}
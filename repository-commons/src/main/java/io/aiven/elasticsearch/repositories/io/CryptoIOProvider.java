@@ -21,14 +21,21 @@ import javax.crypto.CipherOutputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import org.opensearch.core.internal.io.Streams;
 
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
 import io.aiven.elasticsearch.repositories.security.Decryption;
 import io.aiven.elasticsearch.repositories.security.Encryption;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeyring;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeys;
 
 import com.github.luben.zstd.ZstdInputStream;
 import com.github.luben.zstd.ZstdOutputStream;
@@ -39,28 +46,152 @@ public class CryptoIOProvider implements Encryption, Decryption {
 
     static final int NONCE_LENGTH = 16;
 
-    private final SecretKey encryptionKey;
+    /**
+     * Prefix of blobs encrypted with a rotated key, followed by the key id and the nonce.
+     * Blobs encrypted with the initial key start with the nonce right away, a random nonce
+     * starts with these bytes with a negligible probability.
+     */
+    static final byte[] KEY_ID_MAGIC = "AIVENKID".getBytes(StandardCharsets.US_ASCII);
+
+    private final EncryptionKeyring encryptionKeyring;
 
     private final int bufferSize;
 
+    private final BandwidthLimiter bandwidthLimiter;
+
+    private final PhaseTimings phaseTimings;
+
+    private final RequestAccounting requestAccounting;
+
     public CryptoIOProvider(final SecretKey encryptionKey, final int bufferSize) {
-        this.encryptionKey = encryptionKey;
+        this(encryptionKey, bufferSize, BandwidthLimiter.unlimited(), PhaseTimings.DISABLED,
+                RequestAccounting.untracked());
+    }
+
+    public CryptoIOProvider(final SecretKey encryptionKey,
+                            final int bufferSize,
+                            final BandwidthLimiter bandwidthLimiter,
+                            final PhaseTimings phaseTimings,
+                            final RequestAccounting requestAccounting) {
+        this(() -> EncryptionKeys.of(encryptionKey), bufferSize, bandwidthLimiter, phaseTimings, requestAccounting);
+    }
+
+    public CryptoIOProvider(final EncryptionKeyring encryptionKeyring,
+                            final int bufferSize,
+                            final BandwidthLimiter bandwidthLimiter,
+                            final PhaseTimings phaseTimings,
+                            final RequestAccounting requestAccounting) {
+        this.encryptionKeyring = encryptionKeyring;
         this.bufferSize = bufferSize;
+        this.bandwidthLimiter = bandwidthLimiter;
+        this.phaseTimings = phaseTimings;
+        this.requestAccounting = requestAccounting;
+    }
+
+    /**
+     * Provider which reads and writes the bytes as they are, without compression and encryption,
+     * e.g. for the repository metadata whose keys are encrypted on their own.
+     */
+    public static CryptoIOProvider passThrough(final RequestAccounting requestAccounting) {
+        return new CryptoIOProvider(
+                (SecretKey) null, 0, BandwidthLimiter.unlimited(), PhaseTimings.DISABLED, requestAccounting) {
+            @Override
+            public InputStream decryptAndDecompress(final InputStream in) {
+                return in;
+            }
+
+            @Override
+            public long compressAndEncrypt(final InputStream in,
+                                           final OutputStream out) throws IOException {
+                return Streams.copy(in, out);
+            }
+
+        };
+    }
+
+    /**
+     * Accounting of the requests the storage sends on behalf of this provider's streams.
+     */
+    public RequestAccounting requestAccounting() {
+        return requestAccounting;
     }
 
     public long compressAndEncrypt(final InputStream in,
                                    final OutputStream out) throws IOException {
-        final var cipher = createEncryptingCipher(encryptionKey, CIPHER_TRANSFORMATION);
-        out.write(cipher.getIV());
-        return Streams.copy(in, new ZstdOutputStream(new CipherOutputStream(out, cipher)), new byte[bufferSize]);
+        return Streams.copy(in, compressingAndEncrypting(out), new byte[bufferSize]);
+    }
+
+    /**
+     * Stream which compresses and encrypts what is written to it into the given stream,
+     * the content is complete once the stream has been closed.
+     */
+    public OutputStream compressingAndEncrypting(final OutputStream out) throws IOException {
+        final var encryptionKeys = encryptionKeyring.currentKeys();
+        final var cipher = createEncryptingCipher(encryptionKeys.currentKey(), CIPHER_TRANSFORMATION);
+        final var sample = phaseTimings.sampleWrite();
+        final var networkOut = sample.time(requestAccounting.countUpload(out), PhaseTimings.NETWORK);
+        final var limitedOut = sample.time(bandwidthLimiter.limitUpload(networkOut), PhaseTimings.THROTTLING);
+        if (encryptionKeys.currentKeyId() != EncryptionKeys.INITIAL_KEY_ID) {
+            limitedOut.write(KEY_ID_MAGIC);
+            limitedOut.write(ByteBuffer.allocate(Integer.BYTES).putInt(encryptionKeys.currentKeyId()).array());
+        }
+        limitedOut.write(cipher.getIV());
+        final var encryptingOut = sample.time(new CipherOutputStream(limitedOut, cipher), PhaseTimings.ENCRYPTION);
+        return sample.time(new ZstdOutputStream(encryptingOut), PhaseTimings.COMPRESSION);
     }
 
     public InputStream decryptAndDecompress(final InputStream in) throws IOException {
-        final var cipher = createDecryptingCipher(
-                encryptionKey,
-                new IvParameterSpec(in.readNBytes(NONCE_LENGTH)),
-                CIPHER_TRANSFORMATION);
-        return new ZstdInputStream(new CipherInputStream(in, cipher));
+        final var sample = phaseTimings.sampleRead();
+        final var networkIn = sample.time(requestAccounting.countDownload(in), PhaseTimings.NETWORK);
+        final var limitedIn = sample.time(bandwidthLimiter.limitDownload(networkIn), PhaseTimings.THROTTLING);
+        // the nonce of a blob encrypted with the initial key, or the key id header followed by a part of the nonce
+        final var head = limitedIn.readNBytes(NONCE_LENGTH);
+        final var keyIdLength = KEY_ID_MAGIC.length + Integer.BYTES;
+        final var hasKeyId =
+                head.length == NONCE_LENGTH
+                        && Arrays.equals(head, 0, KEY_ID_MAGIC.length, KEY_ID_MAGIC, 0, KEY_ID_MAGIC.length);
+        final var keyId =
+                hasKeyId
+                        ? ByteBuffer.wrap(head, KEY_ID_MAGIC.length, Integer.BYTES).getInt()
+                        : EncryptionKeys.INITIAL_KEY_ID;
+        final var nonce =
+                hasKeyId
+                        ? ByteBuffer.allocate(NONCE_LENGTH)
+                                .put(head, keyIdLength, NONCE_LENGTH - keyIdLength)
+                                .put(limitedIn.readNBytes(keyIdLength))
+                                .array()
+                        : head;
+        final var cipher =
+                createDecryptingCipher(decryptionKey(keyId), new IvParameterSpec(nonce), CIPHER_TRANSFORMATION);
+        final var decryptingIn = sample.time(new CipherInputStream(limitedIn, cipher), PhaseTimings.ENCRYPTION);
+        return new DecryptedInputStream(
+                sample.time(new ZstdInputStream(decryptingIn), PhaseTimings.COMPRESSION), keyId);
+    }
+
+    private SecretKey decryptionKey(final int keyId) throws IOException {
+        var encryptionKeys = encryptionKeyring.keys();
+        if (!encryptionKeys.contains(keyId)) {
+            encryptionKeys = encryptionKeyring.reload();
+        }
+        return encryptionKeys.key(keyId);
+    }
+
+    /**
+     * Decrypted and decompressed content of a blob, which knows the id of the key the blob has been encrypted with.
+     */
+    public static final class DecryptedInputStream extends FilterInputStream {
+
+        private final int keyId;
+
+        private DecryptedInputStream(final InputStream in, final int keyId) {
+            super(in);
+            this.keyId = keyId;
+        }
+
+        public int keyId() {
+            return keyId;
+        }
+
     }
 
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.opensearch.common.CheckedFunction;
+import org.opensearch.common.collect.Tuple;
+
+/**
+ * Lists a big prefix in key ranges at once instead of page by page. The first page is listed alone,
+ * small listings end there. Otherwise the rest of the key space is split into ranges listed concurrently.
+ * Keys are split at the first character of the last listed key which leaves most of the key alphabet
+ * after it, for blob names generated by OpenSearch it is the first character of their random part.
+ * The ranges cover the whole key space, so keys outside the alphabet are listed too, just less evenly.
+ * The caller lists ranges as well, so the listing completes even if the executor has no free threads.
+ */
+public final class ParallelListing {
+
+    public static final ParallelListing SEQUENTIAL = new ParallelListing(1, Runnable::run);
+
+    /**
+     * Number of stripes or key partitions listed at once, bounded as the storage IO pool only runs a few threads.
+     */
+    static final int MAX_FAN_OUT = 8;
+
+    /**
+     * Characters of the base64 URL-safe alphabet OpenSearch generates blob names from, in key order.
+     */
+    static final String KEY_ALPHABET = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+
+    private final int parallelism;
+
+    private final Executor executor;
+
+    public ParallelListing(final int parallelism, final Executor executor) {
+        this.parallelism = parallelism;
+        this.executor = executor;
+    }
+
+    /**
+     * Lists all keys with the prefix, keys of directories map to {@code null} sizes.
+     *
+     * @return sizes by key, in key order within each range
+     */
+    public List<Tuple<String, Long>> list(final String prefix, final RangeLister lister) throws IOException {
+        final var firstPage = lister.list(null, null, parallelism > 1);
+        if (Objects.isNull(firstPage.lastKey)) {
+            return firstPage.entries;
+        }
+        final var boundaries = new ArrayList<String>();
+        boundaries.add(firstPage.lastKey);
+        boundaries.addAll(boundaries(prefix, firstPage.lastKey, parallelism - 1));
+        boundaries.add(null);
+        final var ranges = listRanges(lister, boundaries);
+        // a directory spanning several ranges is listed by each of them
+        final var entries = new LinkedHashMap<String, Long>();
+        firstPage.entries.forEach(entry -> entries.put(entry.v1(), entry.v2()));
+        for (final var range : ranges) {
+            range.forEach(entry -> entries.putIfAbsent(entry.v1(), entry.v2()));
+        }
+        final var result = new ArrayList<Tuple<String, Long>>(entries.size());
+        entries.forEach((key, size) -> result.add(Tuple.tuple(key, size)));
+        return result;
+    }
+
+    static List<String> boundaries(final String prefix, final String lastKey, final int count) {
+        for (var depth = prefix.length(); depth < lastKey.length(); depth++) {
+            final var rank = KEY_ALPHABET.indexOf(lastKey.charAt(depth));
+            if (rank >= 0 && rank < KEY_ALPHABET.length() / 2) {
+                final var candidates = KEY_ALPHABET.substring(rank + 1);
+                final var boundaries = new LinkedHashSet<String>();
+                for (var i = 1; i <= count; i++) {
+                    boundaries.add(
+                            lastKey.substring(0, depth) + candidates.charAt(i * candidates.length() / (count + 1)));
+                }
+                return new ArrayList<>(boundaries);
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Calls the function for every item concurrently, e.g. to list a directory in every bucket a repository
+     * is striped across. Up to {@link #MAX_FAN_OUT} items are handled at once, the caller handles items as well.
+     *
+     * @return results in the order of the items
+     */
+    public <T, R> List<R> fanOut(final List<T> items,
+                                 final CheckedFunction<T, R, IOException> function) throws IOException {
+        return run(items, Math.min(items.size(), MAX_FAN_OUT), function);
+    }
+
+    private List<List<Tuple<String, Long>>> listRanges(final RangeLister lister,
+                                                        final List<String> boundaries) throws IOException {
+        final var ranges = IntStream.range(0, boundaries.size() - 1).boxed().collect(Collectors.toList());
+        return run(
+                ranges,
+                Math.min(parallelism, ranges.size()),
+                idx -> lister.list(boundaries.get(idx), boundaries.get(idx + 1), false).entries);
+    }
+
+    private <T, R> List<R> run(final List<T> items,
+                               final int width,
+                               final CheckedFunction<T, R, IOException> function) throws IOException {
+        final var results = new ArrayList<R>(Collections.nCopies(items.size(), null));
+        final var next = new AtomicInteger();
+        final var done = new CountDownLatch(items.size());
+        final var failure = new AtomicReference<Exception>();
+        final Runnable worker = () -> {
+            for (var idx = next.getAndIncrement(); idx < items.size(); idx = next.getAndIncrement()) {
+                try {
+                    results.set(idx, function.apply(items.get(idx)));
+                } catch (final IOException | RuntimeException e) {
+                    if (!failure.compareAndSet(null, e)) {
+                        failure.get().addSuppressed(e);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        for (var i = 1; i < width; i++) {
+            executor.execute(worker);
+        }
+        worker.run();
+        try {
+            done.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for listing");
+        }
+        if (failure.get() instanceof IOException) {
+            throw (IOException) failure.get();
+        } else if (Objects.nonNull(failure.get())) {
+            throw (RuntimeException) failure.get();
+        }
+        return results;
+    }
+
+    /**
+     * Lists keys of one range, a page of a listing.
+     */
+    @FunctionalInterface
+    public interface RangeLister {
+
+        /**
+         * Lists keys after {@code startAfter} up to and including {@code endAt}, {@code null} bounds are open.
+         * Only the first page is listed if {@code firstPageOnly} is set.
+         */
+        Page list(String startAfter, String endAt, boolean firstPageOnly) throws IOException;
+
+    }
+
+    public static final class Page {
+
+        private final List<Tuple<String, Long>> entries;
+
+        private final String lastKey;
+
+        /**
+         * @param lastKey the last key of the page if the listing continues after it, {@code null} otherwise
+         */
+        public Page(final List<Tuple<String, Long>> entries, final String lastKey) {
+            this.entries = entries;
+            this.lastKey = lastKey;
+        }
+
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.io;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.aiven.elasticsearch.repositories.jfr.BlobPhasesEvent;
+
+/**
+ * Aggregates per repository how long sampled blob transfers spent in each phase of
+ * {@link CryptoIOProvider}: (de)compression, (de)cryption, waiting for bandwidth and the storage stream.
+ * Each layer of the stream stack is timed inclusively, a phase is the difference between two adjacent layers.
+ * Only a share of blobs is timed since every buffer costs a few clock reads per layer.
+ */
+public class PhaseTimings {
+
+    public static final PhaseTimings DISABLED = new PhaseTimings("", 0.0);
+
+    static final int COMPRESSION = 0;
+
+    static final int ENCRYPTION = 1;
+
+    static final int THROTTLING = 2;
+
+    static final int NETWORK = 3;
+
+    private static final String[] WRITE_PHASES = {"compress", "encrypt", "throttle", "network"};
+
+    private static final String[] READ_PHASES = {"decompress", "decrypt", "throttle", "network"};
+
+    private final String repository;
+
+    private final double sampleRatio;
+
+    private final Totals writes = new Totals("write", WRITE_PHASES);
+
+    private final Totals reads = new Totals("read", READ_PHASES);
+
+    public PhaseTimings(final String repository, final double sampleRatio) {
+        this.repository = repository;
+        this.sampleRatio = sampleRatio;
+    }
+
+    Sample sampleWrite() {
+        return sample(writes);
+    }
+
+    Sample sampleRead() {
+        return sample(reads);
+    }
+
+    private Sample sample(final Totals totals) {
+        if (sampleRatio <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRatio) {
+            return Sample.NONE;
+        }
+        return new Sample(totals);
+    }
+
+    public Map<String, Long> stats() {
+        if (sampleRatio <= 0) {
+            return Map.of();
+        }
+        final var stats = new HashMap<String, Long>();
+        writes.addTo(stats);
+        reads.addTo(stats);
+        return stats;
+    }
+
+    private final class Totals {
+
+        private final String operation;
+
+        private final String[] phases;
+
+        private final LongAdder samples = new LongAdder();
+
+        private final LongAdder[] nanos = new LongAdder[NETWORK + 1];
+
+        private Totals(final String operation, final String[] phases) {
+            this.operation = operation;
+            this.phases = phases;
+            for (var i = 0; i < nanos.length; i++) {
+                nanos[i] = new LongAdder();
+            }
+        }
+
+        private void add(final long[] layerNanos, final BlobPhasesEvent event) {
+            samples.increment();
+            for (var i = 0; i < nanos.length; i++) {
+                nanos[i].add(phaseNanos(layerNanos, i));
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.repository = repository;
+                event.operation = operation;
+                event.compression = phaseNanos(layerNanos, COMPRESSION);
+                event.encryption = phaseNanos(layerNanos, ENCRYPTION);
+                event.throttling = phaseNanos(layerNanos, THROTTLING);
+                event.network = phaseNanos(layerNanos, NETWORK);
+                event.commit();
+            }
+        }
+
+        private long phaseNanos(final long[] layerNanos, final int phase) {
+            return phase == NETWORK
+                    ? layerNanos[phase]
+                    : Math.max(0L, layerNanos[phase] - layerNanos[phase + 1]);
+        }
+
+        private void addTo(final Map<String, Long> stats) {
+            final var prefix = "phase_timing." + operation + ".";
+            stats.put(prefix + "samples", samples.sum());
+            for (var i = 0; i < nanos.length; i++) {
+                stats.put(prefix + phases[i] + "_micros", TimeUnit.NANOSECONDS.toMicros(nanos[i].sum()));
+            }
+        }
+
+    }
+
+    /**
+     * Timings of one blob transfer, it's used by a single thread at a time.
+     */
+    static class Sample {
+
+        static final Sample NONE = new Sample(null);
+
+        private final Totals totals;
+
+        private final BlobPhasesEvent event;
+
+        private final long[] layerNanos = new long[NETWORK + 1];
+
+        private boolean finished;
+
+        private Sample(final Totals totals) {
+            this.totals = totals;
+            this.event = new BlobPhasesEvent();
+            event.begin();
+        }
+
+        OutputStream time(final OutputStream out, final int layer) {
+            if (this == NONE) {
+                return out;
+            }
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(final int b) throws IOException {
+                    final var start = System.nanoTime();
+                    try {
+                        out.write(b);
+                    } finally {
+                        layerNanos[layer] += System.nanoTime() - start;
+                    }
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    final var start = System.nanoTime();
+                    try {
+                        out.write(b, off, len);
+                    } finally {
+                        layerNanos[layer] += System.nanoTime() - start;
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    final var start = System.nanoTime();
+                    try {
+                        out.flush();
+                    } finally {
+                        layerNanos[layer] += System.nanoTime() - start;
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    final var start = System.nanoTime();
+                    try {
+                        out.close();
+                    } finally {
+                        layerNanos[layer] += System.nanoTime() - start;
+                        if (layer == COMPRESSION) {
+                            finish();
+                        }
+                    }
+                }
+            };
+        }
+
+        InputStream time(final InputStream in, final int layer) {
+            if (this == NONE) {
+                return in;
+            }
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    final var start = System.nanoTime();
+                    try {
+                        return in.read();
+                    } finally {
+                        layerNanos[layer] += System.nanoTime() - start;
+                    }
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    final var start = System.nanoTime();
+                    try {
+                        return in.read(b, off, len);
+                    } finally {
+                        layerNanos[layer] += System.nanoTime() - start;
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        in.close();
+                    } finally {
+                        if (layer == COMPRESSION) {
+                            finish();
+                        }
+                    }
+                }
+            };
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                totals.add(layerNanos, event);
+            }
+        }
+
+    }
+
+}
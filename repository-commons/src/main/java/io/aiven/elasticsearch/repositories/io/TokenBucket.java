@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket of bytes. Callers may go into debt, e.g. a write bigger than the burst size,
+ * the debt is paid by the callers which come next. A bucket without a rate never waits
+ * but still measures the rate, buckets can be chained to apply e.g. a per-repository and a node-wide limit.
+ */
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    // the measured rate is an exponential moving average over about a second
+    private static final double RATE_WINDOW_NANOS = NANOS_PER_SECOND;
+
+    private final long bytesPerSecond;
+
+    private final long burstSize;
+
+    private final TokenBucket parent;
+
+    private final LongSupplier nanoClock;
+
+    private double tokens;
+
+    private long refilledAt;
+
+    private double measuredRate;
+
+    private long measuredAt;
+
+    public TokenBucket(final long bytesPerSecond, final long burstSize, final TokenBucket parent) {
+        this(bytesPerSecond, burstSize, parent, System::nanoTime);
+    }
+
+    TokenBucket(final long bytesPerSecond,
+                final long burstSize,
+                final TokenBucket parent,
+                final LongSupplier nanoClock) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.burstSize = burstSize > 0 ? burstSize : bytesPerSecond;
+        this.parent = parent;
+        this.nanoClock = nanoClock;
+        this.tokens = this.burstSize;
+        this.refilledAt = nanoClock.getAsLong();
+        this.measuredAt = refilledAt;
+    }
+
+    /**
+     * Takes the bytes from this bucket and its parents, waits if any of them is in debt.
+     */
+    public void acquire(final long bytes) throws IOException {
+        var waitNanos = 0L;
+        for (var bucket = this; Objects.nonNull(bucket); bucket = bucket.parent) {
+            waitNanos = Math.max(waitNanos, bucket.reserve(bytes));
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+            }
+        }
+    }
+
+    /**
+     * @return the number of nanoseconds the caller has to wait for the bytes
+     */
+    synchronized long reserve(final long bytes) {
+        final var now = nanoClock.getAsLong();
+        decayMeasuredRate(now);
+        measuredRate += bytes * NANOS_PER_SECOND / RATE_WINDOW_NANOS;
+        if (bytesPerSecond <= 0) {
+            return 0L;
+        }
+        tokens = Math.min(burstSize, tokens + (now - refilledAt) * bytesPerSecond / NANOS_PER_SECOND);
+        refilledAt = now;
+        tokens -= bytes;
+        return tokens >= 0 ? 0L : (long) (-tokens * NANOS_PER_SECOND / bytesPerSecond);
+    }
+
+    /**
+     * The rate of bytes which passed the bucket recently, in bytes per second.
+     */
+    public synchronized long rate() {
+        decayMeasuredRate(nanoClock.getAsLong());
+        return (long) measuredRate;
+    }
+
+    private void decayMeasuredRate(final long now) {
+        measuredRate *= Math.exp(-(now - measuredAt) / RATE_WINDOW_NANOS);
+        measuredAt = now;
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+
+/**
+ * Base of the repository I/O events, the duration of an event is the duration of the operation.
+ */
+@Category({"Aiven", "Repository"})
+public abstract class BlobEvent extends jdk.jfr.Event {
+
+    @Label("Backend")
+    public String backend;
+
+    @Label("Path")
+    public String path;
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Where the time of one sampled blob transfer went: compression, encryption,
+ * waiting for bandwidth and the storage stream itself.
+ */
+@Name("io.aiven.repositories.BlobPhases")
+@Label("Blob Transfer Phases")
+@Category({"Aiven", "Repository"})
+@Description("Time spent in each phase of a sampled blob upload or download")
+public class BlobPhasesEvent extends jdk.jfr.Event {
+
+    @Label("Repository")
+    public String repository;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Compression")
+    @Timespan
+    public long compression;
+
+    @Label("Encryption")
+    @Timespan
+    public long encryption;
+
+    @Label("Throttling")
+    @Timespan
+    public long throttling;
+
+    @Label("Network")
+    @Timespan
+    public long network;
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.layout;
+
+import java.nio.charset.StandardCharsets;
+
+import org.opensearch.common.hash.MurmurHash3;
+
+/**
+ * Places blob names deterministically, the same name always lands in the same slot on every node.
+ */
+final class BlobNameHash {
+
+    private static final long SEED = 0L;
+
+    private BlobNameHash() {
+    }
+
+    static int slot(final String blobName, final int slots) {
+        final var bytes = blobName.getBytes(StandardCharsets.UTF_8);
+        final var hash = MurmurHash3.hash128(bytes, 0, bytes.length, SEED, new MurmurHash3.Hash128());
+        return (int) Math.floorMod(hash.h1, (long) slots);
+    }
+
+}
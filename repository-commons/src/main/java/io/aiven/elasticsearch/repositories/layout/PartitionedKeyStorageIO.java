@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.layout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.opensearch.common.collect.Tuple;
+
+import io.aiven.elasticsearch.repositories.DelegatingStorageIO;
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Stores blobs of the indices directory under a salt derived from the hash of their name,
+ * e.g. {@code indices/3f/<index>/<shard>/<blob>}, which spreads requests of big snapshots across storage partitions.
+ * Blobs are mapped one to one, while listings of a directory list it under every salt at once and merge the results,
+ * enable the blob manifest to answer listings from it instead. Blobs outside the indices directory,
+ * which are few and listed often, stay in place.
+ */
+public class PartitionedKeyStorageIO extends DelegatingStorageIO {
+
+    static final String INDICES_DIRECTORY = "indices/";
+
+    private final String indicesPath;
+
+    private final int partitions;
+
+    private final ParallelListing parallelListing;
+
+    /**
+     * @param parallelListing lists and deletes a directory under several salts at once
+     */
+    public PartitionedKeyStorageIO(final StorageIO delegate,
+                                   final String basePath,
+                                   final int partitions,
+                                   final ParallelListing parallelListing) {
+        super(delegate);
+        this.indicesPath = basePath + INDICES_DIRECTORY;
+        this.partitions = partitions;
+        this.parallelListing = parallelListing;
+    }
+
+    @Override
+    public boolean exists(final String blobName) throws IOException {
+        return delegate.exists(physicalName(blobName));
+    }
+
+    @Override
+    public InputStream read(final String blobName) throws IOException {
+        return delegate.read(physicalName(blobName));
+    }
+
+    @Override
+    public void write(final String blobName,
+                      final InputStream inputStream,
+                      final long blobSize,
+                      final boolean failIfAlreadyExists) throws IOException {
+        delegate.write(physicalName(blobName), inputStream, blobSize, failIfAlreadyExists);
+    }
+
+    @Override
+    public String version(final String blobName) throws IOException {
+        return delegate.version(physicalName(blobName));
+    }
+
+    @Override
+    public InputStream read(final String blobName, final String version) throws IOException {
+        return delegate.read(physicalName(blobName), version);
+    }
+
+    @Override
+    public void replace(final String blobName,
+                        final InputStream inputStream,
+                        final long blobSize,
+                        final String version) throws IOException {
+        delegate.replace(physicalName(blobName), inputStream, blobSize, version);
+    }
+
+    @Override
+    public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+        delegate.copy(physicalName(sourceBlobName), physicalName(targetBlobName));
+    }
+
+    @Override
+    public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
+        if (!isPartitioned(path)) {
+            return delegate.deleteDirectories(path);
+        }
+        var blobs = 0;
+        var bytes = 0L;
+        for (final var deleted : parallelListing.fanOut(physicalPaths(path), delegate::deleteDirectories)) {
+            blobs += deleted.v1();
+            bytes += deleted.v2();
+        }
+        return Tuple.tuple(blobs, bytes);
+    }
+
+    @Override
+    public void deleteFiles(final List<String> blobNames, final boolean ignoreIfNotExists) throws IOException {
+        delegate.deleteFiles(
+                blobNames.stream().map(this::physicalName).collect(Collectors.toList()), ignoreIfNotExists);
+    }
+
+    @Override
+    public List<String> listDirectories(final String path) throws IOException {
+        if (!isPartitioned(path)) {
+            return delegate.listDirectories(path);
+        }
+        final var directories = new LinkedHashSet<String>();
+        parallelListing.fanOut(physicalPaths(path), delegate::listDirectories).forEach(directories::addAll);
+        return new ArrayList<>(directories);
+    }
+
+    @Override
+    public Map<String, Long> listFiles(final String path, final String prefix) throws IOException {
+        if (!isPartitioned(path)) {
+            return delegate.listFiles(path, prefix);
+        }
+        final var files = new HashMap<String, Long>();
+        parallelListing.fanOut(physicalPaths(path), physicalPath -> delegate.listFiles(physicalPath, prefix))
+                .forEach(files::putAll);
+        return files;
+    }
+
+    String physicalName(final String blobName) {
+        if (!isPartitioned(blobName)) {
+            return blobName;
+        }
+        return salted(blobName, BlobNameHash.slot(blobName, partitions));
+    }
+
+    private boolean isPartitioned(final String name) {
+        return name.startsWith(indicesPath);
+    }
+
+    private List<String> physicalPaths(final String path) {
+        final var physicalPaths = new ArrayList<String>(partitions);
+        for (var partition = 0; partition < partitions; partition++) {
+            physicalPaths.add(salted(path, partition));
+        }
+        return physicalPaths;
+    }
+
+    private String salted(final String name, final int partition) {
+        return indicesPath + String.format("%02x/", partition) + name.substring(indicesPath.length());
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.layout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.opensearch.common.collect.Tuple;
+
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Stripes a repository across several buckets, each blob is stored in the bucket picked by the hash of its name.
+ * Listings and directory deletes go to every bucket at once and merge the results. Copies within a bucket stay inside
+ * the storage, copies between buckets stream the blob through the node.
+ */
+public class StripedStorageIO implements StorageIO {
+
+    private final List<StorageIO> stripes;
+
+    private final ParallelListing parallelListing;
+
+    /**
+     * @param parallelListing lists and deletes directories in the stripes at once
+     */
+    public StripedStorageIO(final List<StorageIO> stripes, final ParallelListing parallelListing) {
+        this.stripes = List.copyOf(stripes);
+        this.parallelListing = parallelListing;
+    }
+
+    @Override
+    public boolean exists(final String blobName) throws IOException {
+        return stripe(blobName).exists(blobName);
+    }
+
+    @Override
+    public InputStream read(final String blobName) throws IOException {
+        return stripe(blobName).read(blobName);
+    }
+
+    @Override
+    public void write(final String blobName,
+                      final InputStream inputStream,
+                      final long blobSize,
+                      final boolean failIfAlreadyExists) throws IOException {
+        stripe(blobName).write(blobName, inputStream, blobSize, failIfAlreadyExists);
+    }
+
+    @Override
+    public String version(final String blobName) throws IOException {
+        return stripe(blobName).version(blobName);
+    }
+
+    @Override
+    public InputStream read(final String blobName, final String version) throws IOException {
+        return stripe(blobName).read(blobName, version);
+    }
+
+    @Override
+    public void replace(final String blobName,
+                        final InputStream inputStream,
+                        final long blobSize,
+                        final String version) throws IOException {
+        stripe(blobName).replace(blobName, inputStream, blobSize, version);
+    }
+
+    @Override
+    public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+        final var source = stripe(sourceBlobName);
+        final var target = stripe(targetBlobName);
+        if (source == target) {
+            source.copy(sourceBlobName, targetBlobName);
+            return;
+        }
+        final var parentPath = sourceBlobName.substring(0, sourceBlobName.lastIndexOf('/') + 1);
+        final var blobSize = source.listFiles(parentPath, sourceBlobName.substring(parentPath.length()))
+                .get(sourceBlobName.substring(parentPath.length()));
+        if (Objects.isNull(blobSize)) {
+            throw new NoSuchFileException(sourceBlobName);
+        }
+        try (final var in = source.read(sourceBlobName)) {
+            target.write(targetBlobName, in, blobSize, false);
+        }
+    }
+
+    @Override
+    public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
+        var blobs = 0;
+        var bytes = 0L;
+        for (final var deleted : parallelListing.fanOut(stripes, stripe -> stripe.deleteDirectories(path))) {
+            blobs += deleted.v1();
+            bytes += deleted.v2();
+        }
+        return Tuple.tuple(blobs, bytes);
+    }
+
+    @Override
+    public void deleteFiles(final List<String> blobNames, final boolean ignoreIfNotExists) throws IOException {
+        for (final var e : byStripe(blobNames).entrySet()) {
+            stripes.get(e.getKey()).deleteFiles(e.getValue(), ignoreIfNotExists);
+        }
+    }
+
+    @Override
+    public List<String> listDirectories(final String path) throws IOException {
+        final var directories = new LinkedHashSet<String>();
+        parallelListing.fanOut(stripes, stripe -> stripe.listDirectories(path)).forEach(directories::addAll);
+        return new ArrayList<>(directories);
+    }
+
+    @Override
+    public Map<String, Long> listFiles(final String path, final String prefix) throws IOException {
+        final var files = new HashMap<String, Long>();
+        parallelListing.fanOut(stripes, stripe -> stripe.listFiles(path, prefix)).forEach(files::putAll);
+        return files;
+    }
+
+    @Override
+    public boolean isThrottlingError(final Throwable error) {
+        return stripes.stream().anyMatch(stripe -> stripe.isThrottlingError(error));
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        final var stats = new HashMap<String, Long>();
+        for (final var stripe : stripes) {
+            stripe.stats().forEach((key, value) -> stats.merge(key, value, Long::sum));
+        }
+        return stats;
+    }
+
+    private StorageIO stripe(final String blobName) {
+        return stripes.get(BlobNameHash.slot(blobName, stripes.size()));
+    }
+
+    private Map<Integer, List<String>> byStripe(final Collection<String> blobNames) {
+        return blobNames.stream()
+                .collect(Collectors.groupingBy(blobName -> BlobNameHash.slot(blobName, stripes.size())));
+    }
+
+}
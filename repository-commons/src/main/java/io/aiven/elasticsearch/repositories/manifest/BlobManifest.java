@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.manifest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import io.aiven.elasticsearch.repositories.manifest.ManifestLog.Event;
+
+/**
+ * In-memory tree of the blobs in the manifest, names and paths are relative to the manifest root
+ * and paths end with a slash. Not thread-safe.
+ */
+final class BlobManifest {
+
+    private final Directory root = new Directory();
+
+    void apply(final Event event) {
+        switch (event.type) {
+            case ADDED:
+                add(event.name, event.size);
+                break;
+            case REMOVED:
+                remove(root, event.name.split("/"), 0, false);
+                break;
+            case REMOVED_DIRECTORY:
+                if (event.name.isEmpty()) {
+                    root.files.clear();
+                    root.children.clear();
+                } else {
+                    remove(root, event.name.split("/"), 0, true);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type " + event.type);
+        }
+    }
+
+    private void add(final String name, final long size) {
+        final var parts = name.split("/");
+        var directory = root;
+        for (var i = 0; i < parts.length - 1; i++) {
+            directory = directory.children.computeIfAbsent(parts[i], n -> new Directory());
+        }
+        directory.files.put(parts[parts.length - 1], size);
+    }
+
+    /**
+     * Removes a blob or a directory, directories left empty are removed as well.
+     */
+    private static boolean remove(final Directory directory,
+                                  final String[] parts,
+                                  final int index,
+                                  final boolean isDirectory) {
+        final var part = parts[index];
+        if (index < parts.length - 1) {
+            final var child = directory.children.get(part);
+            if (Objects.nonNull(child) && remove(child, parts, index + 1, isDirectory)) {
+                directory.children.remove(part);
+            }
+        } else if (isDirectory) {
+            directory.children.remove(part);
+        } else {
+            directory.files.remove(part);
+        }
+        return directory.files.isEmpty() && directory.children.isEmpty();
+    }
+
+    Long size(final String name) {
+        final var path = name.substring(0, name.lastIndexOf('/') + 1);
+        final var directory = directory(path);
+        return Objects.nonNull(directory) ? directory.files.get(name.substring(path.length())) : null;
+    }
+
+    Map<String, Long> files(final String path, final String prefix) {
+        final var directory = directory(path);
+        if (Objects.isNull(directory)) {
+            return Map.of();
+        }
+        return new HashMap<>(directory.files.subMap(prefix, prefix + Character.MAX_VALUE));
+    }
+
+    List<String> directories(final String path) {
+        final var directory = directory(path);
+        return Objects.nonNull(directory) ? new ArrayList<>(directory.children.keySet()) : List.of();
+    }
+
+    /**
+     * Returns all blobs under the path by their names relative to the manifest root.
+     */
+    Map<String, Long> filesUnder(final String path) {
+        final var files = new HashMap<String, Long>();
+        final var directory = directory(path);
+        if (Objects.nonNull(directory)) {
+            collect(path, directory, files);
+        }
+        return files;
+    }
+
+    /**
+     * Returns events adding all blobs of the manifest.
+     */
+    List<Event> events() {
+        final var events = new ArrayList<Event>();
+        filesUnder("").forEach((name, size) -> events.add(Event.added(name, size)));
+        return events;
+    }
+
+    private static void collect(final String path, final Directory directory, final Map<String, Long> files) {
+        directory.files.forEach((name, size) -> files.put(path + name, size));
+        directory.children.forEach((name, child) -> collect(path + name + "/", child, files));
+    }
+
+    private Directory directory(final String path) {
+        var directory = root;
+        if (path.isEmpty()) {
+            return directory;
+        }
+        for (final var part : path.split("/")) {
+            directory = directory.children.get(part);
+            if (Objects.isNull(directory)) {
+                return null;
+            }
+        }
+        return directory;
+    }
+
+    private static final class Directory {
+
+        private final TreeMap<String, Long> files = new TreeMap<>();
+
+        private final Map<String, Directory> children = new TreeMap<>();
+
+    }
+
+}
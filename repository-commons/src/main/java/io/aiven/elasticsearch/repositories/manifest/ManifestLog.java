@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.manifest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A blob of the manifest, either a log of changes done by a node or a compacted manifest with all its blobs.
+ */
+final class ManifestLog {
+
+    static final int FORMAT_VERSION = 1;
+
+    enum EventType {
+        ADDED, REMOVED, REMOVED_DIRECTORY
+    }
+
+    /**
+     * Time of the full listing the manifest has been built from, 0 for logs.
+     */
+    final long reconciledAt;
+
+    final List<Event> events;
+
+    ManifestLog(final long reconciledAt, final List<Event> events) {
+        this.reconciledAt = reconciledAt;
+        this.events = events;
+    }
+
+    byte[] serialize() throws IOException {
+        final var bytes = new ByteArrayOutputStream();
+        try (final var out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(reconciledAt);
+            out.writeInt(events.size());
+            for (final var event : events) {
+                out.writeByte(event.type.ordinal());
+                out.writeUTF(event.name);
+                out.writeLong(event.size);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static ManifestLog read(final InputStream in) throws IOException {
+        final var dataIn = new DataInputStream(in);
+        final var version = dataIn.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported blob manifest format version " + version);
+        }
+        final var reconciledAt = dataIn.readLong();
+        final var count = dataIn.readInt();
+        final var events = new ArrayList<Event>(count);
+        for (var i = 0; i < count; i++) {
+            final var type = EventType.values()[dataIn.readUnsignedByte()];
+            events.add(new Event(type, dataIn.readUTF(), dataIn.readLong()));
+        }
+        return new ManifestLog(reconciledAt, events);
+    }
+
+    /**
+     * A change of a blob or of a directory with all its blobs, names are relative to the manifest root.
+     */
+    static final class Event {
+
+        final EventType type;
+
+        final String name;
+
+        final long size;
+
+        private Event(final EventType type, final String name, final long size) {
+            this.type = type;
+            this.name = name;
+            this.size = size;
+        }
+
+        static Event added(final String name, final long size) {
+            return new Event(EventType.ADDED, name, size);
+        }
+
+        static Event removed(final String name) {
+            return new Event(EventType.REMOVED, name, 0L);
+        }
+
+        static Event removedDirectory(final String path) {
+            return new Event(EventType.REMOVED_DIRECTORY, path, 0L);
+        }
+
+    }
+
+}
@@ -0,0 +1,578 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.manifest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import org.opensearch.common.collect.Tuple;
+import org.opensearch.common.unit.TimeValue;
+
+import io.aiven.elasticsearch.repositories.DelegatingStorageIO;
+import io.aiven.elasticsearch.repositories.manifest.ManifestLog.Event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Answers listings of the indices directory from a manifest of its blobs kept in the repository
+ * under the manifest directory. Every node appends its changes to the manifest as log blobs,
+ * changes of data blobs are batched until any other blob is written, e.g. the snap-*.dat blob completing
+ * a shard snapshot. Logs are numbered in sequence: a node lists the manifest directory and creates the log
+ * following the last one, failing if another node has created it in the meantime, so logs are read back
+ * in the order they have been written whatever the clocks of the nodes. Logs written by other nodes are read
+ * every refresh interval. The manifest is compacted into a single blob once there are too many logs
+ * and rebuilt by a full listing every reconciliation interval, which picks up changes it has missed. Both run
+ * in {@link #maintain()}, listings are answered from the last manifest meanwhile and from the storage until
+ * the manifest has been built once. Sizes are the sizes blobs have been written with: a full listing only
+ * knows the stored sizes, so the rebuilt manifest keeps the sizes it knew and takes the stored size
+ * only for blobs it has missed.
+ */
+public class ManifestStorageIO extends DelegatingStorageIO {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ManifestStorageIO.class);
+
+    public static final String MANIFEST_DIRECTORY = "manifest/";
+
+    static final String INDICES_DIRECTORY = "indices/";
+
+    static final String LOG_PREFIX = "log-";
+
+    static final String COMPACTED_PREFIX = "compacted-";
+
+    private static final String DATA_BLOB_PREFIX = "__";
+
+    private static final int MAX_PENDING_EVENTS = 1_000;
+
+    static final int MAX_LOGS = 100;
+
+    private static final int DELETE_BATCH_SIZE = 1_000;
+
+    private static final int MAX_REFRESH_ATTEMPTS = 3;
+
+    private static final int MAX_LOG_ATTEMPTS = 10;
+
+    private final String root;
+
+    private final String manifestPath;
+
+    private final long refreshIntervalMillis;
+
+    private final long reconciliationIntervalMillis;
+
+    private final LongSupplier clock;
+
+    private final String writerId = UUID.randomUUID().toString();
+
+    /**
+     * Guards reading the manifest blobs and writing logs.
+     */
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    /**
+     * Guards the compaction and the reconciliation.
+     */
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+
+    private long refreshedAt;
+
+    // the fields below are guarded by this
+
+    private BlobManifest manifest;
+
+    private long reconciledAt;
+
+    /**
+     * Sequence number of the last manifest blob read or written.
+     */
+    private long sequence;
+
+    private String loadedCompacted;
+
+    private Set<String> loadedLogs = new HashSet<>();
+
+    /**
+     * Changes not written as a log yet, including the ones being written.
+     */
+    private List<Event> pendingEvents = new ArrayList<>();
+
+    /**
+     * Changes recorded while the manifest is being rebuilt, they are applied to the rebuilt manifest.
+     */
+    private List<Event> reconcilingEvents;
+
+    private long compactions;
+
+    private final LongAdder listings = new LongAdder();
+
+    private final LongAdder reconciliations = new LongAdder();
+
+    public ManifestStorageIO(final StorageIO delegate,
+                             final String basePath,
+                             final TimeValue refreshInterval,
+                             final TimeValue reconciliationInterval) {
+        this(delegate, basePath, refreshInterval, reconciliationInterval, System::currentTimeMillis);
+    }
+
+    ManifestStorageIO(final StorageIO delegate,
+                      final String basePath,
+                      final TimeValue refreshInterval,
+                      final TimeValue reconciliationInterval,
+                      final LongSupplier clock) {
+        super(delegate);
+        this.root = basePath + INDICES_DIRECTORY;
+        this.manifestPath = basePath + MANIFEST_DIRECTORY;
+        this.refreshIntervalMillis = refreshInterval.millis();
+        this.reconciliationIntervalMillis = reconciliationInterval.millis();
+        this.clock = clock;
+    }
+
+    @Override
+    public void write(final String blobName,
+                      final InputStream inputStream,
+                      final long blobSize,
+                      final boolean failIfAlreadyExists) throws IOException {
+        super.write(blobName, inputStream, blobSize, failIfAlreadyExists);
+        if (blobName.startsWith(root)) {
+            record(Event.added(blobName.substring(root.length()), blobSize), !isDataBlob(blobName));
+        }
+    }
+
+    @Override
+    public void replace(final String blobName,
+                        final InputStream inputStream,
+                        final long blobSize,
+                        final String version) throws IOException {
+        super.replace(blobName, inputStream, blobSize, version);
+        if (blobName.startsWith(root)) {
+            record(Event.added(blobName.substring(root.length()), blobSize), !isDataBlob(blobName));
+        }
+    }
+
+    @Override
+    public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+        super.copy(sourceBlobName, targetBlobName);
+        if (targetBlobName.startsWith(root)) {
+            record(Event.added(targetBlobName.substring(root.length()), knownSize(sourceBlobName)),
+                    !isDataBlob(targetBlobName));
+        }
+    }
+
+    private synchronized long knownSize(final String blobName) {
+        if (!blobName.startsWith(root) || Objects.isNull(manifest)) {
+            return 0L;
+        }
+        final var size = manifest.size(blobName.substring(root.length()));
+        return Objects.nonNull(size) ? size : 0L;
+    }
+
+    @Override
+    public void deleteFiles(final List<String> blobNames, final boolean ignoreIfNotExists) throws IOException {
+        super.deleteFiles(blobNames, ignoreIfNotExists);
+        final var events =
+                blobNames.stream()
+                        .filter(blobName -> blobName.startsWith(root))
+                        .map(blobName -> Event.removed(blobName.substring(root.length())))
+                        .collect(Collectors.toList());
+        if (!events.isEmpty()) {
+            record(events, true);
+        }
+    }
+
+    /**
+     * Deletes the blobs known to the manifest in batches instead of listing the directory.
+     * Blobs the manifest has missed are left behind, they show up in listings after the next reconciliation.
+     */
+    @Override
+    public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
+        if (!path.startsWith(root)) {
+            return super.deleteDirectories(path);
+        }
+        final var relativePath = path.substring(root.length());
+        final Map<String, Long> files;
+        synchronized (this) {
+            files = isAvailable() ? manifest.filesUnder(relativePath) : null;
+        }
+        final Tuple<Integer, Long> result;
+        if (Objects.isNull(files)) {
+            result = super.deleteDirectories(path);
+        } else {
+            final var blobNames = files.keySet().stream().map(name -> root + name).collect(Collectors.toList());
+            for (var i = 0; i < blobNames.size(); i += DELETE_BATCH_SIZE) {
+                super.deleteFiles(blobNames.subList(i, Math.min(blobNames.size(), i + DELETE_BATCH_SIZE)), true);
+            }
+            result = Tuple.tuple(files.size(), files.values().stream().mapToLong(Long::longValue).sum());
+        }
+        record(Event.removedDirectory(relativePath), true);
+        return result;
+    }
+
+    @Override
+    public List<String> listDirectories(final String path) throws IOException {
+        if (path.startsWith(root) && refreshManifest()) {
+            synchronized (this) {
+                listings.increment();
+                return manifest.directories(path.substring(root.length()));
+            }
+        }
+        return super.listDirectories(path);
+    }
+
+    @Override
+    public Map<String, Long> listFiles(final String path, final String prefix) throws IOException {
+        if (path.startsWith(root) && refreshManifest()) {
+            synchronized (this) {
+                listings.increment();
+                return manifest.files(path.substring(root.length()), prefix);
+            }
+        }
+        return super.listFiles(path, prefix);
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        final var stats = new HashMap<>(super.stats());
+        stats.put("manifest.listings", listings.sum());
+        stats.put("manifest.reconciliations", reconciliations.sum());
+        return stats;
+    }
+
+    /**
+     * Refreshes the manifest, then compacts or rebuilds it when due, unless another thread is already doing it.
+     */
+    @Override
+    public void maintain() throws IOException {
+        if (maintenanceLock.tryLock()) {
+            try {
+                final var now = clock.getAsLong();
+                refreshLock.lock();
+                try {
+                    refresh();
+                    refreshedAt = now;
+                } finally {
+                    refreshLock.unlock();
+                }
+                final long lastReconciledAt;
+                final int logs;
+                synchronized (this) {
+                    lastReconciledAt = reconciledAt;
+                    logs = loadedLogs.size();
+                }
+                if (lastReconciledAt == 0L || now - lastReconciledAt >= reconciliationIntervalMillis) {
+                    reconcile(now);
+                } else if (logs > MAX_LOGS) {
+                    writeCompacted(lastReconciledAt);
+                }
+            } finally {
+                maintenanceLock.unlock();
+            }
+        }
+        super.maintain();
+    }
+
+    private void record(final Event event, final boolean flush) throws IOException {
+        record(List.of(event), flush);
+    }
+
+    private void record(final List<Event> events, final boolean flush) throws IOException {
+        final boolean full;
+        synchronized (this) {
+            if (Objects.nonNull(manifest)) {
+                events.forEach(manifest::apply);
+            }
+            if (Objects.nonNull(reconcilingEvents)) {
+                reconcilingEvents.addAll(events);
+            }
+            pendingEvents.addAll(events);
+            full = pendingEvents.size() >= MAX_PENDING_EVENTS;
+        }
+        if (flush || full) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the changes recorded by this node as the next log, they are kept for the next attempt if it fails.
+     */
+    void flush() throws IOException {
+        refreshLock.lock();
+        try {
+            final List<Event> events;
+            synchronized (this) {
+                if (pendingEvents.isEmpty()) {
+                    return;
+                }
+                events = List.copyOf(pendingEvents);
+            }
+            writeLog(new ManifestLog(0L, events).serialize());
+            synchronized (this) {
+                // changes are only ever appended meanwhile
+                pendingEvents.subList(0, events.size()).clear();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Creates the log following the last manifest blob. The logs another node has created
+     * in the meantime are read before the next sequence number is tried.
+     */
+    private void writeLog(final byte[] content) throws IOException {
+        for (var attempt = 1; ; attempt++) {
+            refresh();
+            final long logSequence;
+            synchronized (this) {
+                logSequence = sequence + 1;
+            }
+            final var logName = LOG_PREFIX + String.format("%019d", logSequence);
+            try {
+                super.write(manifestPath + logName, new ByteArrayInputStream(content), content.length, true);
+            } catch (final FileAlreadyExistsException e) {
+                if (attempt >= MAX_LOG_ATTEMPTS) {
+                    throw e;
+                }
+                LOGGER.debug("Manifest log {} has been written by another node", logName);
+                continue;
+            }
+            synchronized (this) {
+                loadedLogs.add(logName);
+                sequence = Math.max(sequence, logSequence);
+            }
+            return;
+        }
+    }
+
+    private synchronized boolean isAvailable() {
+        return Objects.nonNull(manifest) && reconciledAt > 0;
+    }
+
+    /**
+     * Reads the changes of other nodes when due, unless another thread is already reading or writing the manifest.
+     *
+     * @return whether the manifest is available for listings
+     */
+    private boolean refreshManifest() throws IOException {
+        if (refreshLock.tryLock()) {
+            try {
+                final var now = clock.getAsLong();
+                if (!isAvailable() || now - refreshedAt >= refreshIntervalMillis) {
+                    refresh();
+                    refreshedAt = now;
+                }
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+        return isAvailable();
+    }
+
+    /**
+     * Reads manifest blobs written since the last refresh, the manifest is read again from scratch
+     * if it has been compacted or rebuilt in the meantime. Manifest blobs are listed again
+     * if one of them is deleted by another node between the listing and its read.
+     */
+    private void refresh() throws IOException {
+        for (var attempt = 1; ; attempt++) {
+            try {
+                refreshFrom(super.listFiles(manifestPath, "").keySet());
+                return;
+            } catch (final NoSuchFileException e) {
+                if (attempt >= MAX_REFRESH_ATTEMPTS) {
+                    throw e;
+                }
+                LOGGER.debug("Manifest blob {} has been compacted in the meantime", e.getFile());
+            }
+        }
+    }
+
+    private void refreshFrom(final Set<String> files) throws IOException {
+        // the last compacted manifest contains the logs up to its sequence number
+        final var compacted =
+                files.stream()
+                        .filter(name -> name.startsWith(COMPACTED_PREFIX))
+                        .max(Comparator.comparingLong(ManifestStorageIO::sequence)
+                                .thenComparing(Comparator.naturalOrder()));
+        final var compactedSequence = compacted.map(ManifestStorageIO::sequence).orElse(0L);
+        final boolean reload;
+        final List<String> toLoad = new ArrayList<>();
+        synchronized (this) {
+            reload = Objects.isNull(manifest) || !Objects.equals(compacted.orElse(null), loadedCompacted);
+            if (reload) {
+                compacted.ifPresent(toLoad::add);
+            }
+            files.stream()
+                    .filter(name -> name.startsWith(LOG_PREFIX) && sequence(name) > compactedSequence)
+                    .filter(name -> reload || !loadedLogs.contains(name))
+                    .sorted(Comparator.comparingLong(ManifestStorageIO::sequence))
+                    .forEach(toLoad::add);
+        }
+        final var logs = new ArrayList<ManifestLog>();
+        for (final var name : toLoad) {
+            try (final var in = super.read(manifestPath + name)) {
+                logs.add(ManifestLog.read(in));
+            }
+        }
+        synchronized (this) {
+            if (reload) {
+                manifest = new BlobManifest();
+                reconciledAt = 0L;
+                loadedCompacted = compacted.orElse(null);
+                loadedLogs = new HashSet<>();
+            }
+            for (final var log : logs) {
+                log.events.forEach(manifest::apply);
+                reconciledAt = Math.max(reconciledAt, log.reconciledAt);
+            }
+            // changes of this node come after the logs it has seen
+            pendingEvents.forEach(manifest::apply);
+            for (final var name : toLoad) {
+                sequence = Math.max(sequence, sequence(name));
+                if (name.startsWith(LOG_PREFIX)) {
+                    loadedLogs.add(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the manifest from a full listing and replaces all manifest blobs existing before.
+     */
+    private void reconcile(final long now) throws IOException {
+        LOGGER.info("Rebuild blob manifest of {}", root);
+        final var startNanos = System.nanoTime();
+        final var replaced = super.listFiles(manifestPath, "").keySet();
+        synchronized (this) {
+            reconcilingEvents = new ArrayList<>();
+        }
+        final var rebuilt = new BlobManifest();
+        try {
+            scan("", rebuilt);
+        } catch (final IOException | RuntimeException e) {
+            synchronized (this) {
+                reconcilingEvents = null;
+            }
+            throw e;
+        }
+        final var rebuiltSequence = replaced.stream().mapToLong(ManifestStorageIO::sequence).max().orElse(0L);
+        final var compactedName = compactedName(rebuiltSequence);
+        final byte[] content;
+        synchronized (this) {
+            if (Objects.nonNull(manifest)) {
+                rebuilt.filesUnder("").keySet().forEach(name -> {
+                    final var knownSize = manifest.size(name);
+                    if (Objects.nonNull(knownSize)) {
+                        rebuilt.apply(Event.added(name, knownSize));
+                    }
+                });
+            }
+            reconcilingEvents.forEach(rebuilt::apply);
+            reconcilingEvents = null;
+            content = new ManifestLog(now, rebuilt.events()).serialize();
+        }
+        super.write(manifestPath + compactedName, new ByteArrayInputStream(content), content.length, true);
+        synchronized (this) {
+            // logs written since the listing are read again on top of the rebuilt manifest
+            manifest = rebuilt;
+            reconciledAt = now;
+            loadedCompacted = compactedName;
+            loadedLogs = new HashSet<>();
+            pendingEvents.forEach(manifest::apply);
+        }
+        deleteManifestFiles(replaced);
+        reconciliations.increment();
+        LOGGER.info("Blob manifest of {} has been rebuilt in {}",
+                root, TimeValue.timeValueNanos(System.nanoTime() - startNanos));
+    }
+
+    private void scan(final String path, final BlobManifest rebuilt) throws IOException {
+        for (final var e : super.listFiles(root + path, "").entrySet()) {
+            rebuilt.apply(Event.added(path + e.getKey(), e.getValue()));
+        }
+        for (final var directory : super.listDirectories(root + path)) {
+            scan(path + directory + "/", rebuilt);
+        }
+    }
+
+    /**
+     * Writes the whole manifest as a single blob and deletes the manifest blobs it replaces.
+     */
+    private void writeCompacted(final long manifestReconciledAt) throws IOException {
+        final byte[] content;
+        final Set<String> replaced = new HashSet<>();
+        final String compactedName;
+        synchronized (this) {
+            content = new ManifestLog(manifestReconciledAt, manifest.events()).serialize();
+            replaced.addAll(loadedLogs);
+            if (Objects.nonNull(loadedCompacted)) {
+                replaced.add(loadedCompacted);
+            }
+            compactedName = compactedName(sequence);
+        }
+        super.write(manifestPath + compactedName, new ByteArrayInputStream(content), content.length, true);
+        synchronized (this) {
+            loadedLogs.removeAll(replaced);
+            loadedCompacted = compactedName;
+        }
+        deleteManifestFiles(replaced);
+    }
+
+    private synchronized String compactedName(final long compactedSequence) {
+        compactions++;
+        return String.format("%s%019d-%s-%d", COMPACTED_PREFIX, compactedSequence, writerId, compactions);
+    }
+
+    /**
+     * Sequence number of a manifest blob, the blobs written before sequence numbers have been
+     * introduced are named after the time they have been written at, which is greater than any number used.
+     */
+    private static long sequence(final String name) {
+        final var number = name.substring(name.indexOf('-') + 1);
+        final var end = number.indexOf('-');
+        return Long.parseLong(end < 0 ? number : number.substring(0, end));
+    }
+
+    private void deleteManifestFiles(final Collection<String> names) throws IOException {
+        if (!names.isEmpty()) {
+            super.deleteFiles(names.stream().map(name -> manifestPath + name).collect(Collectors.toList()), true);
+        }
+    }
+
+    private static boolean isDataBlob(final String blobName) {
+        return blobName.substring(blobName.lastIndexOf('/') + 1).startsWith(DATA_BLOB_PREFIX);
+    }
+
+}
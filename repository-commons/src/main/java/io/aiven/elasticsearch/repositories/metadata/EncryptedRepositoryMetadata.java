@@ -18,46 +18,121 @@ package io.aiven.elasticsearch.repositories.metadata;
 
 import javax.crypto.SecretKey;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Objects;
 
+import io.aiven.elasticsearch.repositories.BlobVersionConflictException;
 import io.aiven.elasticsearch.repositories.security.EncryptionKeyProvider;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeys;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
 
 public class EncryptedRepositoryMetadata {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(EncryptedRepositoryMetadata.class);
+
     private final EncryptionKeyProvider encryptionKeyProvider;
 
     private final ObjectMapper objectMapper;
 
     static final int VERSION = 1;
 
+    /**
+     * Several keys, written only once the key has been rotated, so older versions can read the others.
+     */
+    static final int MULTI_KEY_VERSION = 2;
+
     public EncryptedRepositoryMetadata(final EncryptionKeyProvider encryptionKeyProvider) {
         this.encryptionKeyProvider = encryptionKeyProvider;
         this.objectMapper = new ObjectMapper();
     }
 
     public byte[] serialize(final SecretKey encryptionKey) throws IOException {
-        final var encryptedKey =
-            Base64.getEncoder()
-                .encodeToString(encryptionKeyProvider.encryptKey(encryptionKey));
-        return objectMapper.writeValueAsBytes(new EncryptionKeyMetadata(encryptedKey, VERSION));
+        return serialize(EncryptionKeys.of(encryptionKey));
+    }
+
+    public byte[] serialize(final EncryptionKeys encryptionKeys) throws IOException {
+        if (encryptionKeys.keys().size() == 1 && encryptionKeys.currentKeyId() == EncryptionKeys.INITIAL_KEY_ID) {
+            return objectMapper.writeValueAsBytes(
+                    new EncryptionKeyMetadata(encryptKey(encryptionKeys.currentKey()), VERSION));
+        }
+        final var encryptedKeys = new HashMap<Integer, String>();
+        for (final var e : encryptionKeys.keys().entrySet()) {
+            encryptedKeys.put(e.getKey(), encryptKey(e.getValue()));
+        }
+        return objectMapper.writeValueAsBytes(
+                new EncryptionKeyMetadata(null, MULTI_KEY_VERSION, encryptedKeys, encryptionKeys.currentKeyId()));
+    }
+
+    /**
+     * Adds a new key to the keys of the metadata blob and makes it the current one. The blob is replaced only
+     * if it hasn't changed since it has been read, a key rotated concurrently, e.g. by another node,
+     * makes the rotation start over from the keys written by the other rotation.
+     */
+    public EncryptionKeys rotate(final StorageIO storageIO,
+                                 final String blobName,
+                                 final int maxAttempts) throws IOException {
+        for (var attempt = 1; ; attempt++) {
+            final var version = storageIO.version(blobName);
+            final EncryptionKeys rotated;
+            try (final var in = storageIO.read(blobName, version)) {
+                rotated = deserializeKeys(in.readAllBytes()).rotate(encryptionKeyProvider.createKey());
+            }
+            final var metadata = serialize(rotated);
+            try {
+                storageIO.replace(blobName, new ByteArrayInputStream(metadata), metadata.length, version);
+                return rotated;
+            } catch (final BlobVersionConflictException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                LOGGER.info("Keys of {} have been rotated concurrently, rotate again", blobName);
+            }
+        }
     }
 
     public SecretKey deserialize(final byte[] metadata) throws IOException {
+        return deserializeKeys(metadata).currentKey();
+    }
+
+    public EncryptionKeys deserializeKeys(final byte[] metadata) throws IOException {
         final EncryptionKeyMetadata encryptionKeyMetadata;
         try {
             encryptionKeyMetadata = objectMapper.readValue(metadata, EncryptionKeyMetadata.class);
         } catch (final Exception e) {
             throw new IOException("Couldn't read JSON metadata", e);
         }
-        if (encryptionKeyMetadata.version() != VERSION) {
+        if (encryptionKeyMetadata.version() == VERSION) {
+            return EncryptionKeys.of(decryptKey(encryptionKeyMetadata.key()));
+        }
+        if (encryptionKeyMetadata.version() != MULTI_KEY_VERSION) {
             throw new IOException("Unsupported metadata version");
         }
-        final var encryptedKey =
-            Base64.getDecoder().decode(encryptionKeyMetadata.key());
-        return encryptionKeyProvider.decryptKey(encryptedKey);
+        if (Objects.isNull(encryptionKeyMetadata.keys())
+                || Objects.isNull(encryptionKeyMetadata.currentKeyId())
+                || !encryptionKeyMetadata.keys().containsKey(encryptionKeyMetadata.currentKeyId())) {
+            throw new IOException("Couldn't find the current key in metadata");
+        }
+        final var keys = new HashMap<Integer, SecretKey>();
+        for (final var e : encryptionKeyMetadata.keys().entrySet()) {
+            keys.put(e.getKey(), decryptKey(e.getValue()));
+        }
+        return new EncryptionKeys(keys, encryptionKeyMetadata.currentKeyId());
+    }
+
+    private String encryptKey(final SecretKey key) {
+        return Base64.getEncoder().encodeToString(encryptionKeyProvider.encryptKey(key));
+    }
+
+    private SecretKey decryptKey(final String encryptedKey) {
+        return encryptionKeyProvider.decryptKey(Base64.getDecoder().decode(encryptedKey));
     }
 
 }
@@ -16,22 +16,40 @@
 
 package io.aiven.elasticsearch.repositories.metadata;
 
+import java.util.Map;
+
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+@JsonInclude(JsonInclude.Include.NON_NULL)
 class EncryptionKeyMetadata {
 
     private final String key;
 
     private final int version;
 
+    @JsonProperty("keys")
+    private final Map<Integer, String> keys;
+
+    @JsonProperty("current_key_id")
+    private final Integer currentKeyId;
+
+    public EncryptionKeyMetadata(final String key, final int version) {
+        this(key, version, null, null);
+    }
+
     @JsonCreator
     public EncryptionKeyMetadata(@JsonProperty("key") final String key,
-                                 @JsonProperty("version") final int version) {
+                                 @JsonProperty("version") final int version,
+                                 @JsonProperty("keys") final Map<Integer, String> keys,
+                                 @JsonProperty("current_key_id") final Integer currentKeyId) {
         this.key = key;
         this.version = version;
+        this.keys = keys;
+        this.currentKeyId = currentKeyId;
     }
 
     public String key() {
@@ -42,4 +60,12 @@ class EncryptionKeyMetadata {
         return version;
     }
 
+    public Map<Integer, String> keys() {
+        return keys;
+    }
+
+    public Integer currentKeyId() {
+        return currentKeyId;
+    }
+
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+import org.opensearch.common.CheckedSupplier;
+import org.opensearch.common.collect.Tuple;
+
+import io.aiven.elasticsearch.repositories.DelegatingStorageIO;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Records count, errors, bytes and latency of every storage operation, reported as
+ * {@code storage.<operation>.*} repository stats. A read is timed until its stream is closed
+ * and its bytes are the decrypted bytes consumed by the caller, a write counts the blob size.
+ */
+public class MetricsStorageIO extends DelegatingStorageIO {
+
+    private final OperationMetrics exists = new OperationMetrics("storage.exists");
+
+    private final OperationMetrics read = new OperationMetrics("storage.read");
+
+    private final OperationMetrics write = new OperationMetrics("storage.write");
+
+    private final OperationMetrics copy = new OperationMetrics("storage.copy");
+
+    private final OperationMetrics deleteDirectories = new OperationMetrics("storage.delete_directories");
+
+    private final OperationMetrics deleteFiles = new OperationMetrics("storage.delete_files");
+
+    private final OperationMetrics listDirectories = new OperationMetrics("storage.list_directories");
+
+    private final OperationMetrics listFiles = new OperationMetrics("storage.list_files");
+
+    public MetricsStorageIO(final StorageIO delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public boolean exists(final String blobName) throws IOException {
+        return measured(exists, () -> super.exists(blobName), r -> 0L);
+    }
+
+    @Override
+    public InputStream read(final String blobName) throws IOException {
+        final var startNanos = System.nanoTime();
+        final InputStream in;
+        try {
+            in = super.read(blobName);
+        } catch (final IOException | RuntimeException e) {
+            read.failure(startNanos);
+            throw e;
+        }
+        return new MeasuredInputStream(in, startNanos);
+    }
+
+    @Override
+    public void write(final String blobName,
+                      final InputStream inputStream,
+                      final long blobSize,
+                      final boolean failIfAlreadyExists) throws IOException {
+        measured(write, () -> {
+            super.write(blobName, inputStream, blobSize, failIfAlreadyExists);
+            return null;
+        }, r -> blobSize);
+    }
+
+    @Override
+    public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+        measured(copy, () -> {
+            super.copy(sourceBlobName, targetBlobName);
+            return null;
+        }, r -> 0L);
+    }
+
+    @Override
+    public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
+        return measured(deleteDirectories, () -> super.deleteDirectories(path), Tuple::v2);
+    }
+
+    @Override
+    public void deleteFiles(final List<String> blobNames, final boolean ignoreIfNotExists) throws IOException {
+        measured(deleteFiles, () -> {
+            super.deleteFiles(blobNames, ignoreIfNotExists);
+            return null;
+        }, r -> 0L);
+    }
+
+    @Override
+    public List<String> listDirectories(final String path) throws IOException {
+        return measured(listDirectories, () -> super.listDirectories(path), r -> 0L);
+    }
+
+    @Override
+    public Map<String, Long> listFiles(final String path, final String prefix) throws IOException {
+        return measured(listFiles, () -> super.listFiles(path, prefix), r -> 0L);
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        final var stats = new HashMap<>(super.stats());
+        for (final var metrics : List.of(exists, read, write, copy,
+                deleteDirectories, deleteFiles, listDirectories, listFiles)) {
+            metrics.addTo(stats);
+        }
+        return stats;
+    }
+
+    private static <T> T measured(final OperationMetrics metrics,
+                                  final CheckedSupplier<T, IOException> operation,
+                                  final ToLongFunction<T> bytes) throws IOException {
+        final var startNanos = System.nanoTime();
+        final T result;
+        try {
+            result = operation.get();
+        } catch (final IOException | RuntimeException e) {
+            metrics.failure(startNanos);
+            throw e;
+        }
+        metrics.success(startNanos, bytes.applyAsLong(result));
+        return result;
+    }
+
+    private final class MeasuredInputStream extends FilterInputStream {
+
+        private final long startNanos;
+
+        private long bytes;
+
+        private boolean failed;
+
+        private boolean closed;
+
+        private MeasuredInputStream(final InputStream in, final long startNanos) {
+            super(in);
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                final var b = super.read();
+                if (b >= 0) {
+                    bytes++;
+                }
+                return b;
+            } catch (final IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            try {
+                final var n = super.read(b, off, len);
+                if (n > 0) {
+                    bytes += n;
+                }
+                return n;
+            } catch (final IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    if (failed) {
+                        read.failure(startNanos);
+                    } else {
+                        read.success(startNanos, bytes);
+                    }
+                }
+            }
+        }
+
+    }
+
+}
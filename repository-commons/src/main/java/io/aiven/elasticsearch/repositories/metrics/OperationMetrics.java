@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histogram of one storage operation.
+ */
+public class OperationMetrics {
+
+    private final String name;
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final LatencyHistogram latencyMicros = new LatencyHistogram();
+
+    public OperationMetrics(final String name) {
+        this.name = name;
+    }
+
+    public void success(final long startNanos, final long bytes) {
+        this.bytes.add(bytes);
+        record(startNanos);
+    }
+
+    public void failure(final long startNanos) {
+        errors.increment();
+        record(startNanos);
+    }
+
+    private void record(final long startNanos) {
+        count.increment();
+        latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    public void addTo(final Map<String, Long> stats) {
+        stats.put(name + ".count", count.sum());
+        stats.put(name + ".errors", errors.sum());
+        stats.put(name + ".bytes", bytes.sum());
+        stats.put(name + ".latency_p50_micros", latencyMicros.percentile(50));
+        stats.put(name + ".latency_p99_micros", latencyMicros.percentile(99));
+        stats.put(name + ".latency_max_micros", latencyMicros.max());
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.opensearch.common.CheckedSupplier;
+
+/**
+ * Details of a single storage operation which are known only deep in the storage, e.g. the retries of a
+ * download stream or the part being uploaded. The trace is bound to the thread running the operation,
+ * so the storage reports them without knowing which operations, if any, are traced.
+ * Traces bound on top of each other all receive the reports.
+ *
+ * <p>The progress is written by the thread running the operation only and may be read by any thread.
+ */
+public final class OperationTrace {
+
+    private static final ThreadLocal<OperationTrace> CURRENT = new ThreadLocal<>();
+
+    private static final int MAX_RETRY_CAUSES = 10;
+
+    private final String operation;
+
+    private final String path;
+
+    private final long startNanos = System.nanoTime();
+
+    private final List<String> retryCauses = new ArrayList<>();
+
+    private OperationTrace outer;
+
+    private volatile long firstByteNanos = -1L;
+
+    private volatile long bytes;
+
+    private volatile int retries;
+
+    private volatile int partNumber;
+
+    public OperationTrace(final String operation, final String path) {
+        this.operation = operation;
+        this.path = path;
+    }
+
+    /**
+     * Records a retry of the operations traced by the current thread, if any.
+     */
+    public static void retried(final Throwable cause) {
+        for (var trace = CURRENT.get(); Objects.nonNull(trace); trace = trace.outer) {
+            trace.retries++;
+            if (trace.retryCauses.size() < MAX_RETRY_CAUSES) {
+                trace.retryCauses.add(cause.toString());
+            }
+        }
+    }
+
+    /**
+     * Records the part of a multipart upload the operations traced by the current thread are sending.
+     */
+    public static void partStarted(final int partNumber) {
+        for (var trace = CURRENT.get(); Objects.nonNull(trace); trace = trace.outer) {
+            trace.partNumber = partNumber;
+        }
+    }
+
+    <T> T within(final CheckedSupplier<T, IOException> operation) throws IOException {
+        final var previous = CURRENT.get();
+        if (previous != this) {
+            outer = previous;
+        }
+        CURRENT.set(this);
+        try {
+            return operation.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    void transferred(final long bytes) {
+        if (bytes > 0) {
+            if (firstByteNanos < 0) {
+                firstByteNanos = System.nanoTime();
+            }
+            this.bytes += bytes;
+        }
+    }
+
+    public String operation() {
+        return operation;
+    }
+
+    public String path() {
+        return path;
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public long timeToFirstByteMillis() {
+        return firstByteNanos < 0 ? -1L : TimeUnit.NANOSECONDS.toMillis(firstByteNanos - startNanos);
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    public long bytesPerSecond() {
+        final var elapsedNanos = elapsedNanos();
+        return elapsedNanos > 0 ? (long) (bytes * (double) TimeUnit.SECONDS.toNanos(1L) / elapsedNanos) : 0L;
+    }
+
+    public int retries() {
+        return retries;
+    }
+
+    public int partNumber() {
+        return partNumber;
+    }
+
+    List<String> retryCauses() {
+        return retryCauses;
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counts the requests sent to the cloud storage by their billing class and the bytes which crossed the wire.
+ * Class A requests are the expensive ones which write or list (PUT, POST, LIST), class B requests read blobs
+ * or their metadata (GET, HEAD) and deletes are counted apart, since they are free of charge on most clouds.
+ *
+ * <p>Besides the repository totals the requests are attributed to the snapshot or restore which caused them,
+ * the current one is looked up by the given supplier.
+ */
+public class RequestAccounting {
+
+    private final Supplier<String> currentOperation;
+
+    private final Counters total = new Counters();
+
+    private final ConcurrentMap<String, Counters> operations = new ConcurrentHashMap<>();
+
+    public RequestAccounting(final Supplier<String> currentOperation) {
+        this.currentOperation = currentOperation;
+    }
+
+    /**
+     * Counts only the repository totals, for the storages nobody asks the stats of.
+     */
+    public static RequestAccounting untracked() {
+        return new RequestAccounting(() -> null);
+    }
+
+    public void classA(final long requests) {
+        add(Counters.CLASS_A, requests);
+    }
+
+    public void classB(final long requests) {
+        add(Counters.CLASS_B, requests);
+    }
+
+    public void deletes(final long requests) {
+        add(Counters.DELETES, requests);
+    }
+
+    public OutputStream countUpload(final OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(final int b) throws IOException {
+                out.write(b);
+                add(Counters.UPLOAD_BYTES, 1L);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                out.write(b, off, len);
+                add(Counters.UPLOAD_BYTES, len);
+            }
+        };
+    }
+
+    public InputStream countDownload(final InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                final var b = in.read();
+                if (b >= 0) {
+                    add(Counters.DOWNLOAD_BYTES, 1L);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final var read = in.read(b, off, len);
+                if (read > 0) {
+                    add(Counters.DOWNLOAD_BYTES, read);
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Starts attributing requests to the operation, nested calls for the same operation are reference counted.
+     */
+    public void begin(final String operation) {
+        operations.computeIfAbsent(operation, o -> new Counters()).references.incrementAndGet();
+    }
+
+    /**
+     * Stops attributing requests to the operation and returns its summary once the last caller has finished.
+     */
+    public Optional<String> end(final String operation) {
+        final var finished = new Counters[1];
+        operations.computeIfPresent(operation, (o, counters) -> {
+            if (counters.references.decrementAndGet() > 0) {
+                return counters;
+            }
+            finished[0] = counters;
+            return null;
+        });
+        return Optional.ofNullable(finished[0]).map(Counters::toString);
+    }
+
+    private void add(final int counter, final long value) {
+        total.add(counter, value);
+        final var operation = currentOperation.get();
+        if (Objects.nonNull(operation)) {
+            final var counters = operations.get(operation);
+            if (Objects.nonNull(counters)) {
+                counters.add(counter, value);
+            }
+        }
+    }
+
+    public Map<String, Long> stats() {
+        final var stats = new HashMap<String, Long>();
+        for (var i = 0; i < Counters.NAMES.length; i++) {
+            stats.put("requests." + Counters.NAMES[i], total.values[i].sum());
+        }
+        return stats;
+    }
+
+    private static final class Counters {
+
+        static final int CLASS_A = 0;
+
+        static final int CLASS_B = 1;
+
+        static final int DELETES = 2;
+
+        static final int UPLOAD_BYTES = 3;
+
+        static final int DOWNLOAD_BYTES = 4;
+
+        static final String[] NAMES = {"class_a", "class_b", "deletes", "upload_bytes", "download_bytes"};
+
+        final LongAdder[] values = new LongAdder[NAMES.length];
+
+        final AtomicInteger references = new AtomicInteger();
+
+        Counters() {
+            for (var i = 0; i < values.length; i++) {
+                values[i] = new LongAdder();
+            }
+        }
+
+        void add(final int counter, final long value) {
+            values[counter].add(value);
+        }
+
+        @Override
+        public String toString() {
+            final var summary = new StringBuilder();
+            for (var i = 0; i < NAMES.length; i++) {
+                summary.append(i == 0 ? "" : ", ").append(NAMES[i]).append('=').append(values[i].sum());
+            }
+            return summary.toString();
+        }
+
+    }
+
+}
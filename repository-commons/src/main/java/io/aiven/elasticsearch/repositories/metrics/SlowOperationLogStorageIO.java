@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+import org.opensearch.common.CheckedSupplier;
+import org.opensearch.common.collect.Tuple;
+import org.opensearch.common.unit.TimeValue;
+
+import io.aiven.elasticsearch.repositories.DelegatingStorageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Logs storage operations which took longer than their threshold together with the retries the storage
+ * reported while running them. Reads are logged once their stream is closed, with the time to first byte
+ * and the throughput of the decrypted bytes consumed by the caller.
+ */
+public class SlowOperationLogStorageIO extends DelegatingStorageIO {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowOperationLogStorageIO.class);
+
+    private final long operationThresholdNanos;
+
+    private final long transferThresholdNanos;
+
+    public SlowOperationLogStorageIO(final StorageIO delegate,
+                                     final TimeValue operationThreshold,
+                                     final TimeValue transferThreshold) {
+        super(delegate);
+        this.operationThresholdNanos = thresholdNanos(operationThreshold);
+        this.transferThresholdNanos = thresholdNanos(transferThreshold);
+    }
+
+    private static long thresholdNanos(final TimeValue threshold) {
+        return threshold.nanos() > 0 ? threshold.nanos() : Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean exists(final String blobName) throws IOException {
+        return traced("exists", blobName, operationThresholdNanos, () -> super.exists(blobName), r -> 0L);
+    }
+
+    @Override
+    public InputStream read(final String blobName) throws IOException {
+        final var trace = new OperationTrace("read", blobName);
+        final InputStream in;
+        try {
+            in = trace.within(() -> super.read(blobName));
+        } catch (final IOException | RuntimeException e) {
+            logIfSlow(transferThresholdNanos, trace, 0L, e);
+            throw e;
+        }
+        return new TracedInputStream(in, trace);
+    }
+
+    @Override
+    public void write(final String blobName,
+                      final InputStream inputStream,
+                      final long blobSize,
+                      final boolean failIfAlreadyExists) throws IOException {
+        traced("write", blobName, transferThresholdNanos, () -> {
+            super.write(blobName, inputStream, blobSize, failIfAlreadyExists);
+            return null;
+        }, r -> blobSize);
+    }
+
+    @Override
+    public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+        traced("copy", sourceBlobName + " to " + targetBlobName, transferThresholdNanos, () -> {
+            super.copy(sourceBlobName, targetBlobName);
+            return null;
+        }, r -> 0L);
+    }
+
+    @Override
+    public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
+        return traced("delete_directories", path, operationThresholdNanos,
+                () -> super.deleteDirectories(path), r -> 0L);
+    }
+
+    @Override
+    public void deleteFiles(final List<String> blobNames, final boolean ignoreIfNotExists) throws IOException {
+        traced("delete_files", describe(blobNames), operationThresholdNanos, () -> {
+            super.deleteFiles(blobNames, ignoreIfNotExists);
+            return null;
+        }, r -> 0L);
+    }
+
+    @Override
+    public List<String> listDirectories(final String path) throws IOException {
+        return traced("list_directories", path, operationThresholdNanos,
+                () -> super.listDirectories(path), r -> 0L);
+    }
+
+    @Override
+    public Map<String, Long> listFiles(final String path, final String prefix) throws IOException {
+        return traced("list_files", path + prefix, operationThresholdNanos,
+                () -> super.listFiles(path, prefix), r -> 0L);
+    }
+
+    private static String describe(final Collection<String> blobNames) {
+        return blobNames.size() == 1
+                ? blobNames.iterator().next()
+                : blobNames.stream().findFirst().orElse("") + " and " + (blobNames.size() - 1) + " more";
+    }
+
+    private static <T> T traced(final String operation,
+                                final String path,
+                                final long thresholdNanos,
+                                final CheckedSupplier<T, IOException> supplier,
+                                final ToLongFunction<T> bytes) throws IOException {
+        final var trace = new OperationTrace(operation, path);
+        final T result;
+        try {
+            result = trace.within(supplier);
+        } catch (final IOException | RuntimeException e) {
+            logIfSlow(thresholdNanos, trace, 0L, e);
+            throw e;
+        }
+        logIfSlow(thresholdNanos, trace, bytes.applyAsLong(result), null);
+        return result;
+    }
+
+    private static void logIfSlow(final long thresholdNanos,
+                                  final OperationTrace trace,
+                                  final long bytes,
+                                  final Exception failure) {
+        final var elapsedNanos = trace.elapsedNanos();
+        if (elapsedNanos < thresholdNanos) {
+            return;
+        }
+        LOGGER.warn("Slow storage operation [{}] on [{}] took [{}ms]: bytes={}, retries={}, "
+                        + "time_to_first_byte_ms={}, throughput_bytes_per_sec={}, failure={}, retry_causes={}",
+                trace.operation(),
+                trace.path(),
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                bytes,
+                trace.retries(),
+                trace.timeToFirstByteMillis(),
+                (long) (bytes * (double) TimeUnit.SECONDS.toNanos(1L) / elapsedNanos),
+                failure,
+                trace.retryCauses());
+    }
+
+    private final class TracedInputStream extends FilterInputStream {
+
+        private final OperationTrace trace;
+
+        private Exception failure;
+
+        private boolean closed;
+
+        private TracedInputStream(final InputStream in, final OperationTrace trace) {
+            super(in);
+            this.trace = trace;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final var b = tracedRead(() -> super.read());
+            if (b >= 0) {
+                trace.transferred(1L);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final var n = tracedRead(() -> super.read(b, off, len));
+            trace.transferred(n);
+            return n;
+        }
+
+        private int tracedRead(final CheckedSupplier<Integer, IOException> read) throws IOException {
+            try {
+                return trace.within(read);
+            } catch (final IOException | RuntimeException e) {
+                failure = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    logIfSlow(transferThresholdNanos, trace, trace.bytes(), failure);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Runs a controlled load against the storage of a repository: concurrent writes of random blobs,
+ * reads of them, listings and a batch delete, reporting throughput and latency percentiles per operation.
+ * The blobs are written under a scratch prefix, which is removed afterwards whatever the outcome.
+ *
+ * <p>Blobs are compressed and encrypted as a whole, so the storage is never read by ranges, the time to
+ * the first byte of every read is reported instead.
+ */
+public class ThroughputAnalyzer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThroughputAnalyzer.class);
+
+    static final String SCRATCH_PREFIX = "aiven-throughput-analysis-";
+
+    private final StorageIO storageIO;
+
+    private final String basePath;
+
+    private final Executor executor;
+
+    public ThroughputAnalyzer(final StorageIO storageIO, final String basePath, final Executor executor) {
+        this.storageIO = storageIO;
+        this.basePath = basePath;
+        this.executor = executor;
+    }
+
+    public Map<String, Map<String, Long>> analyze(final int blobCount,
+                                                  final int blobSize,
+                                                  final int concurrency) throws IOException {
+        final var scratchPath = basePath + SCRATCH_PREFIX + UUID.randomUUID() + "/";
+        final var blobNames =
+                IntStream.range(0, blobCount)
+                        .mapToObj(i -> scratchPath + "blob-" + i)
+                        .collect(Collectors.toList());
+        // random bytes, so the compression doesn't shrink the blobs
+        final var content = new byte[blobSize];
+        new Random().nextBytes(content);
+
+        final var results = new LinkedHashMap<String, Map<String, Long>>();
+        LOGGER.info("Analyze throughput of {} blobs of {} bytes with {} concurrent requests under {}",
+                blobCount, blobSize, concurrency, scratchPath);
+        try {
+            final var write = new Phase();
+            run(blobNames, concurrency, write, blobName -> {
+                storageIO.write(blobName, new ByteArrayInputStream(content), blobSize, false);
+                return (long) blobSize;
+            });
+            results.put("write", write.results());
+
+            final var read = new Phase();
+            final var firstByte = new Phase();
+            run(blobNames, concurrency, read, blobName -> {
+                final var startNanos = System.nanoTime();
+                try (final var in = storageIO.read(blobName)) {
+                    final var first = in.read();
+                    firstByte.record(startNanos, 0L);
+                    return first < 0 ? 0L : 1L + in.transferTo(OutputStream.nullOutputStream());
+                }
+            });
+            results.put("read", read.results());
+            results.put("read_first_byte", firstByte.results());
+
+            final var list = new Phase();
+            run(IntStream.range(0, concurrency).mapToObj(i -> scratchPath).collect(Collectors.toList()),
+                    concurrency, list, path -> (long) storageIO.listFiles(path, "").size());
+            results.put("list", list.results());
+
+            final var delete = new Phase();
+            run(List.of(scratchPath), 1, delete, path -> {
+                storageIO.deleteFiles(blobNames, true);
+                return (long) blobNames.size();
+            });
+            results.put("delete", delete.results());
+        } finally {
+            try {
+                storageIO.deleteDirectories(scratchPath);
+            } catch (final IOException e) {
+                LOGGER.warn("Couldn't clean up throughput analysis blobs under {}", scratchPath, e);
+            }
+        }
+        return results;
+    }
+
+    private void run(final List<String> names,
+                     final int concurrency,
+                     final Phase phase,
+                     final CheckedFunction operation) throws IOException {
+        final var next = new AtomicInteger();
+        final var workers = new ArrayList<CompletableFuture<Void>>();
+        phase.startNanos = System.nanoTime();
+        for (var i = 0; i < Math.min(concurrency, names.size()); i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                for (var idx = next.getAndIncrement(); idx < names.size(); idx = next.getAndIncrement()) {
+                    final var startNanos = System.nanoTime();
+                    try {
+                        phase.record(startNanos, operation.apply(names.get(idx)));
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(workers.toArray(CompletableFuture<?>[]::new)).join();
+        } catch (final RuntimeException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        } finally {
+            phase.endNanos = System.nanoTime();
+        }
+    }
+
+    @FunctionalInterface
+    private interface CheckedFunction {
+        long apply(String name) throws IOException;
+    }
+
+    private static final class Phase {
+
+        private final LatencyHistogram latencyMicros = new LatencyHistogram();
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder bytes = new LongAdder();
+
+        private long startNanos;
+
+        private long endNanos;
+
+        void record(final long startNanos, final long bytes) {
+            latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+            count.increment();
+            this.bytes.add(bytes);
+        }
+
+        Map<String, Long> results() {
+            final var elapsedNanos = Math.max(1L, endNanos - startNanos);
+            final var results = new LinkedHashMap<String, Long>();
+            results.put("count", count.sum());
+            results.put("bytes", bytes.sum());
+            results.put("bytes_per_sec", (long) (bytes.sum() * (double) TimeUnit.SECONDS.toNanos(1L) / elapsedNanos));
+            results.put("latency_p50_micros", latencyMicros.percentile(50));
+            results.put("latency_p99_micros", latencyMicros.percentile(99));
+            results.put("latency_max_micros", latencyMicros.max());
+            return results;
+        }
+
+    }
+
+}
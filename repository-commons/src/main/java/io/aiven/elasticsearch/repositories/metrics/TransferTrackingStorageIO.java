@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.aiven.elasticsearch.repositories.DelegatingStorageIO;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Keeps track of the blob reads and writes in flight, with the decrypted bytes transferred so far
+ * and the part and retries reported by the storage. A read is in flight until its stream is closed.
+ */
+public class TransferTrackingStorageIO extends DelegatingStorageIO {
+
+    private final Set<OperationTrace> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    public TransferTrackingStorageIO(final StorageIO delegate) {
+        super(delegate);
+    }
+
+    public List<OperationTrace> inFlight() {
+        return new ArrayList<>(inFlight);
+    }
+
+    @Override
+    public InputStream read(final String blobName) throws IOException {
+        final var trace = new OperationTrace("read", blobName);
+        inFlight.add(trace);
+        try {
+            return new TrackedInputStream(trace.within(() -> super.read(blobName)), trace, true);
+        } catch (final IOException | RuntimeException e) {
+            inFlight.remove(trace);
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(final String blobName,
+                      final InputStream inputStream,
+                      final long blobSize,
+                      final boolean failIfAlreadyExists) throws IOException {
+        final var trace = new OperationTrace("write", blobName);
+        inFlight.add(trace);
+        try {
+            trace.within(() -> {
+                super.write(blobName, new TrackedInputStream(inputStream, trace, false), blobSize, failIfAlreadyExists);
+                return null;
+            });
+        } finally {
+            inFlight.remove(trace);
+        }
+    }
+
+    private final class TrackedInputStream extends FilterInputStream {
+
+        private final OperationTrace trace;
+
+        private final boolean bindOnRead;
+
+        private TrackedInputStream(final InputStream in, final OperationTrace trace, final boolean bindOnRead) {
+            super(in);
+            this.trace = trace;
+            this.bindOnRead = bindOnRead;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final var b = bindOnRead ? trace.within(() -> super.read()) : super.read();
+            if (b >= 0) {
+                trace.transferred(1L);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final var n = bindOnRead ? trace.within(() -> super.read(b, off, len)) : super.read(b, off, len);
+            trace.transferred(n);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (bindOnRead) {
+                    inFlight.remove(trace);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.migration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import io.aiven.elasticsearch.repositories.BlobVersionConflictException;
+import io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider;
+import io.aiven.elasticsearch.repositories.io.CryptoIOProvider;
+import io.aiven.elasticsearch.repositories.io.TokenBucket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Rewrites the blobs of a repository which have been encrypted with another key than the given one,
+ * after the key has been rotated. Every blob is decrypted while read and encrypted with the current key
+ * while written back under the same name, as a stream. Blobs already encrypted with the key are skipped,
+ * so a failed re-encryption is resumed by running it again. The blobs are rewritten as they are stored,
+ * a pack is rewritten as a whole, through the blob manifest which records their new size, and the caches
+ * of the repository drop them afterwards.
+ *
+ * <p>A blob is rewritten in place, so it is read at the version it has when the rewrite starts, retries
+ * included, and replaced only if it is still at that version, which the storage checks when the write
+ * completes. A blob deleted since it has been listed is never written back, a blob replaced in the meantime
+ * is left as it is and only checked for its key.
+ *
+ * <p>Other nodes switch to a rotated key once they reload the keys, within a minute. The blobs they write
+ * with a previous key while the blobs are rewritten are reported as remaining blobs once the rewrite is done,
+ * running the re-encryption again rewrites them.
+ *
+ * <p>The root blobs which snapshots overwrite, e.g. index.latest, are skipped: they get the current key
+ * with the next snapshot anyway.
+ */
+public class BlobReEncryption implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlobReEncryption.class);
+
+    static final Set<String> MUTABLE_ROOT_BLOBS =
+            Set.of(RepositoryStorageIOProvider.REPOSITORY_METADATA_FILE_NAME, "index.latest", "incompatible-snapshots");
+
+    static final int PROGRESS_LOG_INTERVAL = 1_000;
+
+    private final String repositoryName;
+
+    private final StorageIO storageIO;
+
+    private final StorageIO caches;
+
+    private final String basePath;
+
+    private final int keyId;
+
+    private final Executor executor;
+
+    private final int concurrency;
+
+    private final TokenBucket bandwidth;
+
+    private final LongAdder blobs = new LongAdder();
+
+    private final LongAdder skippedBlobs = new LongAdder();
+
+    private final LongAdder deletedBlobs = new LongAdder();
+
+    private final LongAdder remainingBlobs = new LongAdder();
+
+    private final LongAdder rewrittenBlobs = new LongAdder();
+
+    private final LongAdder rewrittenBytes = new LongAdder();
+
+    private volatile String state = "pending";
+
+    private volatile Exception failure;
+
+    private volatile long startNanos;
+
+    private volatile long endNanos;
+
+    /**
+     * @param storageIO      storage which reads blobs as {@link CryptoIOProvider.DecryptedInputStream},
+     *                       other blobs are rewritten whatever key they have been encrypted with
+     * @param caches         storage whose caches drop the rewritten blobs
+     * @param keyId          id of the key the blobs are encrypted with after the re-encryption
+     * @param maxBytesPerSec limit of the decrypted bytes rewritten per second, 0 for unlimited
+     */
+    public BlobReEncryption(final String repositoryName,
+                            final StorageIO storageIO,
+                            final StorageIO caches,
+                            final String basePath,
+                            final int keyId,
+                            final Executor executor,
+                            final int concurrency,
+                            final long maxBytesPerSec) {
+        this.repositoryName = repositoryName;
+        this.storageIO = storageIO;
+        this.caches = caches;
+        this.basePath = basePath;
+        this.keyId = keyId;
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.bandwidth = new TokenBucket(maxBytesPerSec, 0L, null);
+    }
+
+    public boolean isRunning() {
+        return "pending".equals(state) || "running".equals(state);
+    }
+
+    @Override
+    public void run() {
+        startNanos = System.nanoTime();
+        state = "running";
+        LOGGER.info("Re-encrypt repository {} with key {} with {} concurrent rewrites",
+                repositoryName, keyId, concurrency);
+        try {
+            final var pending = new ArrayList<Blob>();
+            collect(basePath, pending);
+            blobs.add(pending.size());
+            Workers.run(pending, concurrency, executor, this::reEncrypt);
+            // blobs written in the meantime by nodes which haven't reloaded the keys yet
+            final var listed = pending.stream().map(blob -> blob.name).collect(Collectors.toSet());
+            final var written = new ArrayList<Blob>();
+            collect(basePath, written);
+            written.removeIf(blob -> listed.contains(blob.name));
+            Workers.run(written, concurrency, executor, this::checkKey);
+            state = "done";
+            if (remainingBlobs.sum() > 0) {
+                LOGGER.warn("Repository {} has been re-encrypted, but {} blobs have been written with a previous key "
+                        + "in the meantime, run it again to rewrite them: {}", repositoryName, remainingBlobs.sum(),
+                        status());
+            } else {
+                LOGGER.info("Repository {} has been re-encrypted: {}", repositoryName, status());
+            }
+        } catch (final IOException | RuntimeException e) {
+            failure = e;
+            state = "failed";
+            LOGGER.warn("Couldn't re-encrypt repository {}, run it again to resume", repositoryName, e);
+        } finally {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    private void collect(final String path, final List<Blob> pending) throws IOException {
+        final var isRoot = path.equals(basePath);
+        for (final var file : storageIO.listFiles(path, "").entrySet()) {
+            if (isRoot && MUTABLE_ROOT_BLOBS.contains(file.getKey())) {
+                continue;
+            }
+            pending.add(new Blob(path + file.getKey(), file.getValue()));
+        }
+        for (final var directory : storageIO.listDirectories(path)) {
+            collect(path + directory + "/", pending);
+        }
+    }
+
+    private void reEncrypt(final Blob blob) throws IOException {
+        try {
+            final var version = storageIO.version(blob.name);
+            try (final var in = storageIO.read(blob.name, version)) {
+                // the key id is known once the header has been read, so blobs with the key are skipped
+                if (isEncryptedWithKey(in)) {
+                    skippedBlobs.increment();
+                    return;
+                }
+                storageIO.replace(
+                        blob.name, new ThrottledInputStream(in, bandwidth, rewrittenBytes), blob.size, version);
+            }
+        } catch (final NoSuchFileException e) {
+            deletedBlobs.increment();
+            return;
+        } catch (final BlobVersionConflictException e) {
+            LOGGER.debug("Blob {} has been replaced or deleted in the meantime", blob.name);
+            checkKey(blob);
+            return;
+        }
+        caches.invalidate(blob.name);
+        rewrittenBlobs.increment();
+        if (rewrittenBlobs.sum() % PROGRESS_LOG_INTERVAL == 0) {
+            LOGGER.info("Re-encryption of repository {}: {}", repositoryName, status());
+        }
+    }
+
+    private void checkKey(final Blob blob) throws IOException {
+        try (final var in = storageIO.read(blob.name)) {
+            if (!isEncryptedWithKey(in)) {
+                remainingBlobs.increment();
+            }
+        } catch (final NoSuchFileException e) {
+            LOGGER.debug("Blob {} has been deleted in the meantime", blob.name);
+        }
+    }
+
+    private boolean isEncryptedWithKey(final InputStream in) {
+        return in instanceof CryptoIOProvider.DecryptedInputStream
+                && ((CryptoIOProvider.DecryptedInputStream) in).keyId() == keyId;
+    }
+
+    public Map<String, Object> status() {
+        final var status = new LinkedHashMap<String, Object>();
+        status.put("repository", repositoryName);
+        status.put("key_id", keyId);
+        status.put("state", state);
+        status.put("blobs", blobs.sum());
+        status.put("skipped_blobs", skippedBlobs.sum());
+        status.put("deleted_blobs", deletedBlobs.sum());
+        status.put("remaining_blobs", remainingBlobs.sum());
+        status.put("rewritten_blobs", rewrittenBlobs.sum());
+        status.put("rewritten_bytes", rewrittenBytes.sum());
+        final var elapsedNanos = Math.max(1L, (isRunning() ? System.nanoTime() : endNanos) - startNanos);
+        status.put("bytes_per_sec",
+                (long) (rewrittenBytes.sum() * (double) TimeUnit.SECONDS.toNanos(1L) / elapsedNanos));
+        if (Objects.nonNull(failure)) {
+            status.put("failure", failure.toString());
+        }
+        return status;
+    }
+
+    private static final class Blob {
+
+        private final String name;
+
+        private final long size;
+
+        private Blob(final String name, final long size) {
+            this.name = name;
+            this.size = size;
+        }
+
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.migration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.opensearch.common.blobstore.BlobPath;
+import org.opensearch.common.blobstore.BlobStore;
+
+import io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider;
+import io.aiven.elasticsearch.repositories.io.TokenBucket;
+import io.aiven.elasticsearch.repositories.manifest.ManifestStorageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Copies every blob of a repository into the blob store of another repository, e.g. of another bucket or provider.
+ * Blobs are decrypted while read and encrypted with the key of the target while written, as a stream.
+ *
+ * <p>The target listing is the checkpoint: a blob is visible only once it has been written completely,
+ * so blobs which already exist in the target are skipped and a failed migration is resumed by running it again.
+ * The root index-N and index.latest blobs are copied last, so the target never references missing blobs.
+ * The root index.latest blob is the only one rewritten in place, so it is copied again on every run,
+ * otherwise a run after the source has taken new snapshots leaves the target at the old generation.
+ * The encryption key metadata of the source is never copied, the target keeps its own.
+ *
+ * <p>The source is read as OpenSearch sees it, i.e. through its key layout, packs and blob manifest,
+ * so the target stores the blobs in its own layout. The blob manifest of the source is never copied either.
+ */
+public class RepositoryMigration implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RepositoryMigration.class);
+
+    static final String INDEX_LATEST = "index.latest";
+
+    static final int PROGRESS_LOG_INTERVAL = 1_000;
+
+    private final String sourceName;
+
+    private final StorageIO source;
+
+    private final String sourceBasePath;
+
+    private final String targetName;
+
+    private final BlobStore target;
+
+    private final BlobPath targetBasePath;
+
+    private final Executor executor;
+
+    private final int concurrency;
+
+    private final TokenBucket bandwidth;
+
+    private final LongAdder blobs = new LongAdder();
+
+    private final LongAdder skippedBlobs = new LongAdder();
+
+    private final LongAdder copiedBlobs = new LongAdder();
+
+    private final LongAdder copiedBytes = new LongAdder();
+
+    private volatile String state = "pending";
+
+    private volatile Exception failure;
+
+    private volatile long startNanos;
+
+    private volatile long endNanos;
+
+    /**
+     * @param source         logical view of the source repository, without its caches
+     * @param maxBytesPerSec limit of the decrypted bytes copied per second, 0 for unlimited
+     */
+    public RepositoryMigration(final String sourceName,
+                               final StorageIO source,
+                               final String sourceBasePath,
+                               final String targetName,
+                               final BlobStore target,
+                               final BlobPath targetBasePath,
+                               final Executor executor,
+                               final int concurrency,
+                               final long maxBytesPerSec) {
+        this.sourceName = sourceName;
+        this.source = source;
+        this.sourceBasePath = sourceBasePath;
+        this.targetName = targetName;
+        this.target = target;
+        this.targetBasePath = targetBasePath;
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.bandwidth = new TokenBucket(maxBytesPerSec, 0L, null);
+    }
+
+    public String targetName() {
+        return targetName;
+    }
+
+    public boolean isRunning() {
+        return "pending".equals(state) || "running".equals(state);
+    }
+
+    @Override
+    public void run() {
+        startNanos = System.nanoTime();
+        state = "running";
+        LOGGER.info("Migrate repository {} to {} with {} concurrent copies", sourceName, targetName, concurrency);
+        try {
+            // blobs by copy order: all blobs, the root index-N blobs and the root index.latest blob
+            final var pending = List.<List<Blob>>of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+            collect(sourceBasePath, targetBasePath, pending);
+            for (final var blobs : pending) {
+                Workers.run(blobs, concurrency, executor, this::copy);
+            }
+            state = "done";
+            LOGGER.info("Repository {} has been migrated to {}: {}", sourceName, targetName, status());
+        } catch (final IOException | RuntimeException e) {
+            failure = e;
+            state = "failed";
+            LOGGER.warn("Couldn't migrate repository {} to {}, run it again to resume", sourceName, targetName, e);
+        } finally {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    private void collect(final String sourcePath,
+                         final BlobPath targetPath,
+                         final List<List<Blob>> pending) throws IOException {
+        final var isRoot = sourcePath.equals(sourceBasePath);
+        final var existing = target.blobContainer(targetPath).listBlobs().keySet();
+        for (final var file : source.listFiles(sourcePath, "").entrySet()) {
+            final var name = file.getKey();
+            if (isRoot && name.equals(RepositoryStorageIOProvider.REPOSITORY_METADATA_FILE_NAME)) {
+                continue;
+            }
+            blobs.increment();
+            final var isGenerationPointer = isRoot && name.equals(INDEX_LATEST);
+            if (existing.contains(name) && !isGenerationPointer) {
+                skippedBlobs.increment();
+            } else {
+                pending.get(copyOrder(isRoot, name))
+                        .add(new Blob(sourcePath + name, targetPath, name, file.getValue(), isGenerationPointer));
+            }
+        }
+        for (final var directory : source.listDirectories(sourcePath)) {
+            if (isRoot && isManifestDirectory(directory)) {
+                continue;
+            }
+            collect(sourcePath + directory + "/", targetPath.add(directory), pending);
+        }
+    }
+
+    private static int copyOrder(final boolean isRoot, final String name) {
+        if (isRoot && name.equals(INDEX_LATEST)) {
+            return 2;
+        } else if (isRoot && name.startsWith("index-")) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private static boolean isManifestDirectory(final String directory) {
+        return ManifestStorageIO.MANIFEST_DIRECTORY.equals(directory + "/");
+    }
+
+    private void copy(final Blob blob) throws IOException {
+        try (final var in = new ThrottledInputStream(source.read(blob.sourceName), bandwidth, copiedBytes)) {
+            // the decrypted size isn't known before reading, the stored size is only a hint,
+            // the repositories of this plugin upload as a stream and don't rely on it
+            target.blobContainer(blob.targetPath).writeBlob(blob.name, in, blob.size, !blob.overwrite);
+        }
+        copiedBlobs.increment();
+        if (copiedBlobs.sum() % PROGRESS_LOG_INTERVAL == 0) {
+            LOGGER.info("Migration of repository {} to {}: {}", sourceName, targetName, status());
+        }
+    }
+
+    public Map<String, Object> status() {
+        final var status = new LinkedHashMap<String, Object>();
+        status.put("source", sourceName);
+        status.put("target", targetName);
+        status.put("state", state);
+        status.put("blobs", blobs.sum());
+        status.put("skipped_blobs", skippedBlobs.sum());
+        status.put("copied_blobs", copiedBlobs.sum());
+        status.put("copied_bytes", copiedBytes.sum());
+        final var elapsedNanos = Math.max(1L, (isRunning() ? System.nanoTime() : endNanos) - startNanos);
+        status.put("bytes_per_sec",
+                (long) (copiedBytes.sum() * (double) TimeUnit.SECONDS.toNanos(1L) / elapsedNanos));
+        if (Objects.nonNull(failure)) {
+            status.put("failure", failure.toString());
+        }
+        return status;
+    }
+
+    private static final class Blob {
+
+        private final String sourceName;
+
+        private final BlobPath targetPath;
+
+        private final String name;
+
+        private final long size;
+
+        private final boolean overwrite;
+
+        private Blob(final String sourceName,
+                     final BlobPath targetPath,
+                     final String name,
+                     final long size,
+                     final boolean overwrite) {
+            this.sourceName = sourceName;
+            this.targetPath = targetPath;
+            this.name = name;
+            this.size = size;
+            this.overwrite = overwrite;
+        }
+
+    }
+
+}
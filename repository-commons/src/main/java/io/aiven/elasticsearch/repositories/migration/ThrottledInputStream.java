@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.migration;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.aiven.elasticsearch.repositories.io.TokenBucket;
+
+/**
+ * Takes the bytes read from the bucket and adds them to the counter.
+ */
+final class ThrottledInputStream extends FilterInputStream {
+
+    private final TokenBucket bandwidth;
+
+    private final LongAdder bytes;
+
+    ThrottledInputStream(final InputStream in, final TokenBucket bandwidth, final LongAdder bytes) {
+        super(in);
+        this.bandwidth = bandwidth;
+        this.bytes = bytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final var b = super.read();
+        if (b >= 0) {
+            read(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final var read = super.read(b, off, len);
+        if (read > 0) {
+            read(read);
+        }
+        return read;
+    }
+
+    private void read(final int count) throws IOException {
+        bandwidth.acquire(count);
+        bytes.add(count);
+    }
+
+}
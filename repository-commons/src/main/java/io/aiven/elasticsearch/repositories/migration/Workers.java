@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.migration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a task per item with at most the given number of tasks at once,
+ * the first failure is rethrown once the running tasks have finished.
+ */
+final class Workers {
+
+    private Workers() {
+    }
+
+    static <T> void run(final List<T> items,
+                        final int concurrency,
+                        final Executor executor,
+                        final Task<T> task) throws IOException {
+        final var next = new AtomicInteger();
+        final var workers = new ArrayList<CompletableFuture<Void>>();
+        for (var i = 0; i < Math.min(concurrency, items.size()); i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                for (var idx = next.getAndIncrement(); idx < items.size(); idx = next.getAndIncrement()) {
+                    try {
+                        task.run(items.get(idx));
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(workers.toArray(CompletableFuture<?>[]::new)).join();
+        } catch (final RuntimeException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    interface Task<T> {
+        void run(T item) throws IOException;
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.pack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.opensearch.common.io.Streams;
+
+/**
+ * Index of the blobs stored in a pack. A pack starts with a header listing names and lengths
+ * of its blobs followed by their contents in the same order.
+ */
+final class PackIndex {
+
+    static final int FORMAT_VERSION = 1;
+
+    private final Map<String, Integer> lengths;
+
+    private final Map<String, Integer> offsets = new LinkedHashMap<>();
+
+    private final long packLength;
+
+    private PackIndex(final Map<String, Integer> lengths, final int headerLength) {
+        this.lengths = Collections.unmodifiableMap(lengths);
+        var offset = headerLength;
+        for (final var e : lengths.entrySet()) {
+            offsets.put(e.getKey(), offset);
+            offset += e.getValue();
+        }
+        this.packLength = offset;
+    }
+
+    static byte[] pack(final Map<String, byte[]> blobs) throws IOException {
+        final var lengths = new LinkedHashMap<String, Integer>();
+        blobs.forEach((name, bytes) -> lengths.put(name, bytes.length));
+        final var content = new ByteArrayOutputStream();
+        content.write(header(lengths));
+        for (final var bytes : blobs.values()) {
+            content.write(bytes);
+        }
+        return content.toByteArray();
+    }
+
+    static PackIndex read(final InputStream in) throws IOException {
+        final var dataIn = new DataInputStream(in);
+        final var version = dataIn.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported pack format version " + version);
+        }
+        final var count = dataIn.readInt();
+        final var lengths = new LinkedHashMap<String, Integer>();
+        for (var i = 0; i < count; i++) {
+            lengths.put(dataIn.readUTF(), dataIn.readInt());
+        }
+        return new PackIndex(lengths, header(lengths).length);
+    }
+
+    private static byte[] header(final Map<String, Integer> lengths) throws IOException {
+        final var header = new ByteArrayOutputStream();
+        try (final var out = new DataOutputStream(header)) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(lengths.size());
+            for (final var e : lengths.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeInt(e.getValue());
+            }
+        }
+        return header.toByteArray();
+    }
+
+    Set<String> names() {
+        return lengths.keySet();
+    }
+
+    Map<String, Integer> lengths() {
+        return lengths;
+    }
+
+    byte[] bytes(final byte[] content, final String name) throws NoSuchFileException {
+        return slice(content, name).readAllBytes();
+    }
+
+    ByteArrayInputStream slice(final byte[] content, final String name) throws NoSuchFileException {
+        return new ByteArrayInputStream(content, offset(name), lengths.get(name));
+    }
+
+    /**
+     * Reads the blob from the stream of the whole pack, skipping the blobs stored before it.
+     * Closing the returned stream closes the pack stream.
+     */
+    InputStream slice(final InputStream packIn, final String name) throws IOException {
+        try {
+            skipFully(packIn, offset(name));
+        } catch (final IOException e) {
+            packIn.close();
+            throw e;
+        }
+        return Streams.limitStream(packIn, lengths.get(name));
+    }
+
+    private static void skipFully(final InputStream in, final long n) throws IOException {
+        var remaining = n;
+        while (remaining > 0) {
+            final var skipped = in.skip(remaining);
+            if (skipped > 0) {
+                remaining -= skipped;
+            } else if (in.read() >= 0) {
+                remaining--;
+            } else {
+                throw new EOFException("Pack ends before the packed blob");
+            }
+        }
+    }
+
+    private int offset(final String name) throws NoSuchFileException {
+        final var offset = offsets.get(name);
+        if (Objects.isNull(offset)) {
+            throw new NoSuchFileException("Blob " + name + " is not packed");
+        }
+        return offset;
+    }
+
+    /**
+     * Length of the whole pack, header included.
+     */
+    long packLength() {
+        return packLength;
+    }
+
+    int size() {
+        return lengths.size();
+    }
+
+}
@@ -0,0 +1,591 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.pack;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.cache.CacheBuilder;
+import org.opensearch.common.collect.Tuple;
+
+import io.aiven.elasticsearch.repositories.DelegatingStorageIO;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Stores small data blobs written to the same directory together in pack blobs, which cuts the number
+ * of requests sent to the storage by a shard snapshot and its restore. Blobs to pack are buffered in memory
+ * until the pack is full or any other blob is written to the directory, which for a shard snapshot happens
+ * once all its data blobs have been written. A buffered blob is acknowledged before it's stored, the write
+ * of the snap-*.dat blob completing the shard snapshot fails if its pack can't be written, so a snapshot
+ * never references a lost blob. Packs of directories without writes for a while, e.g. of an aborted shard
+ * snapshot, are written by {@link #maintain()}, which the repository calls periodically, and the oldest packs
+ * are written right away once the buffered blobs of all directories get too big, so the memory held by the buffer
+ * is bounded. A pack is stored as a single blob, so it's compressed and encrypted as a whole: small packs are read
+ * whole and the most recently read ones kept in memory, bigger ones are read up to the requested blob.
+ * Packs are hidden from listings, which show the packed blobs instead. Deleting packed blobs rewrites
+ * the pack without them, the pack is deleted together with the last of its blobs.
+ * A threshold of 0 stops packing new blobs, the blobs packed before stay readable and deletable.
+ */
+public class PackingStorageIO extends DelegatingStorageIO {
+
+    static final String PACK_PREFIX = "pack-";
+
+    private static final String DATA_BLOB_PREFIX = "__";
+
+    private static final int MAX_DIRECTORIES = 1_000;
+
+    private static final int MAX_PACKED_BLOBS = 1_000_000;
+
+    private static final int PENDING_PACKS_IN_MEMORY = 16;
+
+    private static final long MAX_PENDING_BYTES = 64L * 1024 * 1024;
+
+    private static final long MAX_CACHED_PACK_LENGTH = 8L * 1024 * 1024;
+
+    private static final long MAX_CACHED_PACK_BYTES = 32L * 1024 * 1024;
+
+    private static final long ABANDONED_AFTER_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final int threshold;
+
+    private final int maxPackSize;
+
+    private final long maxPendingBytes;
+
+    private final LongSupplier nanoClock;
+
+    /**
+     * Blobs waiting to be packed by directory.
+     */
+    private final Map<String, PendingPack> pendingPacks = new ConcurrentHashMap<>();
+
+    /**
+     * Data blobs by directory as of the last listing, updated with changes done through this node.
+     */
+    private final Cache<String, Directory> directories;
+
+    /**
+     * Indexes by pack blob name, packs are never modified.
+     */
+    private final Cache<String, PackIndex> packIndexes;
+
+    private final Cache<String, byte[]> packContents;
+
+    private final LongAdder packedBlobs = new LongAdder();
+
+    private final LongAdder packsWritten = new LongAdder();
+
+    private final LongAdder packsRewritten = new LongAdder();
+
+    public PackingStorageIO(final StorageIO delegate, final int threshold, final int maxPackSize) {
+        this(delegate, threshold, maxPackSize, System::nanoTime);
+    }
+
+    PackingStorageIO(final StorageIO delegate,
+                     final int threshold,
+                     final int maxPackSize,
+                     final LongSupplier nanoClock) {
+        super(delegate);
+        this.threshold = threshold;
+        this.maxPackSize = maxPackSize;
+        this.maxPendingBytes = Math.min((long) PENDING_PACKS_IN_MEMORY * maxPackSize, MAX_PENDING_BYTES);
+        this.nanoClock = nanoClock;
+        this.directories =
+                CacheBuilder.<String, Directory>builder()
+                        .setMaximumWeight(MAX_DIRECTORIES)
+                        .build();
+        this.packIndexes =
+                CacheBuilder.<String, PackIndex>builder()
+                        .setMaximumWeight(MAX_PACKED_BLOBS)
+                        .weigher((name, index) -> index.size())
+                        .build();
+        this.packContents =
+                CacheBuilder.<String, byte[]>builder()
+                        .setMaximumWeight(MAX_CACHED_PACK_BYTES)
+                        .weigher((name, content) -> content.length)
+                        .build();
+    }
+
+    @Override
+    public void write(final String blobName,
+                      final InputStream inputStream,
+                      final long blobSize,
+                      final boolean failIfAlreadyExists) throws IOException {
+        final var path = parentPath(blobName);
+        final var name = blobName.substring(path.length());
+        if (!isDataBlob(name)) {
+            flush(path);
+            super.write(blobName, inputStream, blobSize, failIfAlreadyExists);
+        } else if (threshold == 0 || blobSize > threshold) {
+            super.write(blobName, inputStream, blobSize, failIfAlreadyExists);
+            final var directory = directories.get(path);
+            if (Objects.nonNull(directory)) {
+                directory.blobs.add(name);
+            }
+        } else {
+            writePending(blobName, path, name, inputStream, failIfAlreadyExists);
+        }
+    }
+
+    private void writePending(final String blobName,
+                              final String path,
+                              final String name,
+                              final InputStream inputStream,
+                              final boolean failIfAlreadyExists) throws IOException {
+        // data blobs have unique names, so the directory as known to this node is enough to catch a second write
+        if (failIfAlreadyExists && (isPending(path, name) || knownDirectory(path).contains(name))) {
+            throw new FileAlreadyExistsException(blobName, null, "blob already exists");
+        }
+        final var bytes = inputStream.readAllBytes();
+        final var now = nanoClock.getAsLong();
+        final var pendingPack =
+                pendingPacks.compute(path, (p, pending) ->
+                        (Objects.isNull(pending) ? PendingPack.EMPTY : pending).add(name, bytes, now));
+        if (pendingPack.size >= maxPackSize) {
+            flush(path);
+        }
+        flushStale(now);
+    }
+
+    /**
+     * Writes the packs of directories without writes for a while and the oldest packs
+     * while the blobs waiting to be packed take more memory than allowed.
+     */
+    private void flushStale(final long now) throws IOException {
+        for (final var e : pendingPacks.entrySet()) {
+            if (now - e.getValue().updatedAt > ABANDONED_AFTER_NANOS) {
+                flush(e.getKey());
+            }
+        }
+        while (pendingBytes() > maxPendingBytes) {
+            final var oldest =
+                    pendingPacks.entrySet().stream()
+                            .min(Comparator.comparingLong(e -> e.getValue().createdAt))
+                            .map(Map.Entry::getKey);
+            if (oldest.isEmpty()) {
+                return;
+            }
+            flush(oldest.get());
+        }
+    }
+
+    private long pendingBytes() {
+        return pendingPacks.values().stream().mapToLong(pending -> pending.size).sum();
+    }
+
+    /**
+     * Writes the packs of directories without writes for a while, e.g. of an aborted shard snapshot.
+     */
+    @Override
+    public void maintain() throws IOException {
+        flushStale(nanoClock.getAsLong());
+        super.maintain();
+    }
+
+    /**
+     * Writes blobs waiting to be packed in the directory, they are kept for the next attempt if the write fails.
+     */
+    private void flush(final String path) throws IOException {
+        final var pendingPack = pendingPacks.remove(path);
+        if (Objects.isNull(pendingPack)) {
+            return;
+        }
+        try {
+            writePack(path, pendingPack.blobs);
+        } catch (final IOException e) {
+            pendingPacks.merge(path, pendingPack, (current, failed) -> failed.merge(current));
+            throw e;
+        }
+        packedBlobs.add(pendingPack.blobs.size());
+        packsWritten.increment();
+    }
+
+    private void writePack(final String path, final Map<String, byte[]> blobs) throws IOException {
+        final var packName = PACK_PREFIX + UUID.randomUUID();
+        final var content = PackIndex.pack(blobs);
+        super.write(path + packName, new ByteArrayInputStream(content), content.length, true);
+        packIndexes.put(path + packName, PackIndex.read(new ByteArrayInputStream(content)));
+        final var directory = directories.get(path);
+        if (Objects.nonNull(directory)) {
+            blobs.keySet().forEach(name -> directory.packed.put(name, packName));
+        }
+    }
+
+    @Override
+    public boolean exists(final String blobName) throws IOException {
+        final var path = parentPath(blobName);
+        final var name = blobName.substring(path.length());
+        if (!isDataBlob(name)) {
+            return super.exists(blobName);
+        }
+        return isPending(path, name) || directory(path, name).contains(name);
+    }
+
+    @Override
+    public InputStream read(final String blobName) throws IOException {
+        final var path = parentPath(blobName);
+        final var name = blobName.substring(path.length());
+        if (!isDataBlob(name)) {
+            return super.read(blobName);
+        }
+        final var pendingPack = pendingPacks.get(path);
+        if (Objects.nonNull(pendingPack) && pendingPack.blobs.containsKey(name)) {
+            return new ByteArrayInputStream(pendingPack.blobs.get(name));
+        }
+        final var packName = directory(path, name).packed.get(name);
+        if (Objects.isNull(packName)) {
+            return super.read(blobName);
+        }
+        try {
+            return readPacked(path + packName, name);
+        } catch (final NoSuchFileException e) {
+            // the pack has been rewritten by another cluster since the directory was listed
+            final var currentPackName = loadDirectory(path).packed.get(name);
+            if (Objects.isNull(currentPackName)) {
+                throw e;
+            }
+            return readPacked(path + currentPackName, name);
+        }
+    }
+
+    private InputStream readPacked(final String packBlobName, final String name) throws IOException {
+        final var index = packIndex(packBlobName);
+        if (index.packLength() > MAX_CACHED_PACK_LENGTH && Objects.isNull(packContents.get(packBlobName))) {
+            return index.slice(super.read(packBlobName), name);
+        }
+        return index.slice(packContent(packBlobName), name);
+    }
+
+    @Override
+    public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+        final var path = parentPath(sourceBlobName);
+        final var name = sourceBlobName.substring(path.length());
+        if (isDataBlob(name) && (isPending(path, name) || directory(path, name).packed.containsKey(name))) {
+            final byte[] bytes;
+            try (final var in = read(sourceBlobName)) {
+                bytes = in.readAllBytes();
+            }
+            write(targetBlobName, new ByteArrayInputStream(bytes), bytes.length, false);
+        } else {
+            super.copy(sourceBlobName, targetBlobName);
+        }
+    }
+
+    @Override
+    public void deleteFiles(final List<String> blobNames, final boolean ignoreIfNotExists) throws IOException {
+        final var otherBlobNames = new ArrayList<String>();
+        final var packedBlobNames = new HashMap<String, Set<String>>();
+        for (final var blobName : blobNames) {
+            final var path = parentPath(blobName);
+            final var name = blobName.substring(path.length());
+            if (!isDataBlob(name)) {
+                otherBlobNames.add(blobName);
+            } else if (!removePending(path, name)) {
+                final var packName = directory(path, name).packed.get(name);
+                if (Objects.isNull(packName)) {
+                    otherBlobNames.add(blobName);
+                } else {
+                    packedBlobNames.computeIfAbsent(path + packName, n -> new HashSet<>()).add(name);
+                }
+            }
+        }
+        if (!otherBlobNames.isEmpty()) {
+            super.deleteFiles(otherBlobNames, ignoreIfNotExists);
+            forget(otherBlobNames);
+        }
+        for (final var e : packedBlobNames.entrySet()) {
+            removeFromPack(e.getKey(), e.getValue());
+        }
+    }
+
+    private boolean removePending(final String path, final String name) {
+        final var removed = new AtomicBoolean();
+        pendingPacks.computeIfPresent(path, (p, pending) -> {
+            removed.set(pending.blobs.containsKey(name));
+            return pending.remove(name);
+        });
+        return removed.get();
+    }
+
+    private void forget(final List<String> blobNames) {
+        for (final var blobName : blobNames) {
+            final var path = parentPath(blobName);
+            final var directory = directories.get(path);
+            if (Objects.nonNull(directory)) {
+                directory.blobs.remove(blobName.substring(path.length()));
+            }
+        }
+    }
+
+    /**
+     * Rewrites the pack without the deleted blobs and deletes the old pack.
+     */
+    private void removeFromPack(final String packBlobName, final Set<String> names) throws IOException {
+        final var path = parentPath(packBlobName);
+        final var index = packIndex(packBlobName);
+        if (!names.containsAll(index.names())) {
+            final var content = packContent(packBlobName);
+            final var remaining = new LinkedHashMap<String, byte[]>();
+            for (final var name : index.names()) {
+                if (!names.contains(name)) {
+                    remaining.put(name, index.bytes(content, name));
+                }
+            }
+            writePack(path, remaining);
+            packsRewritten.increment();
+        }
+        super.deleteFiles(List.of(packBlobName), true);
+        packIndexes.invalidate(packBlobName);
+        packContents.invalidate(packBlobName);
+        final var directory = directories.get(path);
+        if (Objects.nonNull(directory)) {
+            names.forEach(directory.packed::remove);
+        }
+    }
+
+    @Override
+    public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
+        pendingPacks.keySet().removeIf(key -> key.startsWith(path));
+        try {
+            return super.deleteDirectories(path);
+        } finally {
+            invalidate(directories, path);
+            invalidate(packIndexes, path);
+            invalidate(packContents, path);
+        }
+    }
+
+    private static <V> void invalidate(final Cache<String, V> cache, final String path) {
+        final var keys = new ArrayList<String>();
+        cache.keys().forEach(keys::add);
+        keys.stream().filter(key -> key.startsWith(path)).forEach(cache::invalidate);
+    }
+
+    @Override
+    public Map<String, Long> listFiles(final String path, final String prefix) throws IOException {
+        final var listed = super.listFiles(path, prefix);
+        final var result = new HashMap<String, Long>();
+        final var packNames = new ArrayList<String>();
+        for (final var e : listed.entrySet()) {
+            if (e.getKey().startsWith(PACK_PREFIX)) {
+                packNames.add(e.getKey());
+            } else {
+                result.put(e.getKey(), e.getValue());
+            }
+        }
+        if (!PACK_PREFIX.startsWith(prefix) && mayMatchDataBlobs(prefix)) {
+            packNames.addAll(super.listFiles(path, PACK_PREFIX).keySet());
+        }
+        for (final var packName : packNames) {
+            packIndex(path + packName).lengths().forEach((name, length) -> {
+                if (name.startsWith(prefix)) {
+                    result.put(name, length.longValue());
+                }
+            });
+        }
+        final var pendingPack = pendingPacks.get(path);
+        if (Objects.nonNull(pendingPack)) {
+            pendingPack.blobs.forEach((name, bytes) -> {
+                if (name.startsWith(prefix)) {
+                    result.put(name, (long) bytes.length);
+                }
+            });
+        }
+        return result;
+    }
+
+    @Override
+    public void invalidate(final String blobName) throws IOException {
+        packIndexes.invalidate(blobName);
+        packContents.invalidate(blobName);
+        super.invalidate(blobName);
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        final var stats = new HashMap<>(super.stats());
+        stats.put("pack.packed_blobs", packedBlobs.sum());
+        stats.put("pack.packs_written", packsWritten.sum());
+        stats.put("pack.packs_rewritten", packsRewritten.sum());
+        stats.put("pack.pending_bytes", pendingBytes());
+        return stats;
+    }
+
+    private boolean isPending(final String path, final String name) {
+        final var pendingPack = pendingPacks.get(path);
+        return Objects.nonNull(pendingPack) && pendingPack.blobs.containsKey(name);
+    }
+
+    /**
+     * Returns the known data blobs of the directory, the directory is listed again if the blob is not among them.
+     */
+    private Directory directory(final String path, final String name) throws IOException {
+        final var directory = directories.get(path);
+        if (Objects.nonNull(directory) && directory.contains(name)) {
+            return directory;
+        }
+        return loadDirectory(path);
+    }
+
+    private Directory knownDirectory(final String path) throws IOException {
+        final var directory = directories.get(path);
+        return Objects.nonNull(directory) ? directory : loadDirectory(path);
+    }
+
+    private Directory loadDirectory(final String path) throws IOException {
+        final var directory = new Directory();
+        for (final var name : super.listFiles(path, "").keySet()) {
+            if (name.startsWith(PACK_PREFIX)) {
+                packIndex(path + name).names().forEach(packed -> directory.packed.put(packed, name));
+            } else if (isDataBlob(name)) {
+                directory.blobs.add(name);
+            }
+        }
+        directories.put(path, directory);
+        return directory;
+    }
+
+    private PackIndex packIndex(final String packBlobName) throws IOException {
+        final var cached = packIndexes.get(packBlobName);
+        if (Objects.nonNull(cached)) {
+            return cached;
+        }
+        final var content = packContents.get(packBlobName);
+        final PackIndex index;
+        try (final var in = Objects.nonNull(content) ? new ByteArrayInputStream(content) : super.read(packBlobName)) {
+            index = PackIndex.read(in);
+        }
+        packIndexes.put(packBlobName, index);
+        return index;
+    }
+
+    private byte[] packContent(final String packBlobName) throws IOException {
+        final var cached = packContents.get(packBlobName);
+        if (Objects.nonNull(cached)) {
+            return cached;
+        }
+        final byte[] content;
+        try (final var in = super.read(packBlobName)) {
+            content = in.readAllBytes();
+        }
+        if (content.length <= MAX_CACHED_PACK_LENGTH) {
+            packContents.put(packBlobName, content);
+        }
+        return content;
+    }
+
+    private static boolean isDataBlob(final String name) {
+        return name.startsWith(DATA_BLOB_PREFIX);
+    }
+
+    private static boolean mayMatchDataBlobs(final String prefix) {
+        return prefix.startsWith(DATA_BLOB_PREFIX) || DATA_BLOB_PREFIX.startsWith(prefix);
+    }
+
+    private static final class Directory {
+
+        private final Set<String> blobs = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Pack names by packed blob name.
+         */
+        private final Map<String, String> packed = new ConcurrentHashMap<>();
+
+        private boolean contains(final String name) {
+            return blobs.contains(name) || packed.containsKey(name);
+        }
+
+    }
+
+    /**
+     * Blobs waiting to be packed, a new instance is created on every change
+     * so readers never see a pack being modified.
+     */
+    private static final class PendingPack {
+
+        private static final PendingPack EMPTY = new PendingPack(Map.of(), 0L, 0L, 0L);
+
+        private final Map<String, byte[]> blobs;
+
+        private final long size;
+
+        private final long createdAt;
+
+        private final long updatedAt;
+
+        private PendingPack(final Map<String, byte[]> blobs,
+                            final long size,
+                            final long createdAt,
+                            final long updatedAt) {
+            this.blobs = blobs;
+            this.size = size;
+            this.createdAt = createdAt;
+            this.updatedAt = updatedAt;
+        }
+
+        private PendingPack add(final String name, final byte[] bytes, final long now) {
+            final var added = new LinkedHashMap<>(blobs);
+            final var replaced = added.put(name, bytes);
+            return new PendingPack(
+                    added,
+                    size + bytes.length - (Objects.isNull(replaced) ? 0 : replaced.length),
+                    blobs.isEmpty() ? now : createdAt,
+                    now);
+        }
+
+        private PendingPack merge(final PendingPack other) {
+            final var merged = new LinkedHashMap<>(blobs);
+            merged.putAll(other.blobs);
+            return new PendingPack(
+                    merged,
+                    merged.values().stream().mapToLong(bytes -> bytes.length).sum(),
+                    Math.min(createdAt, other.createdAt),
+                    Math.max(updatedAt, other.updatedAt));
+        }
+
+        private PendingPack remove(final String name) {
+            final var removed = new LinkedHashMap<>(blobs);
+            final var bytes = removed.remove(name);
+            if (removed.isEmpty()) {
+                return null;
+            }
+            return new PendingPack(removed, Objects.isNull(bytes) ? size : size - bytes.length, createdAt, updatedAt);
+        }
+
+    }
+
+}
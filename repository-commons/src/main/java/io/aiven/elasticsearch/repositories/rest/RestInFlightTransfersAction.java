@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.rest;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.opensearch.client.node.NodeClient;
+import org.opensearch.repositories.RepositoryMissingException;
+import org.opensearch.rest.BaseRestHandler;
+import org.opensearch.rest.BytesRestResponse;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.rest.RestStatus;
+
+import io.aiven.elasticsearch.repositories.metrics.OperationTrace;
+
+/**
+ * Lists the blob reads and writes a repository is running on this node, e.g.
+ * {@code GET /_aiven/aiven-s3/repositories/my_repository/transfers}.
+ */
+public class RestInFlightTransfersAction extends BaseRestHandler {
+
+    private final String repositoryType;
+
+    private final Function<String, Optional<List<OperationTrace>>> inFlightTransfers;
+
+    public RestInFlightTransfersAction(final String repositoryType,
+                                       final Function<String, Optional<List<OperationTrace>>> inFlightTransfers) {
+        this.repositoryType = repositoryType;
+        this.inFlightTransfers = inFlightTransfers;
+    }
+
+    @Override
+    public String getName() {
+        return repositoryType.replace('-', '_') + "_in_flight_transfers_action";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return List.of(new Route(
+                RestRequest.Method.GET, "/_aiven/" + repositoryType + "/repositories/{repository}/transfers"));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) {
+        final var repository = request.param("repository");
+        final var transfers =
+                inFlightTransfers.apply(repository).orElseThrow(() -> new RepositoryMissingException(repository));
+        return channel -> {
+            final var builder = channel.newBuilder();
+            builder.startObject();
+            builder.startArray("transfers");
+            for (final var transfer : transfers) {
+                builder.startObject()
+                        .field("operation", transfer.operation())
+                        .field("path", transfer.path())
+                        .field("bytes", transfer.bytes())
+                        .field("bytes_per_sec", transfer.bytesPerSecond())
+                        .field("elapsed_millis", TimeUnit.NANOSECONDS.toMillis(transfer.elapsedNanos()))
+                        .field("part_number", transfer.partNumber())
+                        .field("retries", transfer.retries())
+                        .endObject();
+            }
+            builder.endArray();
+            builder.endObject();
+            channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+        };
+    }
+
+}
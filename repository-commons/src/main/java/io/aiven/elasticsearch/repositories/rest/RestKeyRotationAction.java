@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.rest;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.opensearch.client.node.NodeClient;
+import org.opensearch.common.unit.ByteSizeValue;
+import org.opensearch.repositories.RepositoryMissingException;
+import org.opensearch.rest.BaseRestHandler;
+import org.opensearch.rest.BytesRestResponse;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.rest.RestStatus;
+
+import io.aiven.elasticsearch.repositories.RepositoryTools;
+
+/**
+ * Rotates the encryption key of a repository and re-encrypts its blobs in the background, e.g.
+ * {@code POST /_aiven/aiven-s3/repositories/my_repository/_rotate_key?concurrency=4&max_bytes_per_sec=50mb}.
+ * {@code POST .../_reencrypt} resumes a failed re-encryption and {@code GET .../_reencrypt} reports its progress
+ * on this node. Its {@code remaining_blobs} are blobs other nodes wrote with the previous key before they reloaded
+ * the keys, a second {@code POST .../_reencrypt} rewrites them.
+ */
+public class RestKeyRotationAction extends BaseRestHandler {
+
+    private final String repositoryType;
+
+    private final Function<String, Optional<RepositoryTools>> tools;
+
+    public RestKeyRotationAction(final String repositoryType,
+                                 final Function<String, Optional<RepositoryTools>> tools) {
+        this.repositoryType = repositoryType;
+        this.tools = tools;
+    }
+
+    @Override
+    public String getName() {
+        return repositoryType.replace('-', '_') + "_key_rotation_action";
+    }
+
+    @Override
+    public List<Route> routes() {
+        final var path = "/_aiven/" + repositoryType + "/repositories/{repository}/";
+        return List.of(
+                new Route(RestRequest.Method.POST, path + "_rotate_key"),
+                new Route(RestRequest.Method.POST, path + "_reencrypt"),
+                new Route(RestRequest.Method.GET, path + "_reencrypt"));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) {
+        final var repositoryName = request.param("repository");
+        final var repositoryTools =
+                tools.apply(repositoryName).orElseThrow(() -> new RepositoryMissingException(repositoryName));
+        if (request.method() == RestRequest.Method.GET) {
+            final var status =
+                    repositoryTools.reEncryptionStatus().orElseThrow(() -> new IllegalArgumentException(
+                            "Repository [" + repositoryName + "] hasn't been re-encrypted on this node"));
+            return channel -> channel.sendResponse(
+                    new BytesRestResponse(RestStatus.OK, channel.newBuilder().map(status)));
+        }
+        final var rotateKey = request.path().endsWith("/_rotate_key");
+        final var concurrency = request.paramAsInt("concurrency", 4);
+        final var maxBytesPerSec = request.paramAsSize("max_bytes_per_sec", new ByteSizeValue(0L)).getBytes();
+        if (concurrency < 1 || maxBytesPerSec < 0) {
+            throw new IllegalArgumentException(
+                    "concurrency must be positive and max_bytes_per_sec must not be negative");
+        }
+        // the key metadata is read and written in the storage, not on the network thread
+        return channel -> client.threadPool().generic().execute(() -> {
+            try {
+                final var reEncryption =
+                        rotateKey
+                                ? repositoryTools.rotateEncryptionKey(concurrency, maxBytesPerSec)
+                                : repositoryTools.reEncrypt(concurrency, maxBytesPerSec);
+                channel.sendResponse(
+                        new BytesRestResponse(RestStatus.ACCEPTED, channel.newBuilder().map(reEncryption.status())));
+            } catch (final Exception e) {
+                try {
+                    channel.sendResponse(new BytesRestResponse(channel, e));
+                } catch (final Exception inner) {
+                    inner.addSuppressed(e);
+                    throw new IllegalStateException("Couldn't send key rotation failure", inner);
+                }
+            }
+        });
+    }
+
+}
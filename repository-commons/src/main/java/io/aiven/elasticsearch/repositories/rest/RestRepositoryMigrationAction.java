@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.rest;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.opensearch.client.node.NodeClient;
+import org.opensearch.common.unit.ByteSizeValue;
+import org.opensearch.repositories.Repository;
+import org.opensearch.repositories.RepositoryMissingException;
+import org.opensearch.rest.BaseRestHandler;
+import org.opensearch.rest.BytesRestResponse;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.rest.RestStatus;
+
+import io.aiven.elasticsearch.repositories.RepositoryTools;
+
+/**
+ * Starts a migration of a repository into another repository of the plugin, which may use another bucket or
+ * provider, e.g. {@code POST /_aiven/aiven-s3/repositories/my_repository/_migrate?target=my_gcs_repository},
+ * and reports its progress on this node with {@code GET} on the same path.
+ */
+public class RestRepositoryMigrationAction extends BaseRestHandler {
+
+    private final String repositoryType;
+
+    private final Function<String, Optional<RepositoryTools>> tools;
+
+    private final Function<String, Repository> targetRepositories;
+
+    public RestRepositoryMigrationAction(final String repositoryType,
+                                         final Function<String, Optional<RepositoryTools>> tools,
+                                         final Function<String, Repository> targetRepositories) {
+        this.repositoryType = repositoryType;
+        this.tools = tools;
+        this.targetRepositories = targetRepositories;
+    }
+
+    @Override
+    public String getName() {
+        return repositoryType.replace('-', '_') + "_repository_migration_action";
+    }
+
+    @Override
+    public List<Route> routes() {
+        final var path = "/_aiven/" + repositoryType + "/repositories/{repository}/_migrate";
+        return List.of(new Route(RestRequest.Method.GET, path), new Route(RestRequest.Method.POST, path));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) {
+        final var repositoryName = request.param("repository");
+        final var repositoryTools =
+                tools.apply(repositoryName).orElseThrow(() -> new RepositoryMissingException(repositoryName));
+        if (request.method() == RestRequest.Method.GET) {
+            final var status =
+                    repositoryTools.migrationStatus().orElseThrow(() -> new IllegalArgumentException(
+                            "Repository [" + repositoryName + "] hasn't been migrated on this node"));
+            return channel -> channel.sendResponse(
+                    new BytesRestResponse(RestStatus.OK, channel.newBuilder().map(status)));
+        }
+        final var targetName = request.param("target");
+        final var concurrency = request.paramAsInt("concurrency", 4);
+        final var maxBytesPerSec = request.paramAsSize("max_bytes_per_sec", new ByteSizeValue(0L)).getBytes();
+        if (Objects.isNull(targetName) || concurrency < 1 || maxBytesPerSec < 0) {
+            throw new IllegalArgumentException(
+                    "target is required, concurrency must be positive and max_bytes_per_sec must not be negative");
+        }
+        final var target = target(repositoryName, targetName);
+        // creating the blob stores may build clients and restore the encryption keys, not on the network thread
+        return channel -> client.threadPool().generic().execute(() -> {
+            try {
+                final var migration =
+                        repositoryTools.migrateTo(
+                                targetName,
+                                target.blobStore(),
+                                target.basePath(),
+                                concurrency,
+                                maxBytesPerSec);
+                channel.sendResponse(
+                        new BytesRestResponse(RestStatus.ACCEPTED, channel.newBuilder().map(migration.status())));
+            } catch (final Exception e) {
+                try {
+                    channel.sendResponse(new BytesRestResponse(channel, e));
+                } catch (final Exception inner) {
+                    inner.addSuppressed(e);
+                    throw new IllegalStateException("Couldn't send repository migration failure", inner);
+                }
+            }
+        });
+    }
+
+    private org.opensearch.repositories.blobstore.BlobStoreRepository target(final String repositoryName,
+                                                                            final String targetName) {
+        final var target = targetRepositories.apply(targetName);
+        // the blob stores of this plugin upload as a stream and don't rely on the blob size
+        if (targetName.equals(repositoryName)
+                || !target.getMetadata().type().startsWith("aiven-")
+                || !(target instanceof org.opensearch.repositories.blobstore.BlobStoreRepository)
+                || target.isReadOnly()) {
+            throw new IllegalArgumentException("Cannot migrate repository [" + repositoryName + "] to ["
+                    + targetName + "], the target must be another writable repository of an aiven-* type");
+        }
+        return (org.opensearch.repositories.blobstore.BlobStoreRepository) target;
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.rest;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.opensearch.client.node.NodeClient;
+import org.opensearch.common.unit.ByteSizeUnit;
+import org.opensearch.common.unit.ByteSizeValue;
+import org.opensearch.repositories.RepositoryMissingException;
+import org.opensearch.rest.BaseRestHandler;
+import org.opensearch.rest.BytesRestResponse;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.rest.RestStatus;
+
+import io.aiven.elasticsearch.repositories.RepositoryTools;
+
+/**
+ * Runs a load test against the storage of a repository from this node and reports throughput and latency
+ * percentiles per operation, e.g.
+ * {@code POST /_aiven/aiven-s3/repositories/my_repository/_analyze_throughput?blob_count=100&blob_size=8mb}.
+ */
+public class RestThroughputAnalysisAction extends BaseRestHandler {
+
+    private final String repositoryType;
+
+    private final Function<String, Optional<RepositoryTools>> tools;
+
+    public RestThroughputAnalysisAction(final String repositoryType,
+                                        final Function<String, Optional<RepositoryTools>> tools) {
+        this.repositoryType = repositoryType;
+        this.tools = tools;
+    }
+
+    @Override
+    public String getName() {
+        return repositoryType.replace('-', '_') + "_throughput_analysis_action";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return List.of(new Route(
+                RestRequest.Method.POST,
+                "/_aiven/" + repositoryType + "/repositories/{repository}/_analyze_throughput"));
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(final RestRequest request, final NodeClient client) {
+        final var repositoryName = request.param("repository");
+        final var blobCount = request.paramAsInt("blob_count", 10);
+        final var blobSize =
+                request.paramAsSize("blob_size", new ByteSizeValue(1, ByteSizeUnit.MB)).getBytes();
+        final var concurrency = request.paramAsInt("concurrency", 4);
+        if (blobCount < 1 || concurrency < 1 || blobSize < 1 || blobSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "blob_count, concurrency and blob_size must be positive, blob_size must be less than 2gb");
+        }
+        final var repositoryTools =
+                tools.apply(repositoryName).orElseThrow(() -> new RepositoryMissingException(repositoryName));
+        // the analysis blocks for the whole load test, so it doesn't run on the network thread
+        return channel -> client.threadPool().generic().execute(() -> {
+            try {
+                final var results =
+                        repositoryTools.throughputAnalyzer().analyze(blobCount, Math.toIntExact(blobSize), concurrency);
+                final var builder = channel.newBuilder();
+                builder.startObject();
+                for (final var result : results.entrySet()) {
+                    builder.field(result.getKey(), result.getValue());
+                }
+                builder.endObject();
+                channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+            } catch (final Exception e) {
+                try {
+                    channel.sendResponse(new BytesRestResponse(channel, e));
+                } catch (final Exception inner) {
+                    inner.addSuppressed(e);
+                    throw new IllegalStateException("Couldn't send throughput analysis failure", inner);
+                }
+            }
+        });
+    }
+
+}
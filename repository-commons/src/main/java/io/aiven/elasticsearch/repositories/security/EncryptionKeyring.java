@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.security;
+
+import java.io.IOException;
+
+/**
+ * Source of the encryption keys of a repository. Keys may be rotated by another node at any time,
+ * so a blob may reference a key this node doesn't know yet.
+ */
+@FunctionalInterface
+public interface EncryptionKeyring {
+
+    EncryptionKeys keys();
+
+    /**
+     * Reloads the keys from the repository, called when a blob references an unknown key.
+     */
+    default EncryptionKeys reload() throws IOException {
+        return keys();
+    }
+
+    /**
+     * Keys to encrypt a new blob with, reloaded now and then so a key rotated by another node is soon used.
+     */
+    default EncryptionKeys currentKeys() throws IOException {
+        return keys();
+    }
+
+}
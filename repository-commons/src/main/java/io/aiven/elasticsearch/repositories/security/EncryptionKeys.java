@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.security;
+
+import javax.crypto.SecretKey;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encryption keys of a repository by id. Blobs are encrypted with the current key, the others are kept
+ * to decrypt the blobs written before the key has been rotated. Blobs of a repository which has never been rotated
+ * are encrypted with the initial key and carry no key id, so their format is the same as before key rotation existed.
+ */
+public final class EncryptionKeys {
+
+    public static final int INITIAL_KEY_ID = 0;
+
+    private final Map<Integer, SecretKey> keys;
+
+    private final int currentKeyId;
+
+    public EncryptionKeys(final Map<Integer, SecretKey> keys, final int currentKeyId) {
+        if (!keys.containsKey(currentKeyId)) {
+            throw new IllegalArgumentException("Unknown current encryption key id " + currentKeyId);
+        }
+        this.keys = Collections.unmodifiableMap(new HashMap<>(keys));
+        this.currentKeyId = currentKeyId;
+    }
+
+    public static EncryptionKeys of(final SecretKey key) {
+        return new EncryptionKeys(Collections.singletonMap(INITIAL_KEY_ID, key), INITIAL_KEY_ID);
+    }
+
+    public int currentKeyId() {
+        return currentKeyId;
+    }
+
+    public SecretKey currentKey() {
+        return keys.get(currentKeyId);
+    }
+
+    public boolean contains(final int keyId) {
+        return keys.containsKey(keyId);
+    }
+
+    public SecretKey key(final int keyId) throws IOException {
+        if (!keys.containsKey(keyId)) {
+            throw new IOException("Unknown encryption key id " + keyId);
+        }
+        return keys.get(keyId);
+    }
+
+    public Map<Integer, SecretKey> keys() {
+        return keys;
+    }
+
+    /**
+     * Adds the key with the next id and makes it the current one.
+     */
+    public EncryptionKeys rotate(final SecretKey newKey) {
+        final var rotated = new HashMap<>(keys);
+        final var newKeyId = Collections.max(keys.keySet()) + 1;
+        rotated.put(newKeyId, newKey);
+        return new EncryptionKeys(rotated, newKeyId);
+    }
+
+}
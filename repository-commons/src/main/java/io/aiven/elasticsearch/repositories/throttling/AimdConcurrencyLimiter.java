@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.throttling;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit with additive increase and multiplicative decrease. Every successful request
+ * grows the limit by {@code 1 / limit}, i.e. by one per window of successful requests, while a throttled
+ * request halves it. Requests started before the last decrease don't decrease the limit again,
+ * so a burst of throttled responses to one window halves it only once.
+ */
+public class AimdConcurrencyLimiter {
+
+    static final double BACKOFF_RATIO = 0.5;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition permitReleased = lock.newCondition();
+
+    private double limit;
+
+    private int inFlight;
+
+    private long window;
+
+    private long throttledRequests;
+
+    public AimdConcurrencyLimiter(final int minLimit, final int maxLimit) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException(
+                    "Invalid concurrency limits, min: " + minLimit + ", max: " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Waits until a request can be started.
+     *
+     * @return the permit which must be released once the request has finished
+     */
+    public Permit acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= (int) limit) {
+                permitReleased.await();
+            }
+            inFlight++;
+            return new Permit(window);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long throttledRequests() {
+        lock.lock();
+        try {
+            return throttledRequests;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(final long permitWindow, final boolean throttled) {
+        lock.lock();
+        try {
+            // grow only while the limit is actually in use, an idle node learns nothing about the storage
+            final var saturated = inFlight * 2 >= limit;
+            inFlight--;
+            if (throttled) {
+                throttledRequests++;
+                if (permitWindow == window) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    window++;
+                }
+            } else if (saturated) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public final class Permit {
+
+        private final long window;
+
+        private boolean released;
+
+        private Permit(final long window) {
+            this.window = window;
+        }
+
+        /**
+         * Releases the permit, subsequent calls are ignored.
+         *
+         * @param throttled whether the storage throttled the request
+         */
+        public synchronized void release(final boolean throttled) {
+            if (!released) {
+                released = true;
+                AimdConcurrencyLimiter.this.release(window, throttled);
+            }
+        }
+
+    }
+
+}
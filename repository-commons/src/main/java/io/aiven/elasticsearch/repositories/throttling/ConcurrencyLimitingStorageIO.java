@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.throttling;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.opensearch.common.CheckedRunnable;
+import org.opensearch.common.CheckedSupplier;
+import org.opensearch.common.collect.Tuple;
+
+import io.aiven.elasticsearch.repositories.DelegatingStorageIO;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+
+/**
+ * Limits the number of concurrent storage requests with {@link AimdConcurrencyLimiter}.
+ * Failures recognised by {@link StorageIO#isThrottlingError(Throwable)} shrink the limit,
+ * successful requests grow it back. A read holds its permit until the returned stream is closed.
+ */
+public class ConcurrencyLimitingStorageIO extends DelegatingStorageIO {
+
+    private final AimdConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitingStorageIO(final StorageIO delegate, final AimdConcurrencyLimiter limiter) {
+        super(delegate);
+        this.limiter = limiter;
+    }
+
+    @Override
+    public boolean exists(final String blobName) throws IOException {
+        return limited(() -> super.exists(blobName));
+    }
+
+    @Override
+    public InputStream read(final String blobName) throws IOException {
+        final var permit = acquire();
+        try {
+            return new LimitedInputStream(super.read(blobName), permit);
+        } catch (final IOException | RuntimeException e) {
+            permit.release(isThrottled(e));
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(final String blobName,
+                      final InputStream inputStream,
+                      final long blobSize,
+                      final boolean failIfAlreadyExists) throws IOException {
+        limited(() -> super.write(blobName, inputStream, blobSize, failIfAlreadyExists));
+    }
+
+    @Override
+    public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+        limited(() -> super.copy(sourceBlobName, targetBlobName));
+    }
+
+    @Override
+    public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
+        return limited(() -> super.deleteDirectories(path));
+    }
+
+    @Override
+    public void deleteFiles(final List<String> blobNames, final boolean ignoreIfNotExists) throws IOException {
+        limited(() -> super.deleteFiles(blobNames, ignoreIfNotExists));
+    }
+
+    @Override
+    public List<String> listDirectories(final String path) throws IOException {
+        return limited(() -> super.listDirectories(path));
+    }
+
+    @Override
+    public Map<String, Long> listFiles(final String path, final String prefix) throws IOException {
+        return limited(() -> super.listFiles(path, prefix));
+    }
+
+    @Override
+    public Map<String, Long> stats() {
+        final var stats = new HashMap<>(super.stats());
+        stats.put("concurrency_limit.limit", (long) limiter.limit());
+        stats.put("concurrency_limit.in_flight", (long) limiter.inFlight());
+        stats.put("concurrency_limit.throttled_requests", limiter.throttledRequests());
+        return stats;
+    }
+
+    private void limited(final CheckedRunnable<IOException> call) throws IOException {
+        limited(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private <T> T limited(final CheckedSupplier<T, IOException> call) throws IOException {
+        final var permit = acquire();
+        var throttled = false;
+        try {
+            return call.get();
+        } catch (final IOException | RuntimeException e) {
+            throttled = isThrottled(e);
+            throw e;
+        } finally {
+            permit.release(throttled);
+        }
+    }
+
+    private AimdConcurrencyLimiter.Permit acquire() throws IOException {
+        try {
+            return limiter.acquire();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a storage request permit");
+        }
+    }
+
+    private boolean isThrottled(final Throwable error) {
+        for (var e = error; Objects.nonNull(e); e = e.getCause()) {
+            if (isThrottlingError(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private final class LimitedInputStream extends FilterInputStream {
+
+        private final AimdConcurrencyLimiter.Permit permit;
+
+        private boolean throttled;
+
+        private LimitedInputStream(final InputStream in, final AimdConcurrencyLimiter.Permit permit) {
+            super(in);
+            this.permit = permit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (final IOException | RuntimeException e) {
+                throttled = throttled || isThrottled(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (final IOException | RuntimeException e) {
+                throttled = throttled || isThrottled(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                permit.release(throttled);
+            }
+        }
+
+    }
+
+}
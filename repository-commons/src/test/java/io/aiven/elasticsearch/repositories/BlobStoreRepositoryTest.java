@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opensearch.cluster.metadata.RepositoryMetadata;
+import org.opensearch.cluster.service.ClusterApplierService;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.settings.ClusterSettings;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.common.xcontent.NamedXContentRegistry;
+import org.opensearch.indices.recovery.RecoverySettings;
+import org.opensearch.threadpool.ThreadPool;
+
+import io.aiven.elasticsearch.repositories.io.BandwidthLimiter;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.REPOSITORY_METADATA_FILE_NAME;
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BlobStoreRepositoryTest {
+
+    static final int WARM_UP_CONNECTIONS = 3;
+
+    @Mock
+    ClusterService clusterService;
+
+    @Mock
+    ClusterApplierService clusterApplierService;
+
+    @Mock
+    ThreadPool threadPool;
+
+    @Mock
+    RepositorySettingsProvider<Object, CommonSettings.ClientSettings> repositorySettingsProvider;
+
+    @Mock
+    RepositoryStorageIOProvider<Object, CommonSettings.ClientSettings> storageIOProvider;
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    final AtomicInteger genericThreads = new AtomicInteger();
+
+    // blob stores may only be created on the generic or snapshot thread pools
+    final ExecutorService genericExecutor =
+            Executors.newFixedThreadPool(
+                    WARM_UP_CONNECTIONS + 1,
+                    runnable -> new Thread(runnable, "test[generic][T#" + genericThreads.incrementAndGet() + "]"));
+
+    @BeforeEach
+    void setUp() throws IOException {
+        when(clusterService.getClusterApplierService()).thenReturn(clusterApplierService);
+        when(clusterApplierService.threadPool()).thenReturn(threadPool);
+        lenient().when(threadPool.generic()).thenReturn(genericExecutor);
+        lenient().when(threadPool.executor(anyString())).thenReturn(genericExecutor);
+        lenient().when(threadPool.getThreadContext()).thenReturn(new ThreadContext(Settings.EMPTY));
+        lenient().when(repositorySettingsProvider.repositoryStorageIOProvider()).thenReturn(storageIOProvider);
+    }
+
+    @AfterEach
+    void tearDown() {
+        genericExecutor.shutdownNow();
+    }
+
+    @Test
+    void warmUpChecksRepositoryMetadataOnGenericPool() throws Exception {
+        when(storageIOProvider.createStorageIO(anyString(), any(), any(), any(), any(), any()))
+                .thenReturn(mockedStorageIO);
+        final var threadNames = ConcurrentHashMap.<String>newKeySet();
+        when(mockedStorageIO.exists(REPOSITORY_METADATA_FILE_NAME))
+                .thenAnswer(invocation -> threadNames.add(Thread.currentThread().getName()));
+
+        repository(true).start();
+
+        verify(mockedStorageIO, timeout(10_000L).times(WARM_UP_CONNECTIONS)).exists(REPOSITORY_METADATA_FILE_NAME);
+        // the checks are recorded before they run, let them complete
+        genericExecutor.shutdown();
+        assertTrue(genericExecutor.awaitTermination(10L, TimeUnit.SECONDS));
+        assertFalse(threadNames.isEmpty());
+        threadNames.forEach(name -> assertTrue(name.contains("[generic]"), name));
+    }
+
+    @Test
+    void failedWarmUpDoesNotFailStart() throws Exception {
+        when(storageIOProvider.createStorageIO(anyString(), any(), any(), any(), any(), any()))
+                .thenThrow(new IOException("unreachable"))
+                .thenReturn(mockedStorageIO);
+
+        final var repository = repository(true);
+        repository.start();
+
+        verify(storageIOProvider, timeout(10_000L).times(1))
+                .createStorageIO(anyString(), any(), any(), any(), any(), any());
+        // the blob store is created again on first use
+        assertNotNull(genericExecutor.submit(repository::repositoryBlobStore).get());
+    }
+
+    @Test
+    void doNotWarmUpByDefault() throws IOException {
+        repository(false).start();
+
+        verify(storageIOProvider, never()).createStorageIO(anyString(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void maintainsCreatedBlobStorePeriodically() throws Exception {
+        when(storageIOProvider.createStorageIO(anyString(), any(), any(), any(), any(), any()))
+                .thenReturn(mockedStorageIO);
+        final var repository = repository(false);
+        repository.start();
+        final var maintenance = ArgumentCaptor.forClass(Runnable.class);
+        verify(threadPool).scheduleWithFixedDelay(maintenance.capture(), any(), anyString());
+
+        maintenance.getValue().run();
+        verify(storageIOProvider, never()).createStorageIO(anyString(), any(), any(), any(), any(), any());
+
+        genericExecutor.submit(repository::repositoryBlobStore).get();
+        maintenance.getValue().run();
+        verify(mockedStorageIO).maintain();
+    }
+
+    private BlobStoreRepository<Object, CommonSettings.ClientSettings> repository(final boolean warmUp) {
+        final var settings =
+                Settings.builder()
+                        .put(CommonSettings.RepositorySettings.WARM_UP.getKey(), warmUp)
+                        .put(CommonSettings.RepositorySettings.WARM_UP_CONNECTIONS.getKey(), WARM_UP_CONNECTIONS)
+                        .build();
+        return new BlobStoreRepository<>(
+                new RepositoryMetadata("some_repository", "some_type", settings),
+                NamedXContentRegistry.EMPTY,
+                clusterService,
+                new RecoverySettings(Settings.EMPTY, new ClusterSettings(Settings.EMPTY,
+                        ClusterSettings.BUILT_IN_CLUSTER_SETTINGS)),
+                repositorySettingsProvider,
+                BandwidthLimiter.unlimited());
+    }
+
+}
@@ -16,26 +16,40 @@
 
 package io.aiven.elasticsearch.repositories;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.opensearch.common.blobstore.BlobPath;
 import org.opensearch.common.blobstore.BlobStoreException;
 import org.opensearch.common.collect.Tuple;
 
+import io.aiven.elasticsearch.repositories.jfr.BlobReadEvent;
+import io.aiven.elasticsearch.repositories.jfr.BlobWriteEvent;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -141,6 +155,54 @@ class RepositoryBlobContainerTest {
 
     }
 
+    @Test
+    void deleteBlobsIgnoringIfNotExistsInBatches() throws IOException {
+        final var blobNames =
+                IntStream.range(0, RepositoryBlobContainer.DELETE_BATCH_SIZE * 2 + 1)
+                        .mapToObj(i -> "some_blob_" + i)
+                        .collect(Collectors.toList());
+
+        repositoryBlobContainer.deleteBlobsIgnoringIfNotExists(blobNames);
+
+        verify(mockedStorageIO, times(3)).deleteFiles(anyList(), eq(true));
+        verify(mockedStorageIO).deleteFiles(eq(List.of(DEFAULT_PATH.buildAsString() + "some_blob_2000")), eq(true));
+    }
+
+    @Test
+    void deleteFirstBatchOnCallingThread() throws IOException {
+        final var blobNames =
+                IntStream.range(0, RepositoryBlobContainer.DELETE_BATCH_SIZE * 2 + 1)
+                        .mapToObj(i -> "some_blob_" + i)
+                        .collect(Collectors.toList());
+        final var executedBatches = new AtomicInteger();
+        final var container =
+                new RepositoryBlobContainer(
+                        DEFAULT_PATH,
+                        mockedStorageIO,
+                        command -> {
+                            executedBatches.incrementAndGet();
+                            command.run();
+                        },
+                        "some_backend");
+
+        container.deleteBlobsIgnoringIfNotExists(blobNames);
+
+        verify(mockedStorageIO, times(3)).deleteFiles(anyList(), eq(true));
+        assertEquals(2, executedBatches.get());
+    }
+
+    @Test
+    void deleteBlobsIgnoringIfNotExistsInBatchesThrowsIOException() throws IOException {
+        final var blobNames =
+                IntStream.range(0, RepositoryBlobContainer.DELETE_BATCH_SIZE + 1)
+                        .mapToObj(i -> "some_blob_" + i)
+                        .collect(Collectors.toList());
+        doThrow(IOException.class).when(mockedStorageIO).deleteFiles(anyList(), eq(true));
+
+        assertThrows(
+                IOException.class, () -> repositoryBlobContainer.deleteBlobsIgnoringIfNotExists(blobNames));
+    }
+
     @Test
     void children() throws IOException {
 
@@ -202,4 +264,36 @@ class RepositoryBlobContainerTest {
 
     }
 
+    @Test
+    void recordsJfrEventsForReadsAndWrites(@TempDir final Path tmpDir) throws Exception {
+        when(mockedStorageIO.read(DEFAULT_PATH.buildAsString() + "some_blob"))
+                .thenReturn(new ByteArrayInputStream(new byte[42]));
+        final var container =
+                new RepositoryBlobContainer(
+                        DEFAULT_PATH, mockedStorageIO, Runnable::run,
+                        "some_backend");
+
+        final var recordingFile = tmpDir.resolve("recording.jfr");
+        try (final var recording = new Recording()) {
+            recording.enable(BlobReadEvent.class);
+            recording.enable(BlobWriteEvent.class);
+            recording.start();
+            container.writeBlob("some_blob", new ByteArrayInputStream(new byte[10]), 10L, false);
+            try (final var in = container.readBlob("some_blob")) {
+                in.readAllBytes();
+            }
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        final var events =
+                RecordingFile.readAllEvents(recordingFile).stream()
+                        .collect(Collectors.toMap(e -> e.getEventType().getName(), e -> e));
+        final var write = events.get("io.aiven.repositories.BlobWrite");
+        assertEquals("some_backend", write.getString("backend"));
+        assertEquals(DEFAULT_PATH.buildAsString() + "some_blob", write.getString("path"));
+        assertEquals(10L, write.getLong("bytes"));
+        assertEquals(42L, events.get("io.aiven.repositories.BlobRead").getLong("bytes"));
+    }
+
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Security;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DiskCacheStorageIOTest {
+
+    static final byte[] CONTENT = "some content which is cached on the disk".getBytes();
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    @TempDir
+    Path tmpFolder;
+
+    DiskCacheStorageIO diskCacheStorageIO;
+
+    @BeforeAll
+    static void addBouncyCastleProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        diskCacheStorageIO = new DiskCacheStorageIO(mockedStorageIO, tmpFolder.resolve("cache"), 1024L, 8_192);
+    }
+
+    @Test
+    void readBlobFromDisk() throws IOException {
+        when(mockedStorageIO.read("some/blob")).thenReturn(new ByteArrayInputStream(CONTENT));
+
+        try (final var in = diskCacheStorageIO.read("some/blob")) {
+            assertArrayEquals(CONTENT, in.readAllBytes());
+        }
+        try (final var in = diskCacheStorageIO.read("some/blob")) {
+            assertArrayEquals(CONTENT, in.readAllBytes());
+        }
+
+        verify(mockedStorageIO, times(1)).read("some/blob");
+        assertEquals(1L, diskCacheStorageIO.stats().get("disk_cache.hits"));
+        assertEquals(1L, diskCacheStorageIO.stats().get("disk_cache.misses"));
+    }
+
+    @Test
+    void cachedFilesAreEncrypted() throws IOException {
+        when(mockedStorageIO.read("some/blob")).thenReturn(new ByteArrayInputStream(CONTENT));
+
+        try (final var in = diskCacheStorageIO.read("some/blob")) {
+            in.readAllBytes();
+        }
+
+        final var files = cachedFiles();
+        assertEquals(1, files.size());
+        assertFalse(new String(Files.readAllBytes(files.get(0))).contains("cached"));
+    }
+
+    @Test
+    void evictLeastRecentlyUsedBlob() throws IOException {
+        final var bigContent = new byte[250];
+        new Random().nextBytes(bigContent);
+        when(mockedStorageIO.read(startsWith("some/blob")))
+                .thenAnswer(invocation -> new ByteArrayInputStream(bigContent));
+
+        for (final var blobName : List.of("some/blob1", "some/blob2", "some/blob3", "some/blob4", "some/blob1")) {
+            try (final var in = diskCacheStorageIO.read(blobName)) {
+                assertArrayEquals(bigContent, in.readAllBytes());
+            }
+        }
+
+        verify(mockedStorageIO, times(2)).read("some/blob1");
+        assertEquals(0L, diskCacheStorageIO.stats().get("disk_cache.hits"));
+    }
+
+    @Test
+    void streamBlobTooBigToBeCached() throws IOException {
+        final var bigContent = new byte[300];
+        when(mockedStorageIO.read("some/blob"))
+                .thenReturn(new ByteArrayInputStream(bigContent), new ByteArrayInputStream(bigContent));
+
+        for (int i = 0; i < 2; i++) {
+            try (final var in = diskCacheStorageIO.read("some/blob")) {
+                assertArrayEquals(bigContent, in.readAllBytes());
+            }
+        }
+
+        verify(mockedStorageIO, times(2)).read("some/blob");
+        assertEquals(2L, diskCacheStorageIO.stats().get("disk_cache.skips"));
+        assertEquals(0L, diskCacheStorageIO.stats().get("disk_cache.size_in_bytes"));
+        assertEquals(List.of(), cachedFiles());
+    }
+
+    @Test
+    void doNotCacheBlobReadPartially() throws IOException {
+        when(mockedStorageIO.read("some/blob"))
+                .thenReturn(new ByteArrayInputStream(CONTENT), new ByteArrayInputStream(CONTENT));
+
+        try (final var in = diskCacheStorageIO.read("some/blob")) {
+            assertEquals(CONTENT[0], in.read());
+        }
+        try (final var in = diskCacheStorageIO.read("some/blob")) {
+            assertArrayEquals(CONTENT, in.readAllBytes());
+        }
+
+        verify(mockedStorageIO, times(2)).read("some/blob");
+        assertEquals(1, cachedFiles().size());
+    }
+
+    @Test
+    void deleteFilesRemovesCachedBlob() throws IOException {
+        when(mockedStorageIO.read("some/blob"))
+                .thenReturn(new ByteArrayInputStream(CONTENT), new ByteArrayInputStream(CONTENT));
+
+        try (final var in = diskCacheStorageIO.read("some/blob")) {
+            in.readAllBytes();
+        }
+        diskCacheStorageIO.deleteFiles(List.of("some/blob"), true);
+        try (final var in = diskCacheStorageIO.read("some/blob")) {
+            in.readAllBytes();
+        }
+
+        verify(mockedStorageIO, times(2)).read("some/blob");
+        assertEquals(0L, diskCacheStorageIO.stats().get("disk_cache.hits"));
+    }
+
+    private List<Path> cachedFiles() throws IOException {
+        try (final var stream = Files.list(tmpFolder.resolve("cache"))) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opensearch.common.unit.TimeValue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ListingCacheStorageIOTest {
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    final AtomicLong clock = new AtomicLong();
+
+    ListingCacheStorageIO listingCacheStorageIO;
+
+    @BeforeEach
+    void setUp() {
+        listingCacheStorageIO =
+                new ListingCacheStorageIO(mockedStorageIO, TimeValue.timeValueMinutes(1L), 100, clock::get);
+    }
+
+    @Test
+    void listFilesFromCache() throws IOException {
+        when(mockedStorageIO.listFiles("some/path/", "index-"))
+                .thenReturn(Map.of("index-1", 100L));
+
+        assertEquals(Map.of("index-1", 100L), listingCacheStorageIO.listFiles("some/path/", "index-"));
+        assertEquals(Map.of("index-1", 100L), listingCacheStorageIO.listFiles("some/path/", "index-"));
+
+        verify(mockedStorageIO, times(1)).listFiles("some/path/", "index-");
+    }
+
+    @Test
+    void deleteFilesUpdatesCachedListing() throws IOException {
+        when(mockedStorageIO.listFiles("some/path/", ""))
+                .thenReturn(Map.of("index-1", 100L, "index-2", 200L));
+
+        listingCacheStorageIO.listFiles("some/path/", "");
+        listingCacheStorageIO.deleteFiles(List.of("some/path/index-1"), true);
+
+        assertEquals(Map.of("index-2", 200L), listingCacheStorageIO.listFiles("some/path/", ""));
+        verify(mockedStorageIO, times(1)).listFiles("some/path/", "");
+    }
+
+    @Test
+    void writeInvalidatesCachedListing() throws IOException {
+        when(mockedStorageIO.listFiles("some/path/", "index-"))
+                .thenReturn(Map.of("index-1", 100L))
+                .thenReturn(Map.of("index-1", 100L, "index-2", 200L));
+
+        listingCacheStorageIO.listFiles("some/path/", "index-");
+        listingCacheStorageIO.write("some/path/index-2", InputStream.nullInputStream(), 0L, false);
+
+        assertEquals(Map.of("index-1", 100L, "index-2", 200L), listingCacheStorageIO.listFiles("some/path/", "index-"));
+        verify(mockedStorageIO, times(2)).listFiles("some/path/", "index-");
+    }
+
+    @Test
+    void copyInvalidatesCachedListing() throws IOException {
+        when(mockedStorageIO.listFiles("some/path/", "index-"))
+                .thenReturn(Map.of("index-1", 100L))
+                .thenReturn(Map.of("index-1", 100L, "index-2", 100L));
+
+        listingCacheStorageIO.listFiles("some/path/", "index-");
+        listingCacheStorageIO.copy("some/path/index-1", "some/path/index-2");
+
+        assertEquals(Map.of("index-1", 100L, "index-2", 100L), listingCacheStorageIO.listFiles("some/path/", "index-"));
+        verify(mockedStorageIO).copy("some/path/index-1", "some/path/index-2");
+        verify(mockedStorageIO, times(2)).listFiles("some/path/", "index-");
+    }
+
+    @Test
+    void writeAddsNewDirectoryToCachedListing() throws IOException {
+        when(mockedStorageIO.listDirectories("some/path/"))
+                .thenReturn(List.of("dir1"));
+
+        listingCacheStorageIO.listDirectories("some/path/");
+        listingCacheStorageIO.write("some/path/dir2/blob", InputStream.nullInputStream(), 0L, false);
+
+        assertEquals(List.of("dir1", "dir2"), listingCacheStorageIO.listDirectories("some/path/"));
+        verify(mockedStorageIO, times(1)).listDirectories("some/path/");
+    }
+
+    @Test
+    void localChangesDoNotExtendTtl() throws IOException {
+        when(mockedStorageIO.listDirectories("some/path/"))
+                .thenReturn(List.of("dir1"))
+                .thenReturn(List.of("dir1", "dir2", "dir3"));
+
+        listingCacheStorageIO.listDirectories("some/path/");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(50L));
+        listingCacheStorageIO.write("some/path/dir2/blob", InputStream.nullInputStream(), 0L, false);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10L));
+
+        assertEquals(List.of("dir1", "dir2", "dir3"), listingCacheStorageIO.listDirectories("some/path/"));
+        verify(mockedStorageIO, times(2)).listDirectories("some/path/");
+    }
+
+    @Test
+    void doNotCacheListingOverlappingWithWrite() throws IOException {
+        when(mockedStorageIO.listFiles("some/path/", ""))
+                .thenAnswer(invocation -> {
+                    listingCacheStorageIO.write("some/path/blob", InputStream.nullInputStream(), 0L, false);
+                    return Map.of();
+                })
+                .thenReturn(Map.of("blob", 10L));
+
+        listingCacheStorageIO.listFiles("some/path/", "");
+
+        assertEquals(Map.of("blob", 10L), listingCacheStorageIO.listFiles("some/path/", ""));
+    }
+
+    @Test
+    void deleteDirectoriesInvalidatesCachedListings() throws IOException {
+        when(mockedStorageIO.listFiles("some/path/dir1/", ""))
+                .thenReturn(Map.of("blob", 100L))
+                .thenReturn(Map.of());
+
+        listingCacheStorageIO.listFiles("some/path/dir1/", "");
+        listingCacheStorageIO.deleteDirectories("some/path/dir1/");
+
+        assertEquals(Map.of(), listingCacheStorageIO.listFiles("some/path/dir1/", ""));
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MetadataCacheStorageIOTest {
+
+    static final byte[] CONTENT = "some content".getBytes();
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    MetadataCacheStorageIO metadataCacheStorageIO;
+
+    @BeforeEach
+    void setUp() {
+        metadataCacheStorageIO = new MetadataCacheStorageIO(mockedStorageIO, 1024L, 100);
+    }
+
+    @Test
+    void immutableBlobNames() {
+        assertTrue(MetadataCacheStorageIO.isImmutable("base/snap-uuid.dat"));
+        assertTrue(MetadataCacheStorageIO.isImmutable("base/indices/id/meta-uuid.dat"));
+        assertTrue(MetadataCacheStorageIO.isImmutable("base/index-10"));
+        assertFalse(MetadataCacheStorageIO.isImmutable("base/index.latest"));
+        assertFalse(MetadataCacheStorageIO.isImmutable("base/indices/id/0/__uuid"));
+    }
+
+    @Test
+    void readImmutableBlobFromCache() throws IOException {
+        when(mockedStorageIO.read("base/snap-uuid.dat")).thenReturn(new ByteArrayInputStream(CONTENT));
+
+        assertArrayEquals(CONTENT, metadataCacheStorageIO.read("base/snap-uuid.dat").readAllBytes());
+        assertArrayEquals(CONTENT, metadataCacheStorageIO.read("base/snap-uuid.dat").readAllBytes());
+
+        verify(mockedStorageIO, times(1)).read("base/snap-uuid.dat");
+        assertEquals(1L, metadataCacheStorageIO.stats().get("metadata_cache.hits"));
+        assertEquals(1L, metadataCacheStorageIO.stats().get("metadata_cache.misses"));
+    }
+
+    @Test
+    void readInvalidatedBlobFromStorage() throws IOException {
+        when(mockedStorageIO.read("base/snap-uuid.dat"))
+                .thenReturn(new ByteArrayInputStream(CONTENT), new ByteArrayInputStream(CONTENT));
+
+        metadataCacheStorageIO.read("base/snap-uuid.dat");
+        metadataCacheStorageIO.invalidate("base/snap-uuid.dat");
+        metadataCacheStorageIO.read("base/snap-uuid.dat");
+
+        verify(mockedStorageIO, times(2)).read("base/snap-uuid.dat");
+        verify(mockedStorageIO).invalidate("base/snap-uuid.dat");
+    }
+
+    @Test
+    void readMutableBlobFromStorage() throws IOException {
+        when(mockedStorageIO.read("base/index.latest"))
+                .thenReturn(new ByteArrayInputStream(CONTENT), new ByteArrayInputStream(CONTENT));
+
+        metadataCacheStorageIO.read("base/index.latest");
+        metadataCacheStorageIO.read("base/index.latest");
+
+        verify(mockedStorageIO, times(2)).read("base/index.latest");
+    }
+
+    @Test
+    void readBigBlobFromStorage() throws IOException {
+        final var bigContent = new byte[101];
+        when(mockedStorageIO.read("base/meta-uuid.dat"))
+                .thenReturn(new ByteArrayInputStream(bigContent), new ByteArrayInputStream(bigContent));
+
+        assertArrayEquals(bigContent, metadataCacheStorageIO.read("base/meta-uuid.dat").readAllBytes());
+        assertArrayEquals(bigContent, metadataCacheStorageIO.read("base/meta-uuid.dat").readAllBytes());
+
+        verify(mockedStorageIO, times(2)).read("base/meta-uuid.dat");
+    }
+
+    @Test
+    void deleteFilesInvalidatesCachedBlob() throws IOException {
+        when(mockedStorageIO.read("base/snap-uuid.dat"))
+                .thenReturn(new ByteArrayInputStream(CONTENT), new ByteArrayInputStream(CONTENT));
+
+        metadataCacheStorageIO.read("base/snap-uuid.dat");
+        metadataCacheStorageIO.deleteFiles(List.of("base/snap-uuid.dat"), true);
+        metadataCacheStorageIO.read("base/snap-uuid.dat");
+
+        verify(mockedStorageIO, times(2)).read("base/snap-uuid.dat");
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SingleFlightStorageIOTest {
+
+    static final byte[] CONTENT = "some content".getBytes();
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    SingleFlightStorageIO singleFlightStorageIO;
+
+    @BeforeEach
+    void setUp() {
+        singleFlightStorageIO = new SingleFlightStorageIO(mockedStorageIO, 100);
+    }
+
+    @Test
+    void concurrentReadsShareDownload() throws Exception {
+        final var downloadStarted = new CountDownLatch(1);
+        final var releaseDownload = new CountDownLatch(1);
+        when(mockedStorageIO.read("some_blob")).thenAnswer(invocation -> {
+            downloadStarted.countDown();
+            releaseDownload.await();
+            return new ByteArrayInputStream(CONTENT);
+        });
+
+        final var firstRead = CompletableFuture.supplyAsync(() -> readAllBytes("some_blob"));
+        downloadStarted.await();
+        final var secondRead = new FutureTask<>(() -> readAllBytes("some_blob"));
+        final var secondReader = new Thread(secondRead);
+        secondReader.start();
+        while (secondReader.getState() != Thread.State.WAITING) {
+            Thread.onSpinWait();
+        }
+        releaseDownload.countDown();
+
+        assertArrayEquals(CONTENT, firstRead.get());
+        assertArrayEquals(CONTENT, secondRead.get());
+        verify(mockedStorageIO, times(1)).read("some_blob");
+        assertEquals(1L, singleFlightStorageIO.stats().get("read_coalescing.shared_reads"));
+    }
+
+    @Test
+    void sequentialReadsDownloadBlobEachTime() throws IOException {
+        when(mockedStorageIO.read("some_blob"))
+                .thenReturn(new ByteArrayInputStream(CONTENT), new ByteArrayInputStream(CONTENT));
+
+        assertArrayEquals(CONTENT, singleFlightStorageIO.read("some_blob").readAllBytes());
+        assertArrayEquals(CONTENT, singleFlightStorageIO.read("some_blob").readAllBytes());
+
+        verify(mockedStorageIO, times(2)).read("some_blob");
+    }
+
+    @Test
+    void readBigBlob() throws IOException {
+        final var bigContent = new byte[101];
+        when(mockedStorageIO.read("some_blob")).thenReturn(new ByteArrayInputStream(bigContent));
+
+        assertArrayEquals(bigContent, singleFlightStorageIO.read("some_blob").readAllBytes());
+    }
+
+    @Test
+    void readFailure() throws IOException {
+        when(mockedStorageIO.read("some_blob")).thenThrow(IOException.class);
+
+        assertThrows(IOException.class, () -> singleFlightStorageIO.read("some_blob"));
+    }
+
+    private byte[] readAllBytes(final String blobName) {
+        try (final var in = singleFlightStorageIO.read(blobName)) {
+            return in.readAllBytes();
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
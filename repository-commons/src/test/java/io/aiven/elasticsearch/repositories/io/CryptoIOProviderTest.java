@@ -16,21 +16,30 @@
 
 package io.aiven.elasticsearch.repositories.io;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.opensearch.core.internal.io.Streams;
 
 import io.aiven.elasticsearch.repositories.RsaKeyAwareTest;
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
 import io.aiven.elasticsearch.repositories.security.EncryptionKeyProvider;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeyring;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeys;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class CryptoIOProviderTest extends RsaKeyAwareTest {
 
@@ -95,4 +104,90 @@ public class CryptoIOProviderTest extends RsaKeyAwareTest {
         assertArrayEquals(expectedBytes.array(), decryptedBytes.array());
     }
 
+    @Test
+    public void limitsCompressedAndEncryptedBytes() throws Exception {
+        final var upload = new TokenBucket(0L, 0L, null);
+        final var download = new TokenBucket(0L, 0L, null);
+        final var limitedCryptoIOProvider =
+                new CryptoIOProvider(
+                        encProvider.createKey(),
+                        BUFFER_SIZE,
+                        new BandwidthLimiter(upload, download),
+                        PhaseTimings.DISABLED,
+                        RequestAccounting.untracked());
+
+        final var message = new byte[BUFFER_SIZE];
+        final var encrypted = new ByteArrayOutputStream();
+        limitedCryptoIOProvider.compressAndEncrypt(new ByteArrayInputStream(message), encrypted);
+        try (final var in = limitedCryptoIOProvider.decryptAndDecompress(
+                new ByteArrayInputStream(encrypted.toByteArray()))) {
+            assertArrayEquals(message, in.readAllBytes());
+        }
+
+        assertTrue(upload.rate() > 0 && upload.rate() <= encrypted.size());
+        assertTrue(download.rate() > 0 && download.rate() <= encrypted.size());
+    }
+
+    @Test
+    public void decryptsBlobsWithTheKeyTheyHaveBeenEncryptedWith() throws Exception {
+        final var keys = new AtomicReference<>(EncryptionKeys.of(encProvider.createKey()));
+        final var rotatingCryptoIOProvider =
+                new CryptoIOProvider(keys::get, BUFFER_SIZE, BandwidthLimiter.unlimited(), PhaseTimings.DISABLED,
+                        RequestAccounting.untracked());
+        final var message = new byte[BUFFER_SIZE];
+        new Random().nextBytes(message);
+
+        final var initial = new ByteArrayOutputStream();
+        rotatingCryptoIOProvider.compressAndEncrypt(new ByteArrayInputStream(message), initial);
+        keys.set(keys.get().rotate(encProvider.createKey()));
+        final var rotated = new ByteArrayOutputStream();
+        rotatingCryptoIOProvider.compressAndEncrypt(new ByteArrayInputStream(message), rotated);
+
+        assertFalse(startsWithKeyIdHeader(initial.toByteArray()));
+        assertTrue(startsWithKeyIdHeader(rotated.toByteArray()));
+        try (final var in = (CryptoIOProvider.DecryptedInputStream) rotatingCryptoIOProvider.decryptAndDecompress(
+                new ByteArrayInputStream(initial.toByteArray()))) {
+            assertArrayEquals(message, in.readAllBytes());
+            assertEquals(EncryptionKeys.INITIAL_KEY_ID, in.keyId());
+        }
+        try (final var in = (CryptoIOProvider.DecryptedInputStream) rotatingCryptoIOProvider.decryptAndDecompress(
+                new ByteArrayInputStream(rotated.toByteArray()))) {
+            assertArrayEquals(message, in.readAllBytes());
+            assertEquals(1, in.keyId());
+        }
+    }
+
+    @Test
+    public void reloadsKeysWhenBlobHasUnknownKey() throws Exception {
+        final var initialKeys = EncryptionKeys.of(encProvider.createKey());
+        final var rotatedKeys = initialKeys.rotate(encProvider.createKey());
+        final var message = new byte[BUFFER_SIZE];
+        final var rotated = new ByteArrayOutputStream();
+        new CryptoIOProvider(() -> rotatedKeys, BUFFER_SIZE, BandwidthLimiter.unlimited(), PhaseTimings.DISABLED,
+                RequestAccounting.untracked())
+                .compressAndEncrypt(new ByteArrayInputStream(message), rotated);
+
+        final var outdatedCryptoIOProvider =
+                new CryptoIOProvider(new EncryptionKeyring() {
+                    @Override
+                    public EncryptionKeys keys() {
+                        return initialKeys;
+                    }
+
+                    @Override
+                    public EncryptionKeys reload() {
+                        return rotatedKeys;
+                    }
+                }, BUFFER_SIZE, BandwidthLimiter.unlimited(), PhaseTimings.DISABLED, RequestAccounting.untracked());
+        try (final var in = outdatedCryptoIOProvider.decryptAndDecompress(
+                new ByteArrayInputStream(rotated.toByteArray()))) {
+            assertArrayEquals(message, in.readAllBytes());
+        }
+    }
+
+    private static boolean startsWithKeyIdHeader(final byte[] blob) {
+        return ByteBuffer.wrap(blob, 0, CryptoIOProvider.KEY_ID_MAGIC.length)
+                .equals(ByteBuffer.wrap(CryptoIOProvider.KEY_ID_MAGIC));
+    }
+
 }
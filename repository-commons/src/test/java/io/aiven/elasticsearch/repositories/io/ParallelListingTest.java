@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.opensearch.common.collect.Tuple;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParallelListingTest {
+
+    static final int PAGE_SIZE = 10;
+
+    final AtomicInteger listedRanges = new AtomicInteger();
+
+    @Test
+    void splitsAtFirstCharacterOfRandomPart() {
+        assertEquals(List.of("p/__L", "p/__f"), ParallelListing.boundaries("p/", "p/__-Abc", 2));
+        assertEquals(List.of("p/V"), ParallelListing.boundaries("p/", "p/-", 1));
+    }
+
+    @Test
+    void doesNotSplitAfterLastCharacters() {
+        assertEquals(List.of(), ParallelListing.boundaries("p/", "p/zzz", 3));
+    }
+
+    @Test
+    void listsSmallPrefixInSinglePage() throws IOException {
+        final var keys = keys(PAGE_SIZE);
+
+        final var listing = new ParallelListing(4, Runnable::run).list("p/", lister(keys));
+
+        assertEquals(new ArrayList<>(keys), names(listing));
+        assertEquals(1, listedRanges.get());
+    }
+
+    @Test
+    void listsAllKeysInRanges() throws IOException {
+        final var keys = keys(1_000);
+        final var executor = Executors.newFixedThreadPool(3);
+        try {
+            final var listing = new ParallelListing(4, executor).list("p/", lister(keys));
+
+            assertEquals(new TreeSet<>(keys), new TreeSet<>(names(listing)));
+            assertEquals(keys.size(), listing.size());
+            assertEquals(5, listedRanges.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void listsPageByPageSequentially() throws IOException {
+        final var keys = keys(1_000);
+
+        final var listing = ParallelListing.SEQUENTIAL.list("p/", lister(keys));
+
+        assertEquals(new ArrayList<>(keys), names(listing));
+        assertEquals(1, listedRanges.get());
+    }
+
+    @Test
+    void rethrowsFailureOfRange() {
+        final var keys = keys(100);
+        final ParallelListing.RangeLister lister = (startAfter, endAt, firstPageOnly) -> {
+            if (Objects.nonNull(startAfter)) {
+                throw new IOException("boom");
+            }
+            return lister(keys).list(null, endAt, firstPageOnly);
+        };
+
+        assertThrows(IOException.class, () -> new ParallelListing(4, Runnable::run).list("p/", lister));
+    }
+
+    @Test
+    void fansOutToAllItemsInOrder() throws IOException {
+        final var items = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+        final var executor = Executors.newFixedThreadPool(3);
+        try {
+            final var results = new ParallelListing(1, executor).fanOut(items, item -> "item-" + item);
+
+            assertEquals(items.stream().map(item -> "item-" + item).collect(Collectors.toList()), results);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void rethrowsFailureOfFanOut() {
+        assertThrows(IOException.class, () -> ParallelListing.SEQUENTIAL.fanOut(List.of(1, 2, 3), item -> {
+            if (item == 2) {
+                throw new IOException("boom");
+            }
+            return item;
+        }));
+    }
+
+    TreeSet<String> keys(final int count) {
+        final var keys = new TreeSet<String>();
+        for (var i = 0; i < count; i++) {
+            keys.add("p/__" + ParallelListing.KEY_ALPHABET.charAt(i % 64) + "key" + i);
+        }
+        return keys;
+    }
+
+    ParallelListing.RangeLister lister(final TreeSet<String> keys) {
+        return (startAfter, endAt, firstPageOnly) -> {
+            listedRanges.incrementAndGet();
+            final var range = Objects.isNull(startAfter) ? keys : keys.tailSet(startAfter, false);
+            final var entries = new ArrayList<Tuple<String, Long>>();
+            for (final var key : range) {
+                if (Objects.nonNull(endAt) && key.compareTo(endAt) > 0) {
+                    break;
+                } else if (firstPageOnly && entries.size() == PAGE_SIZE) {
+                    return new ParallelListing.Page(entries, entries.get(PAGE_SIZE - 1).v1());
+                }
+                entries.add(Tuple.tuple(key, (long) key.length()));
+            }
+            return new ParallelListing.Page(entries, null);
+        };
+    }
+
+    List<String> names(final List<Tuple<String, Long>> listing) {
+        return listing.stream().map(Tuple::v1).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import io.aiven.elasticsearch.repositories.RsaKeyAwareTest;
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeyProvider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PhaseTimingsTest extends RsaKeyAwareTest {
+
+    static final int BUFFER_SIZE = 8_192;
+
+    EncryptionKeyProvider encProvider;
+
+    @BeforeEach
+    void setUpKey() throws Exception {
+        encProvider =
+                EncryptionKeyProvider.of(
+                        Files.newInputStream(publicKeyPem).readAllBytes(),
+                        Files.newInputStream(privateKeyPem).readAllBytes());
+    }
+
+    @Test
+    void timesEverySampledTransfer() throws Exception {
+        final var phaseTimings = new PhaseTimings("some_repository", 1.0);
+        final var cryptoIOProvider =
+                new CryptoIOProvider(
+                        encProvider.createKey(), BUFFER_SIZE, BandwidthLimiter.unlimited(), phaseTimings,
+                        RequestAccounting.untracked());
+
+        final var message = new byte[BUFFER_SIZE * 10];
+        new Random().nextBytes(message);
+        final var encrypted = new ByteArrayOutputStream();
+        cryptoIOProvider.compressAndEncrypt(new ByteArrayInputStream(message), encrypted);
+        try (final var in = cryptoIOProvider.decryptAndDecompress(new ByteArrayInputStream(encrypted.toByteArray()))) {
+            assertArrayEquals(message, in.readAllBytes());
+        }
+
+        final var stats = phaseTimings.stats();
+        assertEquals(1L, stats.get("phase_timing.write.samples"));
+        assertEquals(1L, stats.get("phase_timing.read.samples"));
+        assertTrue(stats.get("phase_timing.write.compress_micros") > 0);
+        assertTrue(stats.containsKey("phase_timing.read.decrypt_micros"));
+        assertTrue(stats.containsKey("phase_timing.read.network_micros"));
+    }
+
+    @Test
+    void reportsNothingWhenDisabled() throws Exception {
+        final var cryptoIOProvider =
+                new CryptoIOProvider(
+                        encProvider.createKey(), BUFFER_SIZE, BandwidthLimiter.unlimited(), PhaseTimings.DISABLED,
+                        RequestAccounting.untracked());
+        cryptoIOProvider.compressAndEncrypt(new ByteArrayInputStream(new byte[10]), new ByteArrayOutputStream());
+
+        assertTrue(PhaseTimings.DISABLED.stats().isEmpty());
+    }
+
+}
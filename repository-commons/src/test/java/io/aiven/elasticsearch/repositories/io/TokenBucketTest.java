@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.io;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketTest {
+
+    static final long SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void neverWaitsWithoutRate() {
+        final var bucket = new TokenBucket(0L, 0L, null, clock::get);
+
+        assertEquals(0L, bucket.reserve(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    void allowsBurstAndThenWaitsForDebt() {
+        final var bucket = new TokenBucket(1_000L, 500L, null, clock::get);
+
+        assertEquals(0L, bucket.reserve(500L));
+        assertEquals(SECOND, bucket.reserve(1_000L));
+
+        clock.addAndGet(SECOND);
+        assertEquals(SECOND / 2, bucket.reserve(500L));
+    }
+
+    @Test
+    void defaultBurstIsOneSecond() {
+        final var bucket = new TokenBucket(1_000L, 0L, null, clock::get);
+
+        assertEquals(0L, bucket.reserve(1_000L));
+        assertEquals(SECOND / 10, bucket.reserve(100L));
+    }
+
+    @Test
+    void refillsUpToBurstSize() {
+        final var bucket = new TokenBucket(1_000L, 1_000L, null, clock::get);
+        bucket.reserve(1_000L);
+
+        clock.addAndGet(10 * SECOND);
+        assertEquals(0L, bucket.reserve(1_000L));
+        assertEquals(SECOND, bucket.reserve(1_000L));
+    }
+
+    @Test
+    void measuresRateOfPassedBytes() {
+        final var bucket = new TokenBucket(0L, 0L, null, clock::get);
+        bucket.reserve(1_000L);
+        assertEquals(1_000L, bucket.rate());
+
+        clock.addAndGet(10 * SECOND);
+        assertEquals(0L, bucket.rate());
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.layout;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.opensearch.common.collect.Tuple;
+
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class PartitionedKeyStorageIOTest {
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    final Map<String, byte[]> stored = new TreeMap<>();
+
+    PartitionedKeyStorageIO partitionedKeyStorageIO;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        lenient().doAnswer(invocation -> stored.put(
+                        invocation.getArgument(0), invocation.<InputStream>getArgument(1).readAllBytes()))
+                .when(mockedStorageIO).write(anyString(), any(InputStream.class), anyLong(), anyBoolean());
+        lenient().when(mockedStorageIO.read(anyString()))
+                .thenAnswer(invocation -> new ByteArrayInputStream(stored.get(invocation.<String>getArgument(0))));
+        lenient().when(mockedStorageIO.listFiles(anyString(), anyString()))
+                .thenAnswer(invocation -> listFiles(invocation.getArgument(0), invocation.getArgument(1)));
+        lenient().when(mockedStorageIO.listDirectories(anyString()))
+                .thenAnswer(invocation -> listDirectories(invocation.getArgument(0)));
+        lenient().when(mockedStorageIO.deleteDirectories(anyString()))
+                .thenAnswer(invocation -> deleteDirectories(invocation.getArgument(0)));
+        partitionedKeyStorageIO = new PartitionedKeyStorageIO(mockedStorageIO, "base/", 16, ParallelListing.SEQUENTIAL);
+    }
+
+    @Test
+    void storesBlobsOfIndicesUnderSalt() throws IOException {
+        write("base/indices/a/0/__x", 10);
+        write("base/index-1", 1);
+
+        assertEquals(Set.of(partitionedKeyStorageIO.physicalName("base/indices/a/0/__x"), "base/index-1"),
+                stored.keySet());
+        assertTrue(partitionedKeyStorageIO.physicalName("base/indices/a/0/__x")
+                .matches("base/indices/[0-9a-f]{2}/a/0/__x"));
+        try (final var in = partitionedKeyStorageIO.read("base/indices/a/0/__x")) {
+            assertArrayEquals(new byte[10], in.readAllBytes());
+        }
+    }
+
+    @Test
+    void spreadsBlobsAcrossPartitions() {
+        final var salts = new TreeSet<String>();
+        for (var i = 0; i < 100; i++) {
+            salts.add(partitionedKeyStorageIO.physicalName("base/indices/a/0/__" + i).substring(13, 15));
+        }
+
+        assertEquals(16, salts.size());
+    }
+
+    @Test
+    void listsDirectoriesAcrossPartitions() throws IOException {
+        for (var i = 0; i < 20; i++) {
+            write("base/indices/a/0/__" + i, i);
+        }
+        write("base/indices/a/0/snap-1.dat", 2);
+        write("base/indices/b/meta-1.dat", 3);
+        write("base/index-1", 1);
+
+        final var files = partitionedKeyStorageIO.listFiles("base/indices/a/0/", "");
+        assertEquals(21, files.size());
+        assertEquals(5L, files.get("__5"));
+        assertEquals(Map.of("snap-1.dat", 2L), partitionedKeyStorageIO.listFiles("base/indices/a/0/", "snap-"));
+        assertEquals(Set.of("a", "b"), Set.copyOf(partitionedKeyStorageIO.listDirectories("base/indices/")));
+        assertEquals(List.of("0"), partitionedKeyStorageIO.listDirectories("base/indices/a/"));
+        assertEquals(Map.of("index-1", 1L), partitionedKeyStorageIO.listFiles("base/", "index-"));
+        assertEquals(List.of("indices"), partitionedKeyStorageIO.listDirectories("base/"));
+    }
+
+    @Test
+    void deletesDirectoriesAcrossPartitions() throws IOException {
+        for (var i = 0; i < 20; i++) {
+            write("base/indices/a/0/__" + i, 1);
+        }
+        write("base/indices/b/meta-1.dat", 3);
+
+        assertEquals(Tuple.tuple(20, 20L), partitionedKeyStorageIO.deleteDirectories("base/indices/a/"));
+        assertEquals(Set.of(partitionedKeyStorageIO.physicalName("base/indices/b/meta-1.dat")), stored.keySet());
+    }
+
+    private void write(final String blobName, final int length) throws IOException {
+        partitionedKeyStorageIO.write(blobName, new ByteArrayInputStream(new byte[length]), length, false);
+    }
+
+    private Map<String, Long> listFiles(final String path, final String prefix) {
+        return stored.entrySet().stream()
+                .filter(e -> e.getKey().startsWith(path + prefix) && e.getKey().indexOf('/', path.length()) < 0)
+                .collect(Collectors.toMap(e -> e.getKey().substring(path.length()), e -> (long) e.getValue().length));
+    }
+
+    private List<String> listDirectories(final String path) {
+        return stored.keySet().stream()
+                .filter(name -> name.startsWith(path) && name.indexOf('/', path.length()) > 0)
+                .map(name -> name.substring(path.length(), name.indexOf('/', path.length())))
+                .collect(Collectors.toCollection(TreeSet::new))
+                .stream()
+                .collect(Collectors.toList());
+    }
+
+    private Tuple<Integer, Long> deleteDirectories(final String path) {
+        final var deleted = stored.keySet().stream()
+                .filter(name -> name.startsWith(path))
+                .collect(Collectors.toList());
+        final var bytes = deleted.stream().mapToLong(name -> stored.remove(name).length).sum();
+        return Tuple.tuple(deleted.size(), bytes);
+    }
+
+}
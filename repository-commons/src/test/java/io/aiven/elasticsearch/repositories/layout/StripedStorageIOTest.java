@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.layout;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class StripedStorageIOTest {
+
+    @Mock
+    StorageIO firstStorageIO;
+
+    @Mock
+    StorageIO secondStorageIO;
+
+    final Map<String, byte[]> firstStored = new TreeMap<>();
+
+    final Map<String, byte[]> secondStored = new TreeMap<>();
+
+    StripedStorageIO stripedStorageIO;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockStorage(firstStorageIO, firstStored);
+        mockStorage(secondStorageIO, secondStored);
+        stripedStorageIO = new StripedStorageIO(List.of(firstStorageIO, secondStorageIO), ParallelListing.SEQUENTIAL);
+    }
+
+    @Test
+    void placesBlobsByHashOfName() throws IOException {
+        for (var i = 0; i < 20; i++) {
+            write("base/indices/a/0/__" + i, i);
+        }
+
+        assertEquals(20, firstStored.size() + secondStored.size());
+        assertFalse(firstStored.isEmpty());
+        assertFalse(secondStored.isEmpty());
+        for (var i = 0; i < 20; i++) {
+            try (final var in = stripedStorageIO.read("base/indices/a/0/__" + i)) {
+                assertArrayEquals(new byte[i], in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void mergesListingsOfStripes() throws IOException {
+        for (var i = 0; i < 20; i++) {
+            write("base/indices/a/0/__" + i, i);
+        }
+        write("base/indices/b/meta-1.dat", 3);
+
+        final var files = stripedStorageIO.listFiles("base/indices/a/0/", "");
+        assertEquals(20, files.size());
+        assertEquals(5L, files.get("__5"));
+        assertEquals(List.of("a", "b"), stripedStorageIO.listDirectories("base/indices/").stream()
+                .sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    void deletesBlobsFromTheirStripes() throws IOException {
+        for (var i = 0; i < 20; i++) {
+            write("base/indices/a/0/__" + i, i);
+        }
+
+        stripedStorageIO.deleteFiles(
+                stripedStorageIO.listFiles("base/indices/a/0/", "").keySet().stream()
+                        .map(name -> "base/indices/a/0/" + name)
+                        .collect(Collectors.toList()),
+                true);
+
+        assertTrue(firstStored.isEmpty());
+        assertTrue(secondStored.isEmpty());
+    }
+
+    @Test
+    void copiesBlobsBetweenStripes() throws IOException {
+        write("base/indices/a/0/__0", 10);
+        var target = 0;
+        while (isFirst("base/indices/a/0/__0") == isFirst("base/indices/b/0/__" + target)) {
+            target++;
+        }
+
+        stripedStorageIO.copy("base/indices/a/0/__0", "base/indices/b/0/__" + target);
+
+        try (final var in = stripedStorageIO.read("base/indices/b/0/__" + target)) {
+            assertArrayEquals(new byte[10], in.readAllBytes());
+        }
+    }
+
+    @Test
+    void recognizesThrottlingErrorOfAnyStripe() {
+        final var error = new IOException("slow down");
+        lenient().when(secondStorageIO.isThrottlingError(error)).thenReturn(true);
+
+        assertTrue(stripedStorageIO.isThrottlingError(error));
+        assertFalse(stripedStorageIO.isThrottlingError(new IOException("boom")));
+    }
+
+    private boolean isFirst(final String blobName) {
+        return BlobNameHash.slot(blobName, 2) == 0;
+    }
+
+    private void write(final String blobName, final int length) throws IOException {
+        stripedStorageIO.write(blobName, new ByteArrayInputStream(new byte[length]), length, false);
+    }
+
+    private static void mockStorage(final StorageIO storageIO, final Map<String, byte[]> stored) throws IOException {
+        lenient().doAnswer(invocation -> stored.put(
+                        invocation.getArgument(0), invocation.<InputStream>getArgument(1).readAllBytes()))
+                .when(storageIO).write(anyString(), any(InputStream.class), anyLong(), anyBoolean());
+        lenient().when(storageIO.read(anyString()))
+                .thenAnswer(invocation -> new ByteArrayInputStream(stored.get(invocation.<String>getArgument(0))));
+        lenient().when(storageIO.listFiles(anyString(), anyString()))
+                .thenAnswer(invocation -> {
+                    final String path = invocation.getArgument(0);
+                    final String prefix = invocation.getArgument(1);
+                    return stored.entrySet().stream()
+                            .filter(e -> e.getKey().startsWith(path + prefix)
+                                    && e.getKey().indexOf('/', path.length()) < 0)
+                            .collect(Collectors.toMap(
+                                    e -> e.getKey().substring(path.length()), e -> (long) e.getValue().length));
+                });
+        lenient().when(storageIO.listDirectories(anyString()))
+                .thenAnswer(invocation -> {
+                    final String path = invocation.getArgument(0);
+                    return stored.keySet().stream()
+                            .filter(name -> name.startsWith(path) && name.indexOf('/', path.length()) > 0)
+                            .map(name -> name.substring(path.length(), name.indexOf('/', path.length())))
+                            .distinct()
+                            .collect(Collectors.toList());
+                });
+        lenient().doAnswer(invocation -> {
+            invocation.<List<String>>getArgument(0).forEach(stored::remove);
+            return null;
+        }).when(storageIO).deleteFiles(any(), anyBoolean());
+    }
+
+}
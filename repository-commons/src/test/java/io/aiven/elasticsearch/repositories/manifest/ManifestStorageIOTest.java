@@ -0,0 +1,326 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.manifest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.opensearch.common.collect.Tuple;
+import org.opensearch.common.unit.TimeValue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ManifestStorageIOTest {
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    final Map<String, byte[]> stored = new TreeMap<>();
+
+    final AtomicLong clock = new AtomicLong(1_000_000L);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        lenient().doAnswer(this::store)
+                .when(mockedStorageIO).write(anyString(), any(InputStream.class), anyLong(), anyBoolean());
+        lenient().when(mockedStorageIO.read(anyString()))
+                .thenAnswer(invocation -> read(invocation.getArgument(0)));
+        lenient().when(mockedStorageIO.listFiles(anyString(), anyString()))
+                .thenAnswer(invocation -> listFiles(invocation.getArgument(0), invocation.getArgument(1)));
+        lenient().when(mockedStorageIO.listDirectories(anyString()))
+                .thenAnswer(invocation -> listDirectories(invocation.getArgument(0)));
+        lenient().doAnswer(invocation -> {
+            invocation.<List<String>>getArgument(0).forEach(stored::remove);
+            return null;
+        }).when(mockedStorageIO).deleteFiles(any(), anyBoolean());
+        stored.put("base/index-1", new byte[1]);
+        stored.put("base/indices/a/0/__x", new byte[10]);
+        stored.put("base/indices/a/0/snap-1.dat", new byte[2]);
+        stored.put("base/indices/b/meta-1.dat", new byte[3]);
+    }
+
+    @Test
+    void answersListingsFromManifestBuiltByFullListing() throws IOException {
+        final var manifestStorageIO = manifestStorageIO();
+
+        assertEquals(Map.of("__x", 10L, "snap-1.dat", 2L), manifestStorageIO.listFiles("base/indices/a/0/", ""));
+        verify(mockedStorageIO, never()).listDirectories("base/indices/");
+
+        manifestStorageIO.maintain();
+
+        assertEquals(Map.of("__x", 10L, "snap-1.dat", 2L), manifestStorageIO.listFiles("base/indices/a/0/", ""));
+        assertEquals(List.of("a", "b"), manifestStorageIO.listDirectories("base/indices/"));
+        assertEquals(List.of("0"), manifestStorageIO.listDirectories("base/indices/a/"));
+        assertEquals(Map.of("snap-1.dat", 2L), manifestStorageIO.listFiles("base/indices/a/0/", "snap-"));
+        assertEquals(Map.of("index-1", 1L), manifestStorageIO.listFiles("base/", "index-"));
+
+        verify(mockedStorageIO, times(2)).listFiles("base/indices/a/0/", "");
+        verify(mockedStorageIO, times(1)).listDirectories("base/indices/");
+        assertEquals(List.of(ManifestStorageIO.COMPACTED_PREFIX), manifestBlobs());
+        assertEquals(1L, manifestStorageIO.stats().get("manifest.reconciliations"));
+    }
+
+    @Test
+    void batchesChangesOfDataBlobs() throws IOException {
+        final var manifestStorageIO = manifestStorageIO();
+        manifestStorageIO.maintain();
+
+        write(manifestStorageIO, "base/indices/a/1/__y", 5);
+
+        assertEquals(Map.of("__y", 5L), manifestStorageIO.listFiles("base/indices/a/1/", ""));
+        assertEquals(List.of(ManifestStorageIO.COMPACTED_PREFIX), manifestBlobs());
+
+        write(manifestStorageIO, "base/indices/a/1/snap-1.dat", 2);
+
+        assertEquals(List.of(ManifestStorageIO.COMPACTED_PREFIX, ManifestStorageIO.LOG_PREFIX), manifestBlobs());
+    }
+
+    @Test
+    void readsChangesOfOtherNodesOnRefresh() throws IOException {
+        final var manifestStorageIO = manifestStorageIO();
+        final var otherNodeStorageIO = manifestStorageIO();
+        manifestStorageIO.maintain();
+        otherNodeStorageIO.maintain();
+
+        write(manifestStorageIO, "base/indices/a/0/__y", 5);
+        write(manifestStorageIO, "base/indices/a/0/snap-2.dat", 2);
+        manifestStorageIO.deleteFiles(List.of("base/indices/a/0/__x"), true);
+
+        assertEquals(Map.of("__x", 10L, "snap-1.dat", 2L), otherNodeStorageIO.listFiles("base/indices/a/0/", ""));
+        clock.addAndGet(TimeValue.timeValueSeconds(10L).millis());
+        assertEquals(
+                Map.of("__y", 5L, "snap-1.dat", 2L, "snap-2.dat", 2L),
+                otherNodeStorageIO.listFiles("base/indices/a/0/", ""));
+        verify(mockedStorageIO, times(1)).listDirectories("base/indices/");
+    }
+
+    @Test
+    void listsManifestBlobsAgainWhenLogIsCompactedDuringRefresh() throws IOException {
+        final var manifestStorageIO = manifestStorageIO();
+        final var otherNodeStorageIO = manifestStorageIO();
+        manifestStorageIO.maintain();
+        otherNodeStorageIO.maintain();
+        write(manifestStorageIO, "base/indices/a/0/__y", 5);
+        write(manifestStorageIO, "base/indices/a/0/snap-2.dat", 2);
+        clock.addAndGet(TimeValue.timeValueSeconds(10L).millis());
+
+        final var compacted = new AtomicBoolean();
+        doAnswer(invocation -> {
+            if (compacted.compareAndSet(false, true)) {
+                clock.addAndGet(TimeValue.timeValueHours(1L).millis());
+                manifestStorageIO.maintain();
+            }
+            return read(invocation.getArgument(0));
+        }).when(mockedStorageIO).read(contains(ManifestStorageIO.LOG_PREFIX));
+
+        assertEquals(
+                Map.of("__x", 10L, "__y", 5L, "snap-1.dat", 2L, "snap-2.dat", 2L),
+                otherNodeStorageIO.listFiles("base/indices/a/0/", ""));
+        assertTrue(compacted.get());
+        assertEquals(List.of(ManifestStorageIO.COMPACTED_PREFIX), manifestBlobs());
+    }
+
+    @Test
+    void deletesDirectoriesWithoutListing() throws IOException {
+        final var manifestStorageIO = manifestStorageIO();
+        manifestStorageIO.maintain();
+
+        assertEquals(Tuple.tuple(2, 12L), manifestStorageIO.deleteDirectories("base/indices/a/"));
+
+        verify(mockedStorageIO, never()).deleteDirectories(anyString());
+        assertFalse(stored.containsKey("base/indices/a/0/__x"));
+        assertEquals(List.of("b"), manifestStorageIO.listDirectories("base/indices/"));
+        assertEquals(List.of("b"), manifestStorageIO().listDirectories("base/indices/"));
+    }
+
+    @Test
+    void compactsLogs() throws IOException {
+        final var manifestStorageIO = manifestStorageIO();
+        manifestStorageIO.maintain();
+
+        for (var i = 0; i <= ManifestStorageIO.MAX_LOGS; i++) {
+            write(manifestStorageIO, "base/indices/c/snap-" + i + ".dat", 1);
+        }
+        clock.addAndGet(TimeValue.timeValueSeconds(10L).millis());
+        manifestStorageIO.maintain();
+
+        assertEquals(List.of("a", "b", "c"), manifestStorageIO.listDirectories("base/indices/"));
+        assertEquals(List.of(ManifestStorageIO.COMPACTED_PREFIX), manifestBlobs());
+        assertEquals(ManifestStorageIO.MAX_LOGS + 1, manifestStorageIO().listFiles("base/indices/c/", "").size());
+        verify(mockedStorageIO, times(1)).listDirectories("base/indices/");
+    }
+
+    @Test
+    void rebuildsManifestEveryReconciliationInterval() throws IOException {
+        final var manifestStorageIO = manifestStorageIO();
+        manifestStorageIO.maintain();
+        stored.put("base/indices/c/meta-1.dat", new byte[1]);
+
+        assertEquals(List.of("a", "b"), manifestStorageIO.listDirectories("base/indices/"));
+        clock.addAndGet(TimeValue.timeValueHours(1L).millis());
+
+        // listings keep being answered from the last manifest until it has been rebuilt
+        assertEquals(List.of("a", "b"), manifestStorageIO.listDirectories("base/indices/"));
+        manifestStorageIO.maintain();
+
+        assertEquals(List.of("a", "b", "c"), manifestStorageIO.listDirectories("base/indices/"));
+        assertEquals(List.of(ManifestStorageIO.COMPACTED_PREFIX), manifestBlobs());
+        verify(mockedStorageIO, times(2)).listDirectories("base/indices/");
+    }
+
+    @Test
+    void keepsSizesBlobsHaveBeenWrittenWith() throws IOException {
+        final var manifestStorageIO = manifestStorageIO();
+        manifestStorageIO.maintain();
+        // compressed and encrypted blobs are stored with another size
+        manifestStorageIO.write("base/indices/a/0/__y", new ByteArrayInputStream(new byte[7]), 5L, false);
+        write(manifestStorageIO, "base/indices/a/0/snap-2.dat", 2);
+
+        clock.addAndGet(TimeValue.timeValueHours(1L).millis());
+        manifestStorageIO.maintain();
+
+        assertEquals(2L, manifestStorageIO.stats().get("manifest.reconciliations"));
+        assertEquals(
+                Map.of("__x", 10L, "__y", 5L, "snap-1.dat", 2L, "snap-2.dat", 2L),
+                manifestStorageIO().listFiles("base/indices/a/0/", ""));
+    }
+
+    @Test
+    void ordersLogsBySequenceWhateverTheClocks() throws IOException {
+        final var manifestStorageIO = manifestStorageIO();
+        manifestStorageIO.maintain();
+        final var lateClock = new AtomicLong(clock.get() - TimeValue.timeValueHours(1L).millis());
+        final var lateNodeStorageIO =
+                new ManifestStorageIO(mockedStorageIO, "base/", TimeValue.timeValueSeconds(10L),
+                        TimeValue.timeValueHours(1L), lateClock::get);
+
+        write(manifestStorageIO, "base/indices/a/0/__y", 5);
+        write(manifestStorageIO, "base/indices/a/0/snap-2.dat", 2);
+        lateNodeStorageIO.deleteFiles(List.of("base/indices/a/0/__y", "base/indices/a/0/snap-2.dat"), true);
+
+        assertEquals(
+                Map.of("__x", 10L, "snap-1.dat", 2L),
+                manifestStorageIO().listFiles("base/indices/a/0/", ""));
+    }
+
+    @Test
+    void writesNextLogWhenAnotherNodeHasWrittenItMeanwhile() throws IOException {
+        final var manifestStorageIO = manifestStorageIO();
+        final var otherNodeStorageIO = manifestStorageIO();
+        manifestStorageIO.maintain();
+        otherNodeStorageIO.maintain();
+        final var raced = new AtomicBoolean();
+        doAnswer(invocation -> {
+            if (invocation.<String>getArgument(0).contains(ManifestStorageIO.LOG_PREFIX)
+                    && raced.compareAndSet(false, true)) {
+                write(otherNodeStorageIO, "base/indices/a/0/snap-3.dat", 3);
+            }
+            return store(invocation);
+        }).when(mockedStorageIO).write(anyString(), any(InputStream.class), anyLong(), anyBoolean());
+
+        write(manifestStorageIO, "base/indices/a/0/snap-2.dat", 2);
+
+        assertTrue(raced.get());
+        assertEquals(
+                List.of(ManifestStorageIO.COMPACTED_PREFIX, ManifestStorageIO.LOG_PREFIX),
+                manifestBlobs());
+        assertEquals(2L, stored.keySet().stream().filter(name -> name.contains(ManifestStorageIO.LOG_PREFIX)).count());
+        assertEquals(
+                Map.of("__x", 10L, "snap-1.dat", 2L, "snap-2.dat", 2L, "snap-3.dat", 3L),
+                manifestStorageIO().listFiles("base/indices/a/0/", ""));
+    }
+
+    private ManifestStorageIO manifestStorageIO() {
+        return new ManifestStorageIO(
+                mockedStorageIO, "base/", TimeValue.timeValueSeconds(10L), TimeValue.timeValueHours(1L), clock::get);
+    }
+
+    private static void write(final StorageIO storageIO, final String blobName, final int size) throws IOException {
+        storageIO.write(blobName, new ByteArrayInputStream(new byte[size]), size, false);
+    }
+
+    private Object store(final InvocationOnMock invocation) throws IOException {
+        final String blobName = invocation.getArgument(0);
+        if (invocation.<Boolean>getArgument(3) && stored.containsKey(blobName)) {
+            throw new FileAlreadyExistsException(blobName);
+        }
+        return stored.put(blobName, invocation.<InputStream>getArgument(1).readAllBytes());
+    }
+
+    private InputStream read(final String blobName) throws NoSuchFileException {
+        if (!stored.containsKey(blobName)) {
+            throw new NoSuchFileException(blobName);
+        }
+        return new ByteArrayInputStream(stored.get(blobName));
+    }
+
+    private List<String> manifestBlobs() {
+        final var path = "base/" + ManifestStorageIO.MANIFEST_DIRECTORY;
+        return stored.keySet().stream()
+                .filter(name -> name.startsWith(path))
+                .map(name -> name.substring(path.length(), name.indexOf('-', path.length()) + 1))
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    private Map<String, Long> listFiles(final String path, final String prefix) {
+        return stored.entrySet().stream()
+                .filter(e -> e.getKey().startsWith(path + prefix) && e.getKey().indexOf('/', path.length()) < 0)
+                .collect(Collectors.toMap(e -> e.getKey().substring(path.length()), e -> (long) e.getValue().length));
+    }
+
+    private List<String> listDirectories(final String path) {
+        return stored.keySet().stream()
+                .filter(name -> name.startsWith(path) && name.indexOf('/', path.length()) > 0)
+                .map(name -> name.substring(path.length(), name.indexOf('/', path.length())))
+                .collect(Collectors.toCollection(TreeSet::new))
+                .stream()
+                .collect(Collectors.toList());
+    }
+
+}
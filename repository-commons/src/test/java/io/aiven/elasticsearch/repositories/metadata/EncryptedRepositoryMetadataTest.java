@@ -18,20 +18,36 @@ package io.aiven.elasticsearch.repositories.metadata;
 
 import javax.crypto.SecretKey;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Base64;
+import java.util.concurrent.atomic.AtomicReference;
 
+import io.aiven.elasticsearch.repositories.BlobVersionConflictException;
 import io.aiven.elasticsearch.repositories.RsaKeyAwareTest;
 import io.aiven.elasticsearch.repositories.security.EncryptionKeyProvider;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeys;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 class EncryptedRepositoryMetadataTest extends RsaKeyAwareTest {
 
@@ -78,6 +94,80 @@ class EncryptedRepositoryMetadataTest extends RsaKeyAwareTest {
         assertEquals(encKey, savedKey);
     }
 
+    @Test
+    void shouldSerializeRotatedKeys() throws IOException {
+        final var encKeys =
+            EncryptionKeys.of(encryptionKeyProvider.createKey())
+                .rotate(encryptionKeyProvider.createKey());
+        final var metadata = new EncryptedRepositoryMetadata(encryptionKeyProvider);
+
+        final var bytes = metadata.serialize(encKeys);
+        final var encKeyMetadata = new ObjectMapper().readValue(bytes, EncryptionKeyMetadata.class);
+        final var deserializedKeys = metadata.deserializeKeys(bytes);
+
+        assertEquals(EncryptedRepositoryMetadata.MULTI_KEY_VERSION, encKeyMetadata.version());
+        assertEquals(1, deserializedKeys.currentKeyId());
+        assertEquals(encKeys.keys(), deserializedKeys.keys());
+        assertEquals(encKeys.currentKey(), metadata.deserialize(bytes));
+    }
+
+    @Test
+    void shouldDeserializeSingleKeyMetadataAsInitialKey() throws IOException {
+        final var encKey = encryptionKeyProvider.createKey();
+        final var metadata = new EncryptedRepositoryMetadata(encryptionKeyProvider);
+
+        final var encKeys = metadata.deserializeKeys(metadata.serialize(encKey));
+
+        assertEquals(EncryptionKeys.INITIAL_KEY_ID, encKeys.currentKeyId());
+        assertEquals(encKey, encKeys.currentKey());
+    }
+
+    @Test
+    void shouldRotateAgainKeysRotatedConcurrently() throws IOException {
+        final var metadata = new EncryptedRepositoryMetadata(encryptionKeyProvider);
+        final var initialKeys = EncryptionKeys.of(encryptionKeyProvider.createKey());
+        final var concurrentlyRotatedKeys = initialKeys.rotate(encryptionKeyProvider.createKey());
+        final var stored = new AtomicReference<>(metadata.serialize(initialKeys));
+        final var storageIO = mock(StorageIO.class);
+        when(storageIO.version("repository_metadata.json")).thenReturn("1", "2");
+        when(storageIO.read(eq("repository_metadata.json"), anyString()))
+            .thenAnswer(invocation -> new ByteArrayInputStream(stored.get()));
+        doAnswer(invocation -> {
+            // another node has rotated the key since the keys have been read
+            stored.set(metadata.serialize(concurrentlyRotatedKeys));
+            throw new BlobVersionConflictException("repository_metadata.json", "1");
+        }).doAnswer(invocation -> {
+            stored.set(invocation.<InputStream>getArgument(1).readAllBytes());
+            return null;
+        }).when(storageIO).replace(eq("repository_metadata.json"), any(InputStream.class), anyLong(), anyString());
+
+        final var rotatedKeys = metadata.rotate(storageIO, "repository_metadata.json", 3);
+
+        assertEquals(concurrentlyRotatedKeys.currentKeyId() + 1, rotatedKeys.currentKeyId());
+        assertEquals(3, rotatedKeys.keys().size());
+        assertEquals(rotatedKeys.keys(), metadata.deserializeKeys(stored.get()).keys());
+        verify(storageIO).read("repository_metadata.json", "2");
+        verify(storageIO).replace(eq("repository_metadata.json"), any(InputStream.class), anyLong(), eq("2"));
+    }
+
+    @Test
+    void shouldGiveUpRotationAfterMaxAttempts() throws IOException {
+        final var metadata = new EncryptedRepositoryMetadata(encryptionKeyProvider);
+        final var initialKeys = metadata.serialize(EncryptionKeys.of(encryptionKeyProvider.createKey()));
+        final var storageIO = mock(StorageIO.class);
+        when(storageIO.version("repository_metadata.json")).thenReturn("1");
+        when(storageIO.read("repository_metadata.json", "1"))
+            .thenAnswer(invocation -> new ByteArrayInputStream(initialKeys));
+        doThrow(new BlobVersionConflictException("repository_metadata.json", "1"))
+            .when(storageIO).replace(eq("repository_metadata.json"), any(InputStream.class), anyLong(), eq("1"));
+
+        assertThrows(
+            BlobVersionConflictException.class,
+            () -> metadata.rotate(storageIO, "repository_metadata.json", 2));
+        verify(storageIO, times(2))
+            .replace(eq("repository_metadata.json"), any(InputStream.class), anyLong(), eq("1"));
+    }
+
     @Test
     void deserializationShouldThrowIOExceptionForWrongJson() {
 
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void reportsZeroWhenEmpty() {
+        final var histogram = new LatencyHistogram();
+
+        assertEquals(0L, histogram.percentile(50));
+        assertEquals(0L, histogram.max());
+    }
+
+    @Test
+    void keepsSmallValuesExact() {
+        final var histogram = new LatencyHistogram();
+        for (var v = 1L; v <= 4L; v++) {
+            histogram.record(v);
+        }
+
+        assertEquals(2L, histogram.percentile(50));
+        assertEquals(4L, histogram.percentile(100));
+        assertEquals(4L, histogram.max());
+    }
+
+    @Test
+    void boundsRelativeErrorOfPercentiles() {
+        final var histogram = new LatencyHistogram();
+        for (var v = 1L; v <= 100_000L; v++) {
+            histogram.record(v);
+        }
+
+        final var p50 = histogram.percentile(50);
+        final var p99 = histogram.percentile(99);
+        assertTrue(p50 >= 50_000L && p50 <= 50_000L * 1.125, "p50 " + p50);
+        assertTrue(p99 >= 99_000L && p99 <= 100_000L, "p99 " + p99);
+        assertEquals(100_000L, histogram.max());
+    }
+
+    @Test
+    void bucketsCoverAllValues() {
+        for (final var v : new long[] {0L, 7L, 8L, 15L, 16L, 1_000_000L, Long.MAX_VALUE}) {
+            final var index = LatencyHistogram.bucketIndex(v);
+            assertTrue(LatencyHistogram.bucketUpperBound(index) >= v, "value " + v);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.bucketUpperBound(index - 1) < v, "value " + v);
+            }
+        }
+    }
+
+}
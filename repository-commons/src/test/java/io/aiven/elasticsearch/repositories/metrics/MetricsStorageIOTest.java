@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsStorageIOTest {
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    MetricsStorageIO metricsStorageIO;
+
+    @BeforeEach
+    void setUp() {
+        metricsStorageIO = new MetricsStorageIO(mockedStorageIO);
+    }
+
+    @Test
+    void countsOperationsAndErrors() throws Exception {
+        when(mockedStorageIO.exists("a")).thenReturn(true);
+        when(mockedStorageIO.exists("b")).thenThrow(new IOException("boom"));
+
+        metricsStorageIO.exists("a");
+        assertThrows(IOException.class, () -> metricsStorageIO.exists("b"));
+
+        final var stats = metricsStorageIO.stats();
+        assertEquals(2L, stats.get("storage.exists.count"));
+        assertEquals(1L, stats.get("storage.exists.errors"));
+        assertEquals(0L, stats.get("storage.list_files.count"));
+    }
+
+    @Test
+    void countsBytesOfReadsWhenClosed() throws Exception {
+        when(mockedStorageIO.read("a")).thenReturn(new ByteArrayInputStream(new byte[42]));
+
+        try (final var in = metricsStorageIO.read("a")) {
+            in.readAllBytes();
+            assertEquals(0L, metricsStorageIO.stats().get("storage.read.count"));
+        }
+
+        final var stats = metricsStorageIO.stats();
+        assertEquals(1L, stats.get("storage.read.count"));
+        assertEquals(42L, stats.get("storage.read.bytes"));
+        assertEquals(0L, stats.get("storage.read.errors"));
+    }
+
+    @Test
+    void countsBytesOfWritesAndDeletes() throws Exception {
+        metricsStorageIO.write("a", new ByteArrayInputStream(new byte[10]), 10L, false);
+        metricsStorageIO.deleteFiles(List.of("a"), true);
+
+        final var stats = metricsStorageIO.stats();
+        assertEquals(10L, stats.get("storage.write.bytes"));
+        assertEquals(1L, stats.get("storage.delete_files.count"));
+    }
+
+}
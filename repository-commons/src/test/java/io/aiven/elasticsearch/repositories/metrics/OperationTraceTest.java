@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationTraceTest {
+
+    @Test
+    void recordsRetriesOnlyWithinTheTrace() throws Exception {
+        final var trace = new OperationTrace("read", "a");
+
+        OperationTrace.retried(new IOException("outside"));
+        trace.within(() -> {
+            OperationTrace.retried(new IOException("connection reset"));
+            return null;
+        });
+        OperationTrace.retried(new IOException("after"));
+
+        assertEquals(1, trace.retries());
+        assertEquals(List.of("java.io.IOException: connection reset"), trace.retryCauses());
+    }
+
+    @Test
+    void restoresTheOuterTraceOnFailure() throws Exception {
+        final var outer = new OperationTrace("read", "a");
+        final var inner = new OperationTrace("read", "a");
+
+        outer.within(() -> {
+            assertThrows(IOException.class, () -> inner.within(() -> {
+                throw new IOException("boom");
+            }));
+            OperationTrace.retried(new IOException("retry"));
+            return null;
+        });
+
+        assertEquals(1, outer.retries());
+        assertEquals(0, inner.retries());
+    }
+
+    @Test
+    void reportsToNestedTraces() throws Exception {
+        final var outer = new OperationTrace("read", "a");
+        final var inner = new OperationTrace("read", "a");
+
+        outer.within(() -> inner.within(() -> {
+            OperationTrace.retried(new IOException("retry"));
+            OperationTrace.partStarted(3);
+            return null;
+        }));
+
+        assertEquals(1, outer.retries());
+        assertEquals(1, inner.retries());
+        assertEquals(3, outer.partNumber());
+        assertEquals(3, inner.partNumber());
+    }
+
+    @Test
+    void keepsTimeToFirstByteAndLimitsRetryCauses() throws Exception {
+        final var trace = new OperationTrace("read", "a");
+        assertEquals(-1L, trace.timeToFirstByteMillis());
+
+        trace.transferred(0L);
+        assertEquals(-1L, trace.timeToFirstByteMillis());
+        trace.transferred(10L);
+        trace.transferred(5L);
+        trace.within(() -> {
+            for (var i = 0; i < 20; i++) {
+                OperationTrace.retried(new IOException("retry " + i));
+            }
+            return null;
+        });
+
+        assertTrue(trace.timeToFirstByteMillis() >= 0);
+        assertEquals(15L, trace.bytes());
+        assertEquals(20, trace.retries());
+        assertEquals(10, trace.retryCauses().size());
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestAccountingTest {
+
+    @Test
+    void countsRequestsAndBytes() throws Exception {
+        final var requestAccounting = RequestAccounting.untracked();
+
+        requestAccounting.classA(3L);
+        requestAccounting.classB(1L);
+        requestAccounting.deletes(2L);
+        try (final var out = requestAccounting.countUpload(new ByteArrayOutputStream())) {
+            out.write(new byte[10]);
+        }
+        try (final var in = requestAccounting.countDownload(new ByteArrayInputStream(new byte[7]))) {
+            in.readAllBytes();
+        }
+
+        final var stats = requestAccounting.stats();
+        assertEquals(3L, stats.get("requests.class_a"));
+        assertEquals(1L, stats.get("requests.class_b"));
+        assertEquals(2L, stats.get("requests.deletes"));
+        assertEquals(10L, stats.get("requests.upload_bytes"));
+        assertEquals(7L, stats.get("requests.download_bytes"));
+    }
+
+    @Test
+    void attributesRequestsToTheCurrentOperation() {
+        final var currentOperation = new AtomicReference<String>();
+        final var requestAccounting = new RequestAccounting(currentOperation::get);
+
+        requestAccounting.begin("snapshot [a]");
+        requestAccounting.begin("snapshot [a]");
+        requestAccounting.begin("snapshot [b]");
+        currentOperation.set("snapshot [a]");
+        requestAccounting.classA(2L);
+        currentOperation.set("snapshot [b]");
+        requestAccounting.classB(5L);
+        currentOperation.set(null);
+        requestAccounting.classB(1L);
+
+        assertEquals(Optional.empty(), requestAccounting.end("snapshot [a]"));
+        assertEquals(
+                Optional.of("class_a=2, class_b=0, deletes=0, upload_bytes=0, download_bytes=0"),
+                requestAccounting.end("snapshot [a]"));
+        assertEquals(
+                Optional.of("class_a=0, class_b=5, deletes=0, upload_bytes=0, download_bytes=0"),
+                requestAccounting.end("snapshot [b]"));
+        assertTrue(requestAccounting.end("snapshot [b]").isEmpty());
+        assertEquals(6L, requestAccounting.stats().get("requests.class_b"));
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import org.opensearch.common.collect.Tuple;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ThroughputAnalyzerTest {
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    @Test
+    void reportsEveryOperationAndCleansUp() throws Exception {
+        when(mockedStorageIO.read(anyString())).thenAnswer(invocation -> new ByteArrayInputStream(new byte[100]));
+        when(mockedStorageIO.listFiles(anyString(), eq(""))).thenReturn(Map.of("blob-0", 100L));
+        when(mockedStorageIO.deleteDirectories(anyString())).thenReturn(Tuple.tuple(0, 0L));
+
+        final var executor = Executors.newFixedThreadPool(2);
+        try {
+            final var results = new ThroughputAnalyzer(mockedStorageIO, "base/", executor).analyze(5, 100, 2);
+
+            assertEquals(5L, results.get("write").get("count"));
+            assertEquals(500L, results.get("write").get("bytes"));
+            assertEquals(5L, results.get("read").get("count"));
+            assertEquals(500L, results.get("read").get("bytes"));
+            assertEquals(5L, results.get("read_first_byte").get("count"));
+            assertEquals(2L, results.get("list").get("count"));
+            assertEquals(5L, results.get("delete").get("bytes"));
+        } finally {
+            executor.shutdown();
+        }
+
+        verify(mockedStorageIO, times(5))
+                .write(startsWith("base/" + ThroughputAnalyzer.SCRATCH_PREFIX), any(InputStream.class),
+                        eq(100L), anyBoolean());
+        verify(mockedStorageIO).deleteDirectories(startsWith("base/" + ThroughputAnalyzer.SCRATCH_PREFIX));
+    }
+
+    @Test
+    void cleansUpWhenTheStorageFails() throws Exception {
+        doThrow(new IOException("boom"))
+                .when(mockedStorageIO).write(anyString(), any(InputStream.class), anyLong(), anyBoolean());
+
+        assertThrows(IOException.class,
+                () -> new ThroughputAnalyzer(mockedStorageIO, "base/", Runnable::run).analyze(3, 10, 2));
+
+        verify(mockedStorageIO).deleteDirectories(startsWith("base/" + ThroughputAnalyzer.SCRATCH_PREFIX));
+    }
+
+}
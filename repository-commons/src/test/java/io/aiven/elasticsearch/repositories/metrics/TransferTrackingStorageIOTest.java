@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TransferTrackingStorageIOTest {
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    TransferTrackingStorageIO transferTrackingStorageIO;
+
+    @BeforeEach
+    void setUp() {
+        transferTrackingStorageIO = new TransferTrackingStorageIO(mockedStorageIO);
+    }
+
+    @Test
+    void tracksReadsUntilClosed() throws Exception {
+        when(mockedStorageIO.read("a")).thenReturn(new ByteArrayInputStream(new byte[42]) {
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                OperationTrace.retried(new IOException("connection reset"));
+                return super.read(b, off, len);
+            }
+        });
+
+        try (final var in = transferTrackingStorageIO.read("a")) {
+            assertEquals(10, in.read(new byte[10]));
+            final var transfers = transferTrackingStorageIO.inFlight();
+            assertEquals(1, transfers.size());
+            assertEquals("read", transfers.get(0).operation());
+            assertEquals("a", transfers.get(0).path());
+            assertEquals(10L, transfers.get(0).bytes());
+            assertEquals(1, transfers.get(0).retries());
+        }
+
+        assertTrue(transferTrackingStorageIO.inFlight().isEmpty());
+    }
+
+    @Test
+    void tracksWritesWithTheirParts() throws Exception {
+        doAnswer(invocation -> {
+            final var in = invocation.getArgument(1, InputStream.class);
+            OperationTrace.partStarted(1);
+            in.readNBytes(5);
+            OperationTrace.partStarted(2);
+            in.readNBytes(5);
+
+            final var transfers = transferTrackingStorageIO.inFlight();
+            assertEquals(1, transfers.size());
+            assertEquals("write", transfers.get(0).operation());
+            assertEquals(10L, transfers.get(0).bytes());
+            assertEquals(2, transfers.get(0).partNumber());
+            return null;
+        }).when(mockedStorageIO).write(eq("a"), any(InputStream.class), anyLong(), anyBoolean());
+
+        transferTrackingStorageIO.write("a", new ByteArrayInputStream(new byte[10]), 10L, false);
+
+        assertTrue(transferTrackingStorageIO.inFlight().isEmpty());
+    }
+
+    @Test
+    void forgetsFailedTransfers() throws Exception {
+        when(mockedStorageIO.read("a")).thenThrow(new IOException("boom"));
+
+        assertThrows(IOException.class, () -> transferTrackingStorageIO.read("a"));
+
+        assertTrue(transferTrackingStorageIO.inFlight().isEmpty());
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.migration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.Map;
+
+import io.aiven.elasticsearch.repositories.BlobVersionConflictException;
+import io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider;
+import io.aiven.elasticsearch.repositories.RsaKeyAwareTest;
+import io.aiven.elasticsearch.repositories.io.BandwidthLimiter;
+import io.aiven.elasticsearch.repositories.io.CryptoIOProvider;
+import io.aiven.elasticsearch.repositories.io.PhaseTimings;
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeyProvider;
+import io.aiven.elasticsearch.repositories.security.EncryptionKeys;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BlobReEncryptionTest extends RsaKeyAwareTest {
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    @Mock
+    StorageIO mockedCaches;
+
+    @Test
+    void rewritesBlobsEncryptedWithOtherKeys() throws Exception {
+        final var encryptionKeyProvider =
+                EncryptionKeyProvider.of(
+                        Files.newInputStream(publicKeyPem).readAllBytes(),
+                        Files.newInputStream(privateKeyPem).readAllBytes());
+        final var initialKeys = EncryptionKeys.of(encryptionKeyProvider.createKey());
+        final var rotatedKeys = initialKeys.rotate(encryptionKeyProvider.createKey());
+        final var cryptoIOProvider =
+                new CryptoIOProvider(() -> rotatedKeys, 1_024, BandwidthLimiter.unlimited(), PhaseTimings.DISABLED,
+                        RequestAccounting.untracked());
+        final var oldBlob = encrypt(new CryptoIOProvider(initialKeys.currentKey(), 1_024));
+        final var newBlob = encrypt(cryptoIOProvider);
+
+        when(mockedStorageIO.listFiles("base/", ""))
+                .thenReturn(Map.of(
+                        RepositoryStorageIOProvider.REPOSITORY_METADATA_FILE_NAME, 10L,
+                        "index.latest", 8L,
+                        "snap-1.dat", 10L));
+        when(mockedStorageIO.listDirectories("base/")).thenReturn(List.of("indices"));
+        when(mockedStorageIO.listFiles("base/indices/", ""))
+                .thenReturn(Map.of("old", 10L, "new", 10L, "gone", 10L, "replaced", 10L));
+        when(mockedStorageIO.listDirectories("base/indices/")).thenReturn(List.of());
+        when(mockedStorageIO.version(anyString())).thenReturn("v1");
+        when(mockedStorageIO.version("base/indices/gone")).thenThrow(new NoSuchFileException("base/indices/gone"));
+        when(mockedStorageIO.read("base/snap-1.dat", "v1"))
+                .thenAnswer(invocation -> cryptoIOProvider.decryptAndDecompress(new ByteArrayInputStream(oldBlob)));
+        when(mockedStorageIO.read("base/indices/old", "v1"))
+                .thenAnswer(invocation -> cryptoIOProvider.decryptAndDecompress(new ByteArrayInputStream(oldBlob)));
+        when(mockedStorageIO.read("base/indices/new", "v1"))
+                .thenAnswer(invocation -> cryptoIOProvider.decryptAndDecompress(new ByteArrayInputStream(newBlob)));
+        when(mockedStorageIO.read("base/indices/replaced", "v1"))
+                .thenAnswer(invocation -> cryptoIOProvider.decryptAndDecompress(new ByteArrayInputStream(oldBlob)));
+        // replaced with the current key by another node while the blob was being rewritten
+        when(mockedStorageIO.read("base/indices/replaced"))
+                .thenAnswer(invocation -> cryptoIOProvider.decryptAndDecompress(new ByteArrayInputStream(newBlob)));
+        doAnswer(invocation -> invocation.<InputStream>getArgument(1).readAllBytes())
+                .when(mockedStorageIO).replace(anyString(), any(InputStream.class), anyLong(), eq("v1"));
+        doThrow(new BlobVersionConflictException("base/indices/replaced", "v1"))
+                .when(mockedStorageIO)
+                .replace(eq("base/indices/replaced"), any(InputStream.class), anyLong(), eq("v1"));
+
+        final var reEncryption =
+                new BlobReEncryption("repository", mockedStorageIO, mockedCaches, "base/", rotatedKeys.currentKeyId(),
+                        Runnable::run, 2, 0L);
+        reEncryption.run();
+
+        final var status = reEncryption.status();
+        assertEquals("done", status.get("state"));
+        assertEquals(5L, status.get("blobs"));
+        assertEquals(1L, status.get("skipped_blobs"));
+        assertEquals(1L, status.get("deleted_blobs"));
+        assertEquals(0L, status.get("remaining_blobs"));
+        assertEquals(2L, status.get("rewritten_blobs"));
+        assertEquals(200L, status.get("rewritten_bytes"));
+        verify(mockedStorageIO).replace(eq("base/snap-1.dat"), any(InputStream.class), eq(10L), eq("v1"));
+        verify(mockedStorageIO).replace(eq("base/indices/old"), any(InputStream.class), eq(10L), eq("v1"));
+        verify(mockedStorageIO, never())
+                .replace(eq("base/indices/new"), any(InputStream.class), anyLong(), anyString());
+        verify(mockedStorageIO, never())
+                .replace(eq("base/indices/gone"), any(InputStream.class), anyLong(), anyString());
+        verify(mockedStorageIO, never()).write(anyString(), any(InputStream.class), anyLong(), anyBoolean());
+        verify(mockedCaches).invalidate("base/snap-1.dat");
+        verify(mockedCaches).invalidate("base/indices/old");
+        verify(mockedCaches, never()).invalidate("base/indices/new");
+        verify(mockedCaches, never()).invalidate("base/indices/replaced");
+        verify(mockedStorageIO, never()).read("base/index.latest");
+        verify(mockedStorageIO, never()).read("base/" + RepositoryStorageIOProvider.REPOSITORY_METADATA_FILE_NAME);
+    }
+
+    @Test
+    void reportsBlobsWrittenWithPreviousKeyInTheMeantime() throws Exception {
+        final var encryptionKeyProvider =
+                EncryptionKeyProvider.of(
+                        Files.newInputStream(publicKeyPem).readAllBytes(),
+                        Files.newInputStream(privateKeyPem).readAllBytes());
+        final var initialKeys = EncryptionKeys.of(encryptionKeyProvider.createKey());
+        final var rotatedKeys = initialKeys.rotate(encryptionKeyProvider.createKey());
+        final var cryptoIOProvider =
+                new CryptoIOProvider(() -> rotatedKeys, 1_024, BandwidthLimiter.unlimited(), PhaseTimings.DISABLED,
+                        RequestAccounting.untracked());
+        final var oldBlob = encrypt(new CryptoIOProvider(initialKeys.currentKey(), 1_024));
+        final var newBlob = encrypt(cryptoIOProvider);
+
+        when(mockedStorageIO.listFiles("base/", ""))
+                .thenReturn(Map.of("snap-1.dat", 10L))
+                .thenReturn(Map.of("snap-1.dat", 10L, "snap-2.dat", 10L, "snap-3.dat", 10L, "snap-4.dat", 10L));
+        when(mockedStorageIO.listDirectories("base/")).thenReturn(List.of());
+        when(mockedStorageIO.version("base/snap-1.dat")).thenReturn("v1");
+        when(mockedStorageIO.read("base/snap-1.dat", "v1"))
+                .thenAnswer(invocation -> cryptoIOProvider.decryptAndDecompress(new ByteArrayInputStream(newBlob)));
+        when(mockedStorageIO.read("base/snap-2.dat"))
+                .thenAnswer(invocation -> cryptoIOProvider.decryptAndDecompress(new ByteArrayInputStream(oldBlob)));
+        when(mockedStorageIO.read("base/snap-3.dat"))
+                .thenAnswer(invocation -> cryptoIOProvider.decryptAndDecompress(new ByteArrayInputStream(newBlob)));
+        when(mockedStorageIO.read("base/snap-4.dat")).thenThrow(new NoSuchFileException("base/snap-4.dat"));
+
+        final var reEncryption =
+                new BlobReEncryption("repository", mockedStorageIO, mockedCaches, "base/", rotatedKeys.currentKeyId(),
+                        Runnable::run, 2, 0L);
+        reEncryption.run();
+
+        final var status = reEncryption.status();
+        assertEquals("done", status.get("state"));
+        assertEquals(1L, status.get("blobs"));
+        assertEquals(1L, status.get("skipped_blobs"));
+        assertEquals(1L, status.get("remaining_blobs"));
+        verify(mockedStorageIO, never()).replace(anyString(), any(InputStream.class), anyLong(), anyString());
+    }
+
+    @Test
+    void reportsFailure() throws IOException {
+        when(mockedStorageIO.listFiles("base/", "")).thenReturn(Map.of("snap-1.dat", 10L));
+        when(mockedStorageIO.listDirectories("base/")).thenReturn(List.of());
+        when(mockedStorageIO.version("base/snap-1.dat")).thenReturn("v1");
+        when(mockedStorageIO.read("base/snap-1.dat", "v1")).thenThrow(new IOException("boom"));
+
+        final var reEncryption =
+                new BlobReEncryption("repository", mockedStorageIO, mockedCaches, "base/", 1, Runnable::run, 2, 0L);
+        reEncryption.run();
+
+        assertEquals("failed", reEncryption.status().get("state"));
+        assertEquals("java.io.IOException: boom", reEncryption.status().get("failure"));
+    }
+
+    private static byte[] encrypt(final CryptoIOProvider cryptoIOProvider) throws IOException {
+        final var out = new ByteArrayOutputStream();
+        cryptoIOProvider.compressAndEncrypt(new ByteArrayInputStream(new byte[100]), out);
+        return out.toByteArray();
+    }
+
+}
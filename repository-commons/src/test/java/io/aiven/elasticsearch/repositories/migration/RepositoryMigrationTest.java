@@ -0,0 +1,232 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.migration;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.opensearch.common.blobstore.BlobContainer;
+import org.opensearch.common.blobstore.BlobPath;
+import org.opensearch.common.blobstore.BlobStore;
+
+import io.aiven.elasticsearch.repositories.RepositoryBlobContainer;
+import io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider;
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+import io.aiven.elasticsearch.repositories.layout.PartitionedKeyStorageIO;
+import io.aiven.elasticsearch.repositories.manifest.ManifestStorageIO;
+import io.aiven.elasticsearch.repositories.pack.PackingStorageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RepositoryMigrationTest {
+
+    @Mock
+    StorageIO mockedSourceStorageIO;
+
+    @Mock
+    StorageIO mockedTargetStorageIO;
+
+    BlobStore targetBlobStore;
+
+    @BeforeEach
+    void setUp() {
+        targetBlobStore = new BlobStore() {
+            @Override
+            public BlobContainer blobContainer(final BlobPath path) {
+                return new RepositoryBlobContainer(path, mockedTargetStorageIO);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Test
+    void copiesMissingBlobsAndRootIndexLast() throws IOException {
+        when(mockedSourceStorageIO.listFiles("base/", ""))
+                .thenReturn(Map.of(
+                        RepositoryStorageIOProvider.REPOSITORY_METADATA_FILE_NAME, 10L,
+                        "index.latest", 8L,
+                        "index-2", 10L,
+                        "snap-1.dat", 10L));
+        when(mockedSourceStorageIO.listDirectories("base/")).thenReturn(List.of("indices"));
+        when(mockedSourceStorageIO.listFiles("base/indices/", "")).thenReturn(Map.of("blob-1", 10L, "blob-2", 10L));
+        when(mockedSourceStorageIO.listDirectories("base/indices/")).thenReturn(List.of());
+        when(mockedSourceStorageIO.read(anyString())).thenAnswer(invocation -> new ByteArrayInputStream(new byte[10]));
+        when(mockedTargetStorageIO.listFiles("target/", "")).thenReturn(Map.of());
+        when(mockedTargetStorageIO.listFiles("target/indices/", "")).thenReturn(Map.of("blob-1", 12L));
+        doAnswer(invocation -> invocation.<InputStream>getArgument(1).readAllBytes())
+                .when(mockedTargetStorageIO).write(anyString(), any(InputStream.class), anyLong(), anyBoolean());
+
+        final var migration = migration();
+        migration.run();
+
+        final var status = migration.status();
+        assertEquals("done", status.get("state"));
+        assertEquals(5L, status.get("blobs"));
+        assertEquals(1L, status.get("skipped_blobs"));
+        assertEquals(4L, status.get("copied_blobs"));
+        assertEquals(40L, status.get("copied_bytes"));
+
+        final var inOrder = inOrder(mockedTargetStorageIO);
+        inOrder.verify(mockedTargetStorageIO)
+                .write(eq("target/index-2"), any(InputStream.class), eq(10L), eq(true));
+        inOrder.verify(mockedTargetStorageIO)
+                .write(eq("target/index.latest"), any(InputStream.class), eq(8L), eq(false));
+        verify(mockedTargetStorageIO).write(eq("target/snap-1.dat"), any(InputStream.class), anyLong(), eq(true));
+        verify(mockedTargetStorageIO).write(eq("target/indices/blob-2"), any(InputStream.class), anyLong(), eq(true));
+        verify(mockedTargetStorageIO, never())
+                .write(eq("target/indices/blob-1"), any(InputStream.class), anyLong(), anyBoolean());
+        verify(mockedTargetStorageIO, never())
+                .write(eq("target/" + RepositoryStorageIOProvider.REPOSITORY_METADATA_FILE_NAME),
+                        any(InputStream.class), anyLong(), anyBoolean());
+    }
+
+    @Test
+    void copiesRootIndexLatestAgainOnResume() throws IOException {
+        when(mockedSourceStorageIO.listFiles("base/", ""))
+                .thenReturn(Map.of("index.latest", 8L, "index-2", 10L, "index-3", 10L));
+        when(mockedSourceStorageIO.listDirectories("base/")).thenReturn(List.of());
+        when(mockedSourceStorageIO.read(anyString())).thenAnswer(invocation -> new ByteArrayInputStream(new byte[8]));
+        when(mockedTargetStorageIO.listFiles("target/", "")).thenReturn(Map.of("index.latest", 8L, "index-2", 10L));
+        doAnswer(invocation -> invocation.<InputStream>getArgument(1).readAllBytes())
+                .when(mockedTargetStorageIO).write(anyString(), any(InputStream.class), anyLong(), anyBoolean());
+
+        final var migration = migration();
+        migration.run();
+
+        assertEquals(1L, migration.status().get("skipped_blobs"));
+        final var inOrder = inOrder(mockedTargetStorageIO);
+        inOrder.verify(mockedTargetStorageIO)
+                .write(eq("target/index-3"), any(InputStream.class), eq(10L), eq(true));
+        inOrder.verify(mockedTargetStorageIO)
+                .write(eq("target/index.latest"), any(InputStream.class), eq(8L), eq(false));
+        verify(mockedTargetStorageIO, never())
+                .write(eq("target/index-2"), any(InputStream.class), anyLong(), anyBoolean());
+    }
+
+    @Test
+    void reportsFailure() throws IOException {
+        when(mockedSourceStorageIO.listFiles("base/", "")).thenReturn(Map.of("snap-1.dat", 10L));
+        when(mockedSourceStorageIO.listDirectories("base/")).thenReturn(List.of());
+        when(mockedSourceStorageIO.read("base/snap-1.dat")).thenThrow(new IOException("boom"));
+        when(mockedTargetStorageIO.listFiles("target/", "")).thenReturn(Map.of());
+
+        final var migration = migration();
+        migration.run();
+
+        final var status = migration.status();
+        assertEquals("failed", status.get("state"));
+        assertEquals(0L, status.get("copied_blobs"));
+        assertTrue(status.get("failure").toString().contains("boom"));
+    }
+
+    @Test
+    void copiesBlobsAsSeenThroughLogicalViewOfSource() throws IOException {
+        final var stored = new TreeMap<String, byte[]>();
+        lenient().doAnswer(invocation -> stored.put(
+                        invocation.getArgument(0), invocation.<InputStream>getArgument(1).readAllBytes()))
+                .when(mockedSourceStorageIO).write(anyString(), any(InputStream.class), anyLong(), anyBoolean());
+        lenient().when(mockedSourceStorageIO.read(anyString()))
+                .thenAnswer(invocation -> new ByteArrayInputStream(stored.get(invocation.<String>getArgument(0))));
+        lenient().when(mockedSourceStorageIO.listFiles(anyString(), anyString()))
+                .thenAnswer(invocation -> listFiles(stored, invocation.getArgument(0), invocation.getArgument(1)));
+        lenient().when(mockedSourceStorageIO.listDirectories(anyString()))
+                .thenAnswer(invocation -> listDirectories(stored, invocation.getArgument(0)));
+        final var partitioned =
+                new PartitionedKeyStorageIO(mockedSourceStorageIO, "base/", 16, ParallelListing.SEQUENTIAL);
+        final var source = new PackingStorageIO(partitioned, 10, 1024);
+        write(source, "base/index-1");
+        write(source, "base/indices/a/0/__x");
+        write(source, "base/indices/a/0/__y");
+        write(source, "base/indices/a/0/snap-1.dat");
+        stored.put("base/" + ManifestStorageIO.MANIFEST_DIRECTORY + "compacted-1", new byte[1]);
+        when(mockedTargetStorageIO.listFiles(anyString(), eq(""))).thenReturn(Map.of());
+        final var written = new TreeSet<String>();
+        doAnswer(invocation -> written.add(invocation.getArgument(0)))
+                .when(mockedTargetStorageIO).write(anyString(), any(InputStream.class), anyLong(), anyBoolean());
+
+        final var migration =
+                new RepositoryMigration(
+                        "source", source, "base/",
+                        "target", targetBlobStore, BlobPath.cleanPath().add("target"),
+                        Runnable::run, 2, 0L);
+        migration.run();
+
+        assertEquals("done", migration.status().get("state"));
+        assertEquals(
+                Set.of("target/index-1", "target/indices/a/0/__x", "target/indices/a/0/__y",
+                        "target/indices/a/0/snap-1.dat"),
+                written);
+    }
+
+    private RepositoryMigration migration() {
+        return new RepositoryMigration(
+                "source", mockedSourceStorageIO, "base/",
+                "target", targetBlobStore, BlobPath.cleanPath().add("target"),
+                Runnable::run, 2, 0L);
+    }
+
+    private static void write(final StorageIO storageIO, final String blobName) throws IOException {
+        storageIO.write(blobName, new ByteArrayInputStream(new byte[4]), 4L, false);
+    }
+
+    private static Map<String, Long> listFiles(final Map<String, byte[]> stored,
+                                               final String path,
+                                               final String prefix) {
+        return stored.entrySet().stream()
+                .filter(e -> e.getKey().startsWith(path + prefix) && e.getKey().indexOf('/', path.length()) < 0)
+                .collect(Collectors.toMap(e -> e.getKey().substring(path.length()), e -> (long) e.getValue().length));
+    }
+
+    private static List<String> listDirectories(final Map<String, byte[]> stored, final String path) {
+        return stored.keySet().stream()
+                .filter(name -> name.startsWith(path) && name.indexOf('/', path.length()) > 0)
+                .map(name -> name.substring(path.length(), name.indexOf('/', path.length())))
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+}
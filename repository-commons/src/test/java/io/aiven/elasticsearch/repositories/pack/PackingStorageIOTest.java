@@ -0,0 +1,280 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.pack;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class PackingStorageIOTest {
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    final Map<String, byte[]> stored = new HashMap<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        lenient().doAnswer(invocation -> stored.put(
+                        invocation.getArgument(0), invocation.<InputStream>getArgument(1).readAllBytes()))
+                .when(mockedStorageIO).write(anyString(), any(InputStream.class), anyLong(), anyBoolean());
+        lenient().when(mockedStorageIO.read(anyString()))
+                .thenAnswer(invocation -> new ByteArrayInputStream(stored.get(invocation.<String>getArgument(0))));
+        lenient().when(mockedStorageIO.listFiles(anyString(), anyString()))
+                .thenAnswer(invocation -> listFiles(invocation.getArgument(0), invocation.getArgument(1)));
+    }
+
+    @Test
+    void packsSmallDataBlobsUntilAnotherBlobIsWrittenToDirectory() throws IOException {
+        final var packingStorageIO = new PackingStorageIO(mockedStorageIO, 10, 1024);
+
+        write(packingStorageIO, "indices/0/__a", "aaa");
+        write(packingStorageIO, "indices/0/__b", "bbbb");
+
+        verify(mockedStorageIO, never()).write(anyString(), any(InputStream.class), anyLong(), anyBoolean());
+        assertEquals("aaa", read(packingStorageIO, "indices/0/__a"));
+        assertTrue(packingStorageIO.exists("indices/0/__b"));
+
+        write(packingStorageIO, "indices/0/snap-1.dat", "snapshot");
+
+        assertEquals(List.of("indices/0/pack-"), packs());
+        assertEquals(Map.of("__a", 3L, "__b", 4L, "snap-1.dat", 8L), packingStorageIO.listFiles("indices/0/", ""));
+        assertEquals(2L, packingStorageIO.stats().get("pack.packed_blobs"));
+
+        final var otherNodeStorageIO = new PackingStorageIO(mockedStorageIO, 10, 1024);
+        assertEquals("bbbb", read(otherNodeStorageIO, "indices/0/__b"));
+        assertEquals("aaa", read(otherNodeStorageIO, "indices/0/__a"));
+        assertTrue(otherNodeStorageIO.exists("indices/0/__a"));
+        assertFalse(otherNodeStorageIO.exists("indices/0/__c"));
+        assertEquals(Map.of("__b", 4L), otherNodeStorageIO.listFiles("indices/0/", "__b"));
+    }
+
+    @Test
+    void writesBigDataBlobsDirectly() throws IOException {
+        final var packingStorageIO = new PackingStorageIO(mockedStorageIO, 2, 1024);
+
+        write(packingStorageIO, "indices/0/__a", "aaa");
+
+        verify(mockedStorageIO).write(eq("indices/0/__a"), any(InputStream.class), eq(3L), eq(false));
+    }
+
+    @Test
+    void writesPackOnceFull() throws IOException {
+        final var packingStorageIO = new PackingStorageIO(mockedStorageIO, 10, 6);
+
+        write(packingStorageIO, "indices/0/__a", "aaa");
+        write(packingStorageIO, "indices/0/__b", "bbb");
+
+        assertEquals(List.of("indices/0/pack-"), packs());
+    }
+
+    @Test
+    void deleteRewritesPackWithoutDeletedBlobs() throws IOException {
+        final var packingStorageIO = new PackingStorageIO(mockedStorageIO, 10, 1024);
+        write(packingStorageIO, "indices/0/__a", "aaa");
+        write(packingStorageIO, "indices/0/__b", "bbbb");
+        write(packingStorageIO, "indices/0/snap-1.dat", "snapshot");
+        final var packName = stored.keySet().stream().filter(n -> n.contains("pack-")).findFirst().orElseThrow();
+        doAnswer(invocation -> {
+            invocation.<List<String>>getArgument(0).forEach(stored::remove);
+            return null;
+        }).when(mockedStorageIO).deleteFiles(any(), anyBoolean());
+
+        packingStorageIO.deleteFiles(List.of("indices/0/__a"), true);
+
+        verify(mockedStorageIO).deleteFiles(List.of(packName), true);
+        assertEquals(List.of("indices/0/pack-"), packs());
+        assertEquals(Map.of("__b", 4L, "snap-1.dat", 8L), packingStorageIO.listFiles("indices/0/", ""));
+        assertEquals("bbbb", read(new PackingStorageIO(mockedStorageIO, 10, 1024), "indices/0/__b"));
+        assertEquals(1L, packingStorageIO.stats().get("pack.packs_rewritten"));
+
+        packingStorageIO.deleteFiles(List.of("indices/0/__b"), true);
+
+        assertEquals(List.of(), packs());
+        assertEquals(Map.of("snap-1.dat", 8L), packingStorageIO.listFiles("indices/0/", ""));
+    }
+
+    @Test
+    void copiesPackedBlobs() throws IOException {
+        final var packingStorageIO = new PackingStorageIO(mockedStorageIO, 10, 1024);
+        write(packingStorageIO, "indices/0/__a", "aaa");
+        write(packingStorageIO, "indices/0/snap-1.dat", "snapshot");
+
+        packingStorageIO.copy("indices/0/__a", "indices/1/__a");
+        write(packingStorageIO, "indices/1/snap-1.dat", "snapshot");
+
+        verify(mockedStorageIO, never()).copy(anyString(), anyString());
+        assertArrayEquals(new String[] {"indices/0/pack-", "indices/1/pack-"}, packs().stream().sorted().toArray());
+        assertEquals("aaa", read(new PackingStorageIO(mockedStorageIO, 10, 1024), "indices/1/__a"));
+    }
+
+    @Test
+    void refusesToOverwriteDataBlobWhenAskedTo() throws IOException {
+        final var packingStorageIO = new PackingStorageIO(mockedStorageIO, 10, 1024);
+        write(packingStorageIO, "indices/0/__a", "aaa");
+
+        assertThrows(FileAlreadyExistsException.class, () ->
+                packingStorageIO.write("indices/0/__a", new ByteArrayInputStream(new byte[1]), 1L, true));
+
+        write(packingStorageIO, "indices/0/snap-1.dat", "snapshot");
+        final var otherNodeStorageIO = new PackingStorageIO(mockedStorageIO, 10, 1024);
+
+        assertThrows(FileAlreadyExistsException.class, () ->
+                otherNodeStorageIO.write("indices/0/__a", new ByteArrayInputStream(new byte[1]), 1L, true));
+        otherNodeStorageIO.write("indices/0/__b", new ByteArrayInputStream(new byte[1]), 1L, true);
+        assertTrue(otherNodeStorageIO.exists("indices/0/__b"));
+    }
+
+    @Test
+    void writesPacksOfAbandonedDirectories() throws IOException {
+        final var clock = new AtomicLong();
+        final var packingStorageIO = new PackingStorageIO(mockedStorageIO, 10, 1024, clock::get);
+        write(packingStorageIO, "indices/0/__a", "aaa");
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        write(packingStorageIO, "indices/1/__b", "bbb");
+
+        assertEquals(List.of("indices/0/pack-"), packs());
+        assertEquals(3L, packingStorageIO.stats().get("pack.pending_bytes"));
+    }
+
+    @Test
+    void maintenanceWritesPacksOfAbandonedDirectories() throws IOException {
+        final var clock = new AtomicLong();
+        final var packingStorageIO = new PackingStorageIO(mockedStorageIO, 10, 1024, clock::get);
+        write(packingStorageIO, "indices/0/__a", "aaa");
+
+        packingStorageIO.maintain();
+        assertEquals(List.of(), packs());
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(6));
+        packingStorageIO.maintain();
+
+        assertEquals(List.of("indices/0/pack-"), packs());
+        assertEquals(0L, packingStorageIO.stats().get("pack.pending_bytes"));
+        verify(mockedStorageIO, times(2)).maintain();
+    }
+
+    @Test
+    void readsPackedBlobsOncePackingIsDisabled() throws IOException {
+        final var packingStorageIO = new PackingStorageIO(mockedStorageIO, 10, 1024);
+        write(packingStorageIO, "indices/0/__a", "aaa");
+        write(packingStorageIO, "indices/0/snap-1.dat", "snapshot");
+
+        final var disabledStorageIO = new PackingStorageIO(mockedStorageIO, 0, 1024);
+        write(disabledStorageIO, "indices/0/__b", "b");
+
+        verify(mockedStorageIO).write(eq("indices/0/__b"), any(InputStream.class), eq(1L), eq(false));
+        assertEquals("aaa", read(disabledStorageIO, "indices/0/__a"));
+        assertEquals(Map.of("__a", 3L, "__b", 1L, "snap-1.dat", 8L), disabledStorageIO.listFiles("indices/0/", ""));
+    }
+
+    @Test
+    void streamsBlobsOfBigPacks() throws IOException {
+        final var blobSize = 5 * 1024 * 1024;
+        final var packingStorageIO = new PackingStorageIO(mockedStorageIO, blobSize, 4 * blobSize);
+        write(packingStorageIO, "indices/0/__a", "a".repeat(blobSize));
+        write(packingStorageIO, "indices/0/__b", "b".repeat(blobSize));
+        write(packingStorageIO, "indices/0/snap-1.dat", "snapshot");
+        final var packName = stored.keySet().stream().filter(n -> n.contains("pack-")).findFirst().orElseThrow();
+
+        final var otherNodeStorageIO = new PackingStorageIO(mockedStorageIO, blobSize, 4 * blobSize);
+        assertEquals("b".repeat(blobSize), read(otherNodeStorageIO, "indices/0/__b"));
+        assertEquals("b".repeat(blobSize), read(otherNodeStorageIO, "indices/0/__b"));
+        assertEquals("a".repeat(blobSize), read(otherNodeStorageIO, "indices/0/__a"));
+
+        // the index is read once, the pack is too big to be kept in memory
+        verify(mockedStorageIO, times(4)).read(packName);
+    }
+
+    @Test
+    void boundsMemoryOfBlobsWaitingToBePacked() throws IOException {
+        final var clock = new AtomicLong();
+        final var packingStorageIO = new PackingStorageIO(mockedStorageIO, 10, 10, clock::get);
+
+        for (int i = 0; i < 20; i++) {
+            clock.incrementAndGet();
+            write(packingStorageIO, "indices/" + i + "/__a", "aaaaaaaaa");
+        }
+
+        assertEquals(3, packs().size());
+        assertTrue(packs().containsAll(List.of("indices/0/pack-", "indices/1/pack-", "indices/2/pack-")));
+        assertEquals(17L * 9, packingStorageIO.stats().get("pack.pending_bytes"));
+    }
+
+    private Map<String, Long> listFiles(final String path, final String prefix) {
+        final var files = new HashMap<String, Long>();
+        stored.forEach((name, bytes) -> {
+            if (name.startsWith(path + prefix) && name.indexOf('/', path.length()) < 0) {
+                files.put(name.substring(path.length()), (long) bytes.length);
+            }
+        });
+        return files;
+    }
+
+    private List<String> packs() {
+        return stored.keySet().stream()
+                .filter(name -> name.contains(PackingStorageIO.PACK_PREFIX))
+                .map(name -> name.substring(0, name.lastIndexOf('/') + 1) + PackingStorageIO.PACK_PREFIX)
+                .collect(Collectors.toList());
+    }
+
+    private static void write(final StorageIO storageIO, final String blobName, final String content)
+            throws IOException {
+        final var bytes = content.getBytes(StandardCharsets.UTF_8);
+        storageIO.write(blobName, new ByteArrayInputStream(bytes), bytes.length, false);
+    }
+
+    private static String read(final StorageIO storageIO, final String blobName) throws IOException {
+        try (final var in = storageIO.read(blobName)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.throttling;
+
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AimdConcurrencyLimiterTest {
+
+    @Test
+    void rejectsInvalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new AimdConcurrencyLimiter(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new AimdConcurrencyLimiter(5, 4));
+    }
+
+    @Test
+    void halvesLimitOncePerWindowOfThrottledRequests() throws Exception {
+        final var limiter = new AimdConcurrencyLimiter(1, 8);
+        final var first = limiter.acquire();
+        final var second = limiter.acquire();
+
+        first.release(true);
+        assertEquals(4, limiter.limit());
+        second.release(true);
+        assertEquals(4, limiter.limit());
+
+        limiter.acquire().release(true);
+        assertEquals(2, limiter.limit());
+        limiter.acquire().release(true);
+        limiter.acquire().release(true);
+        assertEquals(1, limiter.limit());
+        assertEquals(5L, limiter.throttledRequests());
+    }
+
+    @Test
+    void growsLimitBackOnSuccessfulRequests() throws Exception {
+        final var limiter = new AimdConcurrencyLimiter(1, 3);
+        limiter.acquire().release(true);
+        assertEquals(1, limiter.limit());
+
+        limiter.acquire().release(false);
+        assertEquals(2, limiter.limit());
+
+        for (var i = 0; i < 3; i++) {
+            final var first = limiter.acquire();
+            final var second = limiter.acquire();
+            first.release(false);
+            second.release(false);
+        }
+        assertEquals(3, limiter.limit());
+
+        limiter.acquire().release(false);
+        assertEquals(3, limiter.limit());
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void doesNotGrowLimitWhenIdle() throws Exception {
+        final var limiter = new AimdConcurrencyLimiter(1, 8);
+        limiter.acquire().release(true);
+        assertEquals(4, limiter.limit());
+
+        for (var i = 0; i < 100; i++) {
+            limiter.acquire().release(false);
+        }
+        assertEquals(4, limiter.limit());
+    }
+
+    @Test
+    void blocksWhenLimitReached() throws Exception {
+        final var limiter = new AimdConcurrencyLimiter(1, 1);
+        final var permit = limiter.acquire();
+
+        final var waiting = new FutureTask<>(limiter::acquire);
+        final var waiter = new Thread(waiting);
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING) {
+            Thread.onSpinWait();
+        }
+        assertFalse(waiting.isDone());
+
+        permit.release(false);
+        waiting.get(10, TimeUnit.SECONDS).release(false);
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void ignoresRepeatedRelease() throws Exception {
+        final var limiter = new AimdConcurrencyLimiter(1, 4);
+        final var permit = limiter.acquire();
+        permit.release(true);
+        permit.release(true);
+
+        assertEquals(0, limiter.inFlight());
+        assertEquals(1L, limiter.throttledRequests());
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.throttling;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider.StorageIO;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ConcurrencyLimitingStorageIOTest {
+
+    static final RuntimeException THROTTLED = new IllegalStateException("slow down");
+
+    @Mock
+    StorageIO mockedStorageIO;
+
+    AimdConcurrencyLimiter limiter;
+
+    ConcurrencyLimitingStorageIO limitingStorageIO;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new AimdConcurrencyLimiter(1, 4);
+        limitingStorageIO = new ConcurrencyLimitingStorageIO(mockedStorageIO, limiter);
+    }
+
+    @Test
+    void shrinksLimitOnThrottlingErrorInCauseChain() throws Exception {
+        when(mockedStorageIO.isThrottlingError(any())).thenAnswer(i -> i.getArgument(0) == THROTTLED);
+        when(mockedStorageIO.listDirectories("some_path/"))
+                .thenThrow(new IOException("Couldn't list", THROTTLED));
+
+        assertThrows(IOException.class, () -> limitingStorageIO.listDirectories("some_path/"));
+
+        assertEquals(2, limiter.limit());
+        assertEquals(0, limiter.inFlight());
+        assertEquals(1L, limitingStorageIO.stats().get("concurrency_limit.throttled_requests"));
+    }
+
+    @Test
+    void keepsLimitOnOtherErrors() throws Exception {
+        when(mockedStorageIO.exists("some_blob")).thenThrow(new IOException("boom"));
+
+        assertThrows(IOException.class, () -> limitingStorageIO.exists("some_blob"));
+
+        assertEquals(4, limiter.limit());
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void releasesPermitOnSuccess() throws Exception {
+        when(mockedStorageIO.listFiles("some_path/", "")).thenReturn(Map.of("a", 1L));
+        limitingStorageIO.listFiles("some_path/", "");
+        limitingStorageIO.deleteFiles(List.of("some_path/a"), true);
+
+        assertEquals(0, limiter.inFlight());
+        assertEquals(4L, limitingStorageIO.stats().get("concurrency_limit.limit"));
+    }
+
+    @Test
+    void readHoldsPermitUntilStreamClosed() throws Exception {
+        when(mockedStorageIO.read("some_blob")).thenReturn(new ByteArrayInputStream("content".getBytes()));
+
+        try (final var in = limitingStorageIO.read("some_blob")) {
+            assertEquals(1, limiter.inFlight());
+            in.readAllBytes();
+        }
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void readReportsThrottlingErrorFromStream() throws Exception {
+        final var in = mock(InputStream.class);
+        when(in.read(any(), anyInt(), anyInt()))
+                .thenThrow(new IOException("Couldn't read", THROTTLED));
+        when(mockedStorageIO.isThrottlingError(any())).thenAnswer(i -> i.getArgument(0) == THROTTLED);
+        when(mockedStorageIO.read("some_blob")).thenReturn(in);
+
+        final var stream = limitingStorageIO.read("some_blob");
+        assertThrows(IOException.class, () -> stream.read(new byte[10]));
+        stream.close();
+
+        assertEquals(2, limiter.limit());
+        assertEquals(0, limiter.inFlight());
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.gcs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.opensearch.common.collect.Tuple;
+
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+import io.aiven.elasticsearch.repositories.jfr.BlobListPageEvent;
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
+
+import com.google.api.gax.paging.Page;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.Bucket;
+import com.google.cloud.storage.Storage;
+
+/**
+ * Lists a key range of the blobs with a prefix page by page, directories have {@code null} sizes.
+ * GCS lists blobs starting at an offset, the offset itself is skipped.
+ */
+class GcsRangeLister implements ParallelListing.RangeLister {
+
+    private final Supplier<Bucket> bucket;
+
+    private final RequestAccounting requestAccounting;
+
+    private final String prefix;
+
+    private final boolean currentDirectory;
+
+    GcsRangeLister(final Supplier<Bucket> bucket,
+                   final RequestAccounting requestAccounting,
+                   final String prefix,
+                   final boolean currentDirectory) {
+        this.bucket = bucket;
+        this.requestAccounting = requestAccounting;
+        this.prefix = prefix;
+        this.currentDirectory = currentDirectory;
+    }
+
+    @Override
+    public ParallelListing.Page list(final String startAfter, final String endAt, final boolean firstPageOnly) {
+        final var entries = new ArrayList<Tuple<String, Long>>();
+        var event = new BlobListPageEvent();
+        event.begin();
+        var page = bucket.get().list(options(startAfter));
+        while (Objects.nonNull(page)) {
+            requestAccounting.classA(1L);
+            final var listed = entries.size();
+            final var lastKey = addEntries(page, startAfter, endAt, entries);
+            if (event.shouldCommit()) {
+                event.backend = GcsRepositoryPlugin.REPOSITORY_TYPE;
+                event.path = prefix;
+                event.entries = entries.size() - listed;
+                event.commit();
+            }
+            if (!isInRange(lastKey, endAt)) {
+                break;
+            } else if (firstPageOnly && page.hasNextPage()) {
+                return new ParallelListing.Page(entries, lastKey);
+            }
+            event = new BlobListPageEvent();
+            event.begin();
+            page = page.getNextPage();
+        }
+        return new ParallelListing.Page(entries, null);
+    }
+
+    private Storage.BlobListOption[] options(final String startAfter) {
+        final var options = new ArrayList<Storage.BlobListOption>();
+        options.add(Storage.BlobListOption.prefix(prefix));
+        if (currentDirectory) {
+            options.add(Storage.BlobListOption.currentDirectory());
+        }
+        if (Objects.nonNull(startAfter)) {
+            options.add(Storage.BlobListOption.startOffset(startAfter));
+        }
+        return options.toArray(new Storage.BlobListOption[0]);
+    }
+
+    /**
+     * @return the last key of the page
+     */
+    private static String addEntries(final Page<Blob> page,
+                                     final String startAfter,
+                                     final String endAt,
+                                     final List<Tuple<String, Long>> entries) {
+        String lastKey = null;
+        for (final var blob : page.getValues()) {
+            lastKey = blob.getName();
+            if (!lastKey.equals(startAfter) && isInRange(lastKey, endAt)) {
+                entries.add(Tuple.tuple(lastKey, blob.isDirectory() ? null : blob.getSize()));
+            }
+        }
+        return lastKey;
+    }
+
+    private static boolean isInRange(final String key, final String endAt) {
+        return Objects.isNull(endAt) || Objects.isNull(key) || key.compareTo(endAt) <= 0;
+    }
+
+}
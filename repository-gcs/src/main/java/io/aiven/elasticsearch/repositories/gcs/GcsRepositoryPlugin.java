@@ -34,7 +34,7 @@ public class GcsRepositoryPlugin extends AbstractRepositoryPlugin<Storage, GcsCl
     }
 
     @Override
-    public List<Setting<?>> getSettings() {
+    protected List<Setting<?>> clientSettings() {
         return List.of(
                 GcsClientSettings.PRIVATE_KEY_FILE,
                 GcsClientSettings.PUBLIC_KEY_FILE,
@@ -22,6 +22,9 @@ import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -33,10 +36,14 @@ import org.opensearch.common.collect.Tuple;
 import org.opensearch.common.settings.Setting;
 import org.opensearch.common.settings.Settings;
 
+import io.aiven.elasticsearch.repositories.BlobVersionConflictException;
 import io.aiven.elasticsearch.repositories.CommonSettings;
 import io.aiven.elasticsearch.repositories.Permissions;
 import io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider;
 import io.aiven.elasticsearch.repositories.io.CryptoIOProvider;
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+import io.aiven.elasticsearch.repositories.jfr.BlobRetryEvent;
+import io.aiven.elasticsearch.repositories.metrics.OperationTrace;
 import io.aiven.elasticsearch.repositories.security.EncryptionKeyProvider;
 
 import com.google.cloud.BatchResult;
@@ -53,6 +60,7 @@ import org.slf4j.LoggerFactory;
 
 import static java.net.HttpURLConnection.HTTP_GONE;
 import static java.net.HttpURLConnection.HTTP_PRECON_FAILED;
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
 
 public class GcsRepositoryStorageIOProvider
         extends RepositoryStorageIOProvider<Storage, GcsClientSettings> {
@@ -65,19 +73,60 @@ public class GcsRepositoryStorageIOProvider
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GcsRepositoryStorageIOProvider.class);
 
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
     public GcsRepositoryStorageIOProvider(final GcsClientSettings storageSettings,
                                           final EncryptionKeyProvider encryptionKeyProvider) {
         super(new GcsClientProvider(), storageSettings, encryptionKeyProvider);
     }
 
+    @Override
+    protected Setting<String> bucketSetting() {
+        return BUCKET_NAME;
+    }
+
     @Override
     protected StorageIO createStorageIOFor(final Storage storage,
                                            final Settings repositorySettings,
-                                           final CryptoIOProvider cryptoIOProvider) {
+                                           final CryptoIOProvider cryptoIOProvider,
+                                           final ParallelListing parallelListing) {
         CommonSettings.RepositorySettings.checkSettings(
                 GcsRepositoryPlugin.REPOSITORY_TYPE, BUCKET_NAME, repositorySettings);
         final var bucketName = BUCKET_NAME.get(repositorySettings);
-        return new GcsStorageIO(storage, bucketName, cryptoIOProvider);
+        return new GcsStorageIO(storage, bucketName, cryptoIOProvider, parallelListing);
+    }
+
+    private static void recordRetry(final String blobName, final int attempt, final StorageException failure) {
+        OperationTrace.retried(failure);
+        final var event = new BlobRetryEvent();
+        if (event.shouldCommit()) {
+            event.backend = GcsRepositoryPlugin.REPOSITORY_TYPE;
+            event.path = blobName;
+            event.attempt = attempt;
+            event.failure = failure.toString();
+            event.commit();
+        }
+    }
+
+    private static String generation(final Blob blob, final String blobName) throws IOException {
+        if (Objects.isNull(blob)) {
+            throw new NoSuchFileException("Blob [" + blobName + "] doesn't exist");
+        }
+        return String.valueOf(blob.getGeneration());
+    }
+
+    /**
+     * Failure of a write refused by its precondition: the blob exists, or isn't at the expected version anymore.
+     */
+    private static IOException preconditionFailed(final String blobName,
+                                                  final String version,
+                                                  final StorageException e) {
+        final FileSystemException refused =
+                Objects.isNull(version)
+                        ? new FileAlreadyExistsException(blobName, null, e.getMessage())
+                        : new BlobVersionConflictException(blobName, version);
+        refused.initCause(e);
+        return refused;
     }
 
     private static class GcsStorageIO implements StorageIO {
@@ -88,16 +137,23 @@ public class GcsRepositoryStorageIOProvider
 
         private final CryptoIOProvider cryptoIOProvider;
 
-        public GcsStorageIO(final Storage storage, final String bucketName, final CryptoIOProvider cryptoIOProvider) {
+        private final ParallelListing parallelListing;
+
+        public GcsStorageIO(final Storage storage,
+                            final String bucketName,
+                            final CryptoIOProvider cryptoIOProvider,
+                            final ParallelListing parallelListing) {
             this.storage = storage;
             this.bucketName = bucketName;
             this.cryptoIOProvider = cryptoIOProvider;
+            this.parallelListing = parallelListing;
         }
 
         @Override
         public boolean exists(final String blobName) throws IOException {
             try {
                 final BlobId blobId = BlobId.of(bucketName, blobName);
+                cryptoIOProvider.requestAccounting().classB(1L);
                 final Blob blob = Permissions.doPrivileged(() -> storage.get(blobId));
                 return blob != null;
             } catch (final Exception e) {
@@ -107,14 +163,38 @@ public class GcsRepositoryStorageIOProvider
 
         @Override
         public InputStream read(final String blobName) throws IOException {
+            return read(BlobId.of(bucketName, blobName));
+        }
+
+        @Override
+        public String version(final String blobName) throws IOException {
+            try {
+                cryptoIOProvider.requestAccounting().classB(1L);
+                final var blobId = BlobId.of(bucketName, blobName);
+                return Permissions.doPrivileged(() -> generation(storage.get(blobId), blobName));
+            } catch (final StorageException e) {
+                throw new IOException("Failed to get version of blob [" + blobName + "]", e);
+            }
+        }
+
+        /**
+         * Reads the given generation, GCS reports a replaced generation as a missing blob.
+         */
+        @Override
+        public InputStream read(final String blobName, final String version) throws IOException {
+            return read(BlobId.of(bucketName, blobName, Long.parseLong(version)));
+        }
+
+        private InputStream read(final BlobId blobId) throws IOException {
             return Permissions.doPrivileged(() -> {
                 try {
                     final int maxAttempts = storage.getOptions().getRetrySettings().getMaxAttempts();
-                    final BlobId blobId = BlobId.of(bucketName, blobName);
-                    final var reader = new GcsRetryableReadChannel(storage.reader(blobId), blobId, maxAttempts);
+                    final var reader =
+                            new GcsRetryableReadChannel(
+                                    storage.reader(blobId), blobId, maxAttempts, cryptoIOProvider.requestAccounting());
                     return cryptoIOProvider.decryptAndDecompress(Channels.newInputStream(reader));
                 } catch (final StorageException e) {
-                    throw new IOException("Failed to read blob [" + blobName + "]");
+                    throw new IOException("Failed to read blob [" + blobId.getName() + "]", e);
                 }
             });
         }
@@ -124,6 +204,39 @@ public class GcsRepositoryStorageIOProvider
                           final InputStream inputStream,
                           final long blobSize,
                           final boolean failIfAlreadyExists) throws IOException {
+            final var writeOptions = failIfAlreadyExists
+                    ? new Storage.BlobWriteOption[]{Storage.BlobWriteOption.doesNotExist()}
+                    : new Storage.BlobWriteOption[0];
+            try {
+                upload(BlobInfo.newBuilder(bucketName, blobName).build(), inputStream, writeOptions);
+            } catch (final StorageException e) {
+                if (failIfAlreadyExists && e.getCode() == HTTP_PRECON_FAILED) {
+                    throw preconditionFailed(blobName, null, e);
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void replace(final String blobName,
+                            final InputStream inputStream,
+                            final long blobSize,
+                            final String version) throws IOException {
+            final var blobInfo = BlobInfo.newBuilder(BlobId.of(bucketName, blobName, Long.parseLong(version))).build();
+            try {
+                upload(blobInfo, inputStream, Storage.BlobWriteOption.generationMatch());
+            } catch (final StorageException e) {
+                if (e.getCode() == HTTP_PRECON_FAILED) {
+                    throw preconditionFailed(blobName, version, e);
+                }
+                throw e;
+            }
+        }
+
+        private void upload(final BlobInfo blobInfo,
+                            final InputStream inputStream,
+                            final Storage.BlobWriteOption... writeOptions) throws IOException {
+            final var blobName = blobInfo.getName();
 
             // We retry 410 GONE errors to cover the unlikely but possible scenario where a resumable 
             // upload session becomes broken and needs to be restarted from scratch. Given how unlikely 
@@ -132,10 +245,6 @@ public class GcsRepositoryStorageIOProvider
             inputStream.mark(Integer.MAX_VALUE);
 
             StorageException storageException = null;
-            final var blobInfo = BlobInfo.newBuilder(bucketName, blobName).build();
-            final var writeOptions = failIfAlreadyExists
-                    ? new Storage.BlobWriteOption[]{Storage.BlobWriteOption.doesNotExist()}
-                    : new Storage.BlobWriteOption[0];
 
             // GCS will retry individual chunk uploads however when the retries are exhausted, the 
             // whole upload won't be retried anymore. Adding at least max attempts to retry the whole
@@ -145,6 +254,8 @@ public class GcsRepositoryStorageIOProvider
                 try {
                     LOGGER.info("Resumable upload session for blob {}, attempt #{}/{}", blobInfo, retry, maxAttempts);
                     
+                    // the resumable upload session is accounted as a single request
+                    cryptoIOProvider.requestAccounting().classA(1L);
                     Permissions.doPrivileged(() -> {
                         final var writeChannel = storage.writer(blobInfo, writeOptions);
                         cryptoIOProvider.compressAndEncrypt(
@@ -176,14 +287,15 @@ public class GcsRepositoryStorageIOProvider
                     if (errorCode == HTTP_GONE) {
                         LOGGER.warn("Retrying broken resumable upload session for blob {}, errorCode {}", 
                             blobInfo, errorCode, ex);
+                        recordRetry(blobName, retry + 1, ex);
                         storageException = ExceptionsHelper.useOrSuppress(storageException, ex);
                         inputStream.reset();
                         continue;
-                    } else if (failIfAlreadyExists && errorCode == HTTP_PRECON_FAILED) {
-                        throw new FileAlreadyExistsException(blobInfo.getBlobId().getName(), null, ex.getMessage());
-                    } else if (ex.isRetryable() /* safe to retry the operation that caused this exception */) {
+                    } else if (errorCode != HTTP_PRECON_FAILED
+                            && ex.isRetryable() /* safe to retry the operation that caused this exception */) {
                         LOGGER.warn("Retrying broken resumable upload session for blob {}, retryable failure", 
                             blobInfo, ex);
+                        recordRetry(blobName, retry + 1, ex);
                         storageException = ExceptionsHelper.useOrSuppress(storageException, ex);
                         inputStream.reset();
                         continue;
@@ -201,25 +313,38 @@ public class GcsRepositoryStorageIOProvider
             throw storageException;
         }
 
+        @Override
+        public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+            try {
+                Permissions.doPrivileged(() -> {
+                    // the rewrite of big blobs takes several calls, each one copies a chunk
+                    cryptoIOProvider.requestAccounting().classA(1L);
+                    final var copyWriter =
+                            storage.copy(Storage.CopyRequest.of(
+                                    bucketName, sourceBlobName, BlobId.of(bucketName, targetBlobName)));
+                    while (!copyWriter.isDone()) {
+                        cryptoIOProvider.requestAccounting().classA(1L);
+                        copyWriter.copyChunk();
+                    }
+                });
+            } catch (final StorageException e) {
+                throw new IOException("Failed to copy blob [" + sourceBlobName + "] to [" + targetBlobName + "]", e);
+            }
+        }
+
         @Override
         public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
             try {
-                var page =
-                        Permissions.doPrivileged(() -> getBucket().list(Storage.BlobListOption.prefix(path)));
-                var deletedBlobs = 0;
+                final var blobNames = new ArrayList<String>();
                 var deletedBytes = 0L;
-                do {
-                    final var blobsToDeleteBuilder = ImmutableList.<String>builder();
-                    for (final var blob : page.getValues()) {
-                        deletedBytes += blob.getSize();
-                        blobsToDeleteBuilder.add(blob.getName());
-                    }
-                    final var blobsToDelete = blobsToDeleteBuilder.build();
-                    deleteFiles(blobsToDelete, true);
-                    deletedBlobs += blobsToDelete.size();
-                    page = page.getNextPage();
-                } while (Objects.nonNull(page));
-                return Tuple.tuple(deletedBlobs, deletedBytes);
+                for (final var blob : list(path, false)) {
+                    blobNames.add(blob.v1());
+                    deletedBytes += blob.v2();
+                }
+                if (!blobNames.isEmpty()) {
+                    deleteFiles(blobNames, true);
+                }
+                return Tuple.tuple(blobNames.size(), deletedBytes);
             } catch (final StorageException e) {
                 throw new IOException("Filed to delete blobs by [" + path + "]", e);
             }
@@ -231,6 +356,7 @@ public class GcsRepositoryStorageIOProvider
                 try {
                     final var storageBatch = storage.batch();
                     final var storageExceptionHandler = new AtomicReference<StorageException>();
+                    cryptoIOProvider.requestAccounting().deletes(blobNames.size());
                     blobNames.forEach(name ->
                             storageBatch
                                     .delete(BlobId.of(bucketName, name))
@@ -263,12 +389,9 @@ public class GcsRepositoryStorageIOProvider
         public List<String> listDirectories(final String path) throws IOException {
             try {
                 final var listBuilder = ImmutableList.<String>builder();
-                for (final var blob : bucketBlobsIterator(path)) {
-                    if (blob.isDirectory()) {
-                        listBuilder.add(
-                                blob.getName()
-                                        .substring(path.length(), blob.getName().length() - 1)
-                        );
+                for (final var entry : list(path, true)) {
+                    if (Objects.isNull(entry.v2())) {
+                        listBuilder.add(entry.v1().substring(path.length(), entry.v1().length() - 1));
                     }
                 }
                 return listBuilder.build();
@@ -282,10 +405,9 @@ public class GcsRepositoryStorageIOProvider
             try {
                 final var mapBuilder =
                         ImmutableMap.<String, Long>builder();
-                for (final var blob : bucketBlobsIterator(path + prefix)) {
-                    if (!blob.isDirectory()) {
-                        final var fileName = blob.getName().substring(path.length());
-                        mapBuilder.put(fileName, blob.getSize());
+                for (final var entry : list(path + prefix, true)) {
+                    if (Objects.nonNull(entry.v2())) {
+                        mapBuilder.put(entry.v1().substring(path.length()), entry.v2());
                     }
                 }
                 return mapBuilder.build();
@@ -295,16 +417,28 @@ public class GcsRepositoryStorageIOProvider
             }
         }
 
+        @Override
+        public boolean isThrottlingError(final Throwable error) {
+            if (error instanceof StorageException) {
+                final var code = ((StorageException) error).getCode();
+                return code == HTTP_TOO_MANY_REQUESTS || code == HTTP_UNAVAILABLE;
+            }
+            return false;
+        }
+
         private Bucket getBucket() {
+            cryptoIOProvider.requestAccounting().classB(1L);
             return storage.get(bucketName);
         }
 
-        private Iterable<Blob> bucketBlobsIterator(final String path) throws IOException {
-            return Permissions.doPrivileged(() -> getBucket()
-                    .list(
-                            Storage.BlobListOption.currentDirectory(),
-                            Storage.BlobListOption.prefix(path)
-                    ).iterateAll());
+        /**
+         * Lists blobs with the prefix, directories have {@code null} sizes.
+         */
+        private List<Tuple<String, Long>> list(final String prefix, final boolean currentDirectory) throws IOException {
+            final var lister =
+                    new GcsRangeLister(this::getBucket, cryptoIOProvider.requestAccounting(), prefix, currentDirectory);
+            return parallelListing.list(prefix, (startAfter, endAt, firstPageOnly) ->
+                    Permissions.doPrivileged(() -> lister.list(startAfter, endAt, firstPageOnly)));
         }
     }
 
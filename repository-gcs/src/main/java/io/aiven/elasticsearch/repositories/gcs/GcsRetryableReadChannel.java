@@ -25,6 +25,10 @@ import java.util.List;
 
 import org.opensearch.core.internal.io.IOUtils;
 
+import io.aiven.elasticsearch.repositories.jfr.BlobRetryEvent;
+import io.aiven.elasticsearch.repositories.metrics.OperationTrace;
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
+
 import com.google.cloud.ReadChannel;
 import com.google.cloud.RestorableState;
 import com.google.cloud.RetryHelper;
@@ -37,6 +41,10 @@ import org.slf4j.LoggerFactory;
  * Wrapper around reads from GCS that will retry blob downloads that fail part-way through, resuming from where the 
  * failure occurred. It uses the fact that ReadChannel supports capture and restore functionality and could be recreated
  * from the last successful checkpoint.
+ *
+ * <p>The restored channel reads the same blob id, so a read of a given generation resumes on that generation only,
+ * and the ETag of the chunks read so far, so any other read fails instead of mixing bytes of a blob replaced
+ * in the meantime.
  */
 public class GcsRetryableReadChannel implements ReadableByteChannel {
     private static final Logger LOGGER = LoggerFactory.getLogger(GcsRetryableReadChannel.class);
@@ -46,12 +54,22 @@ public class GcsRetryableReadChannel implements ReadableByteChannel {
     private final List<StorageException> failures = new ArrayList<>(MAX_SUPPRESSED_EXCEPTIONS);
     private final BlobId blobId;
     private final int maxAttempts;
+    private final RequestAccounting requestAccounting;
     private int attempt = 1;
     
     public GcsRetryableReadChannel(final ReadChannel delegate, final BlobId blobId, final int maxAttempts) {
+        this(delegate, blobId, maxAttempts, RequestAccounting.untracked());
+    }
+
+    public GcsRetryableReadChannel(final ReadChannel delegate,
+                                   final BlobId blobId,
+                                   final int maxAttempts,
+                                   final RequestAccounting requestAccounting) {
         this.delegate = delegate;
         this.blobId = blobId;
         this.maxAttempts = maxAttempts;
+        this.requestAccounting = requestAccounting;
+        requestAccounting.classB(1L);
     }
     
     @Override
@@ -106,9 +124,20 @@ public class GcsRetryableReadChannel implements ReadableByteChannel {
         if (failures.size() < MAX_SUPPRESSED_EXCEPTIONS) {
             failures.add(ex);
         }
+        OperationTrace.retried(ex);
         
         IOUtils.closeWhileHandlingException(delegate);
+        final var event = new BlobRetryEvent();
+        event.begin();
+        requestAccounting.classB(1L);
         delegate = state.restore();
+        if (event.shouldCommit()) {
+            event.backend = GcsRepositoryPlugin.REPOSITORY_TYPE;
+            event.path = blobId.getName();
+            event.attempt = attempt;
+            event.failure = ex.toString();
+            event.commit();
+        }
     }
 
     private <T extends Throwable> T withSuppressed(final T ex) {
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.s3;
+
+import java.util.ArrayList;
+
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.PartETag;
+
+/**
+ * Copies a blob inside the bucket, blobs bigger than a single CopyObject allows are copied part by part.
+ */
+class S3BlobCopy {
+
+    static final long MAX_COPY_OBJECT_SIZE = 5L * 1024 * 1024 * 1024;
+
+    static final int MAX_PARTS = 10_000;
+
+    private final AmazonS3 client;
+
+    private final String bucketName;
+
+    private final int partSize;
+
+    private final RequestAccounting requestAccounting;
+
+    S3BlobCopy(final AmazonS3 client,
+               final String bucketName,
+               final int partSize,
+               final RequestAccounting requestAccounting) {
+        this.client = client;
+        this.bucketName = bucketName;
+        this.partSize = partSize;
+        this.requestAccounting = requestAccounting;
+    }
+
+    void copy(final String sourceKey, final String targetKey) {
+        requestAccounting.classB(1L);
+        final var size = client.getObjectMetadata(bucketName, sourceKey).getContentLength();
+        if (size <= MAX_COPY_OBJECT_SIZE) {
+            requestAccounting.classA(1L);
+            client.copyObject(bucketName, sourceKey, bucketName, targetKey);
+        } else {
+            copyParts(sourceKey, targetKey, size);
+        }
+    }
+
+    private void copyParts(final String sourceKey, final String targetKey, final long size) {
+        requestAccounting.classA(1L);
+        final var uploadId =
+                client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, targetKey)).getUploadId();
+        try {
+            final var copyPartSize = Math.max(partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+            final var partETags = new ArrayList<PartETag>();
+            for (var firstByte = 0L; firstByte < size; firstByte += copyPartSize) {
+                final var copyPartRequest =
+                        new CopyPartRequest()
+                                .withSourceBucketName(bucketName)
+                                .withSourceKey(sourceKey)
+                                .withDestinationBucketName(bucketName)
+                                .withDestinationKey(targetKey)
+                                .withUploadId(uploadId)
+                                .withPartNumber(partETags.size() + 1)
+                                .withFirstByte(firstByte)
+                                .withLastByte(Math.min(firstByte + copyPartSize, size) - 1);
+                requestAccounting.classA(1L);
+                partETags.add(client.copyPart(copyPartRequest).getPartETag());
+            }
+            requestAccounting.classA(1L);
+            client.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(bucketName, targetKey, uploadId, partETags));
+        } catch (final AmazonClientException e) {
+            requestAccounting.deletes(1L);
+            client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, targetKey, uploadId));
+            throw e;
+        }
+    }
+
+}
@@ -16,10 +16,14 @@
 
 package io.aiven.elasticsearch.repositories.s3;
 
+import java.util.List;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.opensearch.common.settings.Setting;
 import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
 
 import io.aiven.elasticsearch.repositories.ClientProvider;
 
@@ -28,6 +32,7 @@ import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.util.RuntimeHttpUtils;
 
 import static io.aiven.elasticsearch.repositories.CommonSettings.RepositorySettings.MAX_RETRIES;
 
@@ -42,6 +47,29 @@ class S3ClientProvider extends ClientProvider<AmazonS3Client, S3ClientSettings>
                     Setting.Property.Dynamic
             );
 
+    /**
+     * Gateways of an S3-compatible cluster the requests are balanced across, overrides the endpoint.
+     */
+    static final Setting<List<String>> ENDPOINTS =
+            Setting.listSetting(
+                    "endpoints",
+                    List.of(),
+                    Function.identity(),
+                    Setting.Property.NodeScope,
+                    Setting.Property.Dynamic
+            );
+
+    /**
+     * How long a gateway failing several requests in a row gets no requests.
+     */
+    static final Setting<TimeValue> ENDPOINT_EJECTION_TIME =
+            Setting.timeSetting(
+                    "endpoint_ejection_time",
+                    TimeValue.timeValueSeconds(30L),
+                    Setting.Property.NodeScope,
+                    Setting.Property.Dynamic
+            );
+
     @Override
     protected AmazonS3Client buildClient(final S3ClientSettings clientSettings,
                                    final Settings repositorySettings) {
@@ -50,9 +78,11 @@ class S3ClientProvider extends ClientProvider<AmazonS3Client, S3ClientSettings>
         final var maxRetries = MAX_RETRIES.exists(repositorySettings)
                 ? MAX_RETRIES.get(repositorySettings)
                 : clientSettings.maxRetries();
-        final var endpoint = ENDPOINT_NAME.exists(repositorySettings)
-                ? ENDPOINT_NAME.get(repositorySettings)
-                : clientSettings.endpoint();
+        final var endpoints = ENDPOINTS.get(repositorySettings).isEmpty()
+                ? List.of(ENDPOINT_NAME.exists(repositorySettings)
+                        ? ENDPOINT_NAME.get(repositorySettings)
+                        : clientSettings.endpoint())
+                : ENDPOINTS.get(repositorySettings);
 
         final var clientConfiguration = new ClientConfiguration();
         clientConfiguration.setResponseMetadataCacheSize(0);
@@ -64,9 +94,19 @@ class S3ClientProvider extends ClientProvider<AmazonS3Client, S3ClientSettings>
         s3ClientBuilder
                 .withCredentials(new AWSStaticCredentialsProvider(clientSettings.awsCredentials()))
                 .withClientConfiguration(clientConfiguration);
+        if (endpoints.size() > 1) {
+            // the connection pool is shared by all gateways
+            clientConfiguration.setMaxConnections(ClientConfiguration.DEFAULT_MAX_CONNECTIONS * endpoints.size());
+            s3ClientBuilder.withRequestHandlers(
+                    new S3EndpointBalancer(
+                            endpoints.stream()
+                                    .map(endpoint -> RuntimeHttpUtils.toUri(endpoint, clientConfiguration))
+                                    .collect(Collectors.toList()),
+                            ENDPOINT_EJECTION_TIME.get(repositorySettings)));
+        }
         s3ClientBuilder.withEndpointConfiguration(
                 new AwsClientBuilder.EndpointConfiguration(
-                        endpoint, null));
+                        endpoints.get(0), null));
         return (AmazonS3Client) s3ClientBuilder.build();
     }
 
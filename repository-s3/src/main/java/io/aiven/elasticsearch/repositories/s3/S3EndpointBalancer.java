@@ -0,0 +1,217 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.s3;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import org.opensearch.common.unit.TimeValue;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Request;
+import com.amazonaws.SdkBaseException;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.RetryUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads requests of a single client over several gateways of an S3-compatible cluster. Every attempt,
+ * retries included, is sent to the cheaper of two randomly picked gateways, the cost being the number
+ * of outstanding requests weighted by the moving average of the gateway latency, so slow gateways get less traffic.
+ * Gateways failing several attempts in a row with server or connection errors are ejected for a while,
+ * all gateways are used again if every one of them has been ejected. Throttled and aborted attempts
+ * count neither way, ejecting gateways because the cluster slows down would only load the others more.
+ */
+class S3EndpointBalancer extends RequestHandler2 {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(S3EndpointBalancer.class);
+
+    static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+    private static final double LATENCY_DECAY = 0.2;
+
+    private static final HandlerContextKey<Gateway> GATEWAY = new HandlerContextKey<>("aiven.s3.gateway");
+
+    private static final HandlerContextKey<Long> ATTEMPT_STARTED_AT =
+            new HandlerContextKey<>("aiven.s3.attemptStartedAt");
+
+    private final URI primaryEndpoint;
+
+    private final List<Gateway> gateways;
+
+    private final long ejectionTimeNanos;
+
+    private final LongSupplier clock;
+
+    S3EndpointBalancer(final List<URI> endpoints, final TimeValue ejectionTime) {
+        this(endpoints, ejectionTime, System::nanoTime);
+    }
+
+    S3EndpointBalancer(final List<URI> endpoints, final TimeValue ejectionTime, final LongSupplier clock) {
+        this.primaryEndpoint = endpoints.get(0);
+        this.gateways = endpoints.stream().map(Gateway::new).collect(Collectors.toUnmodifiableList());
+        this.ejectionTimeNanos = ejectionTime.nanos();
+        this.clock = clock;
+    }
+
+    @Override
+    public void beforeAttempt(final HandlerBeforeAttemptContext context) {
+        final var request = context.getRequest();
+        final var previous = request.getHandlerContext(GATEWAY);
+        final var gateway = choose(clock.getAsLong());
+        gateway.outstanding.incrementAndGet();
+        request.addHandlerContext(GATEWAY, gateway);
+        request.addHandlerContext(ATTEMPT_STARTED_AT, clock.getAsLong());
+        request.setEndpoint(rewrite(
+                request.getEndpoint(),
+                Objects.isNull(previous) ? primaryEndpoint : previous.endpoint,
+                gateway.endpoint));
+    }
+
+    @Override
+    public void afterAttempt(final HandlerAfterAttemptContext context) {
+        final Request<?> request = context.getRequest();
+        final var gateway = request.getHandlerContext(GATEWAY);
+        if (Objects.isNull(gateway)) {
+            return;
+        }
+        gateway.outstanding.decrementAndGet();
+        final var exception = context.getException();
+        if (isThrottlingOrAbort(exception)) {
+            // the cluster pushing back or the client giving up says nothing about this gateway
+            return;
+        }
+        final var now = clock.getAsLong();
+        if (isGatewayFailure(exception)) {
+            if (gateway.failed(now)) {
+                LOGGER.warn("Eject S3 endpoint {} for {} after {} failed requests",
+                        gateway.endpoint, TimeValue.timeValueNanos(ejectionTimeNanos), MAX_CONSECUTIVE_FAILURES);
+            }
+        } else {
+            gateway.succeeded(now - request.getHandlerContext(ATTEMPT_STARTED_AT));
+        }
+    }
+
+    private Gateway choose(final long now) {
+        var available = gateways.stream().filter(g -> !g.isEjected(now)).collect(Collectors.toList());
+        if (available.isEmpty()) {
+            available = gateways;
+        }
+        if (available.size() == 1) {
+            return available.get(0);
+        }
+        final var random = ThreadLocalRandom.current();
+        final var first = random.nextInt(available.size());
+        final var second = (first + 1 + random.nextInt(available.size() - 1)) % available.size();
+        return cheaper(available.get(first), available.get(second), now);
+    }
+
+    private Gateway cheaper(final Gateway first, final Gateway second, final long now) {
+        if (first.isEjected(now) != second.isEjected(now)) {
+            return first.isEjected(now) ? second : first;
+        }
+        return first.cost() <= second.cost() ? first : second;
+    }
+
+    private static boolean isThrottlingOrAbort(final Exception e) {
+        if (e instanceof SdkBaseException && RetryUtils.isThrottlingException((SdkBaseException) e)) {
+            return true;
+        }
+        return e instanceof AbortedException || Objects.nonNull(e) && e.getCause() instanceof InterruptedException;
+    }
+
+    private static boolean isGatewayFailure(final Exception e) {
+        if (Objects.isNull(e)) {
+            return false;
+        } else if (e instanceof AmazonServiceException) {
+            return ((AmazonServiceException) e).getStatusCode() >= 500;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the request to another gateway, keeping the bucket of virtual-hosted-style requests in the host name.
+     */
+    static URI rewrite(final URI requestEndpoint, final URI from, final URI to) {
+        final var host = requestEndpoint.getHost();
+        final var bucketPrefix = host.endsWith("." + from.getHost())
+                ? host.substring(0, host.length() - from.getHost().length())
+                : "";
+        return URI.create(
+                to.getScheme() + "://" + bucketPrefix + to.getRawAuthority()
+                        + Objects.toString(requestEndpoint.getRawPath(), ""));
+    }
+
+    private final class Gateway {
+
+        private final URI endpoint;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private volatile double latencyNanos;
+
+        private int consecutiveFailures;
+
+        private volatile boolean ejected;
+
+        private volatile long ejectedAt;
+
+        private Gateway(final URI endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        private double cost() {
+            return (outstanding.get() + 1) * Math.max(latencyNanos, 1.0);
+        }
+
+        private boolean isEjected(final long now) {
+            return ejected && now - ejectedAt < ejectionTimeNanos;
+        }
+
+        private synchronized void succeeded(final long latency) {
+            consecutiveFailures = 0;
+            ejected = false;
+            latencyNanos = latencyNanos == 0.0 ? latency : latencyNanos + LATENCY_DECAY * (latency - latencyNanos);
+        }
+
+        /**
+         * @return whether the gateway has been ejected
+         */
+        private synchronized boolean failed(final long now) {
+            consecutiveFailures++;
+            if (consecutiveFailures < MAX_CONSECUTIVE_FAILURES || gateways.size() == 1) {
+                return false;
+            }
+            consecutiveFailures = 0;
+            ejectedAt = now;
+            ejected = true;
+            return true;
+        }
+
+    }
+
+}
@@ -21,18 +21,26 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
+import io.aiven.elasticsearch.repositories.BlobVersionConflictException;
 import io.aiven.elasticsearch.repositories.Permissions;
+import io.aiven.elasticsearch.repositories.jfr.BlobPartUploadEvent;
+import io.aiven.elasticsearch.repositories.metrics.OperationTrace;
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.UploadPartRequest;
+import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,14 +60,66 @@ class S3OutputStream extends OutputStream {
 
     private final int partSize;
 
+    private final RequestAccounting requestAccounting;
+
+    private final boolean failIfAlreadyExists;
+
+    private final String expectedETag;
+
     public S3OutputStream(final String bucketName,
                           final String key,
                           final int partSize,
                           final AmazonS3 client) {
+        this(bucketName, key, partSize, client, RequestAccounting.untracked());
+    }
+
+    public S3OutputStream(final String bucketName,
+                          final String key,
+                          final int partSize,
+                          final AmazonS3 client,
+                          final RequestAccounting requestAccounting) {
+        this(bucketName, key, partSize, client, requestAccounting, false);
+    }
+
+    /**
+     * @param failIfAlreadyExists whether to complete the upload only if the key doesn't exist yet,
+     *                            which S3 checks atomically
+     */
+    public S3OutputStream(final String bucketName,
+                          final String key,
+                          final int partSize,
+                          final AmazonS3 client,
+                          final RequestAccounting requestAccounting,
+                          final boolean failIfAlreadyExists) {
+        this(bucketName, key, partSize, client, requestAccounting, failIfAlreadyExists, null);
+    }
+
+    /**
+     * Replaces the object only if it still has the given ETag, which S3 checks atomically.
+     */
+    public S3OutputStream(final String bucketName,
+                          final String key,
+                          final int partSize,
+                          final AmazonS3 client,
+                          final RequestAccounting requestAccounting,
+                          final String expectedETag) {
+        this(bucketName, key, partSize, client, requestAccounting, false, expectedETag);
+    }
+
+    private S3OutputStream(final String bucketName,
+                           final String key,
+                           final int partSize,
+                           final AmazonS3 client,
+                           final RequestAccounting requestAccounting,
+                           final boolean failIfAlreadyExists,
+                           final String expectedETag) {
         this.bucketName = bucketName;
         this.key = key;
         this.client = client;
         this.partSize = partSize;
+        this.requestAccounting = requestAccounting;
+        this.failIfAlreadyExists = failIfAlreadyExists;
+        this.expectedETag = expectedETag;
         this.byteBuffer = ByteBuffer.allocate(partSize);
     }
 
@@ -91,6 +151,7 @@ class S3OutputStream extends OutputStream {
     private MultipartUpload newMultipartUpload() throws IOException {
         logger.debug("Create new multipart upload request");
         final var initialRequest = new InitiateMultipartUploadRequest(bucketName, key);
+        requestAccounting.classA(1L);
         final var initiateResult =
                 Permissions.doPrivileged(() -> client.initiateMultipartUpload(initialRequest));
         logger.debug("Upload ID: {}", initiateResult.getUploadId());
@@ -103,10 +164,42 @@ class S3OutputStream extends OutputStream {
             flushBuffer(byteBuffer.arrayOffset(), byteBuffer.position(), byteBuffer.position());
         }
         if (Objects.nonNull(multipartUpload)) {
-            Permissions.doPrivileged(() -> multipartUpload.complete());
+            try {
+                Permissions.doPrivileged(() -> multipartUpload.complete());
+            } catch (final AmazonS3Exception e) {
+                final FileSystemException refused;
+                if (isAlreadyExists(e)) {
+                    refused = new FileAlreadyExistsException(key, null, "blob already exists");
+                } else if (isReplaced(e)) {
+                    refused = new BlobVersionConflictException(key, expectedETag);
+                } else {
+                    throw e;
+                }
+                Permissions.doPrivileged(() -> multipartUpload.abort());
+                refused.initCause(e);
+                throw refused;
+            }
         }
     }
 
+    /**
+     * Whether the upload has been refused as the key exists, or another upload of it is being completed.
+     */
+    private boolean isAlreadyExists(final AmazonS3Exception e) {
+        return failIfAlreadyExists
+                && (e.getStatusCode() == HttpStatus.SC_PRECONDITION_FAILED
+                || e.getStatusCode() == HttpStatus.SC_CONFLICT);
+    }
+
+    /**
+     * Whether the upload has been refused as the object has another ETag, or doesn't exist anymore.
+     */
+    private boolean isReplaced(final AmazonS3Exception e) {
+        return Objects.nonNull(expectedETag)
+                && (e.getStatusCode() == HttpStatus.SC_PRECONDITION_FAILED
+                || e.getStatusCode() == HttpStatus.SC_NOT_FOUND);
+    }
+
     private void flushBuffer(final int offset, final int length, final int partSize) throws IOException {
         try {
             Permissions.doPrivileged(() ->
@@ -146,15 +239,35 @@ class S3OutputStream extends OutputStream {
                             .withPartSize(partSize)
                             .withPartNumber(partNumber)
                             .withInputStream(in);
+            OperationTrace.partStarted(partNumber);
+            final var event = new BlobPartUploadEvent();
+            event.begin();
+            requestAccounting.classA(1L);
             final var uploadResult = client.uploadPart(uploadPartRequest);
             partETags.add(uploadResult.getPartETag());
+            if (event.shouldCommit()) {
+                event.backend = S3RepositoryPlugin.REPOSITORY_TYPE;
+                event.path = key;
+                event.partNumber = partNumber;
+                event.bytes = partSize;
+                event.commit();
+            }
         }
 
         public void complete() {
-            client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+            final var request = new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags);
+            if (failIfAlreadyExists) {
+                request.putCustomRequestHeader("If-None-Match", "*");
+            }
+            if (Objects.nonNull(expectedETag)) {
+                request.putCustomRequestHeader("If-Match", expectedETag);
+            }
+            requestAccounting.classA(1L);
+            client.completeMultipartUpload(request);
         }
 
         public void abort() {
+            requestAccounting.deletes(1L);
             client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
         }
 
@@ -19,12 +19,18 @@ package io.aiven.elasticsearch.repositories.s3;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import org.opensearch.core.internal.io.IOUtils;
 
+import io.aiven.elasticsearch.repositories.BlobVersionConflictException;
 import io.aiven.elasticsearch.repositories.Permissions;
+import io.aiven.elasticsearch.repositories.jfr.BlobRetryEvent;
+import io.aiven.elasticsearch.repositories.metrics.OperationTrace;
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
@@ -47,6 +53,14 @@ public class S3RepeatableInputStream extends InputStream {
 
     private final int maxRetries;
 
+    private final RequestAccounting requestAccounting;
+
+    /**
+     * ETag of the version being read, streams are reopened on this version only, so a replaced object
+     * fails the read instead of mixing bytes of both versions.
+     */
+    private String etag;
+
     private S3ObjectInputStream s3InputStream;
 
     private long offset = 0;
@@ -63,10 +77,33 @@ public class S3RepeatableInputStream extends InputStream {
                                    final String bucketName,
                                    final String blobName,
                                    final int maxRetries) throws IOException {
+        this(client, bucketName, blobName, maxRetries, RequestAccounting.untracked());
+    }
+
+    public S3RepeatableInputStream(final AmazonS3 client,
+                                   final String bucketName,
+                                   final String blobName,
+                                   final int maxRetries,
+                                   final RequestAccounting requestAccounting) throws IOException {
+        this(client, bucketName, blobName, maxRetries, requestAccounting, null);
+    }
+
+    /**
+     * @param etag ETag of the version of the object to read, {@code null} for the current version,
+     *             whose ETag is then taken from the first response
+     */
+    public S3RepeatableInputStream(final AmazonS3 client,
+                                   final String bucketName,
+                                   final String blobName,
+                                   final int maxRetries,
+                                   final RequestAccounting requestAccounting,
+                                   final String etag) throws IOException {
         this.client = client;
         this.bucketName = bucketName;
         this.blobName = blobName;
         this.maxRetries = maxRetries;
+        this.requestAccounting = requestAccounting;
+        this.etag = etag;
         this.s3InputStream = openStream();
     }
 
@@ -76,12 +113,25 @@ public class S3RepeatableInputStream extends InputStream {
             if (offset > 0) {
                 getObjectRequest.setRange(offset);
             }
+            if (Objects.nonNull(etag)) {
+                getObjectRequest.withMatchingETagConstraint(etag);
+            }
+            requestAccounting.classB(1L);
             final var s3Object = Permissions.doPrivileged(() -> client.getObject(getObjectRequest));
+            // the client returns no object when the constraint isn't met
+            if (Objects.isNull(s3Object)) {
+                throw withSuppressed(new BlobVersionConflictException(blobName, etag));
+            }
+            if (Objects.isNull(etag)) {
+                etag = s3Object.getObjectMetadata().getETag();
+            }
             return s3Object.getObjectContent();
         } catch (final AmazonClientException e) {
             if (e instanceof AmazonS3Exception) {
                 if (((AmazonS3Exception) e).getStatusCode() == HttpStatus.SC_NOT_FOUND) {
-                    throw withSuppressed(new IOException("Couldn't find blob " + blobName));
+                    final var notFound = new NoSuchFileException("Couldn't find blob " + blobName);
+                    notFound.initCause(e);
+                    throw withSuppressed(notFound);
                 }
             }
             throw e;
@@ -94,7 +144,8 @@ public class S3RepeatableInputStream extends InputStream {
         while (true) {
             try {
                 final var result = s3InputStream.read();
-                incrementOffset(result);
+                // the result is the byte read, not a count
+                incrementOffset(result < 0 ? result : 1);
                 return result;
             } catch (final IOException e) {
                 reopenStreamOnFailure(e);
@@ -135,10 +186,20 @@ public class S3RepeatableInputStream extends InputStream {
         if (failures.size() < MAX_SUPPRESSED_EXCEPTIONS) {
             failures.add(e);
         }
+        OperationTrace.retried(e);
         attempt += 1;
         IOUtils.closeWhileHandlingException(s3InputStream);
         LOGGER.debug("Failed reading {}. Reopen stream attempt #{}", blobName, attempt);
+        final var event = new BlobRetryEvent();
+        event.begin();
         s3InputStream = openStream();
+        if (event.shouldCommit()) {
+            event.backend = S3RepositoryPlugin.REPOSITORY_TYPE;
+            event.path = blobName;
+            event.attempt = attempt;
+            event.failure = e.toString();
+            event.commit();
+        }
     }
 
     @Override
@@ -37,7 +37,7 @@ public class S3RepositoryPlugin extends AbstractRepositoryPlugin<AmazonS3Client,
     }
 
     @Override
-    public List<Setting<?>> getSettings() {
+    protected List<Setting<?>> clientSettings() {
         try {
             //due to the load of constants for AWS SDK use check permissions here
             return Permissions.doPrivileged(() ->
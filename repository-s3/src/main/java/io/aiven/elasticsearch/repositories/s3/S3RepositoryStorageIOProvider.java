@@ -18,9 +18,11 @@ package io.aiven.elasticsearch.repositories.s3;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -35,15 +37,20 @@ import io.aiven.elasticsearch.repositories.CommonSettings;
 import io.aiven.elasticsearch.repositories.Permissions;
 import io.aiven.elasticsearch.repositories.RepositoryStorageIOProvider;
 import io.aiven.elasticsearch.repositories.io.CryptoIOProvider;
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
+import io.aiven.elasticsearch.repositories.jfr.BlobListPageEvent;
 import io.aiven.elasticsearch.repositories.security.EncryptionKeyProvider;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.SdkBaseException;
+import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.ListObjectsV2Request;
 import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.MultiObjectDeleteException;
-import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,21 +71,44 @@ public class S3RepositoryStorageIOProvider extends RepositoryStorageIOProvider<A
                     Setting.Property.NodeScope,
                     Setting.Property.Dynamic);
 
+    private static final String DELIMITER = "/";
+
     public S3RepositoryStorageIOProvider(final S3ClientSettings clientSettings,
                                          final EncryptionKeyProvider encryptionKeyProvider) {
         super(new S3ClientProvider(), clientSettings, encryptionKeyProvider);
     }
 
+    @Override
+    protected Setting<String> bucketSetting() {
+        return BUCKET_NAME;
+    }
+
     @Override
     protected StorageIO createStorageIOFor(final AmazonS3Client client,
                                            final Settings repositorySettings,
-                                           final CryptoIOProvider cryptoIOProvider) {
+                                           final CryptoIOProvider cryptoIOProvider,
+                                           final ParallelListing parallelListing) {
         CommonSettings.RepositorySettings.checkSettings(
                 S3RepositoryPlugin.REPOSITORY_TYPE, BUCKET_NAME, repositorySettings);
         final var bucketName = BUCKET_NAME.get(repositorySettings);
         final var multipartUploadPartSize =
                 Math.toIntExact(MULTIPART_UPLOAD_PART_SIZE.get(repositorySettings).getBytes());
-        return new S3StorageIO(client, bucketName, multipartUploadPartSize, cryptoIOProvider);
+        return new S3StorageIO(client, bucketName, multipartUploadPartSize, cryptoIOProvider, parallelListing);
+    }
+
+    private static String eTag(final AmazonS3Client client,
+                               final String bucketName,
+                               final String blobName) throws IOException {
+        try {
+            return client.getObjectMetadata(bucketName, blobName).getETag();
+        } catch (final AmazonS3Exception e) {
+            if (e.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                final var notFound = new NoSuchFileException("Couldn't find blob " + blobName);
+                notFound.initCause(e);
+                throw notFound;
+            }
+            throw new IOException("Couldn't get version of blob " + blobName, e);
+        }
     }
 
     protected static class S3StorageIO implements StorageIO {
@@ -93,19 +123,24 @@ public class S3RepositoryStorageIOProvider extends RepositoryStorageIOProvider<A
 
         private final CryptoIOProvider cryptoIOProvider;
 
+        private final ParallelListing parallelListing;
+
         private S3StorageIO(final AmazonS3Client client,
                             final String bucketName,
                             final int partSize,
-                            final CryptoIOProvider cryptoIOProvider) {
+                            final CryptoIOProvider cryptoIOProvider,
+                            final ParallelListing parallelListing) {
             this.client = client;
             this.bucketName = bucketName;
             this.partSize = partSize;
             this.cryptoIOProvider = cryptoIOProvider;
+            this.parallelListing = parallelListing;
         }
 
         @Override
         public boolean exists(final String blobName) throws IOException {
             try {
+                cryptoIOProvider.requestAccounting().classB(1L);
                 return Permissions.doPrivileged(() -> client.doesObjectExist(bucketName, blobName));
             } catch (final Exception e) {
                 throw new BlobStoreException("Failed to check if blob [" + blobName + "] exists", e);
@@ -117,7 +152,8 @@ public class S3RepositoryStorageIOProvider extends RepositoryStorageIOProvider<A
             final var maxRetries = client.getClientConfiguration().getMaxErrorRetry();
             return Permissions.doPrivileged(() ->
                     cryptoIOProvider.decryptAndDecompress(
-                            new S3RepeatableInputStream(client, bucketName, blobName, maxRetries)));
+                            new S3RepeatableInputStream(client, bucketName, blobName, maxRetries,
+                                    cryptoIOProvider.requestAccounting())));
         }
 
         @Override
@@ -129,7 +165,8 @@ public class S3RepositoryStorageIOProvider extends RepositoryStorageIOProvider<A
                 Permissions.doPrivileged(() ->
                         cryptoIOProvider.compressAndEncrypt(
                                 inputStream,
-                                new S3OutputStream(bucketName, blobName, partSize, client)
+                                new S3OutputStream(bucketName, blobName, partSize, client,
+                                        cryptoIOProvider.requestAccounting(), failIfAlreadyExists)
                         )
                 );
             } catch (final AmazonClientException e) {
@@ -137,6 +174,49 @@ public class S3RepositoryStorageIOProvider extends RepositoryStorageIOProvider<A
             }
         }
 
+        @Override
+        public String version(final String blobName) throws IOException {
+            cryptoIOProvider.requestAccounting().classB(1L);
+            return Permissions.doPrivileged(() -> eTag(client, bucketName, blobName));
+        }
+
+        @Override
+        public InputStream read(final String blobName, final String version) throws IOException {
+            final var maxRetries = client.getClientConfiguration().getMaxErrorRetry();
+            return Permissions.doPrivileged(() ->
+                    cryptoIOProvider.decryptAndDecompress(
+                            new S3RepeatableInputStream(client, bucketName, blobName, maxRetries,
+                                    cryptoIOProvider.requestAccounting(), version)));
+        }
+
+        @Override
+        public void replace(final String blobName,
+                            final InputStream inputStream,
+                            final long blobSize,
+                            final String version) throws IOException {
+            try {
+                Permissions.doPrivileged(() ->
+                        cryptoIOProvider.compressAndEncrypt(
+                                inputStream,
+                                new S3OutputStream(bucketName, blobName, partSize, client,
+                                        cryptoIOProvider.requestAccounting(), version)
+                        )
+                );
+            } catch (final AmazonClientException e) {
+                throw new IOException("Couldn't upload blob with name: " + blobName, e);
+            }
+        }
+
+        @Override
+        public void copy(final String sourceBlobName, final String targetBlobName) throws IOException {
+            final var blobCopy = new S3BlobCopy(client, bucketName, partSize, cryptoIOProvider.requestAccounting());
+            try {
+                Permissions.doPrivileged(() -> blobCopy.copy(sourceBlobName, targetBlobName));
+            } catch (final AmazonClientException e) {
+                throw new IOException("Couldn't copy blob " + sourceBlobName + " to " + targetBlobName, e);
+            }
+        }
+
         @Override
         public Tuple<Integer, Long> deleteDirectories(final String path) throws IOException {
             final List<Tuple<String, Long>> listOfFiles;
@@ -147,12 +227,7 @@ public class S3RepositoryStorageIOProvider extends RepositoryStorageIOProvider<A
                 // - /aaa/bbb/file
                 // with request which contains delimiter and without returns diff result, and ES API doesn't use
                 // recursive calls to get full list of files by path/sub-path
-                listOfFiles = Permissions.doPrivileged(() ->
-                        list(new ListObjectsV2Request().withBucketName(bucketName).withPrefix(path)))
-                        .stream()
-                        .flatMap(l -> l.getObjectSummaries().stream())
-                        .map(o -> Tuple.tuple(o.getKey(), o.getSize()))
-                        .collect(Collectors.toList());
+                listOfFiles = list(path, null);
             } catch (final AmazonClientException e) {
                 throw new IOException("Couldn't get list of files for path " + path, e);
             }
@@ -193,6 +268,7 @@ public class S3RepositoryStorageIOProvider extends RepositoryStorageIOProvider<A
                         new DeleteObjectsRequest(bucketName)
                                 .withKeys(chunk.toArray(new String[0]));
                 try {
+                    cryptoIOProvider.requestAccounting().deletes(1L);
                     Permissions.doPrivileged(() -> client.deleteObjects(deleteObjectsRequest));
                 } catch (final MultiObjectDeleteException e) {
                     for (final var err : e.getErrors()) {
@@ -208,10 +284,10 @@ public class S3RepositoryStorageIOProvider extends RepositoryStorageIOProvider<A
         @Override
         public List<String> listDirectories(final String path) throws IOException {
             try {
-                return Permissions.doPrivileged(() -> list(listOfObjectsRequest(path)))
+                return list(path, DELIMITER)
                         .stream()
-                        .flatMap(listing -> listing.getCommonPrefixes().stream())
-                        .map(prefix -> prefix.substring(path.length()))
+                        .filter(entry -> Objects.isNull(entry.v2()))
+                        .map(entry -> entry.v1().substring(path.length()))
                         .filter(Predicate.not(String::isEmpty))
                         .map(prefix -> prefix.substring(0, prefix.length() - 1))
                         .collect(Collectors.toList());
@@ -224,34 +300,87 @@ public class S3RepositoryStorageIOProvider extends RepositoryStorageIOProvider<A
         public Map<String, Long> listFiles(final String path, final String prefix) throws IOException {
             try {
                 final var fullPath = path + prefix;
-                return Permissions.doPrivileged(() -> list(listOfObjectsRequest(fullPath)))
+                return list(fullPath, DELIMITER)
                         .stream()
-                        .flatMap(l -> l.getObjectSummaries().stream())
-                        .collect(Collectors.toMap(o -> o.getKey().substring(path.length()), S3ObjectSummary::getSize));
+                        .filter(entry -> Objects.nonNull(entry.v2()))
+                        .collect(Collectors.toMap(entry -> entry.v1().substring(path.length()), Tuple::v2));
             } catch (final AmazonClientException e) {
                 throw new IOException("Couldn't get list of files for path " + path + " and prefix " + prefix, e);
             }
         }
 
-        private ListObjectsV2Request listOfObjectsRequest(final String path) {
-            return new ListObjectsV2Request()
-                    .withBucketName(bucketName)
-                    .withPrefix(path)
-                    .withDelimiter("/");
+        @Override
+        public boolean isThrottlingError(final Throwable error) {
+            return error instanceof SdkBaseException && RetryUtils.isThrottlingException((SdkBaseException) error);
+        }
+
+        /**
+         * Lists keys with the prefix, keys of common prefixes have {@code null} sizes.
+         */
+        private List<Tuple<String, Long>> list(final String prefix, final String delimiter) throws IOException {
+            return parallelListing.list(prefix, (startAfter, endAt, firstPageOnly) -> {
+                final var request =
+                        new ListObjectsV2Request()
+                                .withBucketName(bucketName)
+                                .withPrefix(prefix)
+                                .withDelimiter(delimiter)
+                                .withStartAfter(startAfter);
+                final var entries = new ArrayList<Tuple<String, Long>>();
+                ListObjectsV2Result listing;
+                do {
+                    listing = Permissions.doPrivileged(() -> listPage(request));
+                    for (final var objectSummary : listing.getObjectSummaries()) {
+                        if (isInRange(objectSummary.getKey(), endAt)) {
+                            entries.add(Tuple.tuple(objectSummary.getKey(), objectSummary.getSize()));
+                        }
+                    }
+                    for (final var commonPrefix : listing.getCommonPrefixes()) {
+                        if (isInRange(commonPrefix, endAt)) {
+                            entries.add(Tuple.tuple(commonPrefix, null));
+                        }
+                    }
+                    final var lastKey = lastKey(listing);
+                    if (!isInRange(lastKey, endAt)) {
+                        break;
+                    } else if (firstPageOnly && listing.isTruncated()) {
+                        return new ParallelListing.Page(entries, lastKey);
+                    }
+                    request.setContinuationToken(listing.getNextContinuationToken());
+                } while (listing.isTruncated());
+                return new ParallelListing.Page(entries, null);
+            });
+        }
+
+        private static boolean isInRange(final String key, final String endAt) {
+            return Objects.isNull(endAt) || Objects.isNull(key) || key.compareTo(endAt) <= 0;
         }
 
-        private List<ListObjectsV2Result> list(final ListObjectsV2Request listObjectRequest) {
-            final var objectSummariesList = new ArrayList<ListObjectsV2Result>();
-            ListObjectsV2Result listing;
-            do {
-                listing = client.listObjectsV2(listObjectRequest);
-                objectSummariesList.add(listing);
-                final var nextToken = listing.getNextContinuationToken();
-                listObjectRequest.setContinuationToken(nextToken);
-            } while (listing.isTruncated());
-            return objectSummariesList;
+        private static String lastKey(final ListObjectsV2Result listing) {
+            final var objectSummaries = listing.getObjectSummaries();
+            final var commonPrefixes = listing.getCommonPrefixes();
+            final var lastObjectKey =
+                    objectSummaries.isEmpty() ? null : objectSummaries.get(objectSummaries.size() - 1).getKey();
+            final var lastCommonPrefix =
+                    commonPrefixes.isEmpty() ? null : commonPrefixes.get(commonPrefixes.size() - 1);
+            if (Objects.isNull(lastObjectKey) || Objects.isNull(lastCommonPrefix)) {
+                return Objects.isNull(lastObjectKey) ? lastCommonPrefix : lastObjectKey;
+            }
+            return lastObjectKey.compareTo(lastCommonPrefix) > 0 ? lastObjectKey : lastCommonPrefix;
         }
 
+        private ListObjectsV2Result listPage(final ListObjectsV2Request listObjectRequest) {
+            final var event = new BlobListPageEvent();
+            event.begin();
+            cryptoIOProvider.requestAccounting().classA(1L);
+            final var listing = client.listObjectsV2(listObjectRequest);
+            if (event.shouldCommit()) {
+                event.backend = S3RepositoryPlugin.REPOSITORY_TYPE;
+                event.path = listObjectRequest.getPrefix();
+                event.entries = listing.getKeyCount();
+                event.commit();
+            }
+            return listing;
+        }
 
     }
 
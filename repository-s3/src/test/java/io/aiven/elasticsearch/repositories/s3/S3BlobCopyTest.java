@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.s3;
+
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CopyPartRequest;
+import com.amazonaws.services.s3.model.CopyPartResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class S3BlobCopyTest {
+
+    static final String BUCKET_NAME = "some_bucket";
+
+    static final String UPLOAD_ID = "some_upload_id";
+
+    @Mock
+    AmazonS3 mockedAmazonS3;
+
+    @Captor
+    ArgumentCaptor<CopyPartRequest> copyPartRequestCaptor;
+
+    @Test
+    void copiesSmallBlobsAtOnce() {
+        final var metadata = new ObjectMetadata();
+        metadata.setContentLength(100L);
+        when(mockedAmazonS3.getObjectMetadata(BUCKET_NAME, "source")).thenReturn(metadata);
+
+        new S3BlobCopy(mockedAmazonS3, BUCKET_NAME, 10, RequestAccounting.untracked()).copy("source", "target");
+
+        verify(mockedAmazonS3).copyObject(BUCKET_NAME, "source", BUCKET_NAME, "target");
+        verify(mockedAmazonS3, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+    }
+
+    @Test
+    void copiesBigBlobsPartByPart() {
+        final var size = S3BlobCopy.MAX_COPY_OBJECT_SIZE + 1;
+        final var partSize = 1024 * 1024 * 1024;
+        mockBigBlob(size);
+        when(mockedAmazonS3.copyPart(copyPartRequestCaptor.capture())).thenReturn(new CopyPartResult());
+
+        new S3BlobCopy(mockedAmazonS3, BUCKET_NAME, partSize, RequestAccounting.untracked()).copy("source", "target");
+
+        final var copyPartRequests = copyPartRequestCaptor.getAllValues();
+        assertEquals(6, copyPartRequests.size());
+        assertEquals(0L, copyPartRequests.get(0).getFirstByte());
+        assertEquals(partSize - 1L, copyPartRequests.get(0).getLastByte());
+        assertEquals(5L * partSize, copyPartRequests.get(5).getFirstByte());
+        assertEquals(size - 1, copyPartRequests.get(5).getLastByte());
+        assertEquals(6, copyPartRequests.get(5).getPartNumber());
+        verify(mockedAmazonS3).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void abortsFailedPartCopies() {
+        mockBigBlob(S3BlobCopy.MAX_COPY_OBJECT_SIZE + 1);
+        when(mockedAmazonS3.copyPart(any(CopyPartRequest.class))).thenThrow(new AmazonS3Exception("boom"));
+
+        assertThrows(AmazonS3Exception.class, () ->
+                new S3BlobCopy(mockedAmazonS3, BUCKET_NAME, 10, RequestAccounting.untracked())
+                        .copy("source", "target"));
+
+        verify(mockedAmazonS3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(mockedAmazonS3, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    private void mockBigBlob(final long size) {
+        final var metadata = new ObjectMetadata();
+        metadata.setContentLength(size);
+        when(mockedAmazonS3.getObjectMetadata(BUCKET_NAME, "source")).thenReturn(metadata);
+        final var initiateResult = new InitiateMultipartUploadResult();
+        initiateResult.setUploadId(UPLOAD_ID);
+        when(mockedAmazonS3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class)))
+                .thenReturn(initiateResult);
+    }
+
+}
@@ -188,6 +188,34 @@ class S3ClientProviderTest extends RsaKeyAwareTest {
         );
     }
 
+    @Test
+    void balancesRequestsAcrossEndpoints() throws Exception {
+        final var s3ClientProvider = new S3ClientProvider();
+        final var secureSettings =
+                new DummySecureSettings()
+                        .setString(S3ClientSettings.AWS_ACCESS_KEY_ID.getKey(), "AWS_ACCESS_KEY_ID")
+                        .setString(S3ClientSettings.AWS_SECRET_ACCESS_KEY.getKey(), "AWS_SECRET_ACCESS_KEY")
+                        .setString(S3ClientSettings.ENDPOINT.getKey(), "http://endpoint")
+                        .setFile(S3ClientSettings.PUBLIC_KEY_FILE.getKey(), Files.newInputStream(publicKeyPem))
+                        .setFile(S3ClientSettings.PRIVATE_KEY_FILE.getKey(), Files.newInputStream(privateKeyPem));
+
+        final var settings =
+                Settings.builder().setSecureSettings(secureSettings).build();
+
+        final var repoSettings =
+                Settings.builder()
+                        .putList(S3ClientProvider.ENDPOINTS.getKey(), "http://gw1:9000", "http://gw2:9000")
+                        .build();
+        final var client = s3ClientProvider.buildClientIfNeeded(S3ClientSettings.create(settings), repoSettings);
+        final var amazonS3Client = (AmazonS3Client) client;
+
+        assertEquals(new URI("http://gw1:9000"), extractEndpoint(amazonS3Client));
+        assertEquals(
+                2 * ClientConfiguration.DEFAULT_MAX_CONNECTIONS,
+                amazonS3Client.getClientConfiguration().getMaxConnections()
+        );
+    }
+
     private URI extractEndpoint(final AmazonS3Client amazonS3Client) throws Exception {
         final var field = ReflectionSupport.findFields(AmazonS3Client.class, f -> f
                         .getName().equals("endpoint"),
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Aiven Oy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.aiven.elasticsearch.repositories.s3;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opensearch.common.unit.TimeValue;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class S3EndpointBalancerTest {
+
+    static final URI FIRST = URI.create("http://gw1:9000");
+
+    static final URI SECOND = URI.create("http://gw2:9000");
+
+    final AtomicLong clock = new AtomicLong();
+
+    final S3EndpointBalancer balancer =
+            new S3EndpointBalancer(List.of(FIRST, SECOND), TimeValue.timeValueSeconds(30L), clock::get);
+
+    @Test
+    void keepsBucketOfVirtualHostedRequests() {
+        assertEquals(URI.create("https://bucket.gw2:9001"),
+                S3EndpointBalancer.rewrite(
+                        URI.create("http://bucket.gw1:9000"), FIRST, URI.create("https://gw2:9001")));
+        assertEquals(URI.create("http://gw2:9000"), S3EndpointBalancer.rewrite(FIRST, FIRST, SECOND));
+    }
+
+    @Test
+    void sendsRequestsToLessLoadedGateway() {
+        final var first = attempt();
+        final var second = attempt();
+
+        assertNotEquals(host(first), host(second));
+    }
+
+    @Test
+    void ejectsFailingGateway() {
+        var failures = 0;
+        while (failures < S3EndpointBalancer.MAX_CONSECUTIVE_FAILURES) {
+            final var request = attempt();
+            if (host(request).equals("bucket.gw1")) {
+                complete(request, new AmazonClientException("connection refused"));
+                failures++;
+            } else {
+                clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10L));
+                complete(request, null);
+            }
+        }
+
+        for (var i = 0; i < 10; i++) {
+            final var request = attempt();
+            assertEquals("bucket.gw2", host(request));
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10L));
+            complete(request, null);
+        }
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30L));
+        assertEquals("bucket.gw1", host(attempt()));
+    }
+
+    @Test
+    void doesNotEjectThrottledGateway() {
+        final var slowDown = new AmazonServiceException("Please reduce your request rate");
+        slowDown.setStatusCode(503);
+        slowDown.setErrorCode("SlowDown");
+        var throttled = 0;
+        while (throttled < S3EndpointBalancer.MAX_CONSECUTIVE_FAILURES) {
+            final var request = attempt();
+            if (host(request).equals("bucket.gw1")) {
+                complete(request, slowDown);
+                throttled++;
+            } else {
+                complete(request, null);
+            }
+        }
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10L));
+        final var hosts = new HashSet<String>();
+        for (var i = 0; i < 10; i++) {
+            hosts.add(host(attempt()));
+        }
+        assertEquals(Set.of("bucket.gw1", "bucket.gw2"), hosts);
+    }
+
+    @Test
+    void movesRetriesToAnotherGateway() {
+        final var request = attempt();
+        final var firstHost = host(request);
+        balancer.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+
+        assertNotEquals(firstHost, host(request));
+    }
+
+    private Request<?> attempt() {
+        final var request = new DefaultRequest<>("Amazon S3");
+        request.setEndpoint(URI.create("http://bucket.gw1:9000"));
+        balancer.beforeAttempt(HandlerBeforeAttemptContext.builder().withRequest(request).build());
+        return request;
+    }
+
+    private void complete(final Request<?> request, final Exception exception) {
+        balancer.afterAttempt(
+                HandlerAfterAttemptContext.builder().withRequest(request).withException(exception).build());
+    }
+
+    private static String host(final Request<?> request) {
+        return request.getEndpoint().getHost();
+    }
+
+}
@@ -18,12 +18,17 @@ package io.aiven.elasticsearch.repositories.s3;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+import io.aiven.elasticsearch.repositories.BlobVersionConflictException;
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
+
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
@@ -160,6 +165,52 @@ class S3OutputStreamTest {
         assertAbortMultipartUploadRequest(abortMultipartUploadRequestCaptor.getValue());
     }
 
+    @Test
+    void completesOnlyIfKeyDoesNotExist() throws Exception {
+        when(mockedAmazonS3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class)))
+                .thenReturn(newInitiateMultipartUploadResult());
+        when(mockedAmazonS3.uploadPart(any(UploadPartRequest.class)))
+                .thenReturn(newUploadPartResult(1, "SOME_ETAG"));
+        final var preconditionFailed = new AmazonS3Exception("precondition failed");
+        preconditionFailed.setStatusCode(412);
+        when(mockedAmazonS3.completeMultipartUpload(completeMultipartUploadRequestCaptor.capture()))
+                .thenThrow(preconditionFailed);
+        doNothing().when(mockedAmazonS3).abortMultipartUpload(abortMultipartUploadRequestCaptor.capture());
+
+        final var out =
+                new S3OutputStream(BUCKET_NAME, FILE_KEY, 100, mockedAmazonS3, RequestAccounting.untracked(), true);
+        out.write(1);
+
+        assertThrows(FileAlreadyExistsException.class, out::close);
+        assertEquals(
+                "*",
+                completeMultipartUploadRequestCaptor.getValue().getCustomRequestHeaders().get("If-None-Match"));
+        assertAbortMultipartUploadRequest(abortMultipartUploadRequestCaptor.getValue());
+    }
+
+    @Test
+    void completesOnlyIfObjectHasExpectedETag() throws Exception {
+        when(mockedAmazonS3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class)))
+                .thenReturn(newInitiateMultipartUploadResult());
+        when(mockedAmazonS3.uploadPart(any(UploadPartRequest.class)))
+                .thenReturn(newUploadPartResult(1, "SOME_ETAG"));
+        final var preconditionFailed = new AmazonS3Exception("precondition failed");
+        preconditionFailed.setStatusCode(412);
+        when(mockedAmazonS3.completeMultipartUpload(completeMultipartUploadRequestCaptor.capture()))
+                .thenThrow(preconditionFailed);
+        doNothing().when(mockedAmazonS3).abortMultipartUpload(abortMultipartUploadRequestCaptor.capture());
+
+        final var out =
+                new S3OutputStream(BUCKET_NAME, FILE_KEY, 100, mockedAmazonS3, RequestAccounting.untracked(), "\"v1\"");
+        out.write(1);
+
+        assertThrows(BlobVersionConflictException.class, out::close);
+        assertEquals(
+                "\"v1\"",
+                completeMultipartUploadRequestCaptor.getValue().getCustomRequestHeaders().get("If-Match"));
+        assertAbortMultipartUploadRequest(abortMultipartUploadRequestCaptor.getValue());
+    }
+
     @Test
     void writesOneByte() throws Exception {
         when(mockedAmazonS3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class)))
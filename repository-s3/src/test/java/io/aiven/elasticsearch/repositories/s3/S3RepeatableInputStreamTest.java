@@ -18,11 +18,17 @@ package io.aiven.elasticsearch.repositories.s3;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import io.aiven.elasticsearch.repositories.BlobVersionConflictException;
+import io.aiven.elasticsearch.repositories.metrics.RequestAccounting;
+
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import org.junit.jupiter.api.BeforeEach;
@@ -35,7 +41,9 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -59,6 +67,9 @@ class S3RepeatableInputStreamTest {
 
     @BeforeEach
     void setup() {
+        final var objectMetadata = new ObjectMetadata();
+        objectMetadata.setHeader(Headers.ETAG, "\"v1\"");
+        lenient().when(mockedS3Object.getObjectMetadata()).thenReturn(objectMetadata);
         when(mockedS3Object.getObjectContent()).thenReturn(mockedS3InputStream);
         when(mockedAmazonS3.getObject(getObjectRequestArgumentCaptor.capture())).thenReturn(mockedS3Object);
     }
@@ -138,6 +149,26 @@ class S3RepeatableInputStreamTest {
         }
         assertArrayEquals(content, buffer.array());
         assertEquals(42, getObjectRequestArgumentCaptor.getValue().getRange()[0]);
+        // the stream is reopened on the version read first
+        assertEquals(List.of("\"v1\""), getObjectRequestArgumentCaptor.getValue().getMatchingETagConstraints());
+    }
+
+    @Test
+    void testReopensGivenVersionOnly() throws IOException {
+        when(mockedAmazonS3.getObject(getObjectRequestArgumentCaptor.capture()))
+                .thenReturn(mockedS3Object, (S3Object) null);
+        when(mockedS3InputStream.read())
+                .thenReturn(42)
+                .thenThrow(new IOException("boo"));
+        try (final var in =
+                     new S3RepeatableInputStream(mockedAmazonS3, BUCKET_NAME, FILE_KEY, 2,
+                             RequestAccounting.untracked(), "\"v1\"")) {
+            assertEquals(42, in.read());
+            assertThrows(BlobVersionConflictException.class, in::read);
+        }
+        final var reopenRequest = getObjectRequestArgumentCaptor.getValue();
+        assertEquals(List.of("\"v1\""), reopenRequest.getMatchingETagConstraints());
+        assertEquals(1, reopenRequest.getRange()[0]);
     }
 
     private byte[] randomBytes(final int size) {
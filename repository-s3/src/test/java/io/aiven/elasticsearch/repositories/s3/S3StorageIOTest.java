@@ -17,6 +17,7 @@
 package io.aiven.elasticsearch.repositories.s3;
 
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -25,11 +26,15 @@ import org.opensearch.common.settings.Settings;
 
 import io.aiven.elasticsearch.repositories.RsaKeyAwareTest;
 import io.aiven.elasticsearch.repositories.io.CryptoIOProvider;
+import io.aiven.elasticsearch.repositories.io.ParallelListing;
 import io.aiven.elasticsearch.repositories.security.EncryptionKeyProvider;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ListObjectsV2Request;
 import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
@@ -41,6 +46,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -75,7 +81,8 @@ class S3StorageIOTest extends RsaKeyAwareTest {
                                 Settings.builder()
                                         .put(S3RepositoryStorageIOProvider.BUCKET_NAME.getKey(), "some_bucket")
                                         .build(),
-                                new CryptoIOProvider(null, 0)
+                                new CryptoIOProvider(null, 0),
+                                ParallelListing.SEQUENTIAL
                         );
 
         final var hugeListOfFiles =
@@ -96,6 +103,31 @@ class S3StorageIOTest extends RsaKeyAwareTest {
                 .deleteObjects(deleteObjectsRequestArgumentCaptor.capture());
     }
 
+    @Test
+    void readOfMissingBlobThrowsNoSuchFileException() throws Exception {
+        final var notFound = new AmazonS3Exception("Not Found");
+        notFound.setStatusCode(404);
+        when(mockedAmazonS3.getClientConfiguration()).thenReturn(new ClientConfiguration());
+        when(mockedAmazonS3.getObject(any(GetObjectRequest.class))).thenThrow(notFound);
+
+        final var encProvider =
+                EncryptionKeyProvider.of(
+                        Files.newInputStream(publicKeyPem).readAllBytes(),
+                        Files.newInputStream(privateKeyPem).readAllBytes());
+        final var s3StorageIO =
+                new S3RepositoryStorageIOProvider(null, encProvider)
+                        .createStorageIOFor(
+                                mockedAmazonS3,
+                                Settings.builder()
+                                        .put(S3RepositoryStorageIOProvider.BUCKET_NAME.getKey(), "some_bucket")
+                                        .build(),
+                                new CryptoIOProvider(null, 0),
+                                ParallelListing.SEQUENTIAL
+                        );
+
+        assertThrows(NoSuchFileException.class, () -> s3StorageIO.read("some/blob"));
+    }
+
     @Test
     void deleteDirectoriesUsingBulk() throws Exception {
         final var encProvider =
@@ -126,7 +158,8 @@ class S3StorageIOTest extends RsaKeyAwareTest {
                                 Settings.builder()
                                         .put(S3RepositoryStorageIOProvider.BUCKET_NAME.getKey(), "some_bucket")
                                         .build(),
-                                new CryptoIOProvider(null, 0)
+                                new CryptoIOProvider(null, 0),
+                                ParallelListing.SEQUENTIAL
                         );
 
         final var result = s3StorageIO.deleteDirectories("/dome/path");